@@ -1,3 +1,5 @@
+import java.io.ByteArrayOutputStream
+
 plugins {
     application
     java
@@ -12,3 +14,69 @@ application {
     mainClass.set("mars.Mars")
     version = "4.6"
 }
+
+// JMH benchmarks for the simulator, assembler and memory live in their own source
+// set, src/jmh.  Run them with "gradle jmh"; results are written as JSON to
+// build/reports/jmh/results.json.  Select benchmarks with -Pjmh.include=<regex>,
+// for example -Pjmh.include=SimulatorBenchmark.
+sourceSets {
+    create("jmh") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output
+    }
+}
+
+val jmhVersion = "1.37"
+
+dependencies {
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:$jmhVersion")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:$jmhVersion")
+}
+
+tasks.register<JavaExec>("jmh") {
+    group = "benchmark"
+    description = "Runs the JMH benchmarks and writes the results to build/reports/jmh/results.json."
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    val results = layout.buildDirectory.file("reports/jmh/results.json").get().asFile
+    args("-rf", "json", "-rff", results.absolutePath)
+    if (project.hasProperty("jmh.include")) {
+        args(project.property("jmh.include").toString())
+    }
+    doFirst {
+        results.parentFile.mkdirs()
+    }
+}
+
+// Regression programs live in src/test/resources.  Each <name>.asm is run from the
+// command line with self-modifying code enabled ("nc smc"), and its standard output
+// must match <name>.out beside it.  Run them with "gradle regressionTest"; "gradle
+// check" runs them too.
+val regressionTest = tasks.register("regressionTest") {
+    group = "verification"
+    description = "Runs the MIPS regression programs in src/test/resources and checks their output."
+}
+
+fileTree("src/test/resources") { include("**/*.asm") }.forEach { program ->
+    val expected = File(program.parentFile, program.nameWithoutExtension + ".out")
+    val run = tasks.register<JavaExec>("regression_" + program.nameWithoutExtension) {
+        description = "Runs " + program.name + " and compares its output with " + expected.name + "."
+        classpath = sourceSets.main.get().runtimeClasspath
+        mainClass.set("mars.Mars")
+        args("nc", "smc", program.absolutePath)
+        val output = ByteArrayOutputStream()
+        standardOutput = output
+        inputs.files(program, expected)
+        doLast {
+            val actual = output.toString()
+            if (actual != expected.readText()) {
+                throw GradleException(program.name + " printed \"" + actual + "\", expected \"" + expected.readText() + "\"")
+            }
+        }
+    }
+    regressionTest.configure { dependsOn(run) }
+}
+
+tasks.named("check") {
+    dependsOn(regressionTest)
+}
@@ -0,0 +1,150 @@
+package mars.benchmarks;
+
+import mars.ErrorList;
+import mars.MIPSprogram;
+import mars.ProcessingException;
+import mars.assembler.TokenList;
+import mars.assembler.Tokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+
+/**
+ * Assembly of large generated sources, and tokenizing of single source lines.
+ * <p>
+ * The generated source repeats a block of data directives, labels, basic and
+ * pseudo-instructions and forward and backward branches, with unique labels in each
+ * copy, so that the symbol table grows with the source.  Reading and tokenizing the
+ * source is done before each invocation of assemble() and is not measured.
+ **/
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AssemblerBenchmark {
+
+    @Param({"500", "2000"})
+    public int blocks;
+
+    private static final String[] LINES = {
+            "main:   la   $s0, array          # address of array",
+            "loop:   lw   $t0, 0($s0)",
+            "        addiu $t1, $t0, 0x7fff",
+            "        beq  $t0, $zero, done",
+            "        sw   $t1, -4($sp)",
+            "        li   $v0, 4",
+            "message: .asciiz \"The sum is \\n\"",
+            "values: .word 1, 2, 3, 0x10, -5, 'a'",
+            "        mul.d $f2, $f4, $f6",
+    };
+
+    private File source;
+    private MIPSprogram program;
+    private ArrayList programsToAssemble;
+    private Tokenizer tokenizer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Benchmarks.initialize();
+        source = File.createTempFile("generated", ".asm");
+        source.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(new FileWriter(source))) {
+            generate(out, blocks);
+        }
+        tokenizer = new Tokenizer();
+    }
+
+    @Setup(Level.Invocation)
+    public void tokenize() throws ProcessingException {
+        program = new MIPSprogram();
+        programsToAssemble = Benchmarks.tokenize(program, source);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public ErrorList assemble() throws ProcessingException {
+        return program.assemble(programsToAssemble, true, false);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void tokenizeLine(Blackhole blackhole) {
+        for (int i = 0; i < LINES.length; i++) {
+            TokenList tokens = tokenizer.tokenizeLine(i + 1, LINES[i], new ErrorList(), false);
+            blackhole.consume(tokens);
+        }
+    }
+
+    // Labels are numbered so that each block defines its own symbols.
+    private static void generate(PrintWriter out, int blocks) {
+        for (int i = 0; i < blocks; i++) {
+            out.println("        .data");
+            out.println("table" + i + ": .word " + i + ", " + (i + 1) + ", 0x" + Integer.toHexString(i * 16) + ", -" + i);
+            out.println("name" + i + ":  .asciiz \"block " + i + "\\n\"");
+            out.println("        .align 2");
+            out.println("value" + i + ": .space 24");
+            out.println("        .text");
+            out.println("block" + i + ":");
+            out.println("        la   $t0, table" + i);
+            out.println("        lw   $t1, 0($t0)");
+            out.println("        lw   $t2, 4($t0)");
+            out.println("        addu $t3, $t1, $t2");
+            out.println("        li   $t4, " + (i * 1000));
+            out.println("        blt  $t3, $t4, skip" + i);
+            out.println("        sw   $t3, value" + i);
+            out.println("skip" + i + ":");
+            out.println("        sll  $t5, $t3, 2");
+            out.println("        beq  $t5, $zero, block" + i);
+            out.println("        bne  $t5, $t1, next" + i);
+            out.println("        jal  block" + i);
+            out.println("next" + i + ":");
+        }
+        out.println("        li   $v0, 10");
+        out.println("        syscall");
+    }
+}
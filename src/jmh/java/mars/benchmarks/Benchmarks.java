@@ -0,0 +1,120 @@
+package mars.benchmarks;
+
+import mars.Globals;
+import mars.MIPSprogram;
+import mars.ProcessingException;
+import mars.Settings;
+import mars.mips.hardware.Coprocessor0;
+import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.MemoryConfigurations;
+import mars.mips.hardware.RegisterFile;
+import mars.util.SystemIO;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+
+/**
+ * Setup shared by the benchmarks: command line style initialization of the simulator,
+ * and assembly of the benchmark programs kept as resources next to this class.
+ **/
+
+final class Benchmarks {
+    private Benchmarks() {
+    }
+
+    /**
+     * Initialize the simulator as the command line does, with delayed branching and
+     * self-modifying code disabled, the default memory configuration, and standard
+     * output discarded.
+     */
+    static void initialize() {
+        Globals.initialize(false);
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.DELAYED_BRANCHING_ENABLED, false);
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, false);
+        MemoryConfigurations.setCurrentConfiguration(MemoryConfigurations.getDefaultConfiguration());
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        SystemIO.setStandardStreams(new ByteArrayInputStream(new byte[0]), discard, discard);
+    }
+
+    /**
+     * Copy a benchmark program from the resources to a temporary file, since the
+     * assembler reads its sources from files.
+     *
+     * @param name name of the program, without the .asm extension
+     * @return the temporary file, deleted when the JVM exits
+     */
+    static File extractProgram(String name) throws IOException {
+        File file = File.createTempFile(name, ".asm");
+        file.deleteOnExit();
+        try (InputStream in = Benchmarks.class.getResourceAsStream(name + ".asm")) {
+            if (in == null) {
+                throw new IOException("No benchmark program named " + name);
+            }
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+
+    /**
+     * Read and tokenize a source file, ready for MIPSprogram.assemble().
+     *
+     * @param program the program to hold the source
+     * @param file    the source file
+     * @return the list of programs to assemble
+     */
+    static ArrayList tokenize(MIPSprogram program, File file) throws ProcessingException {
+        ArrayList files = new ArrayList();
+        files.add(file.getAbsolutePath());
+        return program.prepareFilesForAssembly(files, file.getAbsolutePath(), null);
+    }
+
+    /**
+     * Assemble a source file and reset the registers so that the program is ready to
+     * be simulated from its first instruction.
+     *
+     * @param file the source file
+     * @return the assembled program
+     */
+    static MIPSprogram load(File file) throws ProcessingException {
+        MIPSprogram program = new MIPSprogram();
+        program.assemble(tokenize(program, file), true, false);
+        RegisterFile.resetRegisters();
+        Coprocessor1.resetRegisters();
+        Coprocessor0.resetRegisters();
+        RegisterFile.initializeProgramCounter(false);
+        return program;
+    }
+}
@@ -0,0 +1,131 @@
+package mars.benchmarks;
+
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.TimeUnit;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+
+/**
+ * Word and byte accesses to the data segment through the Memory API used by the
+ * instruction simulations.  Accesses cycle through a small block of words, so they
+ * measure the cost of the access path rather than of the memory hierarchy.
+ * <p>
+ * Each benchmark is run with 0, 1 and 10 observers registered over the block, which
+ * measures the cost of notifying observers (Memory.notifyAnyObservers) on top of the
+ * access itself.
+ **/
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryBenchmark {
+    // Number of words accessed in turn; must be a power of 2.
+    private static final int WORDS = 1024;
+
+    @Param({"0", "1", "10"})
+    public int observers;
+
+    private Memory memory;
+    private int base;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws AddressErrorException {
+        Benchmarks.initialize();
+        memory = Memory.getInstance();
+        memory.clear();
+        base = Memory.dataBaseAddress;
+        for (int i = 0; i < observers; i++) {
+            memory.addObserver(new CountingObserver(), base, base + (WORDS - 1) * Memory.WORD_LENGTH_BYTES);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        memory.deleteObservers();
+    }
+
+    @Benchmark
+    public int getWord() throws AddressErrorException {
+        return memory.getWord(nextWordAddress());
+    }
+
+    @Benchmark
+    public int setWord() throws AddressErrorException {
+        int address = nextWordAddress();
+        return memory.setWord(address, address);
+    }
+
+    @Benchmark
+    public int getByte() throws AddressErrorException {
+        return memory.getByte(nextByteAddress());
+    }
+
+    @Benchmark
+    public int setByte() throws AddressErrorException {
+        int address = nextByteAddress();
+        return memory.setByte(address, address);
+    }
+
+    private int nextWordAddress() {
+        next = (next + 1) & (WORDS - 1);
+        return base + next * Memory.WORD_LENGTH_BYTES;
+    }
+
+    private int nextByteAddress() {
+        next = (next + 1) & (WORDS * Memory.WORD_LENGTH_BYTES - 1);
+        return base + next;
+    }
+
+    private static class CountingObserver implements Observer {
+        private int count = 0;
+
+        public void update(Observable o, Object obj) {
+            count++;
+        }
+    }
+}
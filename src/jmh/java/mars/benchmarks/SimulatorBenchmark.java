@@ -0,0 +1,140 @@
+package mars.benchmarks;
+
+import mars.MIPSprogram;
+import mars.ProcessingException;
+import mars.mips.hardware.AccessNotice;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.MemoryAccessNotice;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.TimeUnit;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+
+/**
+ * Runs canonical programs through the Simulator's run loop.  Each invocation simulates
+ * one complete run of a freshly assembled program; assembly is not measured.
+ * <p>
+ * Besides the time per run, the <tt>instructions</tt> counter reports the simulated
+ * MIPS instructions per second, which is the figure to track across releases.  The
+ * number of instructions in a run is measured once per trial, by counting instruction
+ * fetches as the command line "ic" option does, and is the same for every run.
+ **/
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimulatorBenchmark {
+
+    @Param({"fib", "bubblesort", "matmul", "strcpy"})
+    public String program;
+
+    private File source;
+    private MIPSprogram assembled;
+    private long instructionsPerRun;
+
+    /**
+     * Simulated instructions, reported by JMH as a rate.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long instructions;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            instructions = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, ProcessingException, AddressErrorException {
+        Benchmarks.initialize();
+        source = Benchmarks.extractProgram(program);
+        InstructionCounter counter = new InstructionCounter();
+        MIPSprogram counted = Benchmarks.load(source);
+        Memory.getInstance().addObserver(counter, Memory.textBaseAddress, Memory.textLimitAddress);
+        try {
+            counted.simulate(-1);
+        } finally {
+            Memory.getInstance().deleteObserver(counter);
+        }
+        instructionsPerRun = counter.count;
+    }
+
+    @Setup(Level.Invocation)
+    public void assemble() throws ProcessingException {
+        assembled = Benchmarks.load(source);
+    }
+
+    @Benchmark
+    public boolean run(Counters counters) throws ProcessingException {
+        boolean done = assembled.simulate(-1);
+        counters.instructions += instructionsPerRun;
+        return done;
+    }
+
+    // Counts instruction fetches made by the simulated program.
+    private static class InstructionCounter implements Observer {
+        private long count = 0;
+        private int lastAddress = 0;
+
+        public void update(Observable o, Object obj) {
+            if (obj instanceof AccessNotice) {
+                AccessNotice notice = (AccessNotice) obj;
+                if (!notice.accessIsFromMIPS() || notice.getAccessType() != AccessNotice.READ) {
+                    return;
+                }
+                int address = ((MemoryAccessNotice) notice).getAddress();
+                if (address != lastAddress) {
+                    lastAddress = address;
+                    count++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+# Bubble sort of 200 words initially in descending order.  Used by SimulatorBenchmark;
+# prints the first and last elements after sorting, 1 and 200.
+        .data
+array:  .space 800
+        .text
+main:   la   $s0, array
+        li   $s1, 200
+        move $t0, $s0
+        move $t1, $s1
+fill:   sw   $t1, 0($t0)
+        addi $t0, $t0, 4
+        addi $t1, $t1, -1
+        bgtz $t1, fill
+
+        addi $s2, $s1, -1
+outer:  move $t0, $s0
+        move $t1, $s2
+inner:  lw   $t2, 0($t0)
+        lw   $t3, 4($t0)
+        ble  $t2, $t3, noswap
+        sw   $t3, 0($t0)
+        sw   $t2, 4($t0)
+noswap: addi $t0, $t0, 4
+        addi $t1, $t1, -1
+        bgtz $t1, inner
+        addi $s2, $s2, -1
+        bgtz $s2, outer
+
+        lw   $a0, 0($s0)
+        li   $v0, 1
+        syscall
+        li   $a0, ' '
+        li   $v0, 11
+        syscall
+        lw   $a0, 796($s0)
+        li   $v0, 1
+        syscall
+        li   $v0, 10
+        syscall
@@ -0,0 +1,29 @@
+# Recursive Fibonacci.  Used by SimulatorBenchmark; prints fib(18) = 2584.
+        .text
+main:   li   $a0, 18
+        jal  fib
+        move $a0, $v0
+        li   $v0, 1
+        syscall
+        li   $v0, 10
+        syscall
+
+fib:    slti $t0, $a0, 2
+        beq  $t0, $zero, recurse
+        move $v0, $a0
+        jr   $ra
+recurse:
+        addi $sp, $sp, -12
+        sw   $ra, 8($sp)
+        sw   $a0, 4($sp)
+        addi $a0, $a0, -1
+        jal  fib
+        sw   $v0, 0($sp)
+        lw   $a0, 4($sp)
+        addi $a0, $a0, -2
+        jal  fib
+        lw   $t0, 0($sp)
+        add  $v0, $v0, $t0
+        lw   $ra, 8($sp)
+        addi $sp, $sp, 12
+        jr   $ra
@@ -0,0 +1,60 @@
+# Multiplication of two 24 x 24 word matrices, A[i][j] = i + j and B[i][j] = i - j.
+# Used by SimulatorBenchmark; prints C[23][23] = -8372.
+        .data
+matA:   .space 2304
+matB:   .space 2304
+matC:   .space 2304
+        .text
+main:   li   $s0, 24
+        la   $s1, matA
+        la   $s2, matB
+        la   $s3, matC
+
+        li   $t0, 0
+initi:  li   $t1, 0
+initj:  mul  $t2, $t0, $s0
+        add  $t2, $t2, $t1
+        sll  $t2, $t2, 2
+        add  $t3, $t0, $t1
+        add  $t4, $s1, $t2
+        sw   $t3, 0($t4)
+        sub  $t3, $t0, $t1
+        add  $t4, $s2, $t2
+        sw   $t3, 0($t4)
+        addi $t1, $t1, 1
+        blt  $t1, $s0, initj
+        addi $t0, $t0, 1
+        blt  $t0, $s0, initi
+
+        sll  $t8, $s0, 2
+        li   $t0, 0
+multi:  li   $t1, 0
+multj:  li   $t5, 0
+        li   $t2, 0
+        mul  $t6, $t0, $t8
+        add  $t6, $t6, $s1
+        sll  $t7, $t1, 2
+        add  $t7, $t7, $s2
+multk:  lw   $t3, 0($t6)
+        lw   $t4, 0($t7)
+        mul  $t3, $t3, $t4
+        add  $t5, $t5, $t3
+        addi $t6, $t6, 4
+        add  $t7, $t7, $t8
+        addi $t2, $t2, 1
+        blt  $t2, $s0, multk
+        mul  $t9, $t0, $s0
+        add  $t9, $t9, $t1
+        sll  $t9, $t9, 2
+        add  $t9, $t9, $s3
+        sw   $t5, 0($t9)
+        addi $t1, $t1, 1
+        blt  $t1, $s0, multj
+        addi $t0, $t0, 1
+        blt  $t0, $s0, multi
+
+        lw   $a0, 2300($s3)
+        li   $v0, 1
+        syscall
+        li   $v0, 10
+        syscall
@@ -0,0 +1,37 @@
+# Byte by byte copy of a 4095 character string, repeated 16 times.  Used by
+# SimulatorBenchmark; prints the length of the copy, 4095.
+        .data
+source: .space 4096
+dest:   .space 4096
+        .text
+main:   la   $s0, source
+        la   $s1, dest
+        li   $t0, 0
+        li   $t2, 'a'
+fill:   add  $t1, $s0, $t0
+        sb   $t2, 0($t1)
+        addi $t2, $t2, 1
+        ble  $t2, 'z', next
+        li   $t2, 'a'
+next:   addi $t0, $t0, 1
+        blt  $t0, 4095, fill
+        add  $t1, $s0, $t0
+        sb   $zero, 0($t1)
+
+        li   $s2, 16
+repeat: move $t0, $s0
+        move $t1, $s1
+copy:   lbu  $t2, 0($t0)
+        sb   $t2, 0($t1)
+        addi $t0, $t0, 1
+        addi $t1, $t1, 1
+        bnez $t2, copy
+        addi $s2, $s2, -1
+        bgtz $s2, repeat
+
+        sub  $a0, $t1, $s1
+        addi $a0, $a0, -1
+        li   $v0, 1
+        syscall
+        li   $v0, 10
+        syscall
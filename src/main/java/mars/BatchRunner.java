@@ -0,0 +1,362 @@
+package mars;
+
+import mars.mips.hardware.Coprocessor0;
+import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.MemoryConfigurations;
+import mars.mips.hardware.RegisterFile;
+import mars.simulator.ProgramArgumentList;
+import mars.simulator.SimulatorContext;
+import mars.simulator.VirtualClock;
+import mars.util.FilenameFinder;
+import mars.util.SystemIO;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.StringTokenizer;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Runs the programs listed in a manifest file from the command line, several at a
+ * time, and writes a JSON array holding one result object per program to the given
+ * stream.  Started by the MarsLaunch "batch" option.
+ * <p>
+ * Each line of the manifest describes one job.  Blank lines and lines starting with #
+ * are ignored.  A line holds space-separated source file names (the first being the
+ * main file), optionally followed by <tt>stdin=&lt;file&gt;</tt> to supply the
+ * program's standard input, <tt>steps=&lt;n&gt;</tt> to limit the number of steps
+ * simulated, and <tt>pa</tt> followed by program arguments, which as on the command
+ * line must come last.  File names are relative to the directory holding the manifest.
+ * <p>
+ * Each job runs in a SimulatorContext of its own, to which the worker thread running
+ * it is bound, so jobs running at the same time never see each other's memory,
+ * registers, symbol table, syscall files or exit code.  The instruction set, settings
+ * and memory configuration are shared by all contexts, so they are set up once for
+ * the whole batch.
+ **/
+
+public class BatchRunner {
+    private static final String COMMENT = "#";
+    private static final String STDIN_PREFIX = "stdin=";
+    private static final String STEPS_PREFIX = "steps=";
+    private static final String PROGRAM_ARGUMENTS_SWITCH = "pa";
+
+    private final String manifest;
+    private final int threads;
+    private final int defaultMaxSteps;
+    private final int instructionsPerMillisecond;
+    private final PrintStream out;
+    private ArrayList jobs;
+    private int nextJob;
+
+    /**
+     * Create a batch runner.
+     *
+     * @param manifest        name of the manifest file listing the jobs
+     * @param threads         number of jobs to run at the same time; if 0 or negative,
+     *                        the number of available processors
+     * @param defaultMaxSteps maximum steps to simulate for jobs without a steps= entry;
+     *                        0 or negative for no maximum
+     * @param instructionsPerMillisecond instructions per millisecond of virtual time for
+     *                        every job, or 0 for the wall clock (see VirtualClock)
+     * @param out             stream for MARS messages and the JSON results
+     */
+    public BatchRunner(String manifest, int threads, int defaultMaxSteps, int instructionsPerMillisecond, PrintStream out) {
+        this.manifest = manifest;
+        this.threads = (threads > 0) ? threads : Runtime.getRuntime().availableProcessors();
+        this.defaultMaxSteps = defaultMaxSteps;
+        this.instructionsPerMillisecond = instructionsPerMillisecond;
+        this.out = out;
+    }
+
+    /**
+     * Run every job in the manifest and print the JSON results, in manifest order,
+     * to the stream given to the constructor.
+     *
+     * @return true if the manifest was read, false otherwise
+     */
+    public boolean run() {
+        try {
+            jobs = readManifest();
+        } catch (IOException e) {
+            out.println("Error reading batch manifest " + manifest + ": " + e.getMessage());
+            return false;
+        }
+        nextJob = 0;
+        Globals.initialize(false);
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.DELAYED_BRANCHING_ENABLED, false);
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, false);
+        MemoryConfigurations.setCurrentConfiguration(MemoryConfigurations.getDefaultConfiguration());
+        Thread[] workers = new Thread[Math.min(threads, Math.max(jobs.size(), 1))];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker();
+            workers[i].setName("MARS batch " + i);
+            workers[i].start();
+        }
+        for (int i = 0; i < workers.length; i++) {
+            try {
+                workers[i].join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        StringBuffer results = new StringBuffer("[");
+        for (int i = 0; i < jobs.size(); i++) {
+            results.append((i == 0) ? "\n" : ",\n").append(((Job) jobs.get(i)).result);
+        }
+        results.append("\n]");
+        out.println(results);
+        out.flush();
+        return true;
+    }
+
+    /**
+     * Assemble and run one program in the calling thread's SimulatorContext, which
+     * must be newly created.
+     *
+     * @param sources      names of the source files, main file first
+     * @param stdinFile    name of the file to use as standard input, or null for none
+     * @param maxSteps     maximum number of steps to simulate, 0 or negative for no maximum
+     * @param programArgs  program arguments, possibly none
+     * @param instructionsPerMillisecond instructions per millisecond of virtual time, 0 for the wall clock
+     * @return the job result as a JSON object
+     */
+    private static String runJob(String[] sources, String stdinFile, int maxSteps, String[] programArgs,
+                                int instructionsPerMillisecond) {
+        long start = System.currentTimeMillis();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream outputStream = new PrintStream(output, true);
+        InputStream inputStream = null;
+        String status;
+        String messages = "";
+        boolean programRan = false;
+        try {
+            inputStream = (stdinFile == null)
+                    ? new ByteArrayInputStream(new byte[0])
+                    : new BufferedInputStream(new FileInputStream(stdinFile));
+            SystemIO.setStandardStreams(inputStream, outputStream, outputStream);
+            MIPSprogram code = new MIPSprogram();
+            File mainFile = new File(sources[0]).getAbsoluteFile();
+            ArrayList filesToAssemble = FilenameFinder.getFilenameList(
+                    new ArrayList(Arrays.asList(sources)), FilenameFinder.MATCH_ALL_EXTENSIONS);
+            ArrayList programsToAssemble = code.prepareFilesForAssembly(filesToAssemble, mainFile.getAbsolutePath(), null);
+            ErrorList warnings = code.assemble(programsToAssemble, true, false);
+            if (warnings != null && warnings.warningsOccurred()) {
+                messages = warnings.generateWarningReport();
+            }
+            RegisterFile.resetRegisters();
+            Coprocessor1.resetRegisters();
+            Coprocessor0.resetRegisters();
+            RegisterFile.initializeProgramCounter(false);
+            new ProgramArgumentList(programArgs).storeProgramArguments();
+            VirtualClock.setInstructionsPerMillisecond(instructionsPerMillisecond);
+            programRan = true;
+            status = code.simulate(maxSteps) ? "completed" : "max steps";
+        } catch (ProcessingException e) {
+            status = programRan ? "runtime error" : "assemble error";
+            messages = e.errors().generateErrorAndWarningReport();
+        } catch (FileNotFoundException e) {
+            status = "io error";
+            messages = "Standard input file " + stdinFile + " was not found.";
+        } catch (Throwable e) {
+            status = "internal error";
+            messages = e.toString();
+        } finally {
+            outputStream.flush();
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    // not concerned with this exception
+                }
+            }
+        }
+        return "{\"files\":" + toJson(sources)
+                + ",\"status\":" + toJson(status)
+                + ",\"exitCode\":" + SimulatorContext.current().getExitCode()
+                + ",\"millis\":" + (System.currentTimeMillis() - start)
+                + ",\"stdout\":" + toJson(output.toString())
+                + ",\"messages\":" + toJson(messages) + "}";
+    }
+
+    // Read the manifest into a list of jobs.  A job whose line cannot be understood
+    // is given its error result right away.
+    private ArrayList readManifest() throws IOException {
+        ArrayList list = new ArrayList();
+        BufferedReader in = new BufferedReader(new FileReader(manifest));
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith(COMMENT)) {
+                    continue;
+                }
+                list.add(parseJob(line, lineNumber));
+            }
+        } finally {
+            in.close();
+        }
+        return list;
+    }
+
+    private Job parseJob(String line, int lineNumber) {
+        Job job = new Job();
+        job.maxSteps = defaultMaxSteps;
+        ArrayList sources = new ArrayList();
+        ArrayList programArgs = null;
+        String error = null;
+        StringTokenizer tokens = new StringTokenizer(line);
+        while (tokens.hasMoreTokens()) {
+            String token = tokens.nextToken();
+            if (programArgs != null) {
+                programArgs.add(token);
+            } else if (token.equalsIgnoreCase(PROGRAM_ARGUMENTS_SWITCH)) {
+                programArgs = new ArrayList();
+            } else if (token.toLowerCase().startsWith(STDIN_PREFIX)) {
+                job.stdinFile = resolve(token.substring(STDIN_PREFIX.length()));
+            } else if (token.toLowerCase().startsWith(STEPS_PREFIX)) {
+                try {
+                    job.maxSteps = Integer.decode(token.substring(STEPS_PREFIX.length())).intValue();
+                } catch (NumberFormatException nfe) {
+                    error = "Invalid step limit: " + token;
+                }
+            } else if (new File(resolve(token)).exists()) {
+                sources.add(resolve(token));
+            } else {
+                error = "File not found: " + token;
+            }
+        }
+        if (error == null && sources.size() == 0) {
+            error = "No source file given";
+        }
+        job.sources = (String[]) sources.toArray(new String[0]);
+        job.programArgs = (programArgs == null) ? new String[0] : (String[]) programArgs.toArray(new String[0]);
+        if (error != null) {
+            job.result = failedResult(job.sources, "manifest error", "Line " + lineNumber + ": " + error);
+        }
+        return job;
+    }
+
+    // File names in the manifest are relative to the directory holding it.
+    private String resolve(String filename) {
+        File file = new File(filename);
+        if (!file.isAbsolute()) {
+            file = new File(new File(manifest).getAbsoluteFile().getParentFile(), filename);
+        }
+        return file.getPath();
+    }
+
+    // Result for a job that could not be run.
+    private static String failedResult(String[] sources, String status, String message) {
+        return "{\"files\":" + toJson(sources)
+                + ",\"status\":" + toJson(status)
+                + ",\"exitCode\":0,\"millis\":0,\"stdout\":\"\""
+                + ",\"messages\":" + toJson(message) + "}";
+    }
+
+    private synchronized Job takeJob() {
+        while (nextJob < jobs.size()) {
+            Job job = (Job) jobs.get(nextJob++);
+            if (job.result == null) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    private static String toJson(String[] strings) {
+        StringBuffer json = new StringBuffer("[");
+        for (int i = 0; i < strings.length; i++) {
+            json.append((i == 0) ? "" : ",").append(toJson(strings[i]));
+        }
+        return json.append("]").toString();
+    }
+
+    private static String toJson(String string) {
+        StringBuffer json = new StringBuffer("\"");
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        return json.append("\"").toString();
+    }
+
+    /**
+     * One entry of the manifest.  The result is filled in once the job has run.
+     */
+    private static class Job {
+        String[] sources;
+        String stdinFile;
+        int maxSteps;
+        String[] programArgs;
+        String result;
+    }
+
+    /**
+     * Worker thread.  Runs jobs one after another, each in a new SimulatorContext, until
+     * none remain.
+     */
+    private class Worker extends Thread {
+        public void run() {
+            Job job;
+            while ((job = takeJob()) != null) {
+                SimulatorContext.bind(new SimulatorContext());
+                try {
+                    job.result = runJob(job.sources, job.stdinFile, job.maxSteps, job.programArgs,
+                            instructionsPerMillisecond);
+                } finally {
+                    SimulatorContext.unbind();
+                }
+            }
+        }
+    }
+}
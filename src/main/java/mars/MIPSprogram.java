@@ -3,6 +3,7 @@ package mars;
 import mars.assembler.*;
 import mars.mips.hardware.RegisterFile;
 import mars.simulator.BackStepper;
+import mars.simulator.Breakpoints;
 import mars.simulator.Simulator;
 
 import javax.swing.*;
@@ -333,7 +334,7 @@ public class MIPSprogram {
      **/
 
     public boolean simulate(int maxSteps) throws ProcessingException {
-        return this.simulateFromPC(null, maxSteps, null);
+        return this.simulateFromPC((Breakpoints) null, maxSteps, null);
     }
 
     /**
@@ -353,6 +354,23 @@ public class MIPSprogram {
         return sim.simulate(this, RegisterFile.getProgramCounter(), maxSteps, breakPoints, a);
     }
 
+    /**
+     * Simulates execution of the MIPS program. Program must have already been assembled.
+     * Begins simulation at current program counter address and continues until stopped,
+     * paused, maximum steps exceeded, a breakpoint or watchpoint is reached, or exception occurs.
+     *
+     * @param breakpoints breakpoints and watchpoints, possibly conditional.  Can be null.
+     * @param maxSteps    maximum number of instruction executions.  Default -1 means no maximum.
+     * @param a           the GUI component responsible for this call (GO normally).  set to null if none.
+     * @return true if execution completed and false otherwise
+     * @throws ProcessingException Will throw exception if errors occured while simulating.
+     **/
+    public boolean simulateFromPC(Breakpoints breakpoints, int maxSteps, AbstractAction a) throws ProcessingException {
+        steppedExecution = false;
+        Simulator sim = Simulator.getInstance();
+        return sim.simulate(this, RegisterFile.getProgramCounter(), maxSteps, breakpoints, a);
+    }
+
 
     /**
      * Simulates execution of the MIPS program. Program must have already been assembled.
@@ -365,7 +383,7 @@ public class MIPSprogram {
     public boolean simulateStepAtPC(AbstractAction a) throws ProcessingException {
         steppedExecution = true;
         Simulator sim = Simulator.getInstance();
-        boolean done = sim.simulate(this, RegisterFile.getProgramCounter(), 1, null, a);
+        boolean done = sim.simulate(this, RegisterFile.getProgramCounter(), 1, (Breakpoints) null, a);
         return done;
     }
 
@@ -3,15 +3,23 @@ package mars;
 import mars.mips.dump.DumpFormat;
 import mars.mips.dump.DumpFormatLoader;
 import mars.mips.hardware.*;
+import mars.simulator.Breakpoints;
+import mars.simulator.ProfileReport;
+import mars.simulator.Profiler;
 import mars.simulator.ProgramArgumentList;
+import mars.simulator.SnapshotFile;
+import mars.simulator.VirtualClock;
 import mars.util.Binary;
 import mars.util.FilenameFinder;
 import mars.util.MemoryDump;
+import mars.util.SyscallLog;
+import mars.util.SystemIO;
 import mars.venus.VenusUI;
 
 import javax.swing.*;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
@@ -65,6 +73,12 @@ public class MarsLaunch {
      * ae<n>  -- terminate MARS with integer exit code <n> if an assemble error occurs.<br>
      * ascii  -- display memory or register contents interpreted as ASCII
      * b  -- brief - do not display register/memory address along with contents<br>
+     * batch  -- run the programs listed in a manifest file, several at a time, and display<br>
+     * the results in JSON.  Option has 1 argument, e.g. <tt>batch &lt;manifest&gt;</tt>.<br>
+     * See BatchRunner for the manifest format.  Implies nc, so the output is only the JSON.<br>
+     * bp  -- stop at a breakpoint.  Option has 1 argument, e.g. <tt>bp "loop if $t0 == 5 hits 2"</tt>,<br>
+     * giving an address or label optionally followed by a condition and hit count.<br>
+     * bt<n>  -- run <n> batch jobs at a time (default is the number of processors).<br>
      * d  -- print debugging statements<br>
      * da  -- both a and d<br>
      * db  -- MIPS delayed branching is enabled.<br>
@@ -74,21 +88,42 @@ public class MarsLaunch {
      * an address range (see <i>m-n</i> below).  Current supported <br>
      * segments are <tt>.text</tt> and <tt>.data</tt>.  Current supported dump formats <br>
      * are <tt>Binary</tt>, <tt>HexText</tt>, <tt>BinaryText</tt>.<br>
+     * fd<n>  -- allow the MIPS program <n> file descriptors, counting standard input, output and error (default 32).<br>
+     * folded  -- write the call graph to a file in folded stack format, for flame graph tools.<br>
+     * Option has 1 argument, e.g. <tt>folded &lt;file&gt;</tt>.<br>
      * h  -- display help.  Use by itself and with no filename</br>
      * hex  -- display memory or register contents in hexadecimal (default)<br>
      * ic  -- display count of MIPS basic instructions 'executed'");
      * mc  -- set memory configuration.  Option has 1 argument, e.g.<br>
      * <tt>mc &lt;config$gt;</tt>, where &lt;config$gt; is <tt>Default</tt><br>
      * for the MARS default 32-bit address space, <tt>CompactDataAtZero</tt> for<br>
-     * a 32KB address space with data segment at address 0, or <tt>CompactTextAtZero</tt><br>
-     * for a 32KB address space with text segment at address 0.<br>
+     * a 32KB address space with data segment at address 0, <tt>CompactTextAtZero</tt><br>
+     * for a 32KB address space with text segment at address 0, or <tt>DefaultFlat</tt><br>
+     * for the default address space held in flat arrays for faster simulation.<br>
      * me  -- display MARS messages to standard err instead of standard out. Can separate via redirection.</br>
+     * mem<n>  -- limit simulated data, heap and stack memory to <n> megabytes (default 256).<br>
      * nc  -- do not display copyright notice (for cleaner redirected/piped output).</br>
      * np  -- No Pseudo-instructions allowed ("ne" will work also).<br>
      * p  -- Project mode - assemble all files in the same directory as given file.<br>
+     * prof  -- display execution counts per source file, function, label and source line at end of run.<br>
+     * profjson  -- write the same execution counts to a file in JSON.  Option has 1 argument,<br>
+     * e.g. <tt>profjson &lt;file&gt;</tt>.  See ProfileReport for the format.<br>
+     * record  -- record the results of syscalls that read input, files, the clock or random<br>
+     * numbers to a log file.  Option has 1 argument, e.g. <tt>record &lt;file&gt;</tt>.<br>
+     * replay  -- take the results of those syscalls from a log file written by the record option<br>
+     * instead, for an exact and quick re-run.  Option has 1 argument, e.g. <tt>replay &lt;file&gt;</tt>.<br>
+     * resume  -- resume a simulation from the machine state saved in a file by the save option.<br>
+     * Option has 1 argument, e.g. <tt>resume &lt;file&gt;</tt>.  Give the same source files<br>
+     * and memory configuration as for the run that saved it.<br>
+     * save  -- save the machine state to a file when the given number of steps have been<br>
+     * simulated, then carry on.  Option has 2 arguments, e.g. <tt>save &lt;n&gt; &lt;file&gt;</tt>.<br>
      * se<n>  -- terminate MARS with integer exit code <n> if a simulation (run) error occurs.<br>
      * sm  -- Start execution at Main - Execution will start at program statement globally labeled main.<br>
      * smc  -- Self Modifying Code - Program can write and branch to either text or data segment<br>
+     * vt<n>  -- virtual time: the Time syscall reads a clock that advances one millisecond per<br>
+     * <n> instructions executed (default 1000), and Sleep advances it instead of waiting.<br>
+     * watch  -- stop after a store into an address range.  Option has 1 argument,<br>
+     * e.g. <tt>watch "0x10010000-0x10010003 if $s0 != 0"</tt>, like the bp option.<br>
      * we  -- assembler Warnings will be considered Errors<br>
      * <n>  -- where <n> is an integer maximum count of steps to simulate.<br>
      * If 0, negative or not specified, there is no maximum.<br>
@@ -133,6 +168,20 @@ public class MarsLaunch {
     private ArrayList programArgumentList; // optional program args for MIPS program (becomes argc, argv)
     private int assembleErrorExitCode;  // MARS command exit code to return if assemble error occurs
     private int simulateErrorExitCode;// MARS command exit code to return if simulation error occurs
+    private String batchManifest; // manifest file for batch option, null if none
+    private int batchThreads; // number of batch jobs to run at a time, 0 for one per processor
+    private int saveSteps; // number of steps after which to save machine state, for save option
+    private String saveFile; // machine state file for save option, null if none
+    private String resumeFile; // machine state file for resume option, null if none
+    private String recordFile; // syscall log for record option, null if none
+    private String replayFile; // syscall log for replay option, null if none
+    private int instructionsPerMillisecond; // virtual time rate for vt option, 0 for the wall clock
+    private ArrayList breakpointList; // each element holds the argument of a bp option
+    private ArrayList watchpointList; // each element holds the argument of a watch option
+    private Breakpoints breakpoints; // built from the two lists above once assembled, null if none
+    private boolean profile; // Whether to display the profile report, for prof option
+    private String profileJsonFile; // file for the JSON profile report of profjson option, null if none
+    private String foldedStacksFile; // file for the call graph of folded option, null if none
 
     public MarsLaunch(String[] args) {
         boolean gui = (args.length == 0);
@@ -158,12 +207,20 @@ public class MarsLaunch {
             registerDisplayList = new ArrayList();
             memoryDisplayList = new ArrayList();
             filenameList = new ArrayList();
+            breakpointList = new ArrayList();
+            watchpointList = new ArrayList();
             MemoryConfigurations.setCurrentConfiguration(MemoryConfigurations.getDefaultConfiguration());
             // do NOT use Globals.program for command line MARS -- it triggers 'backstep' log.
             code = new MIPSprogram();
             maxSteps = -1;
             out = System.out;
             if (parseCommandArgs(args)) {
+                if (batchManifest != null) {
+                    if (!new BatchRunner(batchManifest, batchThreads, maxSteps, instructionsPerMillisecond, out).run()) {
+                        Globals.exitCode = 1;
+                    }
+                    System.exit(Globals.exitCode);
+                }
                 if (runCommand()) {
                     displayMiscellaneousPostMortem();
                     displayRegistersPostMortem();
@@ -312,6 +369,103 @@ public class MarsLaunch {
                 }
                 continue;
             }
+            if (args[i].equalsIgnoreCase("batch")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Batch command line argument requires a manifest file name.");
+                    argsOK = false;
+                } else {
+                    batchManifest = args[++i];
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("save")) {
+                if (args.length <= (i + 2)) {
+                    out.println("Save command line argument requires a step count and a file name.");
+                    argsOK = false;
+                } else {
+                    try {
+                        saveSteps = Integer.decode(args[++i]).intValue();
+                    } catch (NumberFormatException nfe) {
+                        saveSteps = 0;
+                    }
+                    if (saveSteps <= 0) {
+                        out.println("Invalid step count for save: " + args[i]);
+                        argsOK = false;
+                    }
+                    saveFile = args[++i];
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("record") || args[i].equalsIgnoreCase("replay")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Record and replay command line arguments require a file name.");
+                    argsOK = false;
+                } else if (args[i].equalsIgnoreCase("record")) {
+                    recordFile = args[++i];
+                } else {
+                    replayFile = args[++i];
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("bp") || args[i].equalsIgnoreCase("watch")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Bp and watch command line arguments require an address.");
+                    argsOK = false;
+                } else if (args[i].equalsIgnoreCase("bp")) {
+                    breakpointList.add(args[++i]);
+                } else {
+                    watchpointList.add(args[++i]);
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("prof")) {
+                profile = true;
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("profjson") || args[i].equalsIgnoreCase("folded")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Profjson and folded command line arguments require a file name.");
+                    argsOK = false;
+                } else if (args[i].equalsIgnoreCase("profjson")) {
+                    profileJsonFile = args[++i];
+                } else {
+                    foldedStacksFile = args[++i];
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("resume")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Resume command line argument requires a file name.");
+                    argsOK = false;
+                } else {
+                    resumeFile = args[++i];
+                }
+                continue;
+            }
+            // Set number of batch jobs to run at a time
+            if (args[i].toLowerCase().indexOf("bt") == 0) {
+                String s = args[i].substring(2);
+                try {
+                    batchThreads = Integer.decode(s).intValue();
+                    continue;
+                } catch (NumberFormatException nfe) {
+                    // Let it fall thru and get handled by catch-all
+                }
+            }
+            // Use virtual time, advancing one millisecond per given number of instructions
+            if (args[i].toLowerCase().indexOf("vt") == 0) {
+                String s = args[i].substring(2);
+                try {
+                    instructionsPerMillisecond = (s.length() == 0)
+                            ? VirtualClock.DEFAULT_INSTRUCTIONS_PER_MILLISECOND
+                            : Integer.decode(s).intValue();
+                    if (instructionsPerMillisecond > 0) {
+                        continue;
+                    }
+                } catch (NumberFormatException nfe) {
+                    // Let it fall thru and get handled by catch-all
+                }
+            }
             if (args[i].equalsIgnoreCase("mc")) {
                 String configName = args[++i];
                 MemoryConfiguration config = MemoryConfigurations.getConfigurationByName(configName);
@@ -343,6 +497,32 @@ public class MarsLaunch {
                     // Let it fall thru and get handled by catch-all
                 }
             }
+            // Set maximum resident simulated memory, in megabytes
+            if (args[i].toLowerCase().indexOf("mem") == 0) {
+                String s = args[i].substring(3);
+                try {
+                    int megabytes = Integer.decode(s).intValue();
+                    if (megabytes > 0) {
+                        Memory.setResidentMemoryLimit(megabytes);
+                        continue;
+                    }
+                } catch (NumberFormatException nfe) {
+                    // Let it fall thru and get handled by catch-all
+                }
+            }
+            // Set size of the file descriptor table
+            if (args[i].toLowerCase().indexOf("fd") == 0) {
+                String s = args[i].substring(2);
+                try {
+                    int size = Integer.decode(s).intValue();
+                    if (size > 0) {
+                        SystemIO.setMaxFiles(size);
+                        continue;
+                    }
+                } catch (NumberFormatException nfe) {
+                    // Let it fall thru and get handled by catch-all
+                }
+            }
             if (args[i].equalsIgnoreCase("d")) {
                 Globals.debug = true;
                 continue;
@@ -504,13 +684,50 @@ public class MarsLaunch {
                 new ProgramArgumentList(programArgumentList).storeProgramArguments();
                 // establish observer if specified
                 establishObserver();
+                if (resumeFile != null) {
+                    try {
+                        SnapshotFile.read(new File(resumeFile));
+                    } catch (IOException e) {
+                        out.println("Error while attempting to resume, " + e.getMessage());
+                        Globals.exitCode = 1;
+                        return programRan;
+                    }
+                }
                 if (Globals.debug) {
                     out.println("--------  SIMULATION BEGINS  -----------");
                 }
+                try {
+                    if (recordFile != null) {
+                        SyscallLog.record(new File(recordFile));
+                    } else if (replayFile != null) {
+                        SyscallLog.replay(new File(replayFile));
+                    }
+                } catch (IOException e) {
+                    out.println("Error while attempting to open syscall log, " + e.getMessage());
+                    Globals.exitCode = 1;
+                    return programRan;
+                }
+                VirtualClock.setInstructionsPerMillisecond(instructionsPerMillisecond);
+                Profiler.reset();
+                Profiler.setCallGraphEnabled(profiling());
+                try {
+                    breakpoints = buildBreakpoints(MIPSprogramsToAssemble);
+                } catch (IllegalArgumentException e) {
+                    out.println(e.getMessage());
+                    Globals.exitCode = 1;
+                    closeSyscallLog();
+                    return programRan;
+                }
                 programRan = true;
-                boolean done = code.simulate(maxSteps);
-                if (!done) {
-                    out.println("\nProgram terminated when maximum step limit " + maxSteps + " reached.");
+                try {
+                    boolean done = simulateAndSave();
+                    if (stoppedAtBreakpoint()) {
+                        out.println("\nProgram stopped at " + breakpoints.getLastHit() + ".");
+                    } else if (!done) {
+                        out.println("\nProgram terminated when maximum step limit " + maxSteps + " reached.");
+                    }
+                } finally {
+                    closeSyscallLog();
                 }
             }
             if (Globals.debug) {
@@ -525,6 +742,70 @@ public class MarsLaunch {
     }
 
 
+    //////////////////////////////////////////////////////////////////////
+    // Simulate up to the maximum step count.  If the save option was given,
+    // stop after the requested number of steps to save the machine state,
+    // then carry on.  Returns true if execution completed.
+
+    private boolean simulateAndSave() throws ProcessingException {
+        if (saveFile == null || (maxSteps > 0 && maxSteps < saveSteps)) {
+            return code.simulateFromPC(breakpoints, maxSteps, null);
+        }
+        if (code.simulateFromPC(breakpoints, saveSteps, null)) {
+            out.println("\nProgram terminated before step " + saveSteps + ", machine state not saved.");
+            return true;
+        }
+        if (stoppedAtBreakpoint()) {
+            out.println("\nProgram stopped before step " + saveSteps + ", machine state not saved.");
+            return false;
+        }
+        try {
+            SnapshotFile.write(new File(saveFile));
+        } catch (IOException e) {
+            out.println("Error while attempting to save machine state to " + saveFile + ", " + e.getMessage());
+        }
+        if (maxSteps == saveSteps) {
+            return false;
+        }
+        return code.simulateFromPC(breakpoints, (maxSteps > 0) ? maxSteps - saveSteps : maxSteps, null);
+    }
+
+
+    //////////////////////////////////////////////////////////////////////
+    // Build the breakpoints and watchpoints of the bp and watch options.
+    // Returns null if there are none.
+
+    private Breakpoints buildBreakpoints(ArrayList programs) throws IllegalArgumentException {
+        if (breakpointList.isEmpty() && watchpointList.isEmpty()) {
+            return null;
+        }
+        Breakpoints result = new Breakpoints();
+        for (int i = 0; i < breakpointList.size(); i++) {
+            result.addBreakpoint((String) breakpointList.get(i), programs);
+        }
+        for (int i = 0; i < watchpointList.size(); i++) {
+            result.addWatchpoint((String) watchpointList.get(i), programs);
+        }
+        return result;
+    }
+
+    private boolean stoppedAtBreakpoint() {
+        return breakpoints != null && breakpoints.getLastHit() != null;
+    }
+
+
+    //////////////////////////////////////////////////////////////////////
+    // Flush and close the syscall log of the record or replay option, if any.
+
+    private void closeSyscallLog() {
+        try {
+            SyscallLog.stop();
+        } catch (IOException e) {
+            out.println("Error while attempting to write syscall log " + recordFile + ", " + e.getMessage());
+        }
+    }
+
+
     //////////////////////////////////////////////////////////////////////
     // Check for memory address subrange.  Has to be two integers separated
     // by "-"; no embedded spaces.  e.g. 0x00400000-0x00400010
@@ -590,6 +871,37 @@ public class MarsLaunch {
         if (countInstructions) {
             out.println("\n" + instructionCount);
         }
+        if (profiling()) {
+            ProfileReport report = new ProfileReport(code);
+            if (profile) {
+                out.println();
+                report.writeText(out);
+            }
+            if (profileJsonFile != null) {
+                try {
+                    PrintStream json = new PrintStream(new FileOutputStream(profileJsonFile));
+                    report.writeJson(json);
+                    json.close();
+                } catch (IOException e) {
+                    out.println("Error while attempting to write profile to " + profileJsonFile + ", " + e.getMessage());
+                }
+            }
+            if (foldedStacksFile != null) {
+                try {
+                    PrintStream folded = new PrintStream(new FileOutputStream(foldedStacksFile));
+                    report.writeFoldedStacks(folded);
+                    folded.close();
+                } catch (IOException e) {
+                    out.println("Error while attempting to write call graph to " + foldedStacksFile + ", " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Whether any of the prof, profjson and folded options was given.  All of them
+    // use the Profiler in call graph mode.
+    private boolean profiling() {
+        return profile || profileJsonFile != null || foldedStacksFile != null;
     }
 
 
@@ -736,12 +1048,12 @@ public class MarsLaunch {
     }
     ///////////////////////////////////////////////////////////////////////
     //  Decide whether copyright should be displayed, and display
-    //  if so.
+    //  if so.  Batch mode writes JSON to standard output, so it implies nc.
 
     private void displayCopyright(String[] args, String noCopyrightSwitch) {
         boolean print = true;
         for (int i = 0; i < args.length; i++) {
-            if (args[i].toLowerCase().equals(noCopyrightSwitch)) {
+            if (args[i].toLowerCase().equals(noCopyrightSwitch) || args[i].equalsIgnoreCase("batch")) {
                 return;
             }
         }
@@ -775,6 +1087,17 @@ public class MarsLaunch {
         out.println("  ae<n>  -- terminate MARS with integer exit code <n> if an assemble error occurs.");
         out.println("  ascii  -- display memory or register contents interpreted as ASCII codes.");
         out.println("      b  -- brief - do not display register/memory address along with contents");
+        out.println("  batch <manifest>  -- run the programs listed in the manifest file, several at");
+        out.println("            a time, and display their results as a JSON array.  Each line of");
+        out.println("            the manifest holds source file names, optionally followed by");
+        out.println("            stdin=<file>, steps=<n> and pa <program arguments>.  The <n>");
+        out.println("            option sets the step limit for lines without steps=, and the vt<n>");
+        out.println("            option applies to every line.  Implies nc.");
+        out.println("  bp <address>  -- stop at the instruction with the given address or label.");
+        out.println("            A condition and hit count may follow, as one argument, e.g.");
+        out.println("            bp \"loop if $t0 == 5 hits 2\" stops the second time $t0 is 5 at loop.");
+        out.println("            Option may be repeated.");
+        out.println("  bt<n>  -- run <n> batch jobs at a time (default one per processor).");
         out.println("      d  -- display MARS debugging statements");
         out.println("     db  -- MIPS delayed branching is enabled");
         out.println("    dec  -- display memory or register contents in decimal.");
@@ -784,22 +1107,49 @@ public class MarsLaunch {
         out.println("            Segment and format are case-sensitive and possible values are:");
         out.println("            <segment> = " + segments);
         out.println("            <format> = " + formats);
+        out.println("   fd<n>  -- allow the program <n> file descriptors, counting standard input,");
+        out.println("            output and error (default " + SystemIO.SYSCALL_MAXFILES + ").");
+        out.println("  folded <file>  -- write the call graph to the file in the folded stack");
+        out.println("            format read by flame graph tools.");
         out.println("      h  -- display this help.  Use by itself with no filename.");
         out.println("    hex  -- display memory or register contents in hexadecimal (default)");
         out.println("     ic  -- display count of MIPS basic instructions 'executed'");
         out.println("     mc <config>  -- set memory configuration.  Argument <config> is");
         out.println("            case-sensitive and possible values are: Default for the default");
         out.println("            32-bit address space, CompactDataAtZero for a 32KB memory with");
-        out.println("            data segment at address 0, or CompactTextAtZero for a 32KB");
-        out.println("            memory with text segment at address 0.");
+        out.println("            data segment at address 0, CompactTextAtZero for a 32KB");
+        out.println("            memory with text segment at address 0, or DefaultFlat for the");
+        out.println("            default address space held in flat arrays for faster simulation.");
         out.println("     me  -- display MARS messages to standard err instead of standard out. ");
         out.println("            Can separate messages from program output using redirection");
+        out.println(" mem<n>  -- limit simulated data, heap and stack memory to <n> megabytes");
+        out.println("            (default " + Memory.DEFAULT_RESIDENT_MEMORY_LIMIT + ").");
         out.println("     nc  -- do not display copyright notice (for cleaner redirected/piped output).");
         out.println("     np  -- use of pseudo instructions and formats not permitted");
         out.println("      p  -- Project mode - assemble all files in the same directory as given file.");
+        out.println("   prof  -- display the number of instructions executed per source file,");
+        out.println("            function (following jal and jr $ra), label and source line,");
+        out.println("            busiest first, at end of run.");
+        out.println("  profjson <file>  -- write the same counts to the file in JSON.");
+        out.println("  record <file>  -- record the results of syscalls that read input, files, the");
+        out.println("            clock or random numbers to the file, for use by the replay option.");
+        out.println("  replay <file>  -- take the results of those syscalls from the file written");
+        out.println("            by the record option, so the run is repeated exactly, at full speed");
+        out.println("            and without waiting for input.  Files are neither read nor written.");
+        out.println("  resume <file>  -- resume the simulation whose machine state was saved to the");
+        out.println("            file by the save option.  Give the same source files and memory");
+        out.println("            configuration as for the run that saved it.");
+        out.println("  save <n> <file>  -- save the machine state to the file once <n> steps have");
+        out.println("            been simulated, then carry on.  Open files are saved by offset only.");
         out.println("  se<n>  -- terminate MARS with integer exit code <n> if a simulation (run) error occurs.");
         out.println("     sm  -- start execution at statement with global label main, if defined");
         out.println("    smc  -- Self Modifying Code - Program can write and branch to either text or data segment");
+        out.println("  vt<n>  -- virtual time: the clock read by the Time syscall advances one");
+        out.println("            millisecond per <n> instructions executed (default "
+                + VirtualClock.DEFAULT_INSTRUCTIONS_PER_MILLISECOND + "), and Sleep advances");
+        out.println("            it instead of waiting, so programs that pause run at full speed.");
+        out.println("  watch <m>-<n>  -- stop after an instruction stores into the address range,");
+        out.println("            given as for bp, or a single word.  Option may be repeated.");
         out.println("    <n>  -- where <n> is an integer maximum count of steps to simulate.");
         out.println("            If 0, negative or not specified, there is no maximum.");
         out.println(" $<reg>  -- where <reg> is number or name (e.g. 5, t3, f10) of register whose ");
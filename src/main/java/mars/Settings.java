@@ -1,5 +1,6 @@
 package mars;
 
+import mars.simulator.SimulatorContext;
 import mars.util.Binary;
 import mars.util.EditorFont;
 import mars.venus.editors.jeditsyntax.SyntaxStyle;
@@ -129,6 +130,11 @@ public class Settings extends Observable {
      * execute that code.
      */
     public static final int SELF_MODIFYING_CODE_ENABLED = 20;
+    /**
+     * Flag to determine whether the simulator counts the executions of each instruction,
+     * shown in the Count column of the text segment window.
+     */
+    public static final int PROFILING_ENABLED = 21;
 
     // NOTE: key sequence must match up with labels above which are used for array indexes!
     private static final String[] booleanSettingsKeys = {"ExtendedAssembler", "BareMachine", "AssembleOnOpen", "AssembleAll",
@@ -137,7 +143,7 @@ public class Settings extends Observable {
             "WarningsAreErrors", "ProgramArguments", "DataSegmentHighlighting",
             "RegistersHighlighting", "StartAtMain", "EditorCurrentLineHighlighting",
             "PopupInstructionGuidance", "PopupSyscallInput", "GenericTextEditor",
-            "AutoIndent", "SelfModifyingCode"};
+            "AutoIndent", "SelfModifyingCode", "Profiling"};
 
     /**
      * Last resort default values for boolean settings; will use only  if neither
@@ -147,7 +153,7 @@ public class Settings extends Observable {
      */
     public static boolean[] defaultBooleanSettingsValues = { // match the above list by position
             true, false, false, false, false, true, true, false, false,
-            true, false, false, true, true, false, true, true, false, false, true, false};
+            true, false, false, true, true, false, true, true, false, false, true, false, false};
 
     // STRING SETTINGS.  Each array position has associated name.
     /**
@@ -187,7 +193,7 @@ public class Settings extends Observable {
      * If you wish to change, do so before instantiating the Settings object.
      * Must match key by list position.
      */
-    private static final String[] defaultStringSettingsValues = {"", "0 1 2 3 4", "0", "", "500", "8", "2"};
+    private static final String[] defaultStringSettingsValues = {"", "0 1 2 3 4 5", "0", "", "500", "8", "2"};
 
 
     // FONT SETTINGS.  Each array position has associated name.
@@ -378,7 +384,8 @@ public class Settings extends Observable {
      * @return true if backstepping is permitted, false otherwise.
      */
     public boolean getBackSteppingEnabled() {
-        return (Globals.program != null && Globals.program.getBackStepper() != null && Globals.program.getBackStepper().enabled());
+        MIPSprogram program = SimulatorContext.current().getProgram();
+        return (program != null && program.getBackStepper() != null && program.getBackStepper().enabled());
     }
 
 
@@ -761,9 +768,11 @@ public class Settings extends Observable {
     }
 
     /**
-     * Order of text segment display columns (there are 5, numbered 0 to 4).
+     * Order of text segment display columns (there are 6, numbered 0 to 5, the last
+     * being the Count column).  An order saved before the Count column was added has
+     * only 5 entries.
      *
-     * @return Array of int indicating the order.  Original order is 0 1 2 3 4.
+     * @return Array of int indicating the order.  Original order is 0 1 2 3 4 5.
      */
     public int[] getTextColumnOrder() {
         return getTextSegmentColumnOrder(stringSettingsValues[TEXT_COLUMN_ORDER]);
@@ -6,6 +6,7 @@ import mars.mips.hardware.Memory;
 import mars.mips.instructions.BasicInstruction;
 import mars.mips.instructions.ExtendedInstruction;
 import mars.mips.instructions.Instruction;
+import mars.simulator.SimulatorContext;
 import mars.util.Binary;
 import mars.util.SystemIO;
 
@@ -172,8 +173,8 @@ public class Assembler {
         externAddress = Memory.externBaseAddress;
         currentFileDataSegmentForwardReferences = new DataSegmentForwardReferences();
         accumulatedDataSegmentForwardReferences = new DataSegmentForwardReferences();
-        Globals.symbolTable.clear();
-        Globals.memory.clear();
+        SimulatorContext.current().getSymbolTable().clear();
+        Memory.getInstance().clear();
         this.machineList = new ArrayList();
         this.errors = new ErrorList();
         if (Globals.debug)
@@ -249,7 +250,7 @@ public class Assembler {
         // Have processed all source files. Attempt to resolve any remaining forward label
         // references from global symbol table. Those that remain unresolved are undefined
         // and require error message.
-        accumulatedDataSegmentForwardReferences.resolve(Globals.symbolTable);
+        accumulatedDataSegmentForwardReferences.resolve(SimulatorContext.current().getSymbolTable());
         accumulatedDataSegmentForwardReferences.generateErrorMessages(errors);
 
         // Throw collection of errors accumulated through the first pass.
@@ -276,12 +277,12 @@ public class Assembler {
                     this.machineList.add(statement);
                 } else {
                     // It is a pseudo-instruction:
-                    // 1. Fetch its basic instruction template list
+                    // 1. Fetch its compiled basic instruction templates
                     // 2. For each template in the list,
-                    // 2a. substitute operands from source statement
-                    // 2b. tokenize the statement generated by 2a.
-                    // 2d. call parseLine() to generate basic instrction
-                    // 2e. add returned programStatement to the list
+                    // 2a. generate the tokens of the basic statement, with
+                    // operands from source statement substituted in
+                    // 2b. call parseLine() to generate basic instrction
+                    // 2c. add returned programStatement to the list
                     // The templates, and the instructions generated by filling
                     // in the templates, are specified
                     // in basic format (e.g. mnemonic register reference $zero
@@ -303,37 +304,22 @@ public class Assembler {
                             basicAssembly, errors, false);
 
                     // ////////////////////////////////////////////////////////////////////////////
-                    // If we are using compact memory config and there is a compact expansion, use it
-                    ArrayList templateList;
-                    if (compactTranslationCanBeApplied(statement)) {
-                        templateList = inst.getCompactBasicIntructionTemplateList();
-                    } else {
-                        templateList = inst.getBasicIntructionTemplateList();
-                    }
+                    // If we are using compact memory config and there is a compact expansion, use it.
+                    // Template substitution may result in no instruction for a DBNOP template, if
+                    // delayed branching is disabled, so the list may be shorter than the template list.
+                    ArrayList basicStatements = inst.makeBasicStatements(this.fileCurrentlyBeingAssembled,
+                            theTokenList, compactTranslationCanBeApplied(statement), sourceLine, errors);
 
                     // subsequent ProgramStatement constructor needs the correct text segment address.
                     textAddress.set(statement.getAddress());
-                    // Will generate one basic instruction for each template in the list.
-                    for (int instrNumber = 0; instrNumber < templateList.size(); instrNumber++) {
-                        String instruction = ExtendedInstruction.makeTemplateSubstitutions(
-                                this.fileCurrentlyBeingAssembled,
-                                (String) templateList.get(instrNumber), theTokenList);
-                        // 23 Jan 2008 by DPS. Template substitution may result in no instruction.
-                        // If this is the case, skip remainder of loop iteration. This should only
-                        // happen if template substitution was for "nop" instruction but delayed branching
-                        // is disabled so the "nop" is not generated.
-                        if (instruction == null || instruction == "") {
-                            continue;
-                        }
-
+                    // Will generate one basic instruction for each generated token list.
+                    for (int instrNumber = 0; instrNumber < basicStatements.size(); instrNumber++) {
+                        TokenList newTokenList = (TokenList) basicStatements.get(instrNumber);
                         // All substitutions have been made so we have generated
                         // a valid basic instruction!
                         if (Globals.debug)
-                            System.out.println("PSEUDO generated: " + instruction);
-                        // For generated instruction: tokenize, build program
-                        // statement, add to list.
-                        TokenList newTokenList = new Tokenizer().tokenizeLine(sourceLine,
-                                instruction, errors, false);
+                            System.out.println("PSEUDO generated: " + newTokenList);
+                        // For generated instruction: build program statement, add to list.
                         ArrayList instrMatches = this.matchInstruction(newTokenList.get(0));
                         Instruction instr = OperandFormat.bestOperandMatch(newTokenList,
                                 instrMatches);
@@ -364,7 +350,7 @@ public class Assembler {
             if (Globals.debug)
                 System.out.println(statement);
             try {
-                Globals.memory.setStatement(statement.getAddress(), statement);
+                Memory.getInstance().setStatement(statement.getAddress(), statement);
             } catch (AddressErrorException e) {
                 Token t = statement.getOriginalTokenList().get(0);
                 errors.add(new ErrorMessage(t.getSourceMIPSprogram(), t.getSourceLine(), t
@@ -597,7 +583,7 @@ public class Assembler {
     // alternate compact translation.
     private boolean compactTranslationCanBeApplied(ProgramStatement statement) {
         return (statement.getInstruction() instanceof ExtendedInstruction
-                && Globals.memory.usingCompactMemoryConfiguration() && ((ExtendedInstruction) statement
+                && Memory.getInstance().usingCompactMemoryConfiguration() && ((ExtendedInstruction) statement
                 .getInstruction()).hasCompactTranslation());
     }
 
@@ -810,8 +796,8 @@ public class Assembler {
             }
             int size = Binary.stringToInt(tokens.get(2).getValue());
             // If label already in global symtab, do nothing. If not, add it right now.
-            if (Globals.symbolTable.getAddress(tokens.get(1).getValue()) == SymbolTable.NOT_FOUND) {
-                Globals.symbolTable.addSymbol(tokens.get(1), this.externAddress,
+            if (SimulatorContext.current().getSymbolTable().getAddress(tokens.get(1).getValue()) == SymbolTable.NOT_FOUND) {
+                SimulatorContext.current().getSymbolTable().addSymbol(tokens.get(1), this.externAddress,
                         Symbol.DATA_SYMBOL, errors);
                 this.externAddress += size;
             }
@@ -862,13 +848,13 @@ public class Assembler {
                         label.getStartPos(), "\"" + label.getValue()
                         + "\" declared global label but not defined."));
             } else {
-                if (Globals.symbolTable.getAddress(label.getValue()) != SymbolTable.NOT_FOUND) {
+                if (SimulatorContext.current().getSymbolTable().getAddress(label.getValue()) != SymbolTable.NOT_FOUND) {
                     errors.add(new ErrorMessage(fileCurrentlyBeingAssembled, label.getSourceLine(),
                             label.getStartPos(), "\"" + label.getValue()
                             + "\" already defined as global in a different file."));
                 } else {
                     fileCurrentlyBeingAssembled.getLocalSymbolTable().removeSymbol(label);
-                    Globals.symbolTable.addSymbol(label, symtabEntry.getAddress(),
+                    SimulatorContext.current().getSymbolTable().addSymbol(label, symtabEntry.getAddress(),
                             symtabEntry.getType(), errors);
                 }
             }
@@ -988,7 +974,7 @@ public class Assembler {
              *
              * else { // not in data segment...which we assume to mean in text
              * segment. try { for (int i=0; i < repetitions; i++) {
-             * Globals.memory.set(this.textAddress.get(),
+             * Memory.getInstance().set(this.textAddress.get(),
              * Binary.stringToInt(valueToken.getValue()), lengthInBytes);
              * this.textAddress.increment(lengthInBytes); } } catch
              * (AddressErrorException e) { errors.add(new
@@ -1052,7 +1038,7 @@ public class Assembler {
              ********/
             else {
                 try {
-                    Globals.memory.set(this.textAddress.get(), value, lengthInBytes);
+                    Memory.getInstance().set(this.textAddress.get(), value, lengthInBytes);
                 } catch (AddressErrorException e) {
                     errors.add(new ErrorMessage(token.getSourceMIPSprogram(),
                             token.getSourceLine(), token.getStartPos(), "\""
@@ -1190,7 +1176,7 @@ public class Assembler {
                         }
                     }
                     try {
-                        Globals.memory.set(this.dataAddress.get(), theChar,
+                        Memory.getInstance().set(this.dataAddress.get(), theChar,
                                 DataTypes.CHAR_SIZE);
                     } catch (AddressErrorException e) {
                         errors.add(new ErrorMessage(token.getSourceMIPSprogram(), token
@@ -1201,7 +1187,7 @@ public class Assembler {
                 }
                 if (direct == Directives.ASCIIZ) {
                     try {
-                        Globals.memory.set(this.dataAddress.get(), 0, DataTypes.CHAR_SIZE);
+                        Memory.getInstance().set(this.dataAddress.get(), 0, DataTypes.CHAR_SIZE);
                     } catch (AddressErrorException e) {
                         errors.add(new ErrorMessage(token.getSourceMIPSprogram(), token
                                 .getSourceLine(), token.getStartPos(), "\""
@@ -1235,7 +1221,7 @@ public class Assembler {
             this.dataAddress.set(this.alignToBoundary(this.dataAddress.get(), lengthInBytes));
         }
         try {
-            Globals.memory.set(this.dataAddress.get(), value, lengthInBytes);
+            Memory.getInstance().set(this.dataAddress.get(), value, lengthInBytes);
         } catch (AddressErrorException e) {
             errors.add(new ErrorMessage(token.getSourceMIPSprogram(), token.getSourceLine(), token
                     .getStartPos(), "\"" + this.dataAddress.get()
@@ -1258,7 +1244,7 @@ public class Assembler {
             this.dataAddress.set(this.alignToBoundary(this.dataAddress.get(), lengthInBytes));
         }
         try {
-            Globals.memory.setDouble(this.dataAddress.get(), value);
+            Memory.getInstance().setDouble(this.dataAddress.get(), value);
         } catch (AddressErrorException e) {
             errors.add(new ErrorMessage(token.getSourceMIPSprogram(), token.getSourceLine(), token
                     .getStartPos(), "\"" + this.dataAddress.get()
@@ -1414,7 +1400,7 @@ public class Assembler {
                 if (labelAddress != SymbolTable.NOT_FOUND) {
                     // patch address has to be valid b/c we already stored there...
                     try {
-                        Globals.memory.set(entry.patchAddress, labelAddress, entry.length);
+                        Memory.getInstance().set(entry.patchAddress, labelAddress, entry.length);
                     } catch (AddressErrorException aee) {
                     }
                     forwardReferenceList.remove(i);
@@ -3,12 +3,21 @@ package mars.assembler;
 import mars.ErrorList;
 import mars.ErrorMessage;
 import mars.Globals;
+import mars.simulator.SimulatorContext;
 
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
 
 
 /**
  * Creats a table of Symbol objects.
+ * <p>
+ * Symbols are kept in a hash table keyed by label, in the order they were added,
+ * and in an index ordered by address for looking up the label(s) at a given
+ * address.  Both lookups are done for every label operand during assembly, so
+ * neither may scan the table.
  *
  * @author Jason Bumgarner, Jason Shrewsbury
  * @version June 2003
@@ -17,7 +26,10 @@ import java.util.ArrayList;
 public class SymbolTable {
     private static final String startLabel = "main";
     private final String filename;
-    private ArrayList table;
+    private LinkedHashMap table;
+    // Maps Integer address to an ArrayList of the Symbols at that address, in the
+    // order they were added.
+    private TreeMap addressIndex;
     // Note -1 is legal 32 bit address (0xFFFFFFFF) but it is the high address in
     // kernel address space so highly unlikely that any symbol will have this as
     // its associated address!
@@ -31,7 +43,8 @@ public class SymbolTable {
      */
     public SymbolTable(String filename) {
         this.filename = filename;
-        this.table = new ArrayList();
+        this.table = new LinkedHashMap();
+        this.addressIndex = new TreeMap();
     }
 
     /**
@@ -49,7 +62,8 @@ public class SymbolTable {
             errors.add(new ErrorMessage(token.getSourceMIPSprogram(), token.getSourceLine(), token.getStartPos(), "label \"" + label + "\" already defined"));
         } else {
             Symbol s = new Symbol(label, address, b);
-            table.add(s);
+            table.put(label, s);
+            indexAddress(s);
             if (Globals.debug)
                 System.out.println("The symbol " + label + " with address " + address + " has been added to the " + this.filename + " symbol table.");
         }
@@ -66,13 +80,11 @@ public class SymbolTable {
 
     public void removeSymbol(Token token) {
         String label = token.getValue();
-        for (int i = 0; i < table.size(); i++) {
-            if (((Symbol) (table.get(i))).getName().equals(label)) {
-                table.remove(i);
-                if (Globals.debug)
-                    System.out.println("The symbol " + label + " has been removed from the " + this.filename + " symbol table.");
-                break;
-            }
+        Symbol s = (Symbol) table.remove(label);
+        if (s != null) {
+            unindexAddress(s);
+            if (Globals.debug)
+                System.out.println("The symbol " + label + " has been removed from the " + this.filename + " symbol table.");
         }
         return;
     }
@@ -85,12 +97,8 @@ public class SymbolTable {
      * @return The memory address of the label given, or NOT_FOUND if not found in symbol table.
      **/
     public int getAddress(String s) {
-        for (int i = 0; i < table.size(); i++) {
-            if (((Symbol) (table.get(i))).getName().equals(s)) {
-                return ((Symbol) table.get(i)).getAddress();
-            }
-        }
-        return NOT_FOUND;
+        Symbol symbol = (Symbol) table.get(s);
+        return (symbol == null) ? NOT_FOUND : symbol.getAddress();
     }
 
     /**
@@ -103,7 +111,7 @@ public class SymbolTable {
      **/
     public int getAddressLocalOrGlobal(String s) {
         int address = this.getAddress(s);
-        return (address == NOT_FOUND) ? Globals.symbolTable.getAddress(s) : address;
+        return (address == NOT_FOUND) ? SimulatorContext.current().getSymbolTable().getAddress(s) : address;
     }
 
 
@@ -115,12 +123,7 @@ public class SymbolTable {
      **/
 
     public Symbol getSymbol(String s) {
-        for (int i = 0; i < table.size(); i++) {
-            if (((Symbol) (table.get(i))).getName().equals(s)) {
-                return (Symbol) table.get(i);
-            }
-        }
-        return null;
+        return (Symbol) table.get(s);
     }
 
     /**
@@ -137,12 +140,8 @@ public class SymbolTable {
         } catch (NumberFormatException e) {
             return null;
         }
-        for (int i = 0; i < table.size(); i++) {
-            if (((Symbol) (table.get(i))).getAddress() == address) {
-                return (Symbol) table.get(i);
-            }
-        }
-        return null;
+        ArrayList symbols = (ArrayList) addressIndex.get(Integer.valueOf(address));
+        return (symbols == null) ? null : (Symbol) symbols.get(0);
     }
 
     /**
@@ -154,7 +153,7 @@ public class SymbolTable {
      **/
     public Symbol getSymbolGivenAddressLocalOrGlobal(String s) {
         Symbol sym = this.getSymbolGivenAddress(s);
-        return (sym == null) ? Globals.symbolTable.getSymbolGivenAddress(s) : sym;
+        return (sym == null) ? SimulatorContext.current().getSymbolTable().getSymbolGivenAddress(s) : sym;
     }
 
 
@@ -166,9 +165,10 @@ public class SymbolTable {
 
     public ArrayList getDataSymbols() {
         ArrayList list = new ArrayList();
-        for (int i = 0; i < table.size(); i++) {
-            if (((Symbol) table.get(i)).getType()) {
-                list.add(table.get(i));
+        for (Iterator it = table.values().iterator(); it.hasNext(); ) {
+            Symbol symbol = (Symbol) it.next();
+            if (symbol.getType()) {
+                list.add(symbol);
             }
         }
         return list;
@@ -183,9 +183,10 @@ public class SymbolTable {
 
     public ArrayList getTextSymbols() {
         ArrayList list = new ArrayList();
-        for (int i = 0; i < table.size(); i++) {
-            if (!((Symbol) table.get(i)).getType()) {
-                list.add(table.get(i));
+        for (Iterator it = table.values().iterator(); it.hasNext(); ) {
+            Symbol symbol = (Symbol) it.next();
+            if (!symbol.getType()) {
+                list.add(symbol);
             }
         }
         return list;
@@ -198,11 +199,7 @@ public class SymbolTable {
      **/
 
     public ArrayList getAllSymbols() {
-        ArrayList list = new ArrayList();
-        for (int i = 0; i < table.size(); i++) {
-            list.add(table.get(i));
-        }
-        return list;
+        return new ArrayList(table.values());
     }
 
     /**
@@ -216,11 +213,12 @@ public class SymbolTable {
     }
 
     /**
-     * Creates a fresh arrayList for a new table.
+     * Creates a fresh table and address index for a new table.
      **/
 
     public void clear() {
-        table = new ArrayList();
+        table = new LinkedHashMap();
+        addressIndex = new TreeMap();
     }
 
     /**
@@ -234,14 +232,40 @@ public class SymbolTable {
      */
 
     public void fixSymbolTableAddress(int originalAddress, int replacementAddress) {
-        Symbol label = getSymbolGivenAddress(Integer.toString(originalAddress));
-        while (label != null) {
-            label.setAddress(replacementAddress);
-            label = getSymbolGivenAddress(Integer.toString(originalAddress));
+        ArrayList labels = (ArrayList) addressIndex.remove(Integer.valueOf(originalAddress));
+        if (labels != null) {
+            for (int i = 0; i < labels.size(); i++) {
+                Symbol label = (Symbol) labels.get(i);
+                label.setAddress(replacementAddress);
+                indexAddress(label);
+            }
         }
         return;
     }
 
+    // Add the symbol to the list of symbols at its address.
+    private void indexAddress(Symbol symbol) {
+        Integer address = Integer.valueOf(symbol.getAddress());
+        ArrayList symbols = (ArrayList) addressIndex.get(address);
+        if (symbols == null) {
+            symbols = new ArrayList();
+            addressIndex.put(address, symbols);
+        }
+        symbols.add(symbol);
+    }
+
+    // Remove the symbol from the list of symbols at its address.
+    private void unindexAddress(Symbol symbol) {
+        Integer address = Integer.valueOf(symbol.getAddress());
+        ArrayList symbols = (ArrayList) addressIndex.get(address);
+        if (symbols != null) {
+            symbols.remove(symbol);
+            if (symbols.isEmpty()) {
+                addressIndex.remove(address);
+            }
+        }
+    }
+
     /**
      * Fetches the text segment label (symbol) which, if declared global, indicates
      * the starting address for execution.
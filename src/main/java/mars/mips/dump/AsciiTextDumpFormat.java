@@ -1,6 +1,5 @@
 package mars.mips.dump;
 
-import mars.Globals;
 import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Memory;
 import mars.util.Binary;
@@ -84,7 +83,7 @@ public class AsciiTextDumpFormat extends AbstractDumpFormat {
         String string = null;
         try {
             for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES) {
-                Integer temp = Globals.memory.getRawWordOrNull(address);
+                Integer temp = Memory.getInstance().getRawWordOrNull(address);
                 if (temp == null)
                     break;
                 out.println(Binary.intToAscii(temp.intValue()));
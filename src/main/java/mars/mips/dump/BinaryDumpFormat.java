@@ -1,6 +1,5 @@
 package mars.mips.dump;
 
-import mars.Globals;
 import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Memory;
 
@@ -74,7 +73,7 @@ public class BinaryDumpFormat extends AbstractDumpFormat {
         PrintStream out = new PrintStream(new FileOutputStream(file));
         try {
             for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES) {
-                Integer temp = Globals.memory.getRawWordOrNull(address);
+                Integer temp = Memory.getInstance().getRawWordOrNull(address);
                 if (temp == null)
                     break;
                 int word = temp.intValue();
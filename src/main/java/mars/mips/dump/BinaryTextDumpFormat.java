@@ -1,6 +1,5 @@
 package mars.mips.dump;
 
-import mars.Globals;
 import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Memory;
 
@@ -76,7 +75,7 @@ public class BinaryTextDumpFormat extends AbstractDumpFormat {
         String string = null;
         try {
             for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES) {
-                Integer temp = Globals.memory.getRawWordOrNull(address);
+                Integer temp = Memory.getInstance().getRawWordOrNull(address);
                 if (temp == null)
                     break;
                 string = Integer.toBinaryString(temp.intValue());
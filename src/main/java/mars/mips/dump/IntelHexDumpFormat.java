@@ -1,6 +1,5 @@
 package mars.mips.dump;
 
-import mars.Globals;
 import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Memory;
 
@@ -43,7 +42,7 @@ public class IntelHexDumpFormat extends AbstractDumpFormat {
         String string = null;
         try {
             for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES) {
-                Integer temp = Globals.memory.getRawWordOrNull(address);
+                Integer temp = Memory.getInstance().getRawWordOrNull(address);
                 if (temp == null)
                     break;
                 string = Integer.toHexString(temp.intValue());
@@ -99,7 +99,7 @@ public class SegmentWindowDumpFormat extends AbstractDumpFormat {
                         string = ((hexAddresses) ? Binary.intToHexString(address) : Binary.unsignedIntToIntString(address)) + "    ";
                     }
                     offset++;
-                    Integer temp = Globals.memory.getRawWordOrNull(address);
+                    Integer temp = Memory.getInstance().getRawWordOrNull(address);
                     if (temp == null)
                         break;
                     string += ((hexValues)
@@ -129,12 +129,12 @@ public class SegmentWindowDumpFormat extends AbstractDumpFormat {
         try {
             for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES) {
                 string = ((hexAddresses) ? Binary.intToHexString(address) : Binary.unsignedIntToIntString(address)) + "  ";
-                Integer temp = Globals.memory.getRawWordOrNull(address);
+                Integer temp = Memory.getInstance().getRawWordOrNull(address);
                 if (temp == null)
                     break;
                 string += Binary.intToHexString(temp.intValue()) + "  ";
                 try {
-                    ProgramStatement ps = Globals.memory.getStatement(address);
+                    ProgramStatement ps = Memory.getInstance().getStatement(address);
                     string += (ps.getPrintableBasicAssemblyStatement() + "                      ").substring(0, 22);
                     string += (((ps.getSource() == "") ? "" : new Integer(ps.getSourceLine()).toString()) + "     ").substring(0, 5);
                     string += ps.getSource();
@@ -1,6 +1,7 @@
 package mars.mips.hardware;
 
 import mars.Globals;
+import mars.simulator.SimulatorContext;
 
 import java.util.Observer;
 
@@ -53,12 +54,22 @@ public class Coprocessor0 {
     // bit 1 (exception level) not set, bit 0 (interrupt enable) set.
     public static final int DEFAULT_STATUS_VALUE = 0x0000FF11;
 
-    private static final Register[] registers =
-            {new Register("$8 (vaddr)", 8, 0),
-                    new Register("$12 (status)", 12, DEFAULT_STATUS_VALUE),
-                    new Register("$13 (cause)", 13, 0),
-                    new Register("$14 (epc)", 14, 0)
-            };
+    /**
+     * The registers of one SimulatorContext.  Coprocessor0's static methods apply to
+     * the State of the current context.
+     */
+    public static final class State {
+        private final Register[] registers =
+                {new Register("$8 (vaddr)", 8, 0),
+                        new Register("$12 (status)", 12, DEFAULT_STATUS_VALUE),
+                        new Register("$13 (cause)", 13, 0),
+                        new Register("$14 (epc)", 14, 0)
+                };
+    }
+
+    private static State state() {
+        return SimulatorContext.current().getCoprocessor0State();
+    }
 
 
     /**
@@ -66,10 +77,11 @@ public class Coprocessor0 {
      **/
 
     public static void showRegisters() {
-        for (int i = 0; i < registers.length; i++) {
-            System.out.println("Name: " + registers[i].getName());
-            System.out.println("Number: " + registers[i].getNumber());
-            System.out.println("Value: " + registers[i].getValue());
+        State state = state();
+        for (int i = 0; i < state.registers.length; i++) {
+            System.out.println("Name: " + state.registers[i].getName());
+            System.out.println("Number: " + state.registers[i].getNumber());
+            System.out.println("Value: " + state.registers[i].getValue());
             System.out.println();
         }
     }
@@ -83,11 +95,12 @@ public class Coprocessor0 {
      **/
 
     public static int updateRegister(String n, int val) {
+        State state = state();
         int oldValue = 0;
-        for (int i = 0; i < registers.length; i++) {
-            if (("$" + registers[i].getNumber()).equals(n) || registers[i].getName().equals(n)) {
-                oldValue = registers[i].getValue();
-                registers[i].setValue(val);
+        for (int i = 0; i < state.registers.length; i++) {
+            if (("$" + state.registers[i].getNumber()).equals(n) || state.registers[i].getName().equals(n)) {
+                oldValue = state.registers[i].getValue();
+                state.registers[i].setValue(val);
                 break;
             }
         }
@@ -102,12 +115,13 @@ public class Coprocessor0 {
      * @return old value in register prior to update
      **/
     public static int updateRegister(int num, int val) {
+        State state = state();
         int old = 0;
-        for (int i = 0; i < registers.length; i++) {
-            if (registers[i].getNumber() == num) {
+        for (int i = 0; i < state.registers.length; i++) {
+            if (state.registers[i].getNumber() == num) {
                 old = (Globals.getSettings().getBackSteppingEnabled())
-                        ? Globals.program.getBackStepper().addCoprocessor0Restore(num, registers[i].setValue(val))
-                        : registers[i].setValue(val);
+                        ? SimulatorContext.current().getProgram().getBackStepper().addCoprocessor0Restore(num, state.registers[i].setValue(val))
+                        : state.registers[i].setValue(val);
                 break;
             }
         }
@@ -123,9 +137,10 @@ public class Coprocessor0 {
      **/
 
     public static int getValue(int num) {
-        for (int i = 0; i < registers.length; i++) {
-            if (registers[i].getNumber() == num) {
-                return registers[i].getValue();
+        State state = state();
+        for (int i = 0; i < state.registers.length; i++) {
+            if (state.registers[i].getNumber() == num) {
+                return state.registers[i].getValue();
             }
         }
         return 0;
@@ -139,9 +154,10 @@ public class Coprocessor0 {
      **/
 
     public static int getNumber(String n) {
-        for (int i = 0; i < registers.length; i++) {
-            if (("$" + registers[i].getNumber()).equals(n) || registers[i].getName().equals(n)) {
-                return registers[i].getNumber();
+        State state = state();
+        for (int i = 0; i < state.registers.length; i++) {
+            if (("$" + state.registers[i].getNumber()).equals(n) || state.registers[i].getName().equals(n)) {
+                return state.registers[i].getNumber();
             }
         }
         return -1;
@@ -154,7 +170,7 @@ public class Coprocessor0 {
      **/
 
     public static Register[] getRegisters() {
-        return registers;
+        return state().registers;
     }
 
 
@@ -168,8 +184,9 @@ public class Coprocessor0 {
      **/
 
     public static int getRegisterPosition(Register r) {
-        for (int i = 0; i < registers.length; i++) {
-            if (registers[i] == r) {
+        State state = state();
+        for (int i = 0; i < state.registers.length; i++) {
+            if (state.registers[i] == r) {
                 return i;
             }
         }
@@ -184,9 +201,10 @@ public class Coprocessor0 {
      **/
 
     public static Register getRegister(String rname) {
-        for (int i = 0; i < registers.length; i++) {
-            if (("$" + registers[i].getNumber()).equals(rname) || registers[i].getName().equals(rname)) {
-                return registers[i];
+        State state = state();
+        for (int i = 0; i < state.registers.length; i++) {
+            if (("$" + state.registers[i].getNumber()).equals(rname) || state.registers[i].getName().equals(rname)) {
+                return state.registers[i];
             }
         }
         return null;
@@ -198,8 +216,35 @@ public class Coprocessor0 {
      **/
 
     public static void resetRegisters() {
-        for (int i = 0; i < registers.length; i++) {
-            registers[i].resetValue();
+        State state = state();
+        for (int i = 0; i < state.registers.length; i++) {
+            state.registers[i].resetValue();
+        }
+    }
+
+    /**
+     * Returns the values of all registers.  Used for machine snapshots.
+     *
+     * @return the register values
+     */
+    public static int[] saveState() {
+        State state = state();
+        int[] values = new int[state.registers.length];
+        for (int i = 0; i < state.registers.length; i++) {
+            values[i] = state.registers[i].getValue();
+        }
+        return values;
+    }
+
+    /**
+     * Sets all registers to values obtained from saveState().
+     *
+     * @param values the register values
+     */
+    public static void restoreState(int[] values) {
+        State state = state();
+        for (int i = 0; i < state.registers.length; i++) {
+            state.registers[i].setValue(values[i]);
         }
     }
 
@@ -208,8 +253,9 @@ public class Coprocessor0 {
      * will add the given Observer to each one.
      */
     public static void addRegistersObserver(Observer observer) {
-        for (int i = 0; i < registers.length; i++) {
-            registers[i].addObserver(observer);
+        State state = state();
+        for (int i = 0; i < state.registers.length; i++) {
+            state.registers[i].addObserver(observer);
         }
     }
 
@@ -218,8 +264,9 @@ public class Coprocessor0 {
      * will delete the given Observer from each one.
      */
     public static void deleteRegistersObserver(Observer observer) {
-        for (int i = 0; i < registers.length; i++) {
-            registers[i].deleteObserver(observer);
+        State state = state();
+        for (int i = 0; i < state.registers.length; i++) {
+            state.registers[i].deleteObserver(observer);
         }
     }
 
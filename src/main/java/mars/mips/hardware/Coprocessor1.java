@@ -2,6 +2,7 @@ package mars.mips.hardware;
 
 import mars.Globals;
 import mars.util.Binary;
+import mars.simulator.SimulatorContext;
 
 import java.util.Observer;
 
@@ -51,26 +52,36 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 // storing into registers, and reassembled upon retrieval.
 
 public class Coprocessor1 {
-    private static final Register[] registers =
-            {new Register("$f0", 0, 0), new Register("$f1", 1, 0),
-                    new Register("$f2", 2, 0), new Register("$f3", 3, 0),
-                    new Register("$f4", 4, 0), new Register("$f5", 5, 0),
-                    new Register("$f6", 6, 0), new Register("$f7", 7, 0),
-                    new Register("$f8", 8, 0), new Register("$f9", 9, 0),
-                    new Register("$f10", 10, 0), new Register("$f11", 11, 0),
-                    new Register("$f12", 12, 0), new Register("$f13", 13, 0),
-                    new Register("$f14", 14, 0), new Register("$f15", 15, 0),
-                    new Register("$f16", 16, 0), new Register("$f17", 17, 0),
-                    new Register("$f18", 18, 0), new Register("$f19", 19, 0),
-                    new Register("$f20", 20, 0), new Register("$f21", 21, 0),
-                    new Register("$f22", 22, 0), new Register("$f23", 23, 0),
-                    new Register("$f24", 24, 0), new Register("$f25", 25, 0),
-                    new Register("$f26", 26, 0), new Register("$f27", 27, 0),
-                    new Register("$f28", 28, 0), new Register("$f29", 29, 0),
-                    new Register("$f30", 30, 0), new Register("$f31", 31, 0)
-            };
-    // The 8 condition flags will be stored in bits 0-7 for flags 0-7.
-    private static final Register condition = new Register("cf", 32, 0);
+    /**
+     * The registers and condition flags of one SimulatorContext.  Coprocessor1's static
+     * methods apply to the State of the current context.
+     */
+    public static final class State {
+        private final Register[] registers =
+                {new Register("$f0", 0, 0), new Register("$f1", 1, 0),
+                        new Register("$f2", 2, 0), new Register("$f3", 3, 0),
+                        new Register("$f4", 4, 0), new Register("$f5", 5, 0),
+                        new Register("$f6", 6, 0), new Register("$f7", 7, 0),
+                        new Register("$f8", 8, 0), new Register("$f9", 9, 0),
+                        new Register("$f10", 10, 0), new Register("$f11", 11, 0),
+                        new Register("$f12", 12, 0), new Register("$f13", 13, 0),
+                        new Register("$f14", 14, 0), new Register("$f15", 15, 0),
+                        new Register("$f16", 16, 0), new Register("$f17", 17, 0),
+                        new Register("$f18", 18, 0), new Register("$f19", 19, 0),
+                        new Register("$f20", 20, 0), new Register("$f21", 21, 0),
+                        new Register("$f22", 22, 0), new Register("$f23", 23, 0),
+                        new Register("$f24", 24, 0), new Register("$f25", 25, 0),
+                        new Register("$f26", 26, 0), new Register("$f27", 27, 0),
+                        new Register("$f28", 28, 0), new Register("$f29", 29, 0),
+                        new Register("$f30", 30, 0), new Register("$f31", 31, 0)
+                };
+        // The 8 condition flags will be stored in bits 0-7 for flags 0-7.
+        private final Register condition = new Register("cf", 32, 0);
+    }
+
+    private static State state() {
+        return SimulatorContext.current().getCoprocessor1State();
+    }
     private static final int numConditionFlags = 8;
 
     /**
@@ -78,11 +89,12 @@ public class Coprocessor1 {
      **/
 
     public static void showRegisters() {
-        for (int i = 0; i < registers.length; i++) {
+        State state = state();
+        for (int i = 0; i < state.registers.length; i++) {
 
-            System.out.println("Name: " + registers[i].getName());
-            System.out.println("Number: " + registers[i].getNumber());
-            System.out.println("Value: " + registers[i].getValue());
+            System.out.println("Name: " + state.registers[i].getName());
+            System.out.println("Number: " + state.registers[i].getNumber());
+            System.out.println("Value: " + state.registers[i].getValue());
             System.out.println();
         }
     }
@@ -107,8 +119,9 @@ public class Coprocessor1 {
      **/
 
     public static void setRegisterToFloat(int reg, float val) {
-        if (reg >= 0 && reg < registers.length) {
-            registers[reg].setValue(Float.floatToRawIntBits(val));
+        State state = state();
+        if (reg >= 0 && reg < state.registers.length) {
+            state.registers[reg].setValue(Float.floatToRawIntBits(val));
         }
     }
 
@@ -134,8 +147,9 @@ public class Coprocessor1 {
      **/
 
     public static void setRegisterToInt(int reg, int val) {
-        if (reg >= 0 && reg < registers.length) {
-            registers[reg].setValue(val);
+        State state = state();
+        if (reg >= 0 && reg < state.registers.length) {
+            state.registers[reg].setValue(val);
         }
     }
 
@@ -156,8 +170,9 @@ public class Coprocessor1 {
             throw new InvalidRegisterAccessException();
         }
         long bits = Double.doubleToRawLongBits(val);
-        registers[reg + 1].setValue(Binary.highOrderLongToInt(bits));  // high order 32 bits
-        registers[reg].setValue(Binary.lowOrderLongToInt(bits)); // low order 32 bits
+        State state = state();
+        state.registers[reg + 1].setValue(Binary.highOrderLongToInt(bits));  // high order 32 bits
+        state.registers[reg].setValue(Binary.lowOrderLongToInt(bits)); // low order 32 bits
     }
 
 
@@ -192,8 +207,9 @@ public class Coprocessor1 {
         if (reg % 2 != 0) {
             throw new InvalidRegisterAccessException();
         }
-        registers[reg + 1].setValue(Binary.highOrderLongToInt(val));  // high order 32 bits
-        registers[reg].setValue(Binary.lowOrderLongToInt(val)); // low order 32 bits
+        State state = state();
+        state.registers[reg + 1].setValue(Binary.highOrderLongToInt(val));  // high order 32 bits
+        state.registers[reg].setValue(Binary.lowOrderLongToInt(val)); // low order 32 bits
     }
 
 
@@ -221,9 +237,10 @@ public class Coprocessor1 {
      **/
 
     public static float getFloatFromRegister(int reg) {
+        State state = state();
         float result = 0F;
-        if (reg >= 0 && reg < registers.length) {
-            result = Float.intBitsToFloat(registers[reg].getValue());
+        if (reg >= 0 && reg < state.registers.length) {
+            result = Float.intBitsToFloat(state.registers[reg].getValue());
         }
         return result;
     }
@@ -249,9 +266,10 @@ public class Coprocessor1 {
      **/
 
     public static int getIntFromRegister(int reg) {
+        State state = state();
         int result = 0;
-        if (reg >= 0 && reg < registers.length) {
-            result = registers[reg].getValue();
+        if (reg >= 0 && reg < state.registers.length) {
+            result = state.registers[reg].getValue();
         }
         return result;
     }
@@ -283,7 +301,8 @@ public class Coprocessor1 {
         if (reg % 2 != 0) {
             throw new InvalidRegisterAccessException();
         }
-        long bits = Binary.twoIntsToLong(registers[reg + 1].getValue(), registers[reg].getValue());
+        State state = state();
+        long bits = Binary.twoIntsToLong(state.registers[reg + 1].getValue(), state.registers[reg].getValue());
         return Double.longBitsToDouble(bits);
     }
 
@@ -317,7 +336,8 @@ public class Coprocessor1 {
         if (reg % 2 != 0) {
             throw new InvalidRegisterAccessException();
         }
-        return Binary.twoIntsToLong(registers[reg + 1].getValue(), registers[reg].getValue());
+        State state = state();
+        return Binary.twoIntsToLong(state.registers[reg + 1].getValue(), state.registers[reg].getValue());
     }
 
 
@@ -345,12 +365,13 @@ public class Coprocessor1 {
      **/
 
     public static int updateRegister(int num, int val) {
+        State state = state();
         int old = 0;
-        for (int i = 0; i < registers.length; i++) {
-            if (registers[i].getNumber() == num) {
+        for (int i = 0; i < state.registers.length; i++) {
+            if (state.registers[i].getNumber() == num) {
                 old = (Globals.getSettings().getBackSteppingEnabled())
-                        ? Globals.program.getBackStepper().addCoprocessor1Restore(num, registers[i].setValue(val))
-                        : registers[i].setValue(val);
+                        ? SimulatorContext.current().getProgram().getBackStepper().addCoprocessor1Restore(num, state.registers[i].setValue(val))
+                        : state.registers[i].setValue(val);
                 break;
             }
         }
@@ -367,7 +388,7 @@ public class Coprocessor1 {
      **/
 
     public static int getValue(int num) {
-        return registers[num].getValue();
+        return state().registers[num].getValue();
     }
 
     /**
@@ -378,10 +399,11 @@ public class Coprocessor1 {
      **/
 
     public static int getRegisterNumber(String n) {
+        State state = state();
         int j = -1;
-        for (int i = 0; i < registers.length; i++) {
-            if (registers[i].getName().equals(n)) {
-                j = registers[i].getNumber();
+        for (int i = 0; i < state.registers.length; i++) {
+            if (state.registers[i].getName().equals(n)) {
+                j = state.registers[i].getNumber();
                 break;
             }
         }
@@ -395,7 +417,7 @@ public class Coprocessor1 {
      **/
 
     public static Register[] getRegisters() {
-        return registers;
+        return state().registers;
     }
 
     /**
@@ -406,11 +428,12 @@ public class Coprocessor1 {
      **/
 
     public static Register getRegister(String rName) {
+        State state = state();
         Register reg = null;
         if (rName.charAt(0) == '$' && rName.length() > 1 && rName.charAt(1) == 'f') {
             try {
                 // check for register number 0-31.
-                reg = registers[Binary.stringToInt(rName.substring(2))];    // KENV 1/6/05
+                reg = state.registers[Binary.stringToInt(rName.substring(2))];    // KENV 1/6/05
             } catch (Exception e) {
                 // handles both NumberFormat and ArrayIndexOutOfBounds
                 reg = null;
@@ -425,19 +448,52 @@ public class Coprocessor1 {
      **/
 
     public static void resetRegisters() {
-        for (int i = 0; i < registers.length; i++)
-            registers[i].resetValue();
+        State state = state();
+        for (int i = 0; i < state.registers.length; i++)
+            state.registers[i].resetValue();
         clearConditionFlags();
     }
 
+    /**
+     * Returns the values of all registers followed by the condition flags.  Used for
+     * machine snapshots.
+     *
+     * @return the register values
+     */
+    public static int[] saveState() {
+        State state = state();
+        int length = state.registers.length;
+        int[] values = new int[length + 1];
+        for (int i = 0; i < length; i++) {
+            values[i] = state.registers[i].getValue();
+        }
+        values[length] = state.condition.getValue();
+        return values;
+    }
+
+    /**
+     * Sets all registers and the condition flags to values obtained from saveState().
+     *
+     * @param values the register values
+     */
+    public static void restoreState(int[] values) {
+        State state = state();
+        int length = state.registers.length;
+        for (int i = 0; i < length; i++) {
+            state.registers[i].setValue(values[i]);
+        }
+        state.condition.setValue(values[length]);
+    }
+
 
     /**
      * Each individual register is a separate object and Observable.  This handy method
      * will add the given Observer to each one.
      */
     public static void addRegistersObserver(Observer observer) {
-        for (int i = 0; i < registers.length; i++) {
-            registers[i].addObserver(observer);
+        State state = state();
+        for (int i = 0; i < state.registers.length; i++) {
+            state.registers[i].addObserver(observer);
         }
     }
 
@@ -447,8 +503,9 @@ public class Coprocessor1 {
      * will delete the given Observer from each one.
      */
     public static void deleteRegistersObserver(Observer observer) {
-        for (int i = 0; i < registers.length; i++) {
-            registers[i].deleteObserver(observer);
+        State state = state();
+        for (int i = 0; i < state.registers.length; i++) {
+            state.registers[i].deleteObserver(observer);
         }
     }
 
@@ -459,15 +516,16 @@ public class Coprocessor1 {
      * @return previous flag setting (0 or 1)
      */
     public static int setConditionFlag(int flag) {
+        State state = state();
         int old = 0;
         if (flag >= 0 && flag < numConditionFlags) {
             old = getConditionFlag(flag);
-            condition.setValue(Binary.setBit(condition.getValue(), flag));
+            state.condition.setValue(Binary.setBit(state.condition.getValue(), flag));
             if (Globals.getSettings().getBackSteppingEnabled())
                 if (old == 0) {
-                    Globals.program.getBackStepper().addConditionFlagClear(flag);
+                    SimulatorContext.current().getProgram().getBackStepper().addConditionFlagClear(flag);
                 } else {
-                    Globals.program.getBackStepper().addConditionFlagSet(flag);
+                    SimulatorContext.current().getProgram().getBackStepper().addConditionFlagSet(flag);
                 }
         }
         return old;
@@ -480,15 +538,16 @@ public class Coprocessor1 {
      * @return previous flag setting (0 or 1)
      */
     public static int clearConditionFlag(int flag) {
+        State state = state();
         int old = 0;
         if (flag >= 0 && flag < numConditionFlags) {
             old = getConditionFlag(flag);
-            condition.setValue(Binary.clearBit(condition.getValue(), flag));
+            state.condition.setValue(Binary.clearBit(state.condition.getValue(), flag));
             if (Globals.getSettings().getBackSteppingEnabled())
                 if (old == 0) {
-                    Globals.program.getBackStepper().addConditionFlagClear(flag);
+                    SimulatorContext.current().getProgram().getBackStepper().addConditionFlagClear(flag);
                 } else {
-                    Globals.program.getBackStepper().addConditionFlagSet(flag);
+                    SimulatorContext.current().getProgram().getBackStepper().addConditionFlagSet(flag);
                 }
         }
         return old;
@@ -502,9 +561,10 @@ public class Coprocessor1 {
      * @return 0 if condition is false, 1 if condition is true
      */
     public static int getConditionFlag(int flag) {
+        State state = state();
         if (flag < 0 || flag >= numConditionFlags)
             flag = 0;
-        return Binary.bitValue(condition.getValue(), flag);
+        return Binary.bitValue(state.condition.getValue(), flag);
     }
 
 
@@ -514,7 +574,7 @@ public class Coprocessor1 {
      * @return array of int condition flags
      */
     public static int getConditionFlags() {
-        return condition.getValue();
+        return state().condition.getValue();
     }
 
 
@@ -522,14 +582,16 @@ public class Coprocessor1 {
      * Clear all condition flags (0-7).
      */
     public static void clearConditionFlags() {
-        condition.setValue(0);  // sets all 32 bits to 0.
+        State state = state();
+        state.condition.setValue(0);  // sets all 32 bits to 0.
     }
 
     /**
      * Set all condition flags (0-7).
      */
     public static void setConditionFlags() {
-        condition.setValue(-1);  // sets all 32 bits to 1.
+        State state = state();
+        state.condition.setValue(-1);  // sets all 32 bits to 1.
     }
 
     /**
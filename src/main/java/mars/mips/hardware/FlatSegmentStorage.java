@@ -0,0 +1,188 @@
+package mars.mips.hardware;
+
+import java.util.Arrays;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Segment storage that keeps the entire segment in one contiguous int array, indexed
+ * by <tt>(address - lowAddress) >> 2</tt>.  Aligned word, halfword and byte accesses
+ * are a single array access plus a shift and mask, with no per-byte loop and no
+ * locking.  A bitmap records which 4K byte pages have been written, so that
+ * fetchWordOrNull() answers exactly as the block table scheme does.
+ * <p>
+ * The whole segment is allocated up front, so this is intended for segments of a few
+ * megabytes (the MARS limits on data segment and stack) or less.  For the same reason
+ * a copy is not copy-on-write; it allocates the whole segment and copies the pages
+ * that have been written.
+ */
+
+class FlatSegmentStorage extends SegmentStorage {
+    private static final int PAGE_SHIFT = 10; // 1024 words == 4K bytes, matches Memory block size
+
+    private final int lowAddress;
+    private final int[] words;
+    private final long[] pagePresent;
+
+    /**
+     * Create storage for all words from the one containing lowAddress through the one
+     * containing highAddress, inclusive.
+     *
+     * @param lowAddress  lowest address in the segment
+     * @param highAddress highest address in the segment
+     */
+    FlatSegmentStorage(int lowAddress, int highAddress) {
+        this.lowAddress = lowAddress & ~3;
+        int length = ((highAddress - this.lowAddress) >>> 2) + 1;
+        this.words = new int[length];
+        this.pagePresent = new long[((length >>> PAGE_SHIFT) >>> 6) + 1];
+    }
+
+    // Copy constructor.  Only pages that have been written need to be copied.
+    private FlatSegmentStorage(FlatSegmentStorage source) {
+        this.lowAddress = source.lowAddress;
+        this.words = new int[source.words.length];
+        this.pagePresent = source.pagePresent.clone();
+        for (int index = 0; index < words.length; index += 1 << PAGE_SHIFT) {
+            if (isPresent(index)) {
+                System.arraycopy(source.words, index, words, index, Math.min(1 << PAGE_SHIFT, words.length - index));
+            }
+        }
+    }
+
+    int fetch(int address, int length) {
+        int offset = address - lowAddress;
+        int shift = (offset & 3) << 3;
+        if (shift + (length << 3) <= 32 && Memory.byteOrder == Memory.LITTLE_ENDIAN) {
+            return (words[offset >>> 2] >>> shift) & lowOrderMask(length);
+        }
+        int value = 0;
+        for (int i = 0; i < length; i++) {
+            value |= fetchByte(offset + i) << (i << 3);
+        }
+        return value;
+    }
+
+    int store(int address, int length, int value) {
+        int offset = address - lowAddress;
+        int shift = (offset & 3) << 3;
+        if (shift + (length << 3) <= 32 && Memory.byteOrder == Memory.LITTLE_ENDIAN) {
+            int index = offset >>> 2;
+            int mask = lowOrderMask(length) << shift;
+            int old = words[index];
+            words[index] = (old & ~mask) | ((value << shift) & mask);
+            markPresent(index);
+            return (old & mask) >>> shift;
+        }
+        int oldValue = 0;
+        for (int i = 0; i < length; i++) {
+            oldValue |= storeByte(offset + i, value >>> (i << 3)) << (i << 3);
+        }
+        return oldValue;
+    }
+
+    int fetchWord(int address) {
+        return words[(address - lowAddress) >>> 2];
+    }
+
+    int storeWord(int address, int value) {
+        int index = (address - lowAddress) >>> 2;
+        int old = words[index];
+        words[index] = value;
+        markPresent(index);
+        return old;
+    }
+
+    Integer fetchWordOrNull(int address) {
+        int index = (address - lowAddress) >>> 2;
+        return isPresent(index) ? Integer.valueOf(words[index]) : null;
+    }
+
+    SegmentStorage copy() {
+        return new FlatSegmentStorage(this);
+    }
+
+    int[] blockAddresses() {
+        int[] addresses = new int[(words.length + (1 << PAGE_SHIFT) - 1) >>> PAGE_SHIFT];
+        int count = 0;
+        for (int index = 0; index < words.length; index += 1 << PAGE_SHIFT) {
+            if (isPresent(index)) {
+                addresses[count++] = lowAddress + (index << 2);
+            }
+        }
+        return Arrays.copyOf(addresses, count);
+    }
+
+    int blockLength(int address) {
+        return Math.min(1 << PAGE_SHIFT, words.length - ((address - lowAddress) >>> 2));
+    }
+
+    void fetchBlock(int address, int[] words) {
+        System.arraycopy(this.words, (address - lowAddress) >>> 2, words, 0, blockLength(address));
+    }
+
+    void fetchBytes(int address, byte[] bytes, int offset, int length) {
+        unpackBytes(words, address - lowAddress, bytes, offset, length);
+    }
+
+    void storeBytes(int address, byte[] bytes, int offset, int length) {
+        int from = address - lowAddress;
+        packBytes(bytes, offset, words, from, length);
+        for (int index = from >>> 2; index <= (from + length - 1) >>> 2; index += 1 << PAGE_SHIFT) {
+            markPresent(index);
+        }
+        markPresent((from + length - 1) >>> 2);
+    }
+
+    int findNull(int address, int length) {
+        return findNullByte(words, address - lowAddress, length);
+    }
+
+    // Byte at given offset from lowAddress, honoring the current byte order.
+    private int fetchByte(int offset) {
+        return (words[offset >>> 2] >>> byteShift(offset)) & 0xFF;
+    }
+
+    // Replace byte at given offset from lowAddress, returning the old byte.
+    private int storeByte(int offset, int value) {
+        int index = offset >>> 2;
+        int shift = byteShift(offset);
+        int old = words[index];
+        words[index] = (old & ~(0xFF << shift)) | ((value & 0xFF) << shift);
+        markPresent(index);
+        return (old >>> shift) & 0xFF;
+    }
+
+    private void markPresent(int index) {
+        int page = index >>> PAGE_SHIFT;
+        pagePresent[page >>> 6] |= 1L << page;
+    }
+
+    private boolean isPresent(int index) {
+        int page = index >>> PAGE_SHIFT;
+        return (pagePresent[page >>> 6] & (1L << page)) != 0;
+    }
+}
@@ -0,0 +1,230 @@
+package mars.mips.hardware;
+
+import mars.simulator.Exceptions;
+
+import java.nio.ByteBuffer;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+
+/**
+ * Storage for a host file mapped into the address space by the Mmap syscall.  The
+ * bytes of the region are those of a ByteBuffer, normally a MappedByteBuffer, so a
+ * byte stored at an address appears at the corresponding offset of the file and the
+ * file is never copied into simulated memory.  The byte at the region's lowest
+ * address is the file's first byte; how bytes combine into words follows the current
+ * byte order, as in the other storages.
+ * <p>
+ * The region is a whole number of 4K byte pages.  As with a POSIX mapping, the part
+ * of the last page beyond the end of the file reads as zero, and bytes stored there
+ * are discarded.  A read-only mapping raises an address exception on any store.
+ * <p>
+ * A mapping is shared rather than copied by machine snapshots, since its contents
+ * live in the file.  For the same reason machine state files record only the name of
+ * the file and where it was mapped, and map it again on resuming.
+ */
+
+class MappedFileStorage extends Storage {
+    private final String fileName;
+    private final int lowAddress;
+    private final int highAddress; // first address past the region
+    private final ByteBuffer buffer;
+    private final int limit;       // length of the file contents in the buffer
+    private final boolean writable;
+
+    /**
+     * Create storage for a mapped file.
+     *
+     * @param fileName   name of the file, as given to the Mmap syscall
+     * @param lowAddress lowest address of the region, on a 4K byte boundary
+     * @param length     length of the region in bytes, a multiple of 4K
+     * @param buffer     the file contents, starting at index 0
+     * @param writable   false if stores are to raise an address exception
+     */
+    MappedFileStorage(String fileName, int lowAddress, int length, ByteBuffer buffer, boolean writable) {
+        this.fileName = fileName;
+        this.lowAddress = lowAddress;
+        this.highAddress = lowAddress + length;
+        this.buffer = buffer;
+        this.limit = buffer.limit();
+        this.writable = writable;
+    }
+
+    /**
+     * Determine whether the given address lies in the mapped region.
+     *
+     * @param address memory address
+     * @return true if the region includes that address
+     */
+    boolean contains(int address) {
+        return address >= lowAddress && address < highAddress;
+    }
+
+    /**
+     * Lowest address of the region.
+     */
+    int getLowAddress() {
+        return lowAddress;
+    }
+
+    /**
+     * First address past the end of the region.
+     */
+    int getHighAddress() {
+        return highAddress;
+    }
+
+    /**
+     * Name of the mapped file.
+     */
+    String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Number of bytes of the file that are mapped, from its start.
+     */
+    int getFileLength() {
+        return limit;
+    }
+
+    /**
+     * Determine whether stores into the region are allowed.
+     */
+    boolean isWritable() {
+        return writable;
+    }
+
+    int fetch(int address, int length) {
+        int value = 0;
+        for (int i = 0; i < length; i++) {
+            value |= fetchByte(address + i - lowAddress) << (i << 3);
+        }
+        return value;
+    }
+
+    int store(int address, int length, int value) throws AddressErrorException {
+        checkWritable(address);
+        int oldValue = 0;
+        for (int i = 0; i < length; i++) {
+            oldValue |= storeByte(address + i - lowAddress, value >>> (i << 3)) << (i << 3);
+        }
+        return oldValue;
+    }
+
+    int fetchWord(int address) {
+        int offset = address - lowAddress;
+        if (offset + Memory.WORD_LENGTH_BYTES > limit) {
+            return fetchWordSlowly(offset);
+        }
+        int word = buffer.getInt(offset); // big-endian: first byte in high order
+        return (Memory.byteOrder == Memory.LITTLE_ENDIAN) ? Integer.reverseBytes(word) : word;
+    }
+
+    int storeWord(int address, int value) throws AddressErrorException {
+        checkWritable(address);
+        int offset = address - lowAddress;
+        if (offset + Memory.WORD_LENGTH_BYTES > limit) {
+            int old = fetchWordSlowly(offset);
+            for (int i = 0; i < Memory.WORD_LENGTH_BYTES; i++) {
+                storeByte(offset + i, value >>> byteShift(offset + i));
+            }
+            return old;
+        }
+        int word = (Memory.byteOrder == Memory.LITTLE_ENDIAN) ? Integer.reverseBytes(value) : value;
+        int old = buffer.getInt(offset);
+        buffer.putInt(offset, word);
+        return (Memory.byteOrder == Memory.LITTLE_ENDIAN) ? Integer.reverseBytes(old) : old;
+    }
+
+    Integer fetchWordOrNull(int address) {
+        return Integer.valueOf(fetchWord(address));
+    }
+
+    void fetchBytes(int address, byte[] bytes, int offset, int length) {
+        int from = address - lowAddress;
+        int count = Math.max(0, Math.min(length, limit - from));
+        if (count > 0) {
+            ByteBuffer view = buffer.duplicate();
+            view.position(from);
+            view.get(bytes, offset, count);
+        }
+        for (int i = count; i < length; i++) {
+            bytes[offset + i] = 0;
+        }
+    }
+
+    void storeBytes(int address, byte[] bytes, int offset, int length) throws AddressErrorException {
+        checkWritable(address);
+        int to = address - lowAddress;
+        int count = Math.max(0, Math.min(length, limit - to));
+        if (count > 0) {
+            ByteBuffer view = buffer.duplicate();
+            view.position(to);
+            view.put(bytes, offset, count);
+        }
+    }
+
+    int findNull(int address, int length) {
+        int from = address - lowAddress;
+        for (int i = 0; i < length; i++) {
+            if (fetchByte(from + i) == 0) {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    private void checkWritable(int address) throws AddressErrorException {
+        if (!writable) {
+            throw new AddressErrorException("Cannot write to file mapped read-only ",
+                    Exceptions.ADDRESS_EXCEPTION_STORE, address);
+        }
+    }
+
+    // Word at the given offset, any part of which lies beyond the end of the file.
+    private int fetchWordSlowly(int offset) {
+        int word = 0;
+        for (int i = 0; i < Memory.WORD_LENGTH_BYTES; i++) {
+            word |= fetchByte(offset + i) << byteShift(offset + i);
+        }
+        return word;
+    }
+
+    private int fetchByte(int offset) {
+        return (offset < limit) ? buffer.get(offset) & 0xFF : 0;
+    }
+
+    // Replace the byte at the given offset, returning the old byte.
+    private int storeByte(int offset, int value) {
+        if (offset >= limit) {
+            return 0;
+        }
+        int old = buffer.get(offset) & 0xFF;
+        buffer.put(offset, (byte) value);
+        return old;
+    }
+}
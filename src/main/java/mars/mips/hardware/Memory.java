@@ -4,9 +4,16 @@ import mars.Globals;
 import mars.ProgramStatement;
 import mars.Settings;
 import mars.mips.instructions.Instruction;
+import mars.simulator.Breakpoints;
 import mars.simulator.Exceptions;
+import mars.simulator.InstructionCache;
+import mars.simulator.SimulatorContext;
 import mars.util.Binary;
+import mars.util.SystemIO;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 	
 	/*
@@ -129,9 +136,9 @@ public class Memory extends Observable {
     /**
      * Current setting for endian (default LITTLE_ENDIAN)
      **/
-    private static boolean byteOrder = LITTLE_ENDIAN;
+    static boolean byteOrder = LITTLE_ENDIAN;
 
-    public static int heapAddress;
+    private int heapAddress;
 
     // Memory will maintain a collection of observables.  Each one is associated
     // with a specific memory address or address range, and each will have at least
@@ -144,19 +151,32 @@ public class Memory extends Observable {
     // key for insertion into the tree would be based on Comparable using both low 
     // and high end of address range, but retrieval from the tree has to be based
     // on target address being ANYWHERE IN THE RANGE (not an exact key match).
+    // So the collection keeps registration order, and MemoryObserverIndex cuts the
+    // registered ranges into intervals that can be binary searched by address.  The
+    // index is rebuilt whenever an observable is added or removed.
 
     Collection observables = getNewMemoryObserversCollection();
-
-    // The data segment is allocated in blocks of 1024 ints (4096 bytes).  Each block is
-    // referenced by a "block table" entry, and the table has 1024 entries.  The capacity
-    // is thus 1024 entries * 4096 bytes = 4 MB.  Should be enough to cover most
-    // programs!!  Beyond that it would go to an "indirect" block (similar to Unix i-nodes),
-    // which is not implemented.
+    private volatile MemoryObserverIndex observerIndex = MemoryObserverIndex.EMPTY;
+
+    // Watchpoints of the current run, told of every store directly rather than
+    // through an observer so that no AccessNotice is built for each one.  Null if none.
+    private Breakpoints watchpoints;
+
+    // The data segment was originally allocated in blocks of 1024 ints (4096 bytes),
+    // each referenced by an entry of a 1024 entry "block table", for a capacity of 4 MB.
+    // Beyond that it would go to an "indirect" block (similar to Unix i-nodes), which
+    // was not implemented.  It now is: PagedSegmentStorage holds a two level table
+    // whose directory entry covers 4 MB and whose second level entries each reference
+    // a 4096 byte page, for the whole 32-bit address space.  Addresses are used as is
+    // (not relative to a segment base), so one instance serves the data segment, stack,
+    // kernel data segment and memory mapped I/O, and each may extend as far as the
+    // memory configuration says.
     //
-    // Although this scheme is an array of arrays, it is relatively space-efficient since
-    // only the table is created initially. A 4096-byte block is not allocated until a value 
-    // is written to an address within it.  Thus most small programs will use only 8K bytes 
-    // of space (the table plus one block).  The index into both arrays is easily computed 
+    // This remains space-efficient since only the directory is created initially.  A
+    // table or page is not allocated until a value is written to an address within it,
+    // so most small programs use only a few pages.  The number of resident pages is
+    // capped by residentMemoryLimit (megabytes) so a runaway program gets an address
+    // exception rather than exhausting the Java heap.  The indexes are easily computed
     // from the address; access time is constant.
     //
     // SPIM stores statically allocated data (following first .data directive) starting
@@ -165,46 +185,49 @@ public class Memory extends Observable {
     // and with the signed 16 bit offset can reach from 0x10008000 - 0xFFFF = 0x10000000 
     // (Data Segment base) to 0x10008000 + 0x7FFF = 0x1000FFFF (the byte preceding 0x10010000).
     //
-    // Using my scheme, 0x10010000 falls at the beginning of the 17'th block -- table entry 16.
     // SPIM uses a heap base address of 0x10040000 which is not part of the MIPS specification.
-    // (I don't have a reference for that offhand...)  Using my scheme, 0x10040000 falls at
-    // the start of the 65'th block -- table entry 64.  That leaves (1024-64) * 4096 = 3,932,160
-    // bytes of space available without going indirect.
-
-    private static final int BLOCK_LENGTH_WORDS = 1024;  // allocated blocksize 1024 ints == 4K bytes
-    private static final int BLOCK_TABLE_LENGTH = 1024; // Each entry of table points to a block.
-    private int[][] dataBlockTable;
-    private int[][] kernelDataBlockTable;
-
-    // The stack is modeled similarly to the data segment.  It cannot share the same
-    // data structure because the stack base address is very large.  To store it in the
-    // same data structure would require implementation of indirect blocks, which has not
-    // been realized.  So the stack gets its own table of blocks using the same dimensions 
-    // and allocation scheme used for data segment.
+    // (I don't have a reference for that offhand...)  The heap grows upward from there
+    // toward the stack; see allocateBytesFromHeap().
     //
-    // The other major difference is the stack grows DOWNWARD from its base address, not
-    // upward.  I.e., the stack base is the largest stack address. This turns the whole 
-    // scheme for translating memory address to block-offset on its head!  The simplest
-    // solution is to calculate relative address (offset from base) by subtracting the 
-    // desired address from the stack base address (rather than subtracting base address 
-    // from desired address).  Thus as the address gets smaller the offset gets larger.
-    // Everything else works the same, so it shares some private helper methods with
-    // data segment algorithms.
-
-    private int[][] stackBlockTable;
-
-    // Memory mapped I/O is simulated with a separate table using the same structure and
-    // logic as data segment.  Memory is allocated in 4K byte blocks.  But since MMIO
-    // address range is limited to 0xffff0000 to 0xfffffffc, there are only 64K bytes 
-    // total.  Thus there will be a maximum of 16 blocks, and I suspect never more than
-    // one since only the first few addresses are typically used.  The only exception
-    // may be a rogue program generating such addresses in a loop.  Note that the
-    // MMIO addresses are interpreted by Java as negative numbers since it does not 
-    // have unsigned types.  As long as the absolute address is correctly translated
-    // into a table offset, this is of no concern.
+    // A memory configuration may instead select FlatSegmentStorage, which allocates each
+    // of these segments as a single int array up front; that trades memory for faster
+    // access, and keeps the original 4 MB segment limits so the arrays stay reasonable.
+
+    private static final int BLOCK_LENGTH_WORDS = 1024;  // flat storage limit is 1024 of these 4K byte blocks
+    private static final int BLOCK_TABLE_LENGTH = 1024;
+    /**
+     * Default maximum amount of simulated memory, in megabytes, that may be allocated
+     * to the data segment, stack, kernel data and memory mapped I/O together.
+     */
+    public static final int DEFAULT_RESIDENT_MEMORY_LIMIT = 256;
+    private static int residentMemoryLimit = DEFAULT_RESIDENT_MEMORY_LIMIT;
+    private SegmentStorage dataSegment;
+    private SegmentStorage kernelDataSegment;
+    // Files mapped into the heap by the Mmap syscall, and the range of addresses they
+    // span, which is empty (mappedLow == mappedHigh) when there are none.  Checked
+    // before the data segment, since they lie within it.
+    private MappedFileStorage[] mappings = new MappedFileStorage[0];
+    private int mappedLow = 0;
+    private int mappedHigh = 0;
+    // True if the current memory configuration uses FlatSegmentStorage for the above.
+    private static boolean flatStorage = false;
+
+    // The stack originally could not share the data segment's structure because the stack
+    // base address is very large, and that would have required indirect blocks.  With the
+    // page table it shares the same storage; only the range checks differ.  The stack
+    // grows DOWNWARD from its base address, so the stack base is its largest address.
+
+    private SegmentStorage stackSegment;
+
+    // Memory mapped I/O is also held in the same storage.  Since the MMIO address range
+    // is limited to 0xffff0000 to 0xfffffffc, there are only 64K bytes total, thus a
+    // maximum of 16 pages and I suspect never more than one since only the first few
+    // addresses are typically used.  Note that the MMIO addresses are interpreted by
+    // Java as negative numbers since it does not have unsigned types.  The page table
+    // indexes are computed with unsigned shifts, so this is of no concern.
 
     private static final int MMIO_TABLE_LENGTH = 16; // Each entry of table points to a 4K block.
-    private int[][] memoryMapBlockTable;
+    private SegmentStorage memoryMapSegment;
 
     // I use a similar scheme for storing instructions.  MIPS text segment ranges from
     // 0x00400000 all the way to data segment (0x10000000) a range of about 250 MB!  So
@@ -218,8 +241,10 @@ public class Memory extends Observable {
     private ProgramStatement[][] kernelTextBlockTable;
 
     // Set "top" address boundary to go with each "base" address.  This determines permissable
-    // address range for user program.  Currently limit is 4MB, or 1024 * 1024 * 4 bytes based
-    // on the table structures described above (except memory mapped IO, limited to 64KB by range).
+    // address range for user program.  The data segment, kernel data segment and stack limits
+    // come from the memory configuration, except that flat storage limits each to 4MB, or
+    // 1024 * 1024 * 4 bytes.  The text limits are 4MB based on the text tables described
+    // above, and memory mapped IO is limited to 64KB by range.
 
     public static int dataSegmentLimitAddress = dataSegmentBaseAddress +
             BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES;
@@ -233,36 +258,38 @@ public class Memory extends Observable {
             BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES;
     public static int memoryMapLimitAddress = memoryMapBaseAddress +
             BLOCK_LENGTH_WORDS * MMIO_TABLE_LENGTH * WORD_LENGTH_BYTES;
-    // This will be a Singleton class, only one instance is ever created.  Since I know the 
-    // Memory object is always needed, I'll go ahead and create it at the time of class loading.
-    // (greedy rather than lazy instantiation).  The constructor is private and getInstance()
-    // always returns this instance.
+    // This was a Singleton class.  There is now one instance per SimulatorContext, each
+    // created along with its context, and getInstance() returns the instance of the
+    // current context.  For the IDE and command line that is always the default context,
+    // so the instance becomes in essence global as before.
 
-    private static final Memory uniqueMemoryInstance = new Memory();
-
-
-    /*
-     * Private constructor for Memory.  Separate data structures for text and data segments.
+    /**
+     * Constructor for Memory, used by SimulatorContext.  Other clients should use
+     * getInstance().  Separate data structures for text and data segments.
      **/
-    private Memory() {
-        initialize();
+    public Memory() {
+        allocate();
     }
 
     /**
-     * Returns the unique Memory instance, which becomes in essence global.
+     * Returns the Memory instance of the current SimulatorContext, which for the IDE
+     * and command line becomes in essence global.
      */
 
     public static Memory getInstance() {
-        return uniqueMemoryInstance;
+        return SimulatorContext.current().getMemory();
     }
 
     /**
      * Explicitly clear the contents of memory.  Typically done at start of assembly.
+     * Also discards the current context's cached instructions.
      */
 
     public void clear() {
         setConfiguration();
-        initialize();
+        allocate();
+        InstructionCache.invalidateAll();
+        System.gc(); // call garbage collector on any Table memory just deallocated.
     }
 
     /**
@@ -287,21 +314,27 @@ public class Memory extends Observable {
         kernelDataBaseAddress = MemoryConfigurations.getCurrentConfiguration().getKernelDataBaseAddress(); //0x90000000;
         memoryMapBaseAddress = MemoryConfigurations.getCurrentConfiguration().getMemoryMapBaseAddress(); //0xffff0000;
         kernelHighAddress = MemoryConfigurations.getCurrentConfiguration().getKernelHighAddress(); //0xffffffff;
-        dataSegmentLimitAddress = Math.min(MemoryConfigurations.getCurrentConfiguration().getDataSegmentLimitAddress(),
-                dataSegmentBaseAddress +
-                        BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);
+        flatStorage = MemoryConfigurations.getCurrentConfiguration().usesFlatStorage();
+        dataSegmentLimitAddress = MemoryConfigurations.getCurrentConfiguration().getDataSegmentLimitAddress();
+        kernelDataSegmentLimitAddress = MemoryConfigurations.getCurrentConfiguration().getKernelDataSegmentLimitAddress();
+        stackLimitAddress = MemoryConfigurations.getCurrentConfiguration().getStackLimitAddress();
+        if (flatStorage) {
+            dataSegmentLimitAddress = Math.min(dataSegmentLimitAddress,
+                    dataSegmentBaseAddress +
+                            BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);
+            kernelDataSegmentLimitAddress = Math.min(kernelDataSegmentLimitAddress,
+                    kernelDataBaseAddress +
+                            BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);
+            stackLimitAddress = Math.max(stackLimitAddress,
+                    stackBaseAddress -
+                            BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);
+        }
         textLimitAddress = Math.min(MemoryConfigurations.getCurrentConfiguration().getTextLimitAddress(),
                 textBaseAddress +
                         TEXT_BLOCK_LENGTH_WORDS * TEXT_BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);
-        kernelDataSegmentLimitAddress = Math.min(MemoryConfigurations.getCurrentConfiguration().getKernelDataSegmentLimitAddress(),
-                kernelDataBaseAddress +
-                        BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);
         kernelTextLimitAddress = Math.min(MemoryConfigurations.getCurrentConfiguration().getKernelTextLimitAddress(),
                 kernelTextBaseAddress +
                         TEXT_BLOCK_LENGTH_WORDS * TEXT_BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);
-        stackLimitAddress = Math.max(MemoryConfigurations.getCurrentConfiguration().getStackLimitAddress(),
-                stackBaseAddress -
-                        BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);
         memoryMapLimitAddress = Math.min(MemoryConfigurations.getCurrentConfiguration().getMemoryMapLimitAddress(),
                 memoryMapBaseAddress +
                         BLOCK_LENGTH_WORDS * MMIO_TABLE_LENGTH * WORD_LENGTH_BYTES);
@@ -326,20 +359,335 @@ public class Memory extends Observable {
     }
 
 
-    private void initialize() {
+    private void allocate() {
         heapAddress = heapBaseAddress;
+        setMappings(new MappedFileStorage[0]);
         textBlockTable = new ProgramStatement[TEXT_BLOCK_TABLE_LENGTH][];
-        dataBlockTable = new int[BLOCK_TABLE_LENGTH][]; // array of null int[] references
         kernelTextBlockTable = new ProgramStatement[TEXT_BLOCK_TABLE_LENGTH][];
-        kernelDataBlockTable = new int[BLOCK_TABLE_LENGTH][];
-        stackBlockTable = new int[BLOCK_TABLE_LENGTH][];
-        memoryMapBlockTable = new int[MMIO_TABLE_LENGTH][];
-        System.gc(); // call garbage collector on any Table memory just deallocated.
+        if (flatStorage) {
+            dataSegment = new FlatSegmentStorage(dataSegmentBaseAddress, dataSegmentLimitAddress - 1);
+            kernelDataSegment = new FlatSegmentStorage(kernelDataBaseAddress, kernelDataSegmentLimitAddress - 1);
+            stackSegment = new FlatSegmentStorage(stackLimitAddress + 1, stackBaseAddress + WORD_LENGTH_BYTES - 1);
+            memoryMapSegment = new FlatSegmentStorage(memoryMapBaseAddress, memoryMapLimitAddress - 1);
+        } else {
+            SegmentStorage pages = new PagedSegmentStorage(
+                    (int) ((long) residentMemoryLimit * 1024 * 1024 / PagedSegmentStorage.PAGE_LENGTH_BYTES));
+            dataSegment = pages;
+            kernelDataSegment = pages;
+            stackSegment = pages;
+            memoryMapSegment = pages;
+        }
+    }
+
+    /**
+     * Set the maximum amount of simulated memory that may be allocated to the data
+     * segment, stack, kernel data segment and memory mapped I/O together.  Takes effect
+     * the next time memory is cleared, which happens whenever a program is assembled.
+     * Does not apply to configurations using flat storage, which are allocated in full.
+     *
+     * @param megabytes maximum resident simulated memory, in megabytes
+     */
+    public static void setResidentMemoryLimit(int megabytes) {
+        residentMemoryLimit = megabytes;
+    }
+
+    /**
+     * Contents of memory captured by saveState(): every segment and the heap pointer.
+     * Holding one costs little, since the data-holding segments are shared with memory
+     * copy-on-write (except under a flat storage configuration), and it may be restored
+     * any number of times, or written to a machine state file.  Files mapped by the Mmap
+     * syscall are restored as mappings, but their contents are those of the file, not
+     * those at the time of capture.
+     */
+    public static final class Snapshot {
+        private final MemoryConfiguration configuration;
+        private final SegmentStorage[] segments;
+        private final ProgramStatement[][] textBlockTable;
+        private final ProgramStatement[][] kernelTextBlockTable;
+        private final int heapAddress;
+        private final MappedFileStorage[] mappings; // shared, not copied
+
+        private Snapshot(Memory memory) {
+            configuration = MemoryConfigurations.getCurrentConfiguration();
+            segments = copySegments(memory.segments());
+            textBlockTable = copyTextBlockTable(memory.textBlockTable);
+            kernelTextBlockTable = copyTextBlockTable(memory.kernelTextBlockTable);
+            heapAddress = memory.heapAddress;
+            mappings = memory.mappings;
+        }
+
+        /**
+         * Number of bytes writeState() will write.
+         *
+         * @return length in bytes
+         */
+        public long getStateLength() {
+            long length = 2 * 4; // heap address, segment count
+            for (int i = 0; i < segments.length; i++) {
+                if (isFirstUse(segments, i)) {
+                    int[] addresses = segments[i].blockAddresses();
+                    length += 2 * 4;  // segment index, block count
+                    for (int j = 0; j < addresses.length; j++) {
+                        length += 2 * 4 + 4L * segments[i].blockLength(addresses[j]);
+                    }
+                }
+            }
+            length += 4 + 8L * (countStatements(textBlockTable) + countStatements(kernelTextBlockTable));
+            length += 4;
+            for (int i = 0; i < mappings.length; i++) {
+                length += 5 * 4 + utf8(mappings[i].getFileName()).length;
+            }
+            return length;
+        }
+
+        /**
+         * Write these contents of memory in the form used by machine state files: the
+         * heap pointer, then each 4K byte block of the data-holding segments that has
+         * been written to, then the binary form of every statement in the text segments,
+         * then the name and place of each file mapped by the Mmap syscall.  The contents
+         * of a mapped file are not written, since they live in the file.  Writes exactly
+         * getStateLength() bytes.
+         *
+         * @param buffer buffer to write, positioned where the contents should go
+         */
+        public void writeState(ByteBuffer buffer) {
+            buffer.putInt(heapAddress);
+            int distinct = 0;
+            for (int i = 0; i < segments.length; i++) {
+                if (isFirstUse(segments, i)) {
+                    distinct++;
+                }
+            }
+            buffer.putInt(distinct);
+            int[] words = new int[SegmentStorage.BLOCK_LENGTH_WORDS];
+            for (int i = 0; i < segments.length; i++) {
+                if (isFirstUse(segments, i)) {
+                    int[] addresses = segments[i].blockAddresses();
+                    buffer.putInt(i);
+                    buffer.putInt(addresses.length);
+                    for (int j = 0; j < addresses.length; j++) {
+                        int length = segments[i].blockLength(addresses[j]);
+                        segments[i].fetchBlock(addresses[j], words);
+                        buffer.putInt(addresses[j]);
+                        buffer.putInt(length);
+                        buffer.asIntBuffer().put(words, 0, length);
+                        buffer.position(buffer.position() + 4 * length);
+                    }
+                }
+            }
+            buffer.putInt(countStatements(textBlockTable) + countStatements(kernelTextBlockTable));
+            writeStatements(buffer, textBaseAddress, textBlockTable);
+            writeStatements(buffer, kernelTextBaseAddress, kernelTextBlockTable);
+            buffer.putInt(mappings.length);
+            for (int i = 0; i < mappings.length; i++) {
+                byte[] name = utf8(mappings[i].getFileName());
+                buffer.putInt(mappings[i].getLowAddress());
+                buffer.putInt(mappings[i].getHighAddress() - mappings[i].getLowAddress());
+                buffer.putInt(mappings[i].getFileLength());
+                buffer.putInt(mappings[i].isWritable() ? 1 : 0);
+                buffer.putInt(name.length);
+                buffer.put(name);
+            }
+        }
+    }
+
+    /**
+     * Capture the contents of memory, for a machine snapshot.  This costs time in
+     * proportion to the number of 4K byte pages in use, not to their contents: pages
+     * are shared with the snapshot and copied when next written to.
+     *
+     * @return the snapshot
+     */
+    public Snapshot saveState() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Replace the contents of memory with those captured by saveState().  The snapshot
+     * remains valid and may be restored again.  Observers are not notified.
+     *
+     * @param snapshot the snapshot to restore
+     * @throws IllegalArgumentException if the snapshot was taken under a different memory configuration
+     */
+    public void restoreState(Snapshot snapshot) {
+        if (snapshot.configuration != MemoryConfigurations.getCurrentConfiguration()) {
+            throw new IllegalArgumentException("snapshot was taken under memory configuration "
+                    + snapshot.configuration.getConfigurationName());
+        }
+        SegmentStorage[] segments = copySegments(snapshot.segments);
+        dataSegment = segments[0];
+        kernelDataSegment = segments[1];
+        stackSegment = segments[2];
+        memoryMapSegment = segments[3];
+        textBlockTable = copyTextBlockTable(snapshot.textBlockTable);
+        kernelTextBlockTable = copyTextBlockTable(snapshot.kernelTextBlockTable);
+        heapAddress = snapshot.heapAddress;
+        setMappings(snapshot.mappings);
+        InstructionCache.invalidateAll();
+    }
+
+    private SegmentStorage[] segments() {
+        return new SegmentStorage[]{dataSegment, kernelDataSegment, stackSegment, memoryMapSegment};
+    }
+
+    // Copy each segment's storage once, even where segments share it.
+    private static SegmentStorage[] copySegments(SegmentStorage[] segments) {
+        SegmentStorage[] copies = new SegmentStorage[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            for (int j = 0; j < i && copies[i] == null; j++) {
+                if (segments[j] == segments[i]) {
+                    copies[i] = copies[j];
+                }
+            }
+            if (copies[i] == null) {
+                copies[i] = segments[i].copy();
+            }
+        }
+        return copies;
+    }
+
+    private static ProgramStatement[][] copyTextBlockTable(ProgramStatement[][] table) {
+        ProgramStatement[][] copy = new ProgramStatement[table.length][];
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] != null) {
+                copy[i] = table[i].clone();
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Read contents written by Snapshot.writeState() into memory.  Memory must hold the
+     * program that was running when they were written, freshly assembled under the same
+     * memory configuration: the blocks read replace those written by the assembler, and
+     * any statement whose binary differs from the one read (because the program
+     * modified its own code) is replaced.  Mapped files are mapped again at their old
+     * addresses, so they must still be there, with the same length.  Observers are not
+     * notified.
+     *
+     * @param buffer buffer to read, positioned at the contents
+     * @throws IOException if the contents do not fit this memory configuration, or a
+     *                     mapped file cannot be mapped again
+     */
+    public void readState(ByteBuffer buffer) throws IOException {
+        SegmentStorage[] segments = segments();
+        heapAddress = buffer.getInt();
+        int[] words = new int[SegmentStorage.BLOCK_LENGTH_WORDS];
+        try {
+            for (int distinct = buffer.getInt(); distinct > 0; distinct--) {
+                int index = buffer.getInt();
+                if (index < 0 || index >= segments.length) {
+                    throw new IOException("invalid memory segment " + index);
+                }
+                for (int blocks = buffer.getInt(); blocks > 0; blocks--) {
+                    int address = buffer.getInt();
+                    int length = buffer.getInt();
+                    if (length < 0 || length > words.length) {
+                        throw new IOException("invalid memory block length " + length);
+                    }
+                    buffer.asIntBuffer().get(words, 0, length);
+                    buffer.position(buffer.position() + 4 * length);
+                    for (int i = 0; i < length; i++) {
+                        segments[index].storeWord(address + (i << 2), words[i]);
+                    }
+                }
+            }
+            for (int statements = buffer.getInt(); statements > 0; statements--) {
+                int address = buffer.getInt();
+                int binary = buffer.getInt();
+                ProgramStatement statement = getStatementNoNotify(address);
+                if (statement == null || statement.getBinaryStatement() != binary) {
+                    setStatement(address, new ProgramStatement(binary, address));
+                }
+            }
+            int mapped = buffer.getInt();
+            if (mapped < 0 || mapped > buffer.remaining() / (5 * 4)) {
+                throw new IOException("invalid mapped file count " + mapped);
+            }
+            MappedFileStorage[] restored = new MappedFileStorage[mapped];
+            for (int i = 0; i < restored.length; i++) {
+                restored[i] = readMapping(buffer);
+            }
+            setMappings(restored);
+        } catch (AddressErrorException e) {
+            throw new IOException(e.getMessage() + Binary.intToHexString(e.getAddress()));
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("memory block lies outside memory configuration "
+                    + MemoryConfigurations.getCurrentConfiguration().getConfigurationName());
+        }
+        InstructionCache.invalidateAll();
+    }
+
+    // Map again a file recorded by Snapshot.writeState().
+    private static MappedFileStorage readMapping(ByteBuffer buffer) throws IOException {
+        int address = buffer.getInt();
+        int length = buffer.getInt();
+        int fileLength = buffer.getInt();
+        boolean writable = buffer.getInt() != 0;
+        int nameLength = buffer.getInt();
+        if (nameLength < 0 || nameLength > buffer.remaining() || fileLength < 0 || fileLength > length
+                || length % PagedSegmentStorage.PAGE_LENGTH_BYTES != 0) {
+            throw new IOException("invalid mapped file at " + Binary.intToHexString(address));
+        }
+        byte[] name = new byte[nameLength];
+        buffer.get(name);
+        String fileName = new String(name, StandardCharsets.UTF_8);
+        ByteBuffer contents = SystemIO.mapFile(fileName, writable ? 1 : 0, fileLength);
+        if (contents == null) {
+            throw new IOException(SystemIO.getFileErrorMessage());
+        }
+        if (contents.limit() != fileLength) {
+            throw new IOException("mapped file " + fileName + " has changed length");
+        }
+        return new MappedFileStorage(fileName, address, length, contents, writable);
+    }
+
+    private static byte[] utf8(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // True if no earlier segment shares the given segment's storage.
+    private static boolean isFirstUse(SegmentStorage[] segments, int index) {
+        for (int i = 0; i < index; i++) {
+            if (segments[i] == segments[index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int countStatements(ProgramStatement[][] table) {
+        int count = 0;
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] != null) {
+                for (int j = 0; j < table[i].length; j++) {
+                    if (table[i][j] != null) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private static void writeStatements(ByteBuffer buffer, int baseAddress, ProgramStatement[][] table) {
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] != null) {
+                for (int j = 0; j < table[i].length; j++) {
+                    if (table[i][j] != null) {
+                        buffer.putInt(baseAddress + ((i * TEXT_BLOCK_LENGTH_WORDS + j) << 2));
+                        buffer.putInt(table[i][j].getBinaryStatement());
+                    }
+                }
+            }
+        }
     }
 
     /**
      * Returns the next available word-aligned heap address.  There is no recycling and
-     * no heap management!  There is however nearly 4MB of heap space available in Mars.
+     * no heap management!  The heap grows from the heap base address toward the stack,
+     * and a request fails if it would reach the data segment limit or, in the usual
+     * layout where the stack lies above the heap, the current stack pointer.
      *
      * @param numBytes Number of bytes requested.  Should be multiple of 4, otherwise next higher multiple of 4 allocated.
      * @return address of allocated heap storage.
@@ -350,17 +698,51 @@ public class Memory extends Observable {
         if (numBytes < 0) {
             throw new IllegalArgumentException("request (" + numBytes + ") is negative heap amount");
         }
-        int newHeapAddress = heapAddress + numBytes;
+        // Long arithmetic, since with the page table the limit may be near the top of the int range.
+        long newHeapAddress = (long) heapAddress + numBytes;
         if (newHeapAddress % 4 != 0) {
             newHeapAddress = newHeapAddress + (4 - newHeapAddress % 4); // next higher multiple of 4
         }
-        if (newHeapAddress >= dataSegmentLimitAddress) {
+        int stackPointer = RegisterFile.getValue(RegisterFile.STACK_POINTER_REGISTER);
+        if (newHeapAddress >= dataSegmentLimitAddress
+                || (stackPointer >= heapAddress && newHeapAddress > stackPointer)) {
             throw new IllegalArgumentException("request (" + numBytes + ") exceeds available heap storage");
         }
-        heapAddress = newHeapAddress;
+        heapAddress = (int) newHeapAddress;
         return result;
     }
 
+    /**
+     * Maps the contents of a file into the heap, for the Mmap syscall.  A region of
+     * whole 4K byte pages is allocated from the heap, starting on a page boundary, and
+     * from then on loads and stores in the region read and write the given buffer
+     * rather than simulated memory.  The mapping lasts until memory is next cleared.
+     *
+     * @param fileName name of the file, from which Snapshot.writeState() records the mapping
+     * @param contents the file contents, normally a MappedByteBuffer, from index 0 to its limit
+     * @param writable true to allow stores into the region, false to raise an address exception
+     * @return address of the first byte of the region
+     * @throws IllegalArgumentException if there is not enough heap storage for the region
+     */
+    public int mapFile(String fileName, ByteBuffer contents, boolean writable) throws IllegalArgumentException {
+        int pageLength = PagedSegmentStorage.PAGE_LENGTH_BYTES;
+        int length = (int) (((long) contents.limit() + pageLength - 1) / pageLength * pageLength);
+        int padding = (pageLength - (heapAddress & (pageLength - 1))) & (pageLength - 1);
+        int oldHeapAddress = heapAddress;
+        allocateBytesFromHeap(padding);
+        int address;
+        try {
+            address = allocateBytesFromHeap(length);
+        } catch (IllegalArgumentException e) {
+            heapAddress = oldHeapAddress;
+            throw e;
+        }
+        MappedFileStorage[] newMappings = Arrays.copyOf(mappings, mappings.length + 1);
+        newMappings[mappings.length] = new MappedFileStorage(fileName, address, length, contents, writable);
+        setMappings(newMappings);
+        return address;
+    }
+
 
     /**
      * Set byte order to either LITTLE_ENDIAN or BIG_ENDIAN.  Default is LITTLE_ENDIAN.
@@ -401,16 +783,15 @@ public class Memory extends Observable {
     public int set(int address, int value, int length) throws AddressErrorException {
         int oldValue = 0;
         if (Globals.debug) System.out.println("memory[" + address + "] set to " + value + "(" + length + " bytes)");
-        int relativeByteAddress;
         if (inDataSegment(address)) {
             // in data segment.  Will write one byte at a time, w/o regard to boundaries.
-            relativeByteAddress = address - dataSegmentBaseAddress; // relative to data segment start, in bytes
-            oldValue = storeBytesInTable(dataBlockTable, relativeByteAddress, length, value);
+            // Files mapped by the Mmap syscall lie within it.
+            MappedFileStorage mapping = mappingAt(address);
+            oldValue = (mapping == null) ? dataSegment.store(address, length, value) : mapping.store(address, length, value);
         } else if (address > stackLimitAddress && address <= stackBaseAddress) {
             // in stack.  Handle similarly to data segment write, except relative byte
             // address calculated "backward" because stack addresses grow down from base.
-            relativeByteAddress = stackBaseAddress - address;
-            oldValue = storeBytesInTable(stackBlockTable, relativeByteAddress, length, value);
+            oldValue = stackSegment.store(address, length, value);
         } else if (inTextSegment(address)) {
             // Burch Mod (Jan 2013): replace throw with call to setStatement
             // DPS adaptation 5-Jul-2013: either throw or call, depending on setting
@@ -428,12 +809,10 @@ public class Memory extends Observable {
             }
         } else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
             // memory mapped I/O.
-            relativeByteAddress = address - memoryMapBaseAddress;
-            oldValue = storeBytesInTable(memoryMapBlockTable, relativeByteAddress, length, value);
+            oldValue = memoryMapSegment.store(address, length, value);
         } else if (inKernelDataSegment(address)) {
             // in kernel data segment.  Will write one byte at a time, w/o regard to boundaries.
-            relativeByteAddress = address - kernelDataBaseAddress; // relative to data segment start, in bytes
-            oldValue = storeBytesInTable(kernelDataBlockTable, relativeByteAddress, length, value);
+            oldValue = kernelDataSegment.store(address, length, value);
         } else if (inKernelTextSegment(address)) {
             // DEVELOPER: PLEASE USE setStatement() TO WRITE TO KERNEL TEXT SEGMENT...
             throw new AddressErrorException(
@@ -444,6 +823,9 @@ public class Memory extends Observable {
             throw new AddressErrorException("address out of range ",
                     Exceptions.ADDRESS_EXCEPTION_STORE, address);
         }
+        if (watchpoints != null) {
+            watchpoints.stored(address, length);
+        }
         notifyAnyObservers(AccessNotice.WRITE, address, length, value);
         return oldValue;
     }
@@ -461,20 +843,19 @@ public class Memory extends Observable {
      * @throws AddressErrorException If address is not on word boundary.
      **/
     public int setRawWord(int address, int value) throws AddressErrorException {
-        int relative, oldValue = 0;
+        int oldValue = 0;
         if (address % WORD_LENGTH_BYTES != 0) {
             throw new AddressErrorException("store address not aligned on word boundary ",
                     Exceptions.ADDRESS_EXCEPTION_STORE, address);
         }
         if (inDataSegment(address)) {
-            // in data segment
-            relative = (address - dataSegmentBaseAddress) >> 2; // convert byte address to words
-            oldValue = storeWordInTable(dataBlockTable, relative, value);
+            // in data segment, or a file mapped within it by the Mmap syscall
+            MappedFileStorage mapping = mappingAt(address);
+            oldValue = (mapping == null) ? dataSegment.storeWord(address, value) : mapping.storeWord(address, value);
         } else if (address > stackLimitAddress && address <= stackBaseAddress) {
             // in stack.  Handle similarly to data segment write, except relative
             // address calculated "backward" because stack addresses grow down from base.
-            relative = (stackBaseAddress - address) >> 2; // convert byte address to words
-            oldValue = storeWordInTable(stackBlockTable, relative, value);
+            oldValue = stackSegment.storeWord(address, value);
         } else if (inTextSegment(address)) {
             // Burch Mod (Jan 2013): replace throw with call to setStatement
             // DPS adaptation 5-Jul-2013: either throw or call, depending on setting
@@ -491,12 +872,10 @@ public class Memory extends Observable {
             }
         } else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
             // memory mapped I/O.
-            relative = (address - memoryMapBaseAddress) >> 2; // convert byte address to word
-            oldValue = storeWordInTable(memoryMapBlockTable, relative, value);
+            oldValue = memoryMapSegment.storeWord(address, value);
         } else if (inKernelDataSegment(address)) {
             // in data segment
-            relative = (address - kernelDataBaseAddress) >> 2; // convert byte address to words
-            oldValue = storeWordInTable(kernelDataBlockTable, relative, value);
+            oldValue = kernelDataSegment.storeWord(address, value);
         } else if (inKernelTextSegment(address)) {
             // DEVELOPER: PLEASE USE setStatement() TO WRITE TO KERNEL TEXT SEGMENT...
             throw new AddressErrorException(
@@ -507,9 +886,12 @@ public class Memory extends Observable {
             throw new AddressErrorException("store address out of range ",
                     Exceptions.ADDRESS_EXCEPTION_STORE, address);
         }
+        if (watchpoints != null) {
+            watchpoints.stored(address, WORD_LENGTH_BYTES);
+        }
         notifyAnyObservers(AccessNotice.WRITE, address, WORD_LENGTH_BYTES, value);
         if (Globals.getSettings().getBackSteppingEnabled()) {
-            Globals.program.getBackStepper().addMemoryRestoreRawWord(address, oldValue);
+            SimulatorContext.current().getProgram().getBackStepper().addMemoryRestoreRawWord(address, oldValue);
         }
         return oldValue;
     }
@@ -532,7 +914,7 @@ public class Memory extends Observable {
                     Exceptions.ADDRESS_EXCEPTION_STORE, address);
         }
         return (Globals.getSettings().getBackSteppingEnabled())
-                ? Globals.program.getBackStepper().addMemoryRestoreWord(address, set(address, value, WORD_LENGTH_BYTES))
+                ? SimulatorContext.current().getProgram().getBackStepper().addMemoryRestoreWord(address, set(address, value, WORD_LENGTH_BYTES))
                 : set(address, value, WORD_LENGTH_BYTES);
     }
 
@@ -554,7 +936,7 @@ public class Memory extends Observable {
                     Exceptions.ADDRESS_EXCEPTION_STORE, address);
         }
         return (Globals.getSettings().getBackSteppingEnabled())
-                ? Globals.program.getBackStepper().addMemoryRestoreHalf(address, set(address, value, 2))
+                ? SimulatorContext.current().getProgram().getBackStepper().addMemoryRestoreHalf(address, set(address, value, 2))
                 : set(address, value, 2);
     }
 
@@ -570,7 +952,7 @@ public class Memory extends Observable {
 
     public int setByte(int address, int value) throws AddressErrorException {
         return (Globals.getSettings().getBackSteppingEnabled())
-                ? Globals.program.getBackStepper().addMemoryRestoreByte(address, set(address, value, 1))
+                ? SimulatorContext.current().getProgram().getBackStepper().addMemoryRestoreByte(address, set(address, value, 1))
                 : set(address, value, 1);
     }
 
@@ -615,6 +997,7 @@ public class Memory extends Observable {
         if (Globals.debug) System.out.println("memory[" + address + "] set to " + statement.getBinaryStatement());
         if (inTextSegment(address)) {
             storeProgramStatement(address, statement, textBaseAddress, textBlockTable);
+            InstructionCache.invalidate(address);
         } else {
             storeProgramStatement(address, statement, kernelTextBaseAddress, kernelTextBlockTable);
         }
@@ -642,19 +1025,17 @@ public class Memory extends Observable {
     // Does the real work, but includes option to NOT notify observers.
     private int get(int address, int length, boolean notify) throws AddressErrorException {
         int value = 0;
-        int relativeByteAddress;
         if (inDataSegment(address)) {
             // in data segment.  Will read one byte at a time, w/o regard to boundaries.
-            relativeByteAddress = address - dataSegmentBaseAddress; // relative to data segment start, in bytes
-            value = fetchBytesFromTable(dataBlockTable, relativeByteAddress, length);
+            // Files mapped by the Mmap syscall lie within it.
+            MappedFileStorage mapping = mappingAt(address);
+            value = (mapping == null) ? dataSegment.fetch(address, length) : mapping.fetch(address, length);
         } else if (address > stackLimitAddress && address <= stackBaseAddress) {
             // in stack. Similar to data, except relative address computed "backward"
-            relativeByteAddress = stackBaseAddress - address;
-            value = fetchBytesFromTable(stackBlockTable, relativeByteAddress, length);
+            value = stackSegment.fetch(address, length);
         } else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
             // memory mapped I/O.
-            relativeByteAddress = address - memoryMapBaseAddress;
-            value = fetchBytesFromTable(memoryMapBlockTable, relativeByteAddress, length);
+            value = memoryMapSegment.fetch(address, length);
         } else if (inTextSegment(address)) {
             // Burch Mod (Jan 2013): replace throw with calls to getStatementNoNotify & getBinaryStatement
             // DPS adaptation 5-Jul-2013: either throw or call, depending on setting
@@ -668,8 +1049,7 @@ public class Memory extends Observable {
             }
         } else if (inKernelDataSegment(address)) {
             // in kernel data segment.  Will read one byte at a time, w/o regard to boundaries.
-            relativeByteAddress = address - kernelDataBaseAddress; // relative to data segment start, in bytes
-            value = fetchBytesFromTable(kernelDataBlockTable, relativeByteAddress, length);
+            value = kernelDataSegment.fetch(address, length);
         } else if (inKernelTextSegment(address)) {
             // DEVELOPER: PLEASE USE getStatement() TO READ FROM KERNEL TEXT SEGMENT...
             throw new AddressErrorException(
@@ -704,23 +1084,20 @@ public class Memory extends Observable {
     // I decided to keep the duplicate logic.
     public int getRawWord(int address) throws AddressErrorException {
         int value = 0;
-        int relative;
         if (address % WORD_LENGTH_BYTES != 0) {
             throw new AddressErrorException("address for fetch not aligned on word boundary",
                     Exceptions.ADDRESS_EXCEPTION_LOAD, address);
         }
         if (inDataSegment(address)) {
-            // in data segment
-            relative = (address - dataSegmentBaseAddress) >> 2; // convert byte address to words
-            value = fetchWordFromTable(dataBlockTable, relative);
+            // in data segment, or a file mapped within it by the Mmap syscall
+            MappedFileStorage mapping = mappingAt(address);
+            value = (mapping == null) ? dataSegment.fetchWord(address) : mapping.fetchWord(address);
         } else if (address > stackLimitAddress && address <= stackBaseAddress) {
             // in stack. Similar to data, except relative address computed "backward"
-            relative = (stackBaseAddress - address) >> 2; // convert byte address to words
-            value = fetchWordFromTable(stackBlockTable, relative);
+            value = stackSegment.fetchWord(address);
         } else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
             // memory mapped I/O.
-            relative = (address - memoryMapBaseAddress) >> 2;
-            value = fetchWordFromTable(memoryMapBlockTable, relative);
+            value = memoryMapSegment.fetchWord(address);
         } else if (inTextSegment(address)) {
             // Burch Mod (Jan 2013): replace throw with calls to getStatementNoNotify & getBinaryStatement
             // DPS adaptation 5-Jul-2013: either throw or call, depending on setting
@@ -734,8 +1111,7 @@ public class Memory extends Observable {
             }
         } else if (inKernelDataSegment(address)) {
             // in kernel data segment
-            relative = (address - kernelDataBaseAddress) >> 2; // convert byte address to words
-            value = fetchWordFromTable(kernelDataBlockTable, relative);
+            value = kernelDataSegment.fetchWord(address);
         } else if (inKernelTextSegment(address)) {
             // DEVELOPER: PLEASE USE getStatement() TO READ FROM KERNEL TEXT SEGMENT...
             throw new AddressErrorException(
@@ -774,19 +1150,17 @@ public class Memory extends Observable {
     // See note above, with getRawWord(), concerning duplicated logic.
     public Integer getRawWordOrNull(int address) throws AddressErrorException {
         Integer value = null;
-        int relative;
         if (address % WORD_LENGTH_BYTES != 0) {
             throw new AddressErrorException("address for fetch not aligned on word boundary",
                     Exceptions.ADDRESS_EXCEPTION_LOAD, address);
         }
         if (inDataSegment(address)) {
-            // in data segment
-            relative = (address - dataSegmentBaseAddress) >> 2; // convert byte address to words
-            value = fetchWordOrNullFromTable(dataBlockTable, relative);
+            // in data segment, or a file mapped within it by the Mmap syscall
+            MappedFileStorage mapping = mappingAt(address);
+            value = (mapping == null) ? dataSegment.fetchWordOrNull(address) : mapping.fetchWordOrNull(address);
         } else if (address > stackLimitAddress && address <= stackBaseAddress) {
             // in stack. Similar to data, except relative address computed "backward"
-            relative = (stackBaseAddress - address) >> 2; // convert byte address to words
-            value = fetchWordOrNullFromTable(stackBlockTable, relative);
+            value = stackSegment.fetchWordOrNull(address);
         } else if (inTextSegment(address) || inKernelTextSegment(address)) {
             try {
                 value = (getStatementNoNotify(address) == null) ? null : new Integer(getStatementNoNotify(address).getBinaryStatement());
@@ -795,8 +1169,7 @@ public class Memory extends Observable {
             }
         } else if (inKernelDataSegment(address)) {
             // in kernel data segment
-            relative = (address - kernelDataBaseAddress) >> 2; // convert byte address to words
-            value = fetchWordOrNullFromTable(kernelDataBlockTable, relative);
+            value = kernelDataSegment.fetchWordOrNull(address);
         } else {
             // falls outside Mars addressing range
             throw new AddressErrorException("address out of range ", Exceptions.ADDRESS_EXCEPTION_LOAD, address);
@@ -897,6 +1270,110 @@ public class Memory extends Observable {
         return get(address, 1);
     }
 
+    ///////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Copies a range of Memory bytes into an array.  Bytes in the data segment, stack,
+     * kernel data segment and memory mapped I/O are copied straight from their storage,
+     * a block at a time, and observers are sent a single notice covering the whole range
+     * rather than one per byte.  Intended for syscalls that transfer buffers and strings.
+     *
+     * @param address Address of the first Memory byte to be read.
+     * @param bytes   Array to receive the bytes.
+     * @param offset  Index in the array of the first byte.
+     * @param length  Number of bytes to read.
+     * @throws AddressErrorException If any byte of the range is outside the readable segments.
+     **/
+    public void readBytes(int address, byte[] bytes, int offset, int length) throws AddressErrorException {
+        int done = 0;
+        try {
+            while (done < length) {
+                done += transfer(address + done, bytes, offset + done, length - done, false);
+            }
+        } finally {
+            notifyRange(AccessNotice.READ, address, bytes, offset, done);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Copies bytes from an array into a range of Memory, the counterpart of readBytes().
+     * Watchpoints and back stepping see the range just as they would the equivalent
+     * sequence of setByte() calls, but observers are sent a single notice.
+     *
+     * @param address Address of the first Memory byte to be set.
+     * @param bytes   Array holding the bytes.
+     * @param offset  Index in the array of the first byte.
+     * @param length  Number of bytes to write.
+     * @throws AddressErrorException If any byte of the range is outside the writable segments.
+     **/
+    public void writeBytes(int address, byte[] bytes, int offset, int length) throws AddressErrorException {
+        int done = 0;
+        try {
+            while (done < length) {
+                done += transfer(address + done, bytes, offset + done, length - done, true);
+            }
+        } finally {
+            if (done > 0 && watchpoints != null) {
+                watchpoints.stored(address, done);
+            }
+            notifyRange(AccessNotice.WRITE, address, bytes, offset, done);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Reads the null-terminated string starting at the given address.  The terminating
+     * null is found by scanning storage a word at a time, and each byte becomes the
+     * char of the same value, as for getByte().  Observers are sent a single notice
+     * covering the string and its terminating null.
+     *
+     * @param address Address of the first byte of the string.
+     * @return the string, without its terminating null.
+     * @throws AddressErrorException If the string runs outside the readable segments
+     *                               before a null byte is found.
+     **/
+    public String readCString(int address) throws AddressErrorException {
+        byte[] bytes = new byte[64];
+        int length = 0;
+        boolean terminated = false;
+        try {
+            while (!terminated) {
+                int current = address + length;
+                // search to the end of the 4K block, so a long string is not scanned twice
+                int count = 4096 - (current & 4095);
+                Storage storage = storageFor(current);
+                if (storage != null) {
+                    count = (int) Math.min(count, segmentEnd(current) - current);
+                    int found = storage.findNull(current, count);
+                    terminated = found < count;
+                    count = found;
+                } else {
+                    terminated = get(current, 1, false) == 0;
+                    count = terminated ? 0 : 1;
+                }
+                if (length + count + 1 > bytes.length) {
+                    bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, length + count + 1));
+                }
+                if (storage != null) {
+                    storage.fetchBytes(current, bytes, length, count);
+                } else if (count > 0) {
+                    bytes[length] = (byte) get(current, 1, false);
+                }
+                length += count;
+            }
+        } finally {
+            notifyRange(AccessNotice.READ, address, bytes, 0, terminated ? length + 1 : length);
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) (bytes[i] & 0xFF);
+        }
+        return new String(chars);
+    }
+
     ////////////////////////////////////////////////////////////////////////////////
 
     /**
@@ -976,6 +1453,21 @@ public class Memory extends Observable {
     }
 
 
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Notify observers of an instruction fetch that was satisfied without calling
+     * getStatement(), e.g. by the simulator's InstructionCache.  Observers receive the
+     * same notice getStatement() would have sent.
+     *
+     * @param address         address of the fetched instruction
+     * @param binaryStatement binary machine code of the fetched instruction
+     */
+    public void notifyInstructionFetch(int address, int binaryStatement) {
+        notifyAnyObservers(AccessNotice.READ, address, Instruction.INSTRUCTION_LENGTH, binaryStatement);
+    }
+
+
     /*********************************  THE UTILITIES  *************************************/
 
     /**
@@ -1149,6 +1641,17 @@ public class Memory extends Observable {
                     Exceptions.ADDRESS_EXCEPTION_LOAD, startAddr);
         }
         observables.add(new MemoryObservable(obs, startAddr, endAddr));
+        reindexObservers();
+    }
+
+    /**
+     * Set the watchpoints to be told of every store into memory.  The Simulator sets
+     * them for the duration of a run.
+     *
+     * @param watchpoints the watchpoints, or null for none
+     */
+    public void setWatchpoints(Breakpoints watchpoints) {
+        this.watchpoints = watchpoints;
     }
 
     /**
@@ -1164,10 +1667,17 @@ public class Memory extends Observable {
      * @param obs Observer to be removed
      */
     public void deleteObserver(Observer obs) {
-        Iterator it = observables.iterator();
-        while (it.hasNext()) {
-            ((MemoryObservable) it.next()).deleteObserver(obs);
+        synchronized (observables) {
+            Iterator it = observables.iterator();
+            while (it.hasNext()) {
+                MemoryObservable mo = (MemoryObservable) it.next();
+                mo.deleteObserver(obs);
+                if (mo.countObservers() == 0) {
+                    it.remove(); // no longer observed, so no longer worth matching
+                }
+            }
         }
+        reindexObservers();
     }
 
     /**
@@ -1176,6 +1686,7 @@ public class Memory extends Observable {
     public void deleteObservers() {
         // just drop the collection
         observables = getNewMemoryObserversCollection();
+        reindexObservers();
     }
 
     /**
@@ -1205,6 +1716,21 @@ public class Memory extends Observable {
         return new Vector();  // Vectors are thread-safe
     }
 
+    // Replace the observer index with one built from the current collection.
+    private void reindexObservers() {
+        synchronized (observables) {
+            Object[] items = observables.toArray();
+            int[] lows = new int[items.length];
+            int[] highs = new int[items.length];
+            for (int i = 0; i < items.length; i++) {
+                MemoryObservable mo = (MemoryObservable) items[i];
+                lows[i] = mo.lowAddress;
+                highs[i] = mo.highAddress - 1 + WORD_LENGTH_BYTES; // last byte of last word, as in match()
+            }
+            observerIndex = MemoryObserverIndex.build(items, lows, highs);
+        }
+    }
+
     /////////////////////////////////////////////////////////////////////////
     // Private class whose objects will represent an observable-observer pair
     // for a given memory address or range.
@@ -1254,181 +1780,140 @@ public class Memory extends Observable {
     //
     // The "|| Globals.getGui()==null" is a hack added 19 July 2012 DPS.  IF MIPS simulation
     // is from command mode, Globals.program is null but still want ability to observe.
+    //
+    // The index lookup comes first so that an access nobody observes costs only a binary
+    // search and allocates nothing.  Notices are immutable, so observables matching the
+    // same access share one.
     private void notifyAnyObservers(int type, int address, int length, int value) {
-        if ((Globals.program != null || Globals.getGui() == null) && this.observables.size() > 0) {
-            Iterator it = this.observables.iterator();
-            MemoryObservable mo;
-            while (it.hasNext()) {
-                mo = (MemoryObservable) it.next();
-                if (mo.match(address)) {
-                    mo.notifyObserver(new MemoryAccessNotice(type, address, length, value));
-                }
+        Object[] matches = observerIndex.find(address);
+        if (matches != null && (SimulatorContext.current().getProgram() != null || Globals.getGui() == null)) {
+            MemoryAccessNotice notice = new MemoryAccessNotice(type, address, length, value);
+            for (int i = 0; i < matches.length; i++) {
+                ((MemoryObservable) matches[i]).notifyObserver(notice);
             }
         }
     }
 
-    ////////////////////////////////////////////////////////////////////////////////
-    //
-    // Helper method to store 1, 2 or 4 byte value in table that represents MIPS
-    // memory. Originally used just for data segment, but now also used for stack.
-    // Both use different tables but same storage method and same table size
-    // and block size.
-    // Modified 29 Dec 2005 to return old value of replaced bytes.
-    //
-    private static final boolean STORE = true;
-    private static final boolean FETCH = false;
-
-    private int storeBytesInTable(int[][] blockTable,
-                                  int relativeByteAddress, int length, int value) {
-        return storeOrFetchBytesInTable(blockTable, relativeByteAddress, length, value, STORE);
-    }
-
-    ////////////////////////////////////////////////////////////////////////////////
-    //
-    // Helper method to fetch 1, 2 or 4 byte value from table that represents MIPS
-    // memory.  Originally used just for data segment, but now also used for stack.
-    // Both use different tables but same storage method and same table size
-    // and block size.
-    //
-
-    private int fetchBytesFromTable(int[][] blockTable, int relativeByteAddress, int length) {
-        return storeOrFetchBytesInTable(blockTable, relativeByteAddress, length, 0, FETCH);
-    }
-
-    ////////////////////////////////////////////////////////////////////////////////
-    //
-    // The helper's helper.  Works for either storing or fetching, little or big endian.
-    // When storing/fetching bytes, most of the work is calculating the correct array element(s)
-    // and element byte(s).  This method performs either store or fetch, as directed by its
-    // client using STORE or FETCH in last arg.
-    // Modified 29 Dec 2005 to return old value of replaced bytes, for STORE.
-    //
-    private synchronized int storeOrFetchBytesInTable(int[][] blockTable,
-                                                      int relativeByteAddress, int length, int value, boolean op) {
-        int relativeWordAddress, block, offset, bytePositionInMemory, bytePositionInValue;
-        int oldValue = 0; // for STORE, return old values of replaced bytes
-        int loopStopper = 3 - length;
-        // IF added DPS 22-Dec-2008. NOTE: has NOT been tested with Big-Endian.
-        // Fix provided by Saul Spatz; comments that follow are his.
-        // If address in stack segment is 4k + m, with 0 < m < 4, then the
-        // relativeByteAddress we want is stackBaseAddress - 4k + m, but the
-        // address actually passed in is stackBaseAddress - (4k + m), so we
-        // need to add 2m.  Because of the change in sign, we get the
-        // expression 4-delta below in place of m.
-        if (blockTable == stackBlockTable) {
-            int delta = relativeByteAddress % 4;
-            if (delta != 0) {
-                relativeByteAddress += (4 - delta) << 1;
+    ///////////////////////////////////////////////////////////////////////
+    // Mapped file holding the given address, or null if none.
+    private MappedFileStorage mappingAt(int address) {
+        if (address >= mappedLow && address < mappedHigh) {
+            for (int i = 0; i < mappings.length; i++) {
+                if (mappings[i].contains(address)) {
+                    return mappings[i];
+                }
             }
         }
-        for (bytePositionInValue = 3; bytePositionInValue > loopStopper; bytePositionInValue--) {
-            bytePositionInMemory = relativeByteAddress % 4;
-            relativeWordAddress = relativeByteAddress >> 2;
-            block = relativeWordAddress / BLOCK_LENGTH_WORDS;  // Block number
-            offset = relativeWordAddress % BLOCK_LENGTH_WORDS; // Word within that block
-            if (blockTable[block] == null) {
-                if (op == STORE)
-                    blockTable[block] = new int[BLOCK_LENGTH_WORDS];
-                else
-                    return 0;
+        return null;
+    }
+
+    // Replace the mapped files, and recompute the range they span.
+    private void setMappings(MappedFileStorage[] newMappings) {
+        int low = 0;
+        int high = 0;
+        for (int i = 0; i < newMappings.length; i++) {
+            if (i == 0 || newMappings[i].getLowAddress() < low) {
+                low = newMappings[i].getLowAddress();
             }
-            if (byteOrder == LITTLE_ENDIAN) bytePositionInMemory = 3 - bytePositionInMemory;
-            if (op == STORE) {
-                oldValue = replaceByte(blockTable[block][offset], bytePositionInMemory,
-                        oldValue, bytePositionInValue);
-                blockTable[block][offset] = replaceByte(value, bytePositionInValue,
-                        blockTable[block][offset], bytePositionInMemory);
-            } else {// op == FETCH
-                value = replaceByte(blockTable[block][offset], bytePositionInMemory,
-                        value, bytePositionInValue);
+            if (i == 0 || newMappings[i].getHighAddress() > high) {
+                high = newMappings[i].getHighAddress();
             }
-            relativeByteAddress++;
         }
-        return (op == STORE) ? oldValue : value;
+        mappings = newMappings;
+        mappedLow = low;
+        mappedHigh = high;
     }
 
-    ////////////////////////////////////////////////////////////////////////////////
-    //
-    // Helper method to store 4 byte value in table that represents MIPS memory.
-    // Originally used just for data segment, but now also used for stack.
-    // Both use different tables but same storage method and same table size
-    // and block size.  Assumes address is word aligned, no endian processing.
-    // Modified 29 Dec 2005 to return overwritten value.
-
-    private synchronized int storeWordInTable(int[][] blockTable, int relative, int value) {
-        int block, offset, oldValue;
-        block = relative / BLOCK_LENGTH_WORDS;
-        offset = relative % BLOCK_LENGTH_WORDS;
-        if (blockTable[block] == null) {
-            // First time writing to this block, so allocate the space.
-            blockTable[block] = new int[BLOCK_LENGTH_WORDS];
-        }
-        oldValue = blockTable[block][offset];
-        blockTable[block][offset] = value;
-        return oldValue;
+    ///////////////////////////////////////////////////////////////////////
+    // Storage holding the given address, or null if it is not in the data segment,
+    // stack, memory mapped I/O or kernel data segment.  Tests are made in the same
+    // order as get() and set().
+    private Storage storageFor(int address) {
+        MappedFileStorage mapping = mappingAt(address);
+        if (mapping != null) {
+            return mapping;
+        } else if (inDataSegment(address)) {
+            return dataSegment;
+        } else if (address > stackLimitAddress && address <= stackBaseAddress) {
+            return stackSegment;
+        } else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
+            return memoryMapSegment;
+        } else if (!inTextSegment(address) && inKernelDataSegment(address)) {
+            return kernelDataSegment;
+        }
+        return null;
     }
 
-    ////////////////////////////////////////////////////////////////////////////////
-    //
-    // Helper method to fetch 4 byte value from table that represents MIPS memory.
-    // Originally used just for data segment, but now also used for stack.
-    // Both use different tables but same storage method and same table size
-    // and block size.  Assumes word alignment, no endian processing.
-    //
+    // First address past the segment returned by storageFor(address).
+    private long segmentEnd(int address) {
+        MappedFileStorage mapping = mappingAt(address);
+        if (mapping != null) {
+            return mapping.getHighAddress();
+        } else if (inDataSegment(address)) {
+            long end = dataSegmentLimitAddress;
+            for (int i = 0; i < mappings.length; i++) { // stop short of the next mapped file
+                if (mappings[i].getLowAddress() > address) {
+                    end = Math.min(end, mappings[i].getLowAddress());
+                }
+            }
+            return end;
+        } else if (address > stackLimitAddress && address <= stackBaseAddress) {
+            return (long) stackBaseAddress + 1;
+        } else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
+            return memoryMapLimitAddress;
+        }
+        return kernelDataSegmentLimitAddress;
+    }
 
-    private synchronized int fetchWordFromTable(int[][] blockTable, int relative) {
-        int value = 0;
-        int block, offset;
-        block = relative / BLOCK_LENGTH_WORDS;
-        offset = relative % BLOCK_LENGTH_WORDS;
-        if (blockTable[block] == null) {
-            // first reference to an address in this block.  Assume initialized to 0.
-            value = 0;
+    // Transfer bytes between Memory and the array, starting at the given address, for
+    // readBytes() and writeBytes().  Copies as much of the range as lies in one segment,
+    // or a single byte through get() or setByte() if the address is in the text segment
+    // or out of range.  Returns the number of bytes transferred.
+    private int transfer(int address, byte[] bytes, int offset, int length, boolean store)
+            throws AddressErrorException {
+        Storage storage = storageFor(address);
+        if (storage == null) {
+            if (store) {
+                setByte(address, bytes[offset]);
+            } else {
+                bytes[offset] = (byte) get(address, 1, false);
+            }
+            return 1;
+        }
+        int count = (int) Math.min(length, segmentEnd(address) - address);
+        if (store) {
+            if (Globals.getSettings().getBackSteppingEnabled()) {
+                byte[] old = new byte[count];
+                storage.fetchBytes(address, old, 0, count);
+                for (int i = 0; i < count; i++) {
+                    SimulatorContext.current().getProgram().getBackStepper().addMemoryRestoreByte(address + i, old[i] & 0xFF);
+                }
+            }
+            storage.storeBytes(address, bytes, offset, count);
         } else {
-            value = blockTable[block][offset];
+            storage.fetchBytes(address, bytes, offset, count);
         }
-        return value;
+        return count;
     }
 
-    ////////////////////////////////////////////////////////////////////////////////
-    //
-    // Helper method to fetch 4 byte value from table that represents MIPS memory.
-    // Originally used just for data segment, but now also used for stack.
-    // Both use different tables but same storage method and same table size
-    // and block size.  Assumes word alignment, no endian processing.
-    //
-    // This differs from "fetchWordFromTable()" in that it returns an Integer and
-    // returns null instead of 0 if the 4K table has not been allocated.  Developed
-    // by Greg Gibeling of UC Berkeley, fall 2007.
-    //
-
-    private synchronized Integer fetchWordOrNullFromTable(int[][] blockTable, int relative) {
-        int value = 0;
-        int block, offset;
-        block = relative / BLOCK_LENGTH_WORDS;
-        offset = relative % BLOCK_LENGTH_WORDS;
-        if (blockTable[block] == null) {
-            // first reference to an address in this block.  Assume initialized to 0.
-            return null;
-        } else {
-            value = blockTable[block][offset];
-        }
-        return new Integer(value);
-    }
-
-    ////////////////////////////////////////////////////////////////////////////////////
-    // Returns result of substituting specified byte of source value into specified byte
-    // of destination value. Byte positions are 0-1-2-3, listed from most to least
-    // significant.  No endian issues.  This is a private helper method used by get() & set().
-    private int replaceByte(int sourceValue, int bytePosInSource, int destValue, int bytePosInDest) {
-        return
-                // Set source byte value into destination byte position; set other 24 bits to 0's...
-                ((sourceValue >> (24 - (bytePosInSource << 3)) & 0xFF)
-                        << (24 - (bytePosInDest << 3)))
-                        // and bitwise-OR it with...
-                        |
-                        // Set 8 bits in destination byte position to 0's, other 24 bits are unchanged.
-                        (destValue & ~(0xFF << (24 - (bytePosInDest << 3))));
+    // Send one notice covering a range transferred by readBytes(), writeBytes() or
+    // readCString().  Its value holds the first (up to) four bytes, the first in the low
+    // order byte as with get().
+    private void notifyRange(int type, int address, byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            return;
+        }
+        Object[] matches = observerIndex.find(address, address + length - 1);
+        if (matches != null && (SimulatorContext.current().getProgram() != null || Globals.getGui() == null)) {
+            int value = 0;
+            for (int i = Math.min(length, WORD_LENGTH_BYTES) - 1; i >= 0; i--) {
+                value = (value << 8) | (bytes[offset + i] & 0xFF);
+            }
+            MemoryAccessNotice notice = new MemoryAccessNotice(type, address, length, value);
+            for (int i = 0; i < matches.length; i++) {
+                ((MemoryObservable) matches[i]).notifyObserver(notice);
+            }
+        }
     }
 
     ///////////////////////////////////////////////////////////////////////
@@ -4,6 +4,8 @@ package mars.mips.hardware;
 /**
  * Object provided to Observers of runtime access to MIPS memory.
  * Observer can get the access type (R/W), address and length in bytes (4,2,1).
+ * A bulk transfer by a syscall is reported as one notice covering the whole range,
+ * which may be longer than a word; see getWordNotices().
  *
  * @author Pete Sanderson
  * @version July 2005
@@ -44,7 +46,8 @@ public class MemoryAccessNotice extends AccessNotice {
     }
 
     /**
-     * Fetch the length in bytes of the access operation (4,2,1).
+     * Fetch the length in bytes of the access operation (4,2,1), or of the whole
+     * range for a bulk transfer.
      */
     public int getLength() {
         return length;
@@ -57,6 +60,42 @@ public class MemoryAccessNotice extends AccessNotice {
         return value;
     }
 
+    /**
+     * Whether this notice covers bytes in more than one word, as can happen for a bulk
+     * transfer by a syscall.
+     *
+     * @return true if the access spans a word boundary
+     */
+    public boolean spansWords() {
+        return (address & (Memory.WORD_LENGTH_BYTES - 1)) + length > Memory.WORD_LENGTH_BYTES;
+    }
+
+    /**
+     * Split this notice into one notice per word it touches, in ascending address order,
+     * for observers that count or display accesses by word.  Each has the word's address,
+     * a length of 4 and the word's current value.  Observers see the same accesses as if
+     * the range had been transferred a word at a time.  Call it from the observer's
+     * update(), so the new notices come from the same thread as this one.
+     *
+     * @return notices for each word in the range
+     */
+    public MemoryAccessNotice[] getWordNotices() {
+        int first = address & ~(Memory.WORD_LENGTH_BYTES - 1);
+        int last = (address + length - 1) & ~(Memory.WORD_LENGTH_BYTES - 1);
+        MemoryAccessNotice[] notices = new MemoryAccessNotice[(last - first) / Memory.WORD_LENGTH_BYTES + 1];
+        for (int i = 0; i < notices.length; i++) {
+            int word = first + i * Memory.WORD_LENGTH_BYTES;
+            int wordValue;
+            try {
+                wordValue = Memory.getInstance().getWordNoNotify(word);
+            } catch (AddressErrorException e) {
+                wordValue = 0;
+            }
+            notices[i] = new MemoryAccessNotice(getAccessType(), word, Memory.WORD_LENGTH_BYTES, wordValue);
+        }
+        return notices;
+    }
+
     /**
      * String representation indicates access type, address and length in bytes
      */
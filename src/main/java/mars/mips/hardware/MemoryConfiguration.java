@@ -46,13 +46,20 @@ public class MemoryConfiguration {
     private final String configurationName;
     private final String[] configurationItemNames;
     private final int[] configurationItemValues;
+    // If true, data segments are held in flat arrays rather than block tables (see Memory)
+    private final boolean flatStorage;
 
 
     public MemoryConfiguration(String ident, String name, String[] items, int[] values) {
+        this(ident, name, items, values, false);
+    }
+
+    public MemoryConfiguration(String ident, String name, String[] items, int[] values, boolean flatStorage) {
         this.configurationIdentifier = ident;
         this.configurationName = name;
         this.configurationItemNames = items;
         this.configurationItemValues = values;
+        this.flatStorage = flatStorage;
     }
 
     public String getConfigurationIdentifier() {
@@ -71,6 +78,17 @@ public class MemoryConfiguration {
         return configurationItemNames;
     }
 
+    /**
+     * Whether the data, kernel data, stack and memory mapped I/O segments are each
+     * allocated as one flat array instead of a table of 4K blocks allocated on demand.
+     * Flat storage is faster to access but allocates every segment in full up front.
+     *
+     * @return true if this configuration uses flat segment storage
+     */
+    public boolean usesFlatStorage() {
+        return flatStorage;
+    }
+
     public int getTextBaseAddress() {
         return configurationItemValues[0];
     }
@@ -163,6 +163,7 @@ public class MemoryConfigurations {
         if (configurations == null) {
             configurations = new ArrayList();
             configurations.add(new MemoryConfiguration("Default", "Default", configurationItemNames, defaultConfigurationItemValues));
+            configurations.add(new MemoryConfiguration("DefaultFlat", "Default, Flat Storage", configurationItemNames, defaultConfigurationItemValues, true));
             configurations.add(new MemoryConfiguration("CompactDataAtZero", "Compact, Data at Address 0", configurationItemNames, dataBasedCompactConfigurationItemValues));
             configurations.add(new MemoryConfiguration("CompactTextAtZero", "Compact, Text at Address 0", configurationItemNames, textBasedCompactConfigurationItemValues));
             defaultConfiguration = (MemoryConfiguration) configurations.get(0);
@@ -219,7 +220,7 @@ public class MemoryConfigurations {
             return false;
         if (config != currentConfiguration) {
             currentConfiguration = config;
-            Globals.memory.clear();
+            Memory.getInstance().clear();
             RegisterFile.getUserRegister("$gp").changeResetValue(config.getGlobalPointer());
             RegisterFile.getUserRegister("$sp").changeResetValue(config.getStackPointer());
             RegisterFile.getProgramCounterRegister().changeResetValue(config.getTextBaseAddress());
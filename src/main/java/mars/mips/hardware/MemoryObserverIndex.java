@@ -0,0 +1,169 @@
+package mars.mips.hardware;
+
+import java.util.Arrays;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Immutable index from memory address to the observables whose address ranges include
+ * it, used by Memory to deliver access notices without scanning every registered
+ * observable.  The registered ranges are cut at each of their end points into
+ * elementary intervals, each of which is covered by the same observables throughout.
+ * A lookup is then a binary search of the interval start addresses.
+ * <p>
+ * Ranges are added and removed rarely (when a tool or window connects or disconnects),
+ * so rather than updating in place Memory builds a new index each time and replaces
+ * the old one.  Lookups made by the simulation thread thus never need a lock.
+ */
+
+class MemoryObserverIndex {
+    /**
+     * Index with no ranges.
+     */
+    static final MemoryObserverIndex EMPTY = new MemoryObserverIndex(new long[0], new Object[0][]);
+
+    // Interval i runs from starts[i] up to but not including starts[i+1].  Addresses
+    // are kept as longs so that the end of a range reaching 0xffffffff does not wrap.
+    private final long[] starts;
+    private final Object[][] covering;
+
+    private MemoryObserverIndex(long[] starts, Object[][] covering) {
+        this.starts = starts;
+        this.covering = covering;
+    }
+
+    /**
+     * Build an index over the given items.  Item i covers addresses lows[i] through
+     * highs[i] inclusive, and items covering the same address are returned in the
+     * order given here.  A range may not cross from non-negative to negative addresses.
+     *
+     * @param items observables to index
+     * @param lows  first address covered by each item
+     * @param highs last address covered by each item
+     * @return the new index
+     */
+    static MemoryObserverIndex build(Object[] items, int[] lows, int[] highs) {
+        if (items.length == 0) {
+            return EMPTY;
+        }
+        long[] points = new long[2 * items.length];
+        for (int i = 0; i < items.length; i++) {
+            points[2 * i] = lows[i];
+            points[2 * i + 1] = (long) highs[i] + 1;
+        }
+        Arrays.sort(points);
+        int count = 0;
+        for (int i = 0; i < points.length; i++) {
+            if (count == 0 || points[i] != points[count - 1]) {
+                points[count++] = points[i];
+            }
+        }
+        long[] starts = Arrays.copyOf(points, count);
+        Object[][] covering = new Object[count][];
+        Object[] matches = new Object[items.length];
+        for (int interval = 0; interval < count - 1; interval++) {
+            int found = 0;
+            for (int i = 0; i < items.length; i++) {
+                if (lows[i] <= starts[interval] && (long) highs[i] + 1 > starts[interval]) {
+                    matches[found++] = items[i];
+                }
+            }
+            covering[interval] = (found == 0) ? null : Arrays.copyOf(matches, found);
+        }
+        return new MemoryObserverIndex(starts, covering);
+    }
+
+    /**
+     * Find the items whose ranges include the given address.
+     *
+     * @param address memory address
+     * @return array of items in registration order, or null if there are none
+     */
+    Object[] find(int address) {
+        if (starts.length == 0 || address < starts[0]) {
+            return null;
+        }
+        return covering[intervalAt(address)];
+    }
+
+    /**
+     * Find the items whose ranges include any address from low through high.
+     *
+     * @param low  first address of the range
+     * @param high last address of the range, in the same half of the address space as low
+     * @return array of items, each listed once, or null if there are none
+     */
+    Object[] find(int low, int high) {
+        if (starts.length == 0 || high < starts[0]) {
+            return null;
+        }
+        Object[] matches = null;
+        int found = 0;
+        for (int interval = (low < starts[0]) ? 0 : intervalAt(low); interval < starts.length && starts[interval] <= high; interval++) {
+            Object[] items = covering[interval];
+            if (items == null) {
+                continue;
+            }
+            if (matches == null) {
+                matches = new Object[items.length];
+            }
+            for (int i = 0; i < items.length; i++) {
+                if (!contains(matches, found, items[i])) {
+                    if (found == matches.length) {
+                        matches = Arrays.copyOf(matches, 2 * found);
+                    }
+                    matches[found++] = items[i];
+                }
+            }
+        }
+        return (matches == null) ? null : Arrays.copyOf(matches, found);
+    }
+
+    // Index of the last interval starting at or below the given address, which is
+    // at least starts[0].
+    private int intervalAt(int address) {
+        int low = 0;
+        int high = starts.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (starts[middle] <= address) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private static boolean contains(Object[] items, int count, Object item) {
+        for (int i = 0; i < count; i++) {
+            if (items[i] == item) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,256 @@
+package mars.mips.hardware;
+
+import mars.simulator.Exceptions;
+
+import java.util.Arrays;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Segment storage covering the entire 32-bit address space with a sparse two level
+ * page table, in the manner of the "indirect" blocks that the original block tables
+ * never implemented.  The top 10 bits of an address select an entry in the page
+ * directory, the next 10 bits select a 4K byte page within that entry's table, and the
+ * low 12 bits locate the byte within the page.  Neither tables nor pages are created
+ * until a value is written to an address they cover, so unused regions cost nothing.
+ * <p>
+ * Since addresses are absolute, one instance can serve every data-holding segment and
+ * segments may be as large as the memory configuration allows.  To keep a runaway
+ * program from exhausting the Java heap, the number of resident pages is capped; a
+ * store that would allocate a page beyond the cap raises an address exception.
+ * <p>
+ * Copies (see copy()) share pages copy-on-write: copying costs only the tables, and a
+ * shared page is copied by whichever storage first writes to it afterwards.
+ */
+
+class PagedSegmentStorage extends SegmentStorage {
+    static final int PAGE_LENGTH_BYTES = 4096;
+    private static final int PAGE_LENGTH_WORDS = PAGE_LENGTH_BYTES / Memory.WORD_LENGTH_BYTES;
+    private static final int TABLE_LENGTH = 1024; // entries in directory and in each table
+    private static final int PAGE_SHIFT = 12;     // address bits within a page
+    private static final int TABLE_SHIFT = 22;    // address bits within a table
+
+    private final int[][][] directory = new int[TABLE_LENGTH][][];
+    // The pages of the directory that this storage may write in place, arranged the same
+    // way.  Any other page in the directory is shared with a copy.
+    private final int[][][] owned = new int[TABLE_LENGTH][][];
+    private final int pageLimit;
+    private int residentPages = 0;
+
+    /**
+     * Create empty storage.
+     *
+     * @param pageLimit maximum number of 4K byte pages that may be allocated
+     */
+    PagedSegmentStorage(int pageLimit) {
+        this.pageLimit = pageLimit;
+    }
+
+    int fetch(int address, int length) {
+        int shift = (address & 3) << 3;
+        if (shift + (length << 3) <= 32 && Memory.byteOrder == Memory.LITTLE_ENDIAN) {
+            int[] page = page(address);
+            return (page == null) ? 0 : (page[wordIndex(address)] >>> shift) & lowOrderMask(length);
+        }
+        int value = 0;
+        for (int i = 0; i < length; i++) {
+            int[] page = page(address + i);
+            if (page != null) {
+                value |= ((page[wordIndex(address + i)] >>> byteShift(address + i)) & 0xFF) << (i << 3);
+            }
+        }
+        return value;
+    }
+
+    int store(int address, int length, int value) throws AddressErrorException {
+        int shift = (address & 3) << 3;
+        if (shift + (length << 3) <= 32 && Memory.byteOrder == Memory.LITTLE_ENDIAN) {
+            int[] page = allocatedPage(address);
+            int index = wordIndex(address);
+            int mask = lowOrderMask(length) << shift;
+            int old = page[index];
+            page[index] = (old & ~mask) | ((value << shift) & mask);
+            return (old & mask) >>> shift;
+        }
+        int oldValue = 0;
+        for (int i = 0; i < length; i++) {
+            int[] page = allocatedPage(address + i);
+            int index = wordIndex(address + i);
+            int byteShift = byteShift(address + i);
+            int old = page[index];
+            page[index] = (old & ~(0xFF << byteShift)) | (((value >>> (i << 3)) & 0xFF) << byteShift);
+            oldValue |= ((old >>> byteShift) & 0xFF) << (i << 3);
+        }
+        return oldValue;
+    }
+
+    int fetchWord(int address) {
+        int[] page = page(address);
+        return (page == null) ? 0 : page[wordIndex(address)];
+    }
+
+    int storeWord(int address, int value) throws AddressErrorException {
+        int[] page = allocatedPage(address);
+        int index = wordIndex(address);
+        int old = page[index];
+        page[index] = value;
+        return old;
+    }
+
+    Integer fetchWordOrNull(int address) {
+        int[] page = page(address);
+        return (page == null) ? null : Integer.valueOf(page[wordIndex(address)]);
+    }
+
+    synchronized SegmentStorage copy() {
+        PagedSegmentStorage copy = new PagedSegmentStorage(pageLimit);
+        for (int i = 0; i < TABLE_LENGTH; i++) {
+            if (directory[i] != null) {
+                copy.directory[i] = directory[i].clone();
+            }
+        }
+        copy.residentPages = residentPages;
+        Arrays.fill(owned, null); // every page is now shared with the copy
+        return copy;
+    }
+
+    synchronized int[] blockAddresses() {
+        int[] addresses = new int[residentPages];
+        int count = 0;
+        for (int i = 0; i < TABLE_LENGTH; i++) {
+            int[][] table = directory[i];
+            if (table != null) {
+                for (int j = 0; j < TABLE_LENGTH; j++) {
+                    if (table[j] != null) {
+                        addresses[count++] = (i << TABLE_SHIFT) | (j << PAGE_SHIFT);
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(addresses, count);
+    }
+
+    void fetchBlock(int address, int[] words) {
+        System.arraycopy(page(address), 0, words, 0, PAGE_LENGTH_WORDS);
+    }
+
+    void fetchBytes(int address, byte[] bytes, int offset, int length) {
+        while (length > 0) {
+            int from = address & (PAGE_LENGTH_BYTES - 1);
+            int count = Math.min(length, PAGE_LENGTH_BYTES - from);
+            int[] page = page(address);
+            if (page == null) {
+                Arrays.fill(bytes, offset, offset + count, (byte) 0);
+            } else {
+                unpackBytes(page, from, bytes, offset, count);
+            }
+            address += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    void storeBytes(int address, byte[] bytes, int offset, int length) throws AddressErrorException {
+        while (length > 0) {
+            int to = address & (PAGE_LENGTH_BYTES - 1);
+            int count = Math.min(length, PAGE_LENGTH_BYTES - to);
+            packBytes(bytes, offset, allocatedPage(address), to, count);
+            address += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    int findNull(int address, int length) {
+        int found = 0;
+        while (found < length) {
+            int from = address & (PAGE_LENGTH_BYTES - 1);
+            int count = Math.min(length - found, PAGE_LENGTH_BYTES - from);
+            int[] page = page(address);
+            if (page == null) {
+                return found; // never written, so all zero
+            }
+            int index = findNullByte(page, from, count);
+            if (index < count) {
+                return found + index;
+            }
+            address += count;
+            found += count;
+        }
+        return length;
+    }
+
+    private static int wordIndex(int address) {
+        return (address >>> 2) & (PAGE_LENGTH_WORDS - 1);
+    }
+
+    // Page containing the given address, or null if it has never been written.
+    private int[] page(int address) {
+        int[][] table = directory[address >>> TABLE_SHIFT];
+        return (table == null) ? null : table[(address >>> PAGE_SHIFT) & (TABLE_LENGTH - 1)];
+    }
+
+    // Page containing the given address, ready to be written.
+    private int[] allocatedPage(int address) throws AddressErrorException {
+        int[][] table = owned[address >>> TABLE_SHIFT];
+        int[] page = (table == null) ? null : table[(address >>> PAGE_SHIFT) & (TABLE_LENGTH - 1)];
+        return (page != null) ? page : allocatePage(address);
+    }
+
+    // Only allocation and copying are synchronized; once a page is owned it is accessed
+    // directly.
+    private synchronized int[] allocatePage(int address) throws AddressErrorException {
+        int tableIndex = address >>> TABLE_SHIFT;
+        int pageIndex = (address >>> PAGE_SHIFT) & (TABLE_LENGTH - 1);
+        int[][] table = directory[tableIndex];
+        if (table == null) {
+            table = new int[TABLE_LENGTH][];
+            directory[tableIndex] = table;
+        }
+        int[][] ownedTable = owned[tableIndex];
+        if (ownedTable == null) {
+            ownedTable = new int[TABLE_LENGTH][];
+            owned[tableIndex] = ownedTable;
+        }
+        int[] page = ownedTable[pageIndex];
+        if (page == null) {
+            if (table[pageIndex] != null) {
+                page = table[pageIndex].clone(); // shared with a copy
+            } else {
+                if (residentPages >= pageLimit) {
+                    throw new AddressErrorException("simulated memory limit of "
+                            + ((long) pageLimit * PAGE_LENGTH_BYTES >> 20) + " MB exceeded ",
+                            Exceptions.ADDRESS_EXCEPTION_STORE, address);
+                }
+                page = new int[PAGE_LENGTH_WORDS];
+                residentPages++;
+            }
+            table[pageIndex] = page;
+            ownedTable[pageIndex] = page;
+        }
+        return page;
+    }
+}
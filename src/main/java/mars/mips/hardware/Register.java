@@ -1,6 +1,7 @@
 package mars.mips.hardware;
 
 import java.util.Observable;
+import java.util.Observer;
 
 
 /**
@@ -19,6 +20,9 @@ public class Register extends Observable {
     // are the only methods here used by the register collection
     // (RegisterFile, Coprocessor0, Coprocessor1) methods.
     private volatile int value;
+    // Number of observers, kept here so that getValue and setValue need not call the
+    // synchronized countObservers.
+    private volatile int observerCount;
 
     /**
      * Creates a new register with specified name, number, and value.
@@ -52,7 +56,7 @@ public class Register extends Observable {
      * @return value The value of the Register.
      */
 
-    public synchronized int getValue() {
+    public int getValue() {
         notifyAnyObservers(AccessNotice.READ);
         return value;
     }
@@ -65,7 +69,7 @@ public class Register extends Observable {
      * @return value The value of the Register.
      */
 
-    public synchronized int getValueNoNotify() {
+    public int getValueNoNotify() {
         return value;
     }
 
@@ -98,7 +102,7 @@ public class Register extends Observable {
      * @return previous value of register
      */
 
-    public synchronized int setValue(int val) {
+    public int setValue(int val) {
         int old = value;
         value = val;
         notifyAnyObservers(AccessNotice.WRITE);
@@ -123,11 +127,26 @@ public class Register extends Observable {
         resetValue = reset;
     }
 
+    public synchronized void addObserver(Observer observer) {
+        super.addObserver(observer);
+        observerCount = countObservers();
+    }
+
+    public synchronized void deleteObserver(Observer observer) {
+        super.deleteObserver(observer);
+        observerCount = countObservers();
+    }
+
+    public synchronized void deleteObservers() {
+        super.deleteObservers();
+        observerCount = 0;
+    }
+
     //
     // Method to notify any observers of register operation that has just occurred.
     //
     private void notifyAnyObservers(int type) {
-        if (this.countObservers() > 0) {// && Globals.program != null) && Globals.program.inSteppedExecution()) {
+        if (observerCount > 0) {// && Globals.program != null) && Globals.program.inSteppedExecution()) {
             this.setChanged();
             this.notifyObservers(new RegisterAccessNotice(type, this.name));
         }
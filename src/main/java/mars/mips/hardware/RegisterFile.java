@@ -3,6 +3,7 @@ package mars.mips.hardware;
 import mars.Globals;
 import mars.assembler.SymbolTable;
 import mars.mips.instructions.Instruction;
+import mars.simulator.SimulatorContext;
 import mars.util.Binary;
 
 import java.util.Observer;
@@ -47,29 +48,39 @@ public class RegisterFile {
     public static final int GLOBAL_POINTER_REGISTER = 28;
     public static final int STACK_POINTER_REGISTER = 29;
 
-    private static final Register[] regFile =
-            {new Register("$zero", 0, 0), new Register("$at", 1, 0),
-                    new Register("$v0", 2, 0), new Register("$v1", 3, 0),
-                    new Register("$a0", 4, 0), new Register("$a1", 5, 0),
-                    new Register("$a2", 6, 0), new Register("$a3", 7, 0),
-                    new Register("$t0", 8, 0), new Register("$t1", 9, 0),
-                    new Register("$t2", 10, 0), new Register("$t3", 11, 0),
-                    new Register("$t4", 12, 0), new Register("$t5", 13, 0),
-                    new Register("$t6", 14, 0), new Register("$t7", 15, 0),
-                    new Register("$s0", 16, 0), new Register("$s1", 17, 0),
-                    new Register("$s2", 18, 0), new Register("$s3", 19, 0),
-                    new Register("$s4", 20, 0), new Register("$s5", 21, 0),
-                    new Register("$s6", 22, 0), new Register("$s7", 23, 0),
-                    new Register("$t8", 24, 0), new Register("$t9", 25, 0),
-                    new Register("$k0", 26, 0), new Register("$k1", 27, 0),
-                    new Register("$gp", GLOBAL_POINTER_REGISTER, Memory.globalPointer),
-                    new Register("$sp", STACK_POINTER_REGISTER, Memory.stackPointer),
-                    new Register("$fp", 30, 0), new Register("$ra", 31, 0)
-            };
-
-    private static final Register programCounter = new Register("pc", 32, Memory.textBaseAddress);
-    private static final Register hi = new Register("hi", 33, 0);//this is an internal register with arbitrary number
-    private static final Register lo = new Register("lo", 34, 0);// this is an internal register with arbitrary number
+    /**
+     * The registers of one SimulatorContext.  RegisterFile's static methods apply to
+     * the State of the current context.
+     */
+    public static final class State {
+        private final Register[] regFile =
+                {new Register("$zero", 0, 0), new Register("$at", 1, 0),
+                        new Register("$v0", 2, 0), new Register("$v1", 3, 0),
+                        new Register("$a0", 4, 0), new Register("$a1", 5, 0),
+                        new Register("$a2", 6, 0), new Register("$a3", 7, 0),
+                        new Register("$t0", 8, 0), new Register("$t1", 9, 0),
+                        new Register("$t2", 10, 0), new Register("$t3", 11, 0),
+                        new Register("$t4", 12, 0), new Register("$t5", 13, 0),
+                        new Register("$t6", 14, 0), new Register("$t7", 15, 0),
+                        new Register("$s0", 16, 0), new Register("$s1", 17, 0),
+                        new Register("$s2", 18, 0), new Register("$s3", 19, 0),
+                        new Register("$s4", 20, 0), new Register("$s5", 21, 0),
+                        new Register("$s6", 22, 0), new Register("$s7", 23, 0),
+                        new Register("$t8", 24, 0), new Register("$t9", 25, 0),
+                        new Register("$k0", 26, 0), new Register("$k1", 27, 0),
+                        new Register("$gp", GLOBAL_POINTER_REGISTER, Memory.globalPointer),
+                        new Register("$sp", STACK_POINTER_REGISTER, Memory.stackPointer),
+                        new Register("$fp", 30, 0), new Register("$ra", 31, 0)
+                };
+
+        private final Register programCounter = new Register("pc", 32, Memory.textBaseAddress);
+        private final Register hi = new Register("hi", 33, 0);//this is an internal register with arbitrary number
+        private final Register lo = new Register("lo", 34, 0);// this is an internal register with arbitrary number
+    }
+
+    private static State state() {
+        return SimulatorContext.current().getRegisterFileState();
+    }
 
 
     /**
@@ -77,10 +88,11 @@ public class RegisterFile {
      **/
 
     public static void showRegisters() {
-        for (int i = 0; i < regFile.length; i++) {
-            System.out.println("Name: " + regFile[i].getName());
-            System.out.println("Number: " + regFile[i].getNumber());
-            System.out.println("Value: " + regFile[i].getValue());
+        State state = state();
+        for (int i = 0; i < state.regFile.length; i++) {
+            System.out.println("Name: " + state.regFile[i].getName());
+            System.out.println("Number: " + state.regFile[i].getNumber());
+            System.out.println("Value: " + state.regFile[i].getValue());
             System.out.println();
         }
     }
@@ -94,27 +106,22 @@ public class RegisterFile {
      **/
 
     public static int updateRegister(int num, int val) {
+        State state = state();
         int old = 0;
         if (num == 0) {
             //System.out.println("You can not change the value of the zero register.");
-        } else {
-            for (int i = 0; i < regFile.length; i++) {
-                if (regFile[i].getNumber() == num) {
-                    old = (Globals.getSettings().getBackSteppingEnabled())
-                            ? Globals.program.getBackStepper().addRegisterFileRestore(num, regFile[i].setValue(val))
-                            : regFile[i].setValue(val);
-                    break;
-                }
-            }
-        }
-        if (num == 33) {//updates the hi register
+        } else if (num > 0 && num < state.regFile.length) { // regFile[i] is register number i
+            old = (Globals.getSettings().getBackSteppingEnabled())
+                    ? SimulatorContext.current().getProgram().getBackStepper().addRegisterFileRestore(num, state.regFile[num].setValue(val))
+                    : state.regFile[num].setValue(val);
+        } else if (num == 33) {//updates the hi register
             old = (Globals.getSettings().getBackSteppingEnabled())
-                    ? Globals.program.getBackStepper().addRegisterFileRestore(num, hi.setValue(val))
-                    : hi.setValue(val);
+                    ? SimulatorContext.current().getProgram().getBackStepper().addRegisterFileRestore(num, state.hi.setValue(val))
+                    : state.hi.setValue(val);
         } else if (num == 34) {// updates the low register
             old = (Globals.getSettings().getBackSteppingEnabled())
-                    ? Globals.program.getBackStepper().addRegisterFileRestore(num, lo.setValue(val))
-                    : lo.setValue(val);
+                    ? SimulatorContext.current().getProgram().getBackStepper().addRegisterFileRestore(num, state.lo.setValue(val))
+                    : state.lo.setValue(val);
         }
         return old;
     }
@@ -127,11 +134,12 @@ public class RegisterFile {
      **/
 
     public static void updateRegister(String reg, int val) {
+        State state = state();
         if (reg.equals("zero")) {
             //System.out.println("You can not change the value of the zero register.");
         } else {
-            for (int i = 0; i < regFile.length; i++) {
-                if (regFile[i].getName().equals(reg)) {
+            for (int i = 0; i < state.regFile.length; i++) {
+                if (state.regFile[i].getName().equals(reg)) {
                     updateRegister(i, val);
                     break;
                 }
@@ -147,12 +155,13 @@ public class RegisterFile {
      **/
 
     public static int getValue(int num) {
+        State state = state();
         if (num == 33) {
-            return hi.getValue();
+            return state.hi.getValue();
         } else if (num == 34) {
-            return lo.getValue();
+            return state.lo.getValue();
         } else
-            return regFile[num].getValue();
+            return state.regFile[num].getValue();
 
     }
 
@@ -165,10 +174,11 @@ public class RegisterFile {
      **/
 
     public static int getNumber(String n) {
+        State state = state();
         int j = -1;
-        for (int i = 0; i < regFile.length; i++) {
-            if (regFile[i].getName().equals(n)) {
-                j = regFile[i].getNumber();
+        for (int i = 0; i < state.regFile.length; i++) {
+            if (state.regFile[i].getName().equals(n)) {
+                j = state.regFile[i].getNumber();
                 break;
             }
         }
@@ -182,7 +192,7 @@ public class RegisterFile {
      **/
 
     public static Register[] getRegisters() {
-        return regFile;
+        return state().regFile;
     }
 
     /**
@@ -193,19 +203,20 @@ public class RegisterFile {
      **/
 
     public static Register getUserRegister(String Rname) {
+        State state = state();
         Register reg = null;
         if (Rname.charAt(0) == '$') {
             try {
                 // check for register number 0-31.
-                reg = regFile[Binary.stringToInt(Rname.substring(1))];    // KENV 1/6/05
+                reg = state.regFile[Binary.stringToInt(Rname.substring(1))];    // KENV 1/6/05
             } catch (Exception e) {
                 // handles both NumberFormat and ArrayIndexOutOfBounds
                 // check for register mnemonic $zero thru $ra
                 reg = null; // just to be sure
                 // just do linear search; there aren't that many registers
-                for (int i = 0; i < regFile.length; i++) {
-                    if (Rname.equals(regFile[i].getName())) {
-                        reg = regFile[i];
+                for (int i = 0; i < state.regFile.length; i++) {
+                    if (Rname.equals(state.regFile[i].getName())) {
+                        reg = state.regFile[i];
                         break;
                     }
                 }
@@ -223,7 +234,7 @@ public class RegisterFile {
      **/
 
     public static void initializeProgramCounter(int value) {
-        programCounter.setValue(value);
+        state().programCounter.setValue(value);
     }
 
     /**
@@ -237,11 +248,12 @@ public class RegisterFile {
      **/
 
     public static void initializeProgramCounter(boolean startAtMain) {
-        int mainAddr = Globals.symbolTable.getAddress(SymbolTable.getStartLabel());
+        State state = state();
+        int mainAddr = SimulatorContext.current().getSymbolTable().getAddress(SymbolTable.getStartLabel());
         if (startAtMain && mainAddr != SymbolTable.NOT_FOUND && (Memory.inTextSegment(mainAddr) || Memory.inKernelTextSegment(mainAddr))) {
             initializeProgramCounter(mainAddr);
         } else {
-            initializeProgramCounter(programCounter.getResetValue());
+            initializeProgramCounter(state.programCounter.getResetValue());
         }
     }
 
@@ -254,10 +266,11 @@ public class RegisterFile {
      **/
 
     public static int setProgramCounter(int value) {
-        int old = programCounter.getValue();
-        programCounter.setValue(value);
+        State state = state();
+        int old = state.programCounter.getValue();
+        state.programCounter.setValue(value);
         if (Globals.getSettings().getBackSteppingEnabled()) {
-            Globals.program.getBackStepper().addPCRestore(old);
+            SimulatorContext.current().getProgram().getBackStepper().addPCRestore(old);
         }
         return old;
     }
@@ -269,7 +282,7 @@ public class RegisterFile {
      **/
 
     public static int getProgramCounter() {
-        return programCounter.getValue();
+        return state().programCounter.getValue();
     }
 
     /**
@@ -278,7 +291,7 @@ public class RegisterFile {
      * @return program counter's Register object.
      */
     public static Register getProgramCounterRegister() {
-        return programCounter;
+        return state().programCounter;
     }
 
     /**
@@ -288,7 +301,7 @@ public class RegisterFile {
      **/
 
     public static int getInitialProgramCounter() {
-        return programCounter.getResetValue();
+        return state().programCounter.getResetValue();
     }
 
     /**
@@ -301,12 +314,49 @@ public class RegisterFile {
      **/
 
     public static void resetRegisters() {
-        for (int i = 0; i < regFile.length; i++) {
-            regFile[i].resetValue();
+        State state = state();
+        for (int i = 0; i < state.regFile.length; i++) {
+            state.regFile[i].resetValue();
         }
         initializeProgramCounter(Globals.getSettings().getStartAtMain());// replaces "programCounter.resetValue()", DPS 3/3/09
-        hi.resetValue();
-        lo.resetValue();
+        state.hi.resetValue();
+        state.lo.resetValue();
+    }
+
+    /**
+     * Returns the values of all registers followed by those of the program counter,
+     * HI and LO.  Used for machine snapshots.
+     *
+     * @return the register values
+     */
+    public static int[] saveState() {
+        State state = state();
+        int length = state.regFile.length;
+        int[] values = new int[length + 3];
+        for (int i = 0; i < length; i++) {
+            values[i] = state.regFile[i].getValue();
+        }
+        values[length] = state.programCounter.getValue();
+        values[length + 1] = state.hi.getValue();
+        values[length + 2] = state.lo.getValue();
+        return values;
+    }
+
+    /**
+     * Sets all registers, the program counter, HI and LO to values obtained from
+     * saveState().
+     *
+     * @param values the register values
+     */
+    public static void restoreState(int[] values) {
+        State state = state();
+        int length = state.regFile.length;
+        for (int i = 0; i < length; i++) {
+            state.regFile[i].setValue(values[i]);
+        }
+        state.programCounter.setValue(values[length]);
+        state.hi.setValue(values[length + 1]);
+        state.lo.setValue(values[length + 2]);
     }
 
     /**
@@ -314,6 +364,7 @@ public class RegisterFile {
      **/
 
     public static void incrementPC() {
+        Register programCounter = state().programCounter;
         programCounter.setValue(programCounter.getValue() + Instruction.INSTRUCTION_LENGTH);
     }
 
@@ -323,11 +374,12 @@ public class RegisterFile {
      * Counter.
      */
     public static void addRegistersObserver(Observer observer) {
-        for (int i = 0; i < regFile.length; i++) {
-            regFile[i].addObserver(observer);
+        State state = state();
+        for (int i = 0; i < state.regFile.length; i++) {
+            state.regFile[i].addObserver(observer);
         }
-        hi.addObserver(observer);
-        lo.addObserver(observer);
+        state.hi.addObserver(observer);
+        state.lo.addObserver(observer);
     }
 
     /**
@@ -336,10 +388,11 @@ public class RegisterFile {
      * Counter.
      */
     public static void deleteRegistersObserver(Observer observer) {
-        for (int i = 0; i < regFile.length; i++) {
-            regFile[i].deleteObserver(observer);
+        State state = state();
+        for (int i = 0; i < state.regFile.length; i++) {
+            state.regFile[i].deleteObserver(observer);
         }
-        hi.deleteObserver(observer);
-        lo.deleteObserver(observer);
+        state.hi.deleteObserver(observer);
+        state.lo.deleteObserver(observer);
     }
 }
@@ -0,0 +1,134 @@
+package mars.mips.hardware;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Backing store for one MIPS memory segment that holds data (data segment, kernel
+ * data segment, stack or memory mapped I/O).  Memory decides which segment an address
+ * belongs to and has already verified that the address lies within it; the storage
+ * only translates the address into its own representation.
+ * <p>
+ * Two representations are available.  PagedSegmentStorage is a sparse page table over
+ * the whole address space whose 4K byte pages are allocated on first write.
+ * FlatSegmentStorage holds the whole segment in a single int array, which is selected
+ * by a memory configuration whose <tt>usesFlatStorage()</tt> is true.
+ *
+ * @see MemoryConfiguration#usesFlatStorage()
+ */
+
+abstract class SegmentStorage extends Storage {
+    /**
+     * Number of words in the 4K byte blocks reported by blockAddresses().
+     */
+    static final int BLOCK_LENGTH_WORDS = 1024;
+
+    /**
+     * Returns storage holding the same contents as this one, for a machine snapshot.
+     * The two are independent from then on: a write to either is not seen by the other.
+     *
+     * @return the copy
+     */
+    abstract SegmentStorage copy();
+
+    /**
+     * Returns the lowest address of each 4K byte block that has been written, in
+     * increasing order, for a machine state file.
+     *
+     * @return block addresses
+     */
+    abstract int[] blockAddresses();
+
+    /**
+     * Number of words in a block returned by blockAddresses().
+     *
+     * @param address lowest address of the block
+     * @return 1024, or fewer for a block cut short by the end of storage
+     */
+    int blockLength(int address) {
+        return BLOCK_LENGTH_WORDS;
+    }
+
+    /**
+     * Copy the words of a block returned by blockAddresses() into the given array.
+     *
+     * @param address lowest address of the block
+     * @param words   array of at least blockLength(address) elements to receive the words
+     */
+    abstract void fetchBlock(int address, int[] words);
+
+    // Copy length bytes, starting at byte index "from" of the given words, into the
+    // array.  Each word is read once.
+    static void unpackBytes(int[] words, int from, byte[] bytes, int offset, int length) {
+        int end = offset + length;
+        while (offset < end) {
+            int word = words[from >>> 2];
+            do {
+                bytes[offset++] = (byte) (word >>> byteShift(from++));
+            } while (offset < end && (from & 3) != 0);
+        }
+    }
+
+    // Copy length bytes from the array into the given words starting at byte index
+    // "to".  Each word is read and written once.
+    static void packBytes(byte[] bytes, int offset, int[] words, int to, int length) {
+        int end = offset + length;
+        while (offset < end) {
+            int index = to >>> 2;
+            int word = words[index];
+            do {
+                int shift = byteShift(to++);
+                word = (word & ~(0xFF << shift)) | ((bytes[offset++] & 0xFF) << shift);
+            } while (offset < end && (to & 3) != 0);
+            words[index] = word;
+        }
+    }
+
+    // Number of bytes preceding the first zero byte among length bytes starting at byte
+    // index "from" of the given words, or length if there is none.  Words without a
+    // zero byte are skipped whole.
+    static int findNullByte(int[] words, int from, int length) {
+        int count = 0;
+        while (count < length) {
+            int word = words[from >>> 2];
+            if ((from & 3) == 0 && length - count >= 4 && ((word - 0x01010101) & ~word & 0x80808080) == 0) {
+                from += 4;
+                count += 4;
+                continue;
+            }
+            if (((word >>> byteShift(from)) & 0xFF) == 0) {
+                return count;
+            }
+            from++;
+            count++;
+        }
+        return length;
+    }
+
+    // Mask selecting the low order 1, 2 or 4 bytes of an int.
+    static int lowOrderMask(int length) {
+        return (int) ((1L << (length << 3)) - 1);
+    }
+}
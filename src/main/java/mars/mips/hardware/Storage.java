@@ -0,0 +1,124 @@
+package mars.mips.hardware;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Storage for a range of the MIPS address space holding data, byte addressable but
+ * organized in words.  Memory decides which storage an address belongs to and has
+ * already verified that the address lies within it.  SegmentStorage backs the data
+ * segments, and MappedFileStorage a file mapped in by the Mmap syscall.
+ */
+
+abstract class Storage {
+    /**
+     * Read 1, 2 or 4 bytes starting at the given address, which need not be aligned.
+     * The first byte goes into the low order byte of the result.
+     *
+     * @param address starting address
+     * @param length  number of bytes to read
+     * @return value read
+     */
+    abstract int fetch(int address, int length);
+
+    /**
+     * Write 1, 2 or 4 bytes starting at the given address, which need not be aligned.
+     * The low order byte of the value goes into the first byte.
+     *
+     * @param address starting address
+     * @param length  number of bytes to write
+     * @param value   value to write
+     * @return the value that was replaced
+     * @throws AddressErrorException if storage for the address cannot be allocated
+     */
+    abstract int store(int address, int length, int value) throws AddressErrorException;
+
+    /**
+     * Read the word at the given word-aligned address.
+     *
+     * @param address word-aligned address
+     * @return word value, 0 if never written
+     */
+    abstract int fetchWord(int address);
+
+    /**
+     * Write the word at the given word-aligned address.
+     *
+     * @param address word-aligned address
+     * @param value   word value
+     * @return the value that was replaced
+     * @throws AddressErrorException if storage for the address cannot be allocated
+     */
+    abstract int storeWord(int address, int value) throws AddressErrorException;
+
+    /**
+     * Read the word at the given word-aligned address, or null if the 4K byte block
+     * containing it has never been written.
+     *
+     * @param address word-aligned address
+     * @return word value or null
+     */
+    abstract Integer fetchWordOrNull(int address);
+
+    /**
+     * Copy bytes starting at the given address into an array.  The whole range must lie
+     * within the storage.
+     *
+     * @param address starting address, which need not be aligned
+     * @param bytes   array to receive the bytes
+     * @param offset  index in the array of the first byte
+     * @param length  number of bytes to copy
+     */
+    abstract void fetchBytes(int address, byte[] bytes, int offset, int length);
+
+    /**
+     * Copy bytes from an array into storage starting at the given address.  The whole
+     * range must lie within the storage.
+     *
+     * @param address starting address, which need not be aligned
+     * @param bytes   array holding the bytes
+     * @param offset  index in the array of the first byte
+     * @param length  number of bytes to copy
+     * @throws AddressErrorException if storage for the range cannot be allocated
+     */
+    abstract void storeBytes(int address, byte[] bytes, int offset, int length) throws AddressErrorException;
+
+    /**
+     * Find the first zero byte in a range, which must lie within the storage.
+     *
+     * @param address starting address, which need not be aligned
+     * @param length  number of bytes to search
+     * @return number of bytes preceding the first zero byte, or length if there is none
+     */
+    abstract int findNull(int address, int length);
+
+    // Position, in bits, of the byte at the given address within its word, honoring
+    // the current byte order.
+    static int byteShift(int address) {
+        return (Memory.byteOrder == Memory.LITTLE_ENDIAN)
+                ? (address & 3) << 3
+                : (3 - (address & 3)) << 3;
+    }
+}
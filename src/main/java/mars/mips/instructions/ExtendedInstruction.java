@@ -1,5 +1,6 @@
 package mars.mips.instructions;
 
+import mars.ErrorList;
 import mars.Globals;
 import mars.MIPSprogram;
 import mars.assembler.Symbol;
@@ -43,8 +44,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  * ExtendedInstruction represents a MIPS extended (a.k.a pseudo) instruction.  This
  * assembly language instruction does not have a corresponding machine instruction.  Instead
  * it is translated by the extended assembler into one or more basic instructions (operations
- * that have a corresponding machine instruction).  The TranslationCode object is
- * responsible for performing the translation.
+ * that have a corresponding machine instruction).  The templates for the basic
+ * instructions are compiled into TranslationTemplate objects when the instruction is
+ * created, and these perform the translation.
  *
  * @author Pete Sanderson
  * @version August 2003
@@ -53,6 +55,8 @@ public class ExtendedInstruction extends Instruction {
 
     private final ArrayList translationStrings;
     private final ArrayList compactTranslationStrings;
+    private final TranslationTemplate[] translationTemplates;
+    private final TranslationTemplate[] compactTranslationTemplates;
 
     /**
      * Constructor for ExtendedInstruction.
@@ -75,6 +79,8 @@ public class ExtendedInstruction extends Instruction {
         this.createExampleTokenList();
         this.translationStrings = buildTranslationList(translation);
         this.compactTranslationStrings = buildTranslationList(compactTranslation);
+        this.translationTemplates = compileTranslationList(translationStrings);
+        this.compactTranslationTemplates = compileTranslationList(compactTranslationStrings);
     }
 
     /**
@@ -93,6 +99,8 @@ public class ExtendedInstruction extends Instruction {
         this.createExampleTokenList();
         this.translationStrings = buildTranslationList(translation);
         this.compactTranslationStrings = null;
+        this.translationTemplates = compileTranslationList(translationStrings);
+        this.compactTranslationTemplates = null;
     }
 
     /**
@@ -173,6 +181,35 @@ public class ExtendedInstruction extends Instruction {
         return compactTranslationStrings;
     }
 
+    /**
+     * Given the list of tokens from an extended instruction statement, generate the
+     * basic statements it translates to.  Produces the same tokens as substituting
+     * operands into each template with makeTemplateSubstitutions() and tokenizing
+     * the result, but uses the templates compiled when this instruction was created.
+     * Assumes the extended instruction statement has been translated from source form
+     * to basic assembly form and its operand format verified correct.
+     *
+     * @param program      MIPSprogram being assembled
+     * @param theTokenList a TokenList containing tokens from extended instruction.
+     * @param compact      true to use the compact (16 bit address) translation.
+     * @param sourceLine   line number to record in the generated tokens.
+     * @param errors       list to which to add any invalid language elements.
+     * @return ArrayList of TokenList, one per generated basic statement.  A DBNOP
+     * template generates no statement if delayed branching is disabled.
+     */
+    public ArrayList makeBasicStatements(MIPSprogram program, TokenList theTokenList, boolean compact,
+                                         int sourceLine, ErrorList errors) {
+        TranslationTemplate[] templates = (compact) ? compactTranslationTemplates : translationTemplates;
+        ArrayList statements = new ArrayList();
+        for (int i = 0; i < templates.length; i++) {
+            TokenList statement = templates[i].generate(program, theTokenList, sourceLine, errors);
+            if (statement != null) {
+                statements.add(statement);
+            }
+        }
+        return statements;
+    }
+
     /**
      * Given a basic instruction template and the list of tokens from an extended
      * instruction statement, substitute operands from the token list appropriately into the
@@ -600,6 +637,20 @@ public class ExtendedInstruction extends Instruction {
     }
 
 
+    // Compile each template in the list of basic instructions.
+
+    private TranslationTemplate[] compileTranslationList(ArrayList translationList) {
+        if (translationList == null) {
+            return null;
+        }
+        TranslationTemplate[] templates = new TranslationTemplate[translationList.size()];
+        for (int i = 0; i < templates.length; i++) {
+            templates[i] = new TranslationTemplate((String) translationList.get(i));
+        }
+        return templates;
+    }
+
+
     /*
      * Get length in bytes that this extended instruction requires in its
      * binary form. The answer depends on how many basic instructions it
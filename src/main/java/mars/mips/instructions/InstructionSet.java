@@ -7,7 +7,9 @@ import mars.mips.hardware.*;
 import mars.mips.instructions.syscalls.Syscall;
 import mars.simulator.DelayedBranch;
 import mars.simulator.Exceptions;
+import mars.simulator.Profiler;
 import mars.util.Binary;
+import mars.util.SyscallLog;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -58,6 +60,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 public class InstructionSet {
     private final ArrayList instructionList;
     private ArrayList opcodeMatchMaps;
+    private HashMap operatorMap;
+    private OperatorPrefixNode operatorPrefixes;
     private SyscallLoader syscallLoader;
 
     /**
@@ -594,7 +598,7 @@ public class InstructionSet {
                                 int[] operands = statement.getOperands();
                                 try {
                                     RegisterFile.updateRegister(operands[0],
-                                            Globals.memory.getWord(
+                                            Memory.getInstance().getWord(
                                                     RegisterFile.getValue(operands[2]) + operands[1]));
                                 } catch (AddressErrorException e) {
                                     throw new ProcessingException(statement, e);
@@ -619,7 +623,7 @@ public class InstructionSet {
                                 int[] operands = statement.getOperands();
                                 try {
                                     RegisterFile.updateRegister(operands[0],
-                                            Globals.memory.getWord(
+                                            Memory.getInstance().getWord(
                                                     RegisterFile.getValue(operands[2]) + operands[1]));
                                 } catch (AddressErrorException e) {
                                     throw new ProcessingException(statement, e);
@@ -638,7 +642,7 @@ public class InstructionSet {
                                     int address = RegisterFile.getValue(operands[2]) + operands[1];
                                     int result = RegisterFile.getValue(operands[0]);
                                     for (int i = 0; i <= address % Memory.WORD_LENGTH_BYTES; i++) {
-                                        result = Binary.setByte(result, 3 - i, Globals.memory.getByte(address - i));
+                                        result = Binary.setByte(result, 3 - i, Memory.getInstance().getByte(address - i));
                                     }
                                     RegisterFile.updateRegister(operands[0], result);
                                 } catch (AddressErrorException e) {
@@ -658,7 +662,7 @@ public class InstructionSet {
                                     int address = RegisterFile.getValue(operands[2]) + operands[1];
                                     int result = RegisterFile.getValue(operands[0]);
                                     for (int i = 0; i <= 3 - (address % Memory.WORD_LENGTH_BYTES); i++) {
-                                        result = Binary.setByte(result, i, Globals.memory.getByte(address + i));
+                                        result = Binary.setByte(result, i, Memory.getInstance().getByte(address + i));
                                     }
                                     RegisterFile.updateRegister(operands[0], result);
                                 } catch (AddressErrorException e) {
@@ -675,7 +679,7 @@ public class InstructionSet {
                             public void simulate(ProgramStatement statement) throws ProcessingException {
                                 int[] operands = statement.getOperands();
                                 try {
-                                    Globals.memory.setWord(
+                                    Memory.getInstance().setWord(
                                             RegisterFile.getValue(operands[2]) + operands[1],
                                             RegisterFile.getValue(operands[0]));
                                 } catch (AddressErrorException e) {
@@ -694,7 +698,7 @@ public class InstructionSet {
                             public void simulate(ProgramStatement statement) throws ProcessingException {
                                 int[] operands = statement.getOperands();
                                 try {
-                                    Globals.memory.setWord(
+                                    Memory.getInstance().setWord(
                                             RegisterFile.getValue(operands[2]) + operands[1],
                                             RegisterFile.getValue(operands[0]));
                                 } catch (AddressErrorException e) {
@@ -715,7 +719,7 @@ public class InstructionSet {
                                     int address = RegisterFile.getValue(operands[2]) + operands[1];
                                     int source = RegisterFile.getValue(operands[0]);
                                     for (int i = 0; i <= address % Memory.WORD_LENGTH_BYTES; i++) {
-                                        Globals.memory.setByte(address - i, Binary.getByte(source, 3 - i));
+                                        Memory.getInstance().setByte(address - i, Binary.getByte(source, 3 - i));
                                     }
                                 } catch (AddressErrorException e) {
                                     throw new ProcessingException(statement, e);
@@ -734,7 +738,7 @@ public class InstructionSet {
                                     int address = RegisterFile.getValue(operands[2]) + operands[1];
                                     int source = RegisterFile.getValue(operands[0]);
                                     for (int i = 0; i <= 3 - (address % Memory.WORD_LENGTH_BYTES); i++) {
-                                        Globals.memory.setByte(address + i, Binary.getByte(source, i));
+                                        Memory.getInstance().setByte(address + i, Binary.getByte(source, i));
                                     }
                                 } catch (AddressErrorException e) {
                                     throw new ProcessingException(statement, e);
@@ -1110,7 +1114,7 @@ public class InstructionSet {
                                 int[] operands = statement.getOperands();
                                 try {
                                     RegisterFile.updateRegister(operands[0],
-                                            Globals.memory.getByte(
+                                            Memory.getInstance().getByte(
                                                     RegisterFile.getValue(operands[2])
                                                             + (operands[1] << 16 >> 16))
                                                     << 24
@@ -1130,7 +1134,7 @@ public class InstructionSet {
                                 int[] operands = statement.getOperands();
                                 try {
                                     RegisterFile.updateRegister(operands[0],
-                                            Globals.memory.getHalf(
+                                            Memory.getInstance().getHalf(
                                                     RegisterFile.getValue(operands[2])
                                                             + (operands[1] << 16 >> 16))
                                                     << 16
@@ -1151,7 +1155,7 @@ public class InstructionSet {
                                 try {
                                     // offset is sign-extended and loaded halfword value is zero-extended
                                     RegisterFile.updateRegister(operands[0],
-                                            Globals.memory.getHalf(
+                                            Memory.getInstance().getHalf(
                                                     RegisterFile.getValue(operands[2])
                                                             + (operands[1] << 16 >> 16))
                                                     & 0x0000ffff);
@@ -1170,7 +1174,7 @@ public class InstructionSet {
                                 int[] operands = statement.getOperands();
                                 try {
                                     RegisterFile.updateRegister(operands[0],
-                                            Globals.memory.getByte(
+                                            Memory.getInstance().getByte(
                                                     RegisterFile.getValue(operands[2])
                                                             + (operands[1] << 16 >> 16))
                                                     & 0x000000ff);
@@ -1188,7 +1192,7 @@ public class InstructionSet {
                             public void simulate(ProgramStatement statement) throws ProcessingException {
                                 int[] operands = statement.getOperands();
                                 try {
-                                    Globals.memory.setByte(
+                                    Memory.getInstance().setByte(
                                             RegisterFile.getValue(operands[2])
                                                     + (operands[1] << 16 >> 16),
                                             RegisterFile.getValue(operands[0])
@@ -1207,7 +1211,7 @@ public class InstructionSet {
                             public void simulate(ProgramStatement statement) throws ProcessingException {
                                 int[] operands = statement.getOperands();
                                 try {
-                                    Globals.memory.setHalf(
+                                    Memory.getInstance().setHalf(
                                             RegisterFile.getValue(operands[2])
                                                     + (operands[1] << 16 >> 16),
                                             RegisterFile.getValue(operands[0])
@@ -2385,7 +2389,7 @@ public class InstructionSet {
                                 int[] operands = statement.getOperands();
                                 try {
                                     Coprocessor1.updateRegister(operands[0],
-                                            Globals.memory.getWord(
+                                            Memory.getInstance().getWord(
                                                     RegisterFile.getValue(operands[2]) + operands[1]));
                                 } catch (AddressErrorException e) {
                                     throw new ProcessingException(statement, e);
@@ -2412,10 +2416,10 @@ public class InstructionSet {
 
                                 try {
                                     Coprocessor1.updateRegister(operands[0],
-                                            Globals.memory.getWord(
+                                            Memory.getInstance().getWord(
                                                     RegisterFile.getValue(operands[2]) + operands[1]));
                                     Coprocessor1.updateRegister(operands[0] + 1,
-                                            Globals.memory.getWord(
+                                            Memory.getInstance().getWord(
                                                     RegisterFile.getValue(operands[2]) + operands[1] + 4));
                                 } catch (AddressErrorException e) {
                                     throw new ProcessingException(statement, e);
@@ -2431,7 +2435,7 @@ public class InstructionSet {
                             public void simulate(ProgramStatement statement) throws ProcessingException {
                                 int[] operands = statement.getOperands();
                                 try {
-                                    Globals.memory.setWord(
+                                    Memory.getInstance().setWord(
                                             RegisterFile.getValue(operands[2]) + operands[1],
                                             Coprocessor1.getValue(operands[0]));
                                 } catch (AddressErrorException e) {
@@ -2457,10 +2461,10 @@ public class InstructionSet {
                                                     Exceptions.ADDRESS_EXCEPTION_STORE, RegisterFile.getValue(operands[2]) + operands[1]));
                                 }
                                 try {
-                                    Globals.memory.setWord(
+                                    Memory.getInstance().setWord(
                                             RegisterFile.getValue(operands[2]) + operands[1],
                                             Coprocessor1.getValue(operands[0]));
-                                    Globals.memory.setWord(
+                                    Memory.getInstance().setWord(
                                             RegisterFile.getValue(operands[2]) + operands[1] + 4,
                                             Coprocessor1.getValue(operands[0] + 1));
                                 } catch (AddressErrorException e) {
@@ -2665,6 +2669,15 @@ public class InstructionSet {
                             }
                         }));
 
+        // Index the mnemonics for matchOperator() and prefixMatchOperator().  The index
+        // must be in place before the pseudo-instructions are read, since their templates
+        // are tokenized as they are added; each one is indexed in turn.
+        operatorMap = new HashMap();
+        operatorPrefixes = new OperatorPrefixNode();
+        for (int i = 0; i < instructionList.size(); i++) {
+            indexOperator((Instruction) instructionList.get(i));
+        }
+
         ////////////// READ PSEUDO-INSTRUCTION SPECS FROM DATA FILE AND ADD //////////////////////
         addPseudoInstructions();
 
@@ -2698,6 +2711,7 @@ public class InstructionSet {
         }
         Collections.sort(matchMaps);
         this.opcodeMatchMaps = matchMaps;
+
     }
 
     public BasicInstruction findByBinaryCode(int binaryInstr) {
@@ -2710,6 +2724,19 @@ public class InstructionSet {
         return null;
     }
 
+    // Add an instruction to the mnemonic index under its lower-cased name.  Lists
+    // keep the instructions in instructionList order.
+    private void indexOperator(Instruction inst) {
+        String key = inst.getName().toLowerCase();
+        ArrayList sameName = (ArrayList) operatorMap.get(key);
+        if (sameName == null) {
+            sameName = new ArrayList();
+            operatorMap.put(key, sameName);
+        }
+        sameName.add(inst);
+        operatorPrefixes.add(key, inst);
+    }
+
     /*  METHOD TO ADD PSEUDO-INSTRUCTIONS
      */
 
@@ -2760,6 +2787,7 @@ public class InstructionSet {
                             ? new ExtendedInstruction(pseudoOp, template, description)
                             : new ExtendedInstruction(pseudoOp, firstTemplate, template, description);
                     instructionList.add(inst);
+                    indexOperator(inst);
                     //if (firstTemplate != null) System.out.println("\npseudoOp: "+pseudoOp+"\ndefault template:\n"+firstTemplate+"\ncompact template:\n"+template);
                 }
             }
@@ -2778,46 +2806,35 @@ public class InstructionSet {
 
     /**
      * Given an operator mnemonic, will return the corresponding Instruction object(s)
-     * from the instruction set.  Uses straight linear search technique.
+     * from the instruction set.  Case-insensitive.  Uses a hash table of the mnemonics
+     * built by populate().  The returned list is shared and must not be modified.
      *
      * @param name operator mnemonic (e.g. addi, sw,...)
      * @return list of corresponding Instruction object(s), or null if not found.
      */
     public ArrayList matchOperator(String name) {
-        ArrayList matchingInstructions = null;
-        // Linear search for now....
-        for (int i = 0; i < instructionList.size(); i++) {
-            if (((Instruction) instructionList.get(i)).getName().equalsIgnoreCase(name)) {
-                if (matchingInstructions == null)
-                    matchingInstructions = new ArrayList();
-                matchingInstructions.add(instructionList.get(i));
-            }
+        if (name == null) {
+            return null;
         }
-        return matchingInstructions;
+        return (ArrayList) operatorMap.get(name.toLowerCase());
     }
 
 
     /**
      * Given a string, will return the Instruction object(s) from the instruction
      * set whose operator mnemonic prefix matches it.  Case-insensitive.  For example
-     * "s" will match "sw", "sh", "sb", etc.  Uses straight linear search technique.
+     * "s" will match "sw", "sh", "sb", etc.  Uses a prefix trie of the mnemonics
+     * built by populate().  The returned list is shared and must not be modified.
      *
      * @param name a string
      * @return list of matching Instruction object(s), or null if none match.
      */
     public ArrayList prefixMatchOperator(String name) {
-        ArrayList matchingInstructions = null;
-        // Linear search for now....
-        if (name != null) {
-            for (int i = 0; i < instructionList.size(); i++) {
-                if (((Instruction) instructionList.get(i)).getName().toLowerCase().startsWith(name.toLowerCase())) {
-                    if (matchingInstructions == null)
-                        matchingInstructions = new ArrayList();
-                    matchingInstructions.add(instructionList.get(i));
-                }
-            }
+        if (name == null) {
+            return null;
         }
-        return matchingInstructions;
+        OperatorPrefixNode node = operatorPrefixes.find(name.toLowerCase());
+        return (node == null) ? null : node.instructions;
     }
 
     /*
@@ -2830,7 +2847,12 @@ public class InstructionSet {
             throws ProcessingException {
         Syscall service = syscallLoader.findSyscall(number);
         if (service != null) {
-            service.simulate(statement);
+            try {
+                service.simulate(statement);
+            } catch (SyscallLog.LogException e) {
+                throw new ProcessingException(statement,
+                        e.getMessage() + " (syscall " + number + ")", Exceptions.SYSCALL_EXCEPTION);
+            }
             return;
         }
         throw new ProcessingException(statement,
@@ -2894,12 +2916,15 @@ public class InstructionSet {
      * the delay slot.
      *
      * The parameter is register number to receive the return address.
+     * The call is also reported to the Profiler for its call graph mode.
      */
 
     private void processReturnAddress(int register) {
-        RegisterFile.updateRegister(register, RegisterFile.getProgramCounter() +
-                ((Globals.getSettings().getDelayedBranchingEnabled()) ?
-                        Instruction.INSTRUCTION_LENGTH : 0));
+        boolean delayedBranching = Globals.getSettings().getDelayedBranchingEnabled();
+        int returnAddress = RegisterFile.getProgramCounter() +
+                ((delayedBranching) ? Instruction.INSTRUCTION_LENGTH : 0);
+        RegisterFile.updateRegister(register, returnAddress);
+        Profiler.call(returnAddress, delayedBranching);
     }
 
     private static class MatchMap implements Comparable {
@@ -2936,5 +2961,35 @@ public class InstructionSet {
             return (BasicInstruction) matchMap.get(match);
         }
     }
-}
 
+    // Node of the mnemonic prefix trie.  Each node holds every instruction whose
+    // lower-cased name starts with the path leading to it, in instructionList order,
+    // so a prefix lookup is a walk down the trie with nothing left to collect.
+    private static class OperatorPrefixNode {
+        private final HashMap children = new HashMap();
+        private final ArrayList instructions = new ArrayList();
+
+        public void add(String key, Instruction inst) {
+            OperatorPrefixNode node = this;
+            node.instructions.add(inst);
+            for (int i = 0; i < key.length(); i++) {
+                Character c = Character.valueOf(key.charAt(i));
+                OperatorPrefixNode child = (OperatorPrefixNode) node.children.get(c);
+                if (child == null) {
+                    child = new OperatorPrefixNode();
+                    node.children.put(c, child);
+                }
+                node = child;
+                node.instructions.add(inst);
+            }
+        }
+
+        public OperatorPrefixNode find(String prefix) {
+            OperatorPrefixNode node = this;
+            for (int i = 0; i < prefix.length() && node != null; i++) {
+                node = (OperatorPrefixNode) node.children.get(Character.valueOf(prefix.charAt(i)));
+            }
+            return node;
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package mars.mips.instructions;
+
+import mars.ErrorList;
+import mars.ErrorMessage;
+import mars.Globals;
+import mars.MIPSprogram;
+import mars.assembler.Symbol;
+import mars.assembler.Token;
+import mars.assembler.TokenList;
+import mars.assembler.TokenTypes;
+import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.Register;
+import mars.mips.hardware.RegisterFile;
+import mars.util.Binary;
+
+import java.util.ArrayList;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+
+/**
+ * A basic instruction template of an ExtendedInstruction, compiled when the
+ * pseudo-instruction is read from PseudoOps.txt.  The template is split into tokens
+ * once, and each token is recorded either as literal text with its token type or as
+ * a recipe for computing its value from the operands of the source statement (see
+ * ExtendedInstruction.makeTemplateSubstitutions() for the template markers).
+ * Expanding a statement then builds the TokenList of the basic statement directly,
+ * giving the same tokens as substituting into the template text and tokenizing the
+ * result, without either step.
+ **/
+
+class TranslationTemplate {
+    // Kinds of template token.  All of the substitutions below take an operand value,
+    // which is the value of source token "operand", plus that of source token "addend"
+    // if there is one, plus the constant "add".
+    private static final int LITERAL = 0;         // template text, used as is
+    private static final int OPERAND = 1;         // RGn, OPn: source token n as is
+    private static final int NEXT_REGISTER = 2;   // NRn: register after the one in token n
+    private static final int HIGH = 3;            // LHn, VHn, LHPA: high 16 bits, plus 1 if bit 15 is set
+    private static final int HIGH_LOGICAL = 4;    // VHLn, LHL, LHPN: high 16 bits
+    private static final int LOW = 5;             // LLn, VLn, LLP: low 16 bits, signed or unsigned
+    private static final int BRANCH_OFFSET = 6;   // BROFFnm: n, or m with delayed branching
+    private static final int SHIFT_COMPLEMENT = 7; // S32: 32 minus the last token
+    private static final int BRANCH_LABEL = 8;    // LAB: label of the address in the last token
+
+    // Operand of S32 and LAB, which always refer to the last source token, and the
+    // addend of substitutions that have none.
+    private static final int LAST = -1;
+    private static final int NONE = -2;
+
+    private final boolean delayedBranchNop;
+    // One entry per template token.  separators[i] is the template text between
+    // token i-1 and token i, needed to reproduce token positions and the line text.
+    private final String[] separators;
+    private final String[] values;
+    private final TokenTypes[] types;
+    private final int[] kinds;
+    private final int[] operands;
+    private final int[] addends;
+    private final int[] adds;
+    private final boolean[] unsigned;
+    private final String trailer;
+
+    /**
+     * Compile a basic instruction template.
+     *
+     * @param template template text, one basic instruction with substitution markers
+     */
+    TranslationTemplate(String template) {
+        delayedBranchNop = template.indexOf("DBNOP") >= 0;
+        ArrayList pieces = new ArrayList();
+        ArrayList gaps = new ArrayList();
+        int position = 0;
+        int gapStart = 0;
+        while (position < template.length()) {
+            char c = template.charAt(position);
+            int end = position + 1;
+            if (c == ' ' || c == '\t' || c == ',') {
+                position++;
+                continue;
+            }
+            if (c == '(' || c == ')' || c == ':') {
+                // single-character token
+            } else if ((c == '+' || c == '-') && !(end < template.length() && Character.isDigit(template.charAt(end)))) {
+                // binary operator, single-character token
+            } else {
+                while (end < template.length() && " \t,():+-".indexOf(template.charAt(end)) < 0) {
+                    end++;
+                }
+            }
+            gaps.add(template.substring(gapStart, position));
+            pieces.add(template.substring(position, end));
+            position = end;
+            gapStart = end;
+        }
+        trailer = template.substring(gapStart);
+
+        int count = pieces.size();
+        separators = (String[]) gaps.toArray(new String[count]);
+        values = (String[]) pieces.toArray(new String[count]);
+        types = new TokenTypes[count];
+        kinds = new int[count];
+        operands = new int[count];
+        addends = new int[count];
+        adds = new int[count];
+        unsigned = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            addends[i] = NONE;
+            compileToken(i, values[i]);
+            if (kinds[i] == LITERAL) {
+                types[i] = TokenTypes.matchTokenType(values[i]);
+            }
+        }
+    }
+
+    /**
+     * Determine whether this is the DBNOP template, which generates a "nop" only if
+     * delayed branching is enabled.
+     *
+     * @return true if this is a DBNOP template
+     */
+    boolean isDelayedBranchNop() {
+        return delayedBranchNop;
+    }
+
+    /**
+     * Generate the token list of the basic statement for a given extended statement.
+     * Assumes, as makeTemplateSubstitutions() does, that the extended statement has
+     * been translated to basic assembly form and that its operands are correct.
+     *
+     * @param program      MIPSprogram being assembled, for resolving branch labels
+     * @param theTokenList tokens of the extended statement in basic assembly form
+     * @param sourceLine   line number to record in the generated tokens
+     * @param errors       list to which to add any invalid language elements
+     * @return the generated token list, or null if this is a DBNOP template and
+     * delayed branching is disabled
+     */
+    TokenList generate(MIPSprogram program, TokenList theTokenList, int sourceLine, ErrorList errors) {
+        TokenList result = new TokenList();
+        if (delayedBranchNop) {
+            if (!Globals.getSettings().getDelayedBranchingEnabled()) {
+                return null;
+            }
+            result.add(new Token(TokenTypes.OPERATOR, "nop", null, sourceLine, 1));
+            return result;
+        }
+        String[] generated = null;
+        int position = 1;
+        for (int i = 0; i < values.length; i++) {
+            String value = (kinds[i] == LITERAL) ? values[i] : substitute(i, program, theTokenList);
+            TokenTypes type = (kinds[i] == LITERAL) ? types[i] : TokenTypes.matchTokenType(value);
+            position += separators[i].length();
+            if (type == TokenTypes.ERROR) {
+                if (generated == null) {
+                    generated = generatedValues(program, theTokenList);
+                }
+                errors.add(new ErrorMessage((MIPSprogram) null, sourceLine, position,
+                        line(generated) + "\nInvalid language element: " + value));
+            }
+            result.add(new Token(type, value, null, sourceLine, position));
+            position += value.length();
+        }
+        return result;
+    }
+
+    private String[] generatedValues(MIPSprogram program, TokenList theTokenList) {
+        String[] generated = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            generated[i] = (kinds[i] == LITERAL) ? values[i] : substitute(i, program, theTokenList);
+        }
+        return generated;
+    }
+
+    private String line(String[] generated) {
+        StringBuffer line = new StringBuffer();
+        for (int i = 0; i < generated.length; i++) {
+            line.append(separators[i]).append(generated[i]);
+        }
+        return line.append(trailer).toString();
+    }
+
+    // Classify template token i, recording how to compute its value.  Anything that
+    // is not a complete substitution marker is literal text.
+    private void compileToken(int i, String token) {
+        kinds[i] = LITERAL;
+        if (token.length() == 3 && (token.startsWith("RG") || token.startsWith("OP") || token.startsWith("NR"))
+                && Character.isDigit(token.charAt(2))) {
+            kinds[i] = token.startsWith("NR") ? NEXT_REGISTER : OPERAND;
+            operands[i] = token.charAt(2) - '0';
+        } else if (token.equals("LHL")) {
+            kinds[i] = HIGH_LOGICAL;
+            operands[i] = 2;
+        } else if (token.equals("LHPN")) {
+            kinds[i] = HIGH_LOGICAL;
+            operands[i] = 2;
+            addends[i] = 4;
+        } else if (token.startsWith("LHPA")) {
+            compileOperand(i, token, 4, HIGH, 2, 4, false);
+        } else if (token.startsWith("LLP")) {
+            compileOperand(i, token, 3, LOW, 2, 4, true);
+        } else if (token.startsWith("VHL")) {
+            compileNumberedOperand(i, token, 3, HIGH_LOGICAL, false);
+        } else if (token.startsWith("LH") || token.startsWith("VH")) {
+            compileNumberedOperand(i, token, 2, HIGH, false);
+        } else if (token.startsWith("LL") || token.startsWith("VL")) {
+            compileNumberedOperand(i, token, 2, LOW, true);
+        } else if (token.equals("S32")) {
+            kinds[i] = SHIFT_COMPLEMENT;
+            operands[i] = LAST;
+        } else if (token.equals("LAB")) {
+            kinds[i] = BRANCH_LABEL;
+            operands[i] = LAST;
+        } else if (token.startsWith("BROFF")) {
+            kinds[i] = BRANCH_OFFSET;
+        }
+    }
+
+    // Markers of the form XXn, XXnPm and (where allowed) XXnU, XXnPmU.
+    private void compileNumberedOperand(int i, String token, int prefixLength, int kind, boolean allowUnsigned) {
+        if (token.length() > prefixLength && Character.isDigit(token.charAt(prefixLength))) {
+            compileOperand(i, token, prefixLength + 1, kind, token.charAt(prefixLength) - '0', NONE, allowUnsigned);
+        }
+    }
+
+    // Parse the optional "Pm" and "U" suffixes that follow a marker's prefix.
+    private void compileOperand(int i, String token, int suffix, int kind, int operand, int addend, boolean allowUnsigned) {
+        int add = 0;
+        if (suffix + 1 < token.length() && token.charAt(suffix) == 'P' && Character.isDigit(token.charAt(suffix + 1))) {
+            add = token.charAt(suffix + 1) - '0';
+            suffix += 2;
+        }
+        boolean isUnsigned = allowUnsigned && suffix < token.length() && token.charAt(suffix) == 'U';
+        if (isUnsigned) {
+            suffix++;
+        }
+        if (suffix != token.length()) {
+            return; // not a marker after all
+        }
+        kinds[i] = kind;
+        operands[i] = operand;
+        addends[i] = addend;
+        adds[i] = add;
+        unsigned[i] = isUnsigned;
+    }
+
+    // Compute the value of substitution token i.  As in makeTemplateSubstitutions(),
+    // a marker that cannot be substituted is left as is.
+    private String substitute(int i, MIPSprogram program, TokenList theTokenList) {
+        int operand = (operands[i] == LAST) ? theTokenList.size() - 1 : operands[i];
+        if (kinds[i] != BRANCH_OFFSET && (operand < 1 || operand >= theTokenList.size()
+                || addends[i] >= theTokenList.size())) {
+            return values[i];
+        }
+        switch (kinds[i]) {
+            case OPERAND:
+                return theTokenList.get(operand).getValue();
+            case NEXT_REGISTER: {
+                String token = theTokenList.get(operand).getValue();
+                Register register = RegisterFile.getUserRegister(token);
+                if (register != null) {
+                    return (register.getNumber() >= 0) ? "$" + (register.getNumber() + 1) : values[i];
+                }
+                int regNumber = Coprocessor1.getRegisterNumber(token);
+                return (regNumber >= 0) ? "$f" + (regNumber + 1) : values[i];
+            }
+            case HIGH: {
+                int value = operandValue(i, operand, theTokenList);
+                // If bit 15 is 1, the lower 16 bits will become a negative offset, so
+                // compensate by adding 1 to the high 16 bits.
+                return String.valueOf((value >> 16) + Binary.bitValue(value, 15));
+            }
+            case HIGH_LOGICAL:
+                return String.valueOf(operandValue(i, operand, theTokenList) >> 16);
+            case LOW: {
+                int value = operandValue(i, operand, theTokenList);
+                return String.valueOf(unsigned[i] ? value & 0xffff : value << 16 >> 16);
+            }
+            case BRANCH_OFFSET:
+                if (values[i].length() < 7) {
+                    return "BAD_PSEUDO_OP_SPEC" + values[i].substring(5);
+                }
+                return values[i].substring(Globals.getSettings().getDelayedBranchingEnabled() ? 6 : 5,
+                        Globals.getSettings().getDelayedBranchingEnabled() ? 7 : 6) + values[i].substring(7);
+            case SHIFT_COMPLEMENT:
+                return Integer.toString(32 - operandValue(i, operand, theTokenList));
+            case BRANCH_LABEL: {
+                // The label has already been translated to its address, so look the
+                // text label back up.
+                Symbol sym = program.getLocalSymbolTable().getSymbolGivenAddressLocalOrGlobal(
+                        theTokenList.get(operand).getValue());
+                return (sym == null) ? values[i] : sym.getName();
+            }
+            default:
+                return values[i];
+        }
+    }
+
+    private int operandValue(int i, int operand, TokenList theTokenList) {
+        try {
+            int value = Binary.stringToInt(theTokenList.get(operand).getValue()) + adds[i];
+            if (addends[i] != NONE) {
+                value += Binary.stringToInt(theTokenList.get(addends[i]).getValue());
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            return 0; // the operands have already been checked, so this won't happen
+        }
+    }
+}
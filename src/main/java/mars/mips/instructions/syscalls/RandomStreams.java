@@ -1,5 +1,7 @@
 package mars.mips.instructions.syscalls;
 
+import mars.simulator.SimulatorContext;
+
 import java.util.HashMap;
 
 /*
@@ -40,7 +42,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 public class RandomStreams {
     /**
      * Collection of pseudorandom number streams available for use in Rand-type syscalls.
-     * The streams are by default not seeded.
+     * The streams are by default not seeded.  Each SimulatorContext has its own.
+     *
+     * @return map from stream number to java.util.Random, for the current context
      */
-    static final HashMap randomStreams = new HashMap();
+    static HashMap randomStreams() {
+        return SimulatorContext.current().getRandomStreams();
+    }
 }
\ No newline at end of file
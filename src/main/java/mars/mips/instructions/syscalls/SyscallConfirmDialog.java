@@ -1,10 +1,11 @@
 package mars.mips.instructions.syscalls;
 
-import mars.Globals;
 import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
+import mars.util.SyscallLog;
 
 import javax.swing.*;
 
@@ -62,12 +63,12 @@ public class SyscallConfirmDialog extends AbstractSyscall {
         int byteAddress = RegisterFile.getValue(4);
         char[] ch = {' '}; // Need an array to convert to String
         try {
-            ch[0] = (char) Globals.memory.getByte(byteAddress);
+            ch[0] = (char) Memory.getInstance().getByte(byteAddress);
             while (ch[0] != 0) // only uses single location ch[0]
             {
                 message = message.concat(new String(ch)); // parameter to String constructor is a char[] array
                 byteAddress++;
-                ch[0] = (char) Globals.memory.getByte(byteAddress);
+                ch[0] = (char) Memory.getInstance().getByte(byteAddress);
             }
         } catch (AddressErrorException e) {
             throw new ProcessingException(statement, e);
@@ -78,7 +79,8 @@ public class SyscallConfirmDialog extends AbstractSyscall {
         //    0 ---> meaning Yes
         //    1 ---> meaning No
         //    2 ---> meaning Cancel
-        RegisterFile.updateRegister(4, JOptionPane.showConfirmDialog(null, message));
+        int choice = SyscallLog.isReplaying() ? 0 : JOptionPane.showConfirmDialog(null, message);
+        RegisterFile.updateRegister(4, SyscallLog.logInt(this.getNumber(), choice));
 
     }
 
@@ -4,6 +4,7 @@ import mars.Globals;
 import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.RegisterFile;
+import mars.simulator.SimulatorContext;
 
 
 /**
@@ -26,7 +27,7 @@ public class SyscallExit2 extends AbstractSyscall {
      */
     public void simulate(ProgramStatement statement) throws ProcessingException {
         if (Globals.getGui() == null) {
-            Globals.exitCode = RegisterFile.getValue(4);
+            SimulatorContext.current().setExitCode(RegisterFile.getValue(4));
         }
         throw new ProcessingException(); // empty error list
     }
@@ -1,13 +1,14 @@
 package mars.mips.instructions.syscalls;
 
-import mars.Globals;
 import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Coprocessor1;
 import mars.mips.hardware.InvalidRegisterAccessException;
+import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
 import mars.simulator.Exceptions;
+import mars.util.SyscallLog;
 
 import javax.swing.*;
 
@@ -69,12 +70,12 @@ public class SyscallInputDialogDouble extends AbstractSyscall {
         int byteAddress = RegisterFile.getValue(4);
         char[] ch = {' '}; // Need an array to convert to String
         try {
-            ch[0] = (char) Globals.memory.getByte(byteAddress);
+            ch[0] = (char) Memory.getInstance().getByte(byteAddress);
             while (ch[0] != 0) // only uses single location ch[0]
             {
                 message = message.concat(new String(ch)); // parameter to String constructor is a char[] array
                 byteAddress++;
-                ch[0] = (char) Globals.memory.getByte(byteAddress);
+                ch[0] = (char) Memory.getInstance().getByte(byteAddress);
             }
         } catch (AddressErrorException e) {
             throw new ProcessingException(statement, e);
@@ -85,7 +86,8 @@ public class SyscallInputDialogDouble extends AbstractSyscall {
         // An empty string returned (that is, inputValue.length() of zero)
         // means that OK was chosen but no string was input.
         String inputValue = null;
-        inputValue = JOptionPane.showInputDialog(message);
+        inputValue = SyscallLog.isReplaying() ? null : JOptionPane.showInputDialog(message);
+        inputValue = SyscallLog.logString(this.getNumber(), inputValue);
 
         try {
             Coprocessor1.setRegisterPairToDouble(0, 0.0);  // set $f0 to zero
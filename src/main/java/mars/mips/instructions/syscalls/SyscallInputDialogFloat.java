@@ -1,11 +1,12 @@
 package mars.mips.instructions.syscalls;
 
-import mars.Globals;
 import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
+import mars.util.SyscallLog;
 
 import javax.swing.*;
 
@@ -67,12 +68,12 @@ public class SyscallInputDialogFloat extends AbstractSyscall {
         int byteAddress = RegisterFile.getValue(4);
         char[] ch = {' '}; // Need an array to convert to String
         try {
-            ch[0] = (char) Globals.memory.getByte(byteAddress);
+            ch[0] = (char) Memory.getInstance().getByte(byteAddress);
             while (ch[0] != 0) // only uses single location ch[0]
             {
                 message = message.concat(new String(ch)); // parameter to String constructor is a char[] array
                 byteAddress++;
-                ch[0] = (char) Globals.memory.getByte(byteAddress);
+                ch[0] = (char) Memory.getInstance().getByte(byteAddress);
             }
         } catch (AddressErrorException e) {
             throw new ProcessingException(statement, e);
@@ -83,7 +84,8 @@ public class SyscallInputDialogFloat extends AbstractSyscall {
         // An empty string returned (that is, inputValue.length() of zero)
         // means that OK was chosen but no string was input.
         String inputValue = null;
-        inputValue = JOptionPane.showInputDialog(message);
+        inputValue = SyscallLog.isReplaying() ? null : JOptionPane.showInputDialog(message);
+        inputValue = SyscallLog.logString(this.getNumber(), inputValue);
 
         try {
             Coprocessor1.setRegisterToFloat(0, (float) 0.0);  // set $f0 to zero
@@ -1,10 +1,11 @@
 package mars.mips.instructions.syscalls;
 
-import mars.Globals;
 import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
+import mars.util.SyscallLog;
 
 import javax.swing.*;
 
@@ -66,12 +67,12 @@ public class SyscallInputDialogInt extends AbstractSyscall {
         int byteAddress = RegisterFile.getValue(4);
         char[] ch = {' '}; // Need an array to convert to String
         try {
-            ch[0] = (char) Globals.memory.getByte(byteAddress);
+            ch[0] = (char) Memory.getInstance().getByte(byteAddress);
             while (ch[0] != 0) // only uses single location ch[0]
             {
                 message = message.concat(new String(ch)); // parameter to String constructor is a char[] array
                 byteAddress++;
-                ch[0] = (char) Globals.memory.getByte(byteAddress);
+                ch[0] = (char) Memory.getInstance().getByte(byteAddress);
             }
         } catch (AddressErrorException e) {
             throw new ProcessingException(statement, e);
@@ -82,7 +83,8 @@ public class SyscallInputDialogInt extends AbstractSyscall {
         // An empty string returned (that is, inputValue.length() of zero)
         // means that OK was chosen but no string was input.
         String inputValue = null;
-        inputValue = JOptionPane.showInputDialog(message);
+        inputValue = SyscallLog.isReplaying() ? null : JOptionPane.showInputDialog(message);
+        inputValue = SyscallLog.logString(this.getNumber(), inputValue);
         if (inputValue == null)  // Cancel was chosen
         {
             RegisterFile.updateRegister(4, 0);  // set $a0 to zero
@@ -1,10 +1,11 @@
 package mars.mips.instructions.syscalls;
 
-import mars.Globals;
 import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
+import mars.util.SyscallLog;
 
 import javax.swing.*;
 
@@ -68,12 +69,12 @@ public class SyscallInputDialogString extends AbstractSyscall {
         int byteAddress = RegisterFile.getValue(4); // byteAddress of string is in $a0
         char[] ch = {' '}; // Need an array to convert to String
         try {
-            ch[0] = (char) Globals.memory.getByte(byteAddress);
+            ch[0] = (char) Memory.getInstance().getByte(byteAddress);
             while (ch[0] != 0) // only uses single location ch[0]
             {
                 message = message.concat(new String(ch)); // parameter to String constructor is a char[] array
                 byteAddress++;
-                ch[0] = (char) Globals.memory.getByte(byteAddress);
+                ch[0] = (char) Memory.getInstance().getByte(byteAddress);
             }
         } catch (AddressErrorException e) {
             throw new ProcessingException(statement, e);
@@ -84,7 +85,8 @@ public class SyscallInputDialogString extends AbstractSyscall {
         // An empty string returned (that is, inputString.length() of zero)
         // means that OK was chosen but no string was input.
         String inputString = null;
-        inputString = JOptionPane.showInputDialog(message);
+        inputString = SyscallLog.isReplaying() ? null : JOptionPane.showInputDialog(message);
+        inputString = SyscallLog.logString(this.getNumber(), inputString);
         byteAddress = RegisterFile.getValue(5); // byteAddress of string is in $a1
         int maxLength = RegisterFile.getValue(6); // input buffer size for input string is in $a2
 
@@ -99,13 +101,13 @@ public class SyscallInputDialogString extends AbstractSyscall {
                 // The buffer will contain characters, a '\n' character, and the null character
                 // Copy the input data to buffer as space permits
                 for (int index = 0; (index < inputString.length()) && (index < maxLength - 1); index++) {
-                    Globals.memory.setByte(byteAddress + index,
+                    Memory.getInstance().setByte(byteAddress + index,
                             inputString.charAt(index));
                 }
                 if (inputString.length() < maxLength - 1) {
-                    Globals.memory.setByte(byteAddress + Math.min(inputString.length(), maxLength - 2), '\n');  // newline at string end
+                    Memory.getInstance().setByte(byteAddress + Math.min(inputString.length(), maxLength - 2), '\n');  // newline at string end
                 }
-                Globals.memory.setByte(byteAddress + Math.min((inputString.length() + 1), maxLength - 1), 0);  // null char to end string
+                Memory.getInstance().setByte(byteAddress + Math.min((inputString.length() + 1), maxLength - 1), 0);  // null char to end string
 
                 if (inputString.length() > maxLength - 1) {
                     //  length of the input string exceeded the specified maximum
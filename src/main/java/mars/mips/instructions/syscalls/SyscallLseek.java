@@ -0,0 +1,65 @@
+package mars.mips.instructions.syscalls;
+
+import mars.ProcessingException;
+import mars.ProgramStatement;
+import mars.mips.hardware.RegisterFile;
+import mars.util.SyscallLog;
+import mars.util.SystemIO;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+
+
+/**
+ * Service to move the position at which the next read or write of the file
+ * descriptor given in $a0 occurs.  $a1 specifies the offset and $a2 what it is
+ * relative to: 0 for the start of the file, 1 for the current position and 2 for
+ * the end of the file.  The new position is returned in $v0, or -1 on error.
+ */
+
+public class SyscallLseek extends AbstractSyscall {
+    /**
+     * Build an instance of the Lseek file syscall.  Default service number
+     * is 18 and name is "Lseek".
+     */
+    public SyscallLseek() {
+        super(18, "Lseek");
+    }
+
+    /**
+     * Performs syscall function to reposition the file descriptor given in $a0 to offset
+     * $a1 relative to the origin given in $a2.  New position is returned in $v0.
+     */
+    public void simulate(ProgramStatement statement) throws ProcessingException {
+        // When a syscall log is replayed the file is not touched; the result comes from the log.
+        int retValue = SyscallLog.isReplaying() ? 0 : SystemIO.seekFile(
+                RegisterFile.getValue(4), // fd
+                RegisterFile.getValue(5), // offset
+                RegisterFile.getValue(6)); // whence
+        retValue = SyscallLog.logInt(this.getNumber(), retValue);
+        RegisterFile.updateRegister(2, retValue); // set returned value in register
+    }
+}
@@ -0,0 +1,89 @@
+package mars.mips.instructions.syscalls;
+
+import mars.ProcessingException;
+import mars.ProgramStatement;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.RegisterFile;
+import mars.simulator.Exceptions;
+import mars.util.SyscallLog;
+import mars.util.SystemIO;
+
+import java.nio.MappedByteBuffer;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+
+
+/**
+ * Service to map the file named by $a0 into the heap.  $a1 is 0 to map it read-only
+ * or 1 to map it for reading and writing, and $a2 is the number of bytes to map from
+ * the start of the file, 0 for the whole file.  The address of the mapped region,
+ * which starts on a 4K byte boundary, is returned in $v0, or -1 if the file cannot
+ * be mapped.  Loads and stores in the region go straight to the file's contents,
+ * with no need to read the file into a heap buffer first; bytes past the end of the
+ * file, up to the end of the region's last 4K page, read as zero.  The mapping lasts
+ * until the program is next assembled.
+ */
+
+public class SyscallMmap extends AbstractSyscall {
+    /**
+     * Build an instance of the Mmap syscall.  Default service number
+     * is 21 and name is "Mmap".
+     */
+    public SyscallMmap() {
+        super(21, "Mmap");
+    }
+
+    /**
+     * Performs syscall function to map the file named by $a0 with flags $a1 and length $a2,
+     * putting the address of the mapped region into $v0.
+     */
+    public void simulate(ProgramStatement statement) throws ProcessingException {
+        String filename;
+        try {
+            filename = Memory.getInstance().readCString(RegisterFile.getValue(4));
+        } catch (AddressErrorException e) {
+            throw new ProcessingException(statement, e);
+        }
+        int flags = RegisterFile.getValue(5);
+        // The file is mapped even when a syscall log is replayed, since its contents are
+        // not in the log.
+        MappedByteBuffer contents = SystemIO.mapFile(filename, flags, RegisterFile.getValue(6));
+        int address = -1;
+        if (contents != null) {
+            try {
+                address = Memory.getInstance().mapFile(filename, contents, flags != 0);
+            } catch (IllegalArgumentException iae) {
+                throw new ProcessingException(statement,
+                        iae.getMessage() + " (syscall " + this.getNumber() + ")",
+                        Exceptions.SYSCALL_EXCEPTION);
+            }
+        }
+        address = SyscallLog.logInt(this.getNumber(), address);
+        RegisterFile.updateRegister(2, address);
+    }
+}
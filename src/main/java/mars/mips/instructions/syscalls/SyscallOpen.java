@@ -1,10 +1,11 @@
 package mars.mips.instructions.syscalls;
 
-import mars.Globals;
 import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
+import mars.util.SyscallLog;
 import mars.util.SystemIO;
 
 
@@ -43,25 +44,18 @@ public class SyscallOpen extends AbstractSyscall {
         // Write/append  flag = 9
         // This code implements the modes:
         // NO MODES IMPLEMENTED  -- MODE IS IGNORED
-        // Returns in $v0: a "file descriptor" in the range 0 to SystemIO.SYSCALL_MAXFILES-1,
+        // Returns in $v0: a "file descriptor" in the range 0 to SystemIO.getMaxFiles()-1,
         // or -1 if error
-        String filename = ""; // = "";
+        String filename;
         int byteAddress = RegisterFile.getValue(4);
-        char[] ch = {' '}; // Need an array to convert to String
         try {
-            ch[0] = (char) Globals.memory.getByte(byteAddress);
-            while (ch[0] != 0) // only uses single location ch[0]
-            {
-                filename = filename.concat(new String(ch)); // parameter to String constructor is a char[] array
-                byteAddress++;
-                ch[0] = (char) Globals.memory.getByte(
-                        byteAddress);
-            }
+            filename = Memory.getInstance().readCString(byteAddress);
         } catch (AddressErrorException e) {
             throw new ProcessingException(statement, e);
         }
-        int retValue = SystemIO.openFile(filename,
-                RegisterFile.getValue(5));
+        // When a syscall log is replayed the file is not opened; the result comes from the log.
+        int retValue = SyscallLog.isReplaying() ? 0 : SystemIO.openFile(filename, RegisterFile.getValue(5));
+        retValue = SyscallLog.logInt(this.getNumber(), retValue);
         RegisterFile.updateRegister(2, retValue); // set returned fd value in register
 
         // GETTING RID OF PROCESSING EXCEPTION.  IT IS THE RESPONSIBILITY OF THE
@@ -0,0 +1,76 @@
+package mars.mips.instructions.syscalls;
+
+import mars.ProcessingException;
+import mars.ProgramStatement;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.RegisterFile;
+import mars.util.SyscallLog;
+import mars.util.SystemIO;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+
+
+/**
+ * Service to read from the file descriptor given in $a0 at the position given in
+ * $a3, without moving the position used by Read and Write.  $a1 specifies buffer
+ * and $a2 specifies length.  Number of characters read is returned in $v0, 0 at
+ * end of file or -1 on error.
+ */
+
+public class SyscallPread extends AbstractSyscall {
+    /**
+     * Build an instance of the Pread file syscall.  Default service number
+     * is 19 and name is "Pread".
+     */
+    public SyscallPread() {
+        super(19, "Pread");
+    }
+
+    /**
+     * Performs syscall function to read from file descriptor given in $a0 at position $a3.
+     * $a1 specifies buffer and $a2 specifies length.  Number of characters read is returned in $v0.
+     */
+    public void simulate(ProgramStatement statement) throws ProcessingException {
+        int byteAddress = RegisterFile.getValue(5); // destination of characters read from file
+        byte[] myBuffer = new byte[RegisterFile.getValue(6)]; // specified length
+        // When a syscall log is replayed nothing is read; the bytes come from the log.
+        int retLength = SyscallLog.isReplaying() ? 0 : SystemIO.readFromFileAt(
+                RegisterFile.getValue(4), // fd
+                myBuffer, // buffer
+                RegisterFile.getValue(6), // length
+                RegisterFile.getValue(7)); // position
+        retLength = SyscallLog.logBytes(this.getNumber(), myBuffer, retLength);
+        RegisterFile.updateRegister(2, retLength); // set returned value in register
+        // copy bytes from returned buffer into MARS memory
+        try {
+            Memory.getInstance().writeBytes(byteAddress, myBuffer, 0, retLength);
+        } catch (AddressErrorException e) {
+            throw new ProcessingException(statement, e);
+        }
+    }
+}
@@ -1,9 +1,9 @@
 package mars.mips.instructions.syscalls;
 
-import mars.Globals;
 import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
 import mars.util.SystemIO;
 
@@ -26,15 +26,9 @@ public class SyscallPrintString extends AbstractSyscall {
      */
     public void simulate(ProgramStatement statement) throws ProcessingException {
         int byteAddress = RegisterFile.getValue(4);
-        char ch = 0;
         try {
-            ch = (char) Globals.memory.getByte(byteAddress);
             // won't stop until NULL byte reached!
-            while (ch != 0) {
-                SystemIO.printString(new Character(ch).toString());
-                byteAddress++;
-                ch = (char) Globals.memory.getByte(byteAddress);
-            }
+            SystemIO.printString(Memory.getInstance().readCString(byteAddress));
         } catch (AddressErrorException e) {
             throw new ProcessingException(statement, e);
         }
@@ -0,0 +1,76 @@
+package mars.mips.instructions.syscalls;
+
+import mars.ProcessingException;
+import mars.ProgramStatement;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.RegisterFile;
+import mars.util.SyscallLog;
+import mars.util.SystemIO;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+
+
+/**
+ * Service to write to the file descriptor given in $a0 at the position given in
+ * $a3, without moving the position used by Read and Write.  $a1 specifies buffer
+ * and $a2 specifies length.  Number of characters written is returned in $v0, or
+ * -1 on error.
+ */
+
+public class SyscallPwrite extends AbstractSyscall {
+    /**
+     * Build an instance of the Pwrite file syscall.  Default service number
+     * is 20 and name is "Pwrite".
+     */
+    public SyscallPwrite() {
+        super(20, "Pwrite");
+    }
+
+    /**
+     * Performs syscall function to write to file descriptor given in $a0 at position $a3.
+     * $a1 specifies buffer and $a2 specifies length.  Number of characters written is returned in $v0.
+     */
+    public void simulate(ProgramStatement statement) throws ProcessingException {
+        int byteAddress = RegisterFile.getValue(5); // source of characters to write to file
+        int reqLength = RegisterFile.getValue(6); // user-requested length
+        byte[] myBuffer = new byte[reqLength];
+        try {
+            Memory.getInstance().readBytes(byteAddress, myBuffer, 0, reqLength);
+        } catch (AddressErrorException e) {
+            throw new ProcessingException(statement, e);
+        }
+        // When a syscall log is replayed the file is not written; the result comes from the log.
+        int retValue = SyscallLog.isReplaying() ? 0 : SystemIO.writeToFileAt(
+                RegisterFile.getValue(4), // fd
+                myBuffer, // buffer
+                reqLength, // length
+                RegisterFile.getValue(7)); // position
+        retValue = SyscallLog.logInt(this.getNumber(), retValue);
+        RegisterFile.updateRegister(2, retValue); // set returned value in register
+    }
+}
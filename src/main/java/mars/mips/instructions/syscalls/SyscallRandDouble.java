@@ -6,6 +6,7 @@ import mars.mips.hardware.Coprocessor1;
 import mars.mips.hardware.InvalidRegisterAccessException;
 import mars.mips.hardware.RegisterFile;
 import mars.simulator.Exceptions;
+import mars.util.SyscallLog;
 
 import java.util.Random;
 
@@ -60,13 +61,13 @@ public class SyscallRandDouble extends AbstractSyscall {
         // Return: $f0 = the next pseudorandom, uniformly distributed double value between 0.0 and 1.0
         // from this random number generator's sequence.
         Integer index = new Integer(RegisterFile.getValue(4));
-        Random stream = (Random) RandomStreams.randomStreams.get(index);
+        Random stream = (Random) RandomStreams.randomStreams().get(index);
         if (stream == null) {
             stream = new Random(); // create a non-seeded stream
-            RandomStreams.randomStreams.put(index, stream);
+            RandomStreams.randomStreams().put(index, stream);
         }
         try {
-            Coprocessor1.setRegisterPairToDouble(0, stream.nextDouble());
+            Coprocessor1.setRegisterPairToDouble(0, SyscallLog.logDouble(this.getNumber(), stream.nextDouble()));
         } catch (InvalidRegisterAccessException e) {   // register ID error in this method
             throw new ProcessingException(statement,
                     "Internal error storing double to register (syscall " + this.getNumber() + ")",
@@ -4,6 +4,7 @@ import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.Coprocessor1;
 import mars.mips.hardware.RegisterFile;
+import mars.util.SyscallLog;
 
 import java.util.Random;
 
@@ -58,11 +59,11 @@ public class SyscallRandFloat extends AbstractSyscall {
         // Return: $f0 = the next pseudorandom, uniformly distributed float value between 0.0 and 1.0
         // from this random number generator's sequence.
         Integer index = new Integer(RegisterFile.getValue(4));
-        Random stream = (Random) RandomStreams.randomStreams.get(index);
+        Random stream = (Random) RandomStreams.randomStreams().get(index);
         if (stream == null) {
             stream = new Random(); // create a non-seeded stream
-            RandomStreams.randomStreams.put(index, stream);
+            RandomStreams.randomStreams().put(index, stream);
         }
-        Coprocessor1.setRegisterToFloat(0, stream.nextFloat());
+        Coprocessor1.setRegisterToFloat(0, SyscallLog.logFloat(this.getNumber(), stream.nextFloat()));
     }
 }
\ No newline at end of file
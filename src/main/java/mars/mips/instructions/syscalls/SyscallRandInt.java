@@ -3,6 +3,7 @@ package mars.mips.instructions.syscalls;
 import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.RegisterFile;
+import mars.util.SyscallLog;
 
 import java.util.Random;
 
@@ -55,12 +56,12 @@ public class SyscallRandInt extends AbstractSyscall {
         // Input arguments: $a0 = index of pseudorandom number generator
         // Return: $a0 = the next pseudorandom, uniformly distributed int value from this random number generator's sequence.
         Integer index = new Integer(RegisterFile.getValue(4));
-        Random stream = (Random) RandomStreams.randomStreams.get(index);
+        Random stream = (Random) RandomStreams.randomStreams().get(index);
         if (stream == null) {
             stream = new Random(); // create a non-seeded stream
-            RandomStreams.randomStreams.put(index, stream);
+            RandomStreams.randomStreams().put(index, stream);
         }
-        RegisterFile.updateRegister(4, stream.nextInt());
+        RegisterFile.updateRegister(4, SyscallLog.logInt(this.getNumber(), stream.nextInt()));
     }
 
 }
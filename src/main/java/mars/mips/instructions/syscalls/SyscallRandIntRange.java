@@ -4,6 +4,7 @@ import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.RegisterFile;
 import mars.simulator.Exceptions;
+import mars.util.SyscallLog;
 
 import java.util.Random;
 
@@ -60,13 +61,13 @@ public class SyscallRandIntRange extends AbstractSyscall {
         // Return: $a0 = the next pseudorandom, uniformly distributed int value from this
         // random number generator's sequence.
         Integer index = new Integer(RegisterFile.getValue(4));
-        Random stream = (Random) RandomStreams.randomStreams.get(index);
+        Random stream = (Random) RandomStreams.randomStreams().get(index);
         if (stream == null) {
             stream = new Random(); // create a non-seeded stream
-            RandomStreams.randomStreams.put(index, stream);
+            RandomStreams.randomStreams().put(index, stream);
         }
         try {
-            RegisterFile.updateRegister(4, stream.nextInt(RegisterFile.getValue(5)));
+            RegisterFile.updateRegister(4, SyscallLog.logInt(this.getNumber(), stream.nextInt(RegisterFile.getValue(5))));
         } catch (IllegalArgumentException iae) {
             throw new ProcessingException(statement,
                     "Upper bound of range cannot be negative (syscall " + this.getNumber() + ")",
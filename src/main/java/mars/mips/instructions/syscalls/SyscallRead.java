@@ -1,10 +1,11 @@
 package mars.mips.instructions.syscalls;
 
-import mars.Globals;
 import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
+import mars.util.SyscallLog;
 import mars.util.SystemIO;
 
 /*
@@ -58,14 +59,14 @@ public class SyscallRead extends AbstractSyscall {
      */
     public void simulate(ProgramStatement statement) throws ProcessingException {
         int byteAddress = RegisterFile.getValue(5); // destination of characters read from file
-        byte b = 0;
-        int index = 0;
         byte[] myBuffer = new byte[RegisterFile.getValue(6)]; // specified length
         // Call to SystemIO.xxxx.read(xxx,xxx,xxx)  returns actual length
-        int retLength = SystemIO.readFromFile(
+        // When a syscall log is replayed nothing is read; the bytes come from the log.
+        int retLength = SyscallLog.isReplaying() ? 0 : SystemIO.readFromFile(
                 RegisterFile.getValue(4), // fd
                 myBuffer, // buffer
                 RegisterFile.getValue(6)); // length
+        retLength = SyscallLog.logBytes(this.getNumber(), myBuffer, retLength);
         RegisterFile.updateRegister(2, retLength); // set returned value in register
 
         // Getting rid of processing exception.  It is the responsibility of the
@@ -82,10 +83,7 @@ public class SyscallRead extends AbstractSyscall {
 			*/
         // copy bytes from returned buffer into MARS memory
         try {
-            while (index < retLength) {
-                Globals.memory.setByte(byteAddress++,
-                        myBuffer[index++]);
-            }
+            Memory.getInstance().writeBytes(byteAddress, myBuffer, 0, retLength);
         } catch (AddressErrorException e) {
             throw new ProcessingException(statement, e);
         }
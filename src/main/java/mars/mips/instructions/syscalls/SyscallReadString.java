@@ -1,9 +1,9 @@
 package mars.mips.instructions.syscalls;
 
-import mars.Globals;
 import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
 import mars.util.SystemIO;
 
@@ -40,16 +40,16 @@ public class SyscallReadString extends AbstractSyscall {
         }
         inputString = SystemIO.readString(this.getNumber(), maxLength);
         int stringLength = Math.min(maxLength, inputString.length());
+        byte[] bytes = new byte[stringLength + 2];
+        for (int index = 0; index < stringLength; index++) {
+            bytes[index] = (byte) inputString.charAt(index);
+        }
+        if (stringLength < maxLength) {
+            bytes[stringLength++] = '\n';
+        }
+        if (addNullByte) bytes[stringLength++] = 0;
         try {
-            for (int index = 0; index < stringLength; index++) {
-                Globals.memory.setByte(buf + index,
-                        inputString.charAt(index));
-            }
-            if (stringLength < maxLength) {
-                Globals.memory.setByte(buf + stringLength, '\n');
-                stringLength++;
-            }
-            if (addNullByte) Globals.memory.setByte(buf + stringLength, 0);
+            Memory.getInstance().writeBytes(buf, bytes, 0, stringLength);
         } catch (AddressErrorException e) {
             throw new ProcessingException(statement, e);
         }
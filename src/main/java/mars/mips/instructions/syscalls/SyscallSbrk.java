@@ -1,8 +1,8 @@
 package mars.mips.instructions.syscalls;
 
-import mars.Globals;
 import mars.ProcessingException;
 import mars.ProgramStatement;
+import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
 import mars.simulator.Exceptions;
 
@@ -26,7 +26,7 @@ public class SyscallSbrk extends AbstractSyscall {
     public void simulate(ProgramStatement statement) throws ProcessingException {
         int address = 0;
         try {
-            address = Globals.memory.allocateBytesFromHeap(RegisterFile.getValue(4));
+            address = Memory.getInstance().allocateBytesFromHeap(RegisterFile.getValue(4));
         } catch (IllegalArgumentException iae) {
             throw new ProcessingException(statement,
                     iae.getMessage() + " (syscall " + this.getNumber() + ")",
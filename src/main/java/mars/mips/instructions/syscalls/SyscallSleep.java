@@ -3,6 +3,8 @@ package mars.mips.instructions.syscalls;
 import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.RegisterFile;
+import mars.simulator.VirtualClock;
+import mars.util.SyscallLog;
 
 /*
 Copyright (c) 2003-2008,  Pete Sanderson and Kenneth Vollmar
@@ -49,12 +51,16 @@ public class SyscallSleep extends AbstractSyscall {
     /**
      * System call to cause the MARS Java thread to sleep for (at least) the specified number of milliseconds.
      * This timing will not be precise as the Java implementation will add some overhead.
+     * In virtual time mode the thread does not sleep; the virtual clock is advanced instead.
      */
     public void simulate(ProgramStatement statement) throws ProcessingException {
         // Input arguments: $a0 is the length of time to sleep in milliseconds.
 
+        if (SyscallLog.isReplaying()) {
+            return; // replays run at full speed
+        }
         try {
-            Thread.sleep(RegisterFile.getValue(4)); // units of milliseconds  1000 millisec = 1 sec.
+            VirtualClock.sleep(RegisterFile.getValue(4)); // units of milliseconds  1000 millisec = 1 sec.
         } catch (InterruptedException e) {
             return; // no exception handling
         }
@@ -3,7 +3,9 @@ package mars.mips.instructions.syscalls;
 import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.RegisterFile;
+import mars.simulator.VirtualClock;
 import mars.util.Binary;
+import mars.util.SyscallLog;
 
 /*
 Copyright (c) 2003-2007,  Pete Sanderson and Kenneth Vollmar
@@ -52,7 +54,7 @@ public class SyscallTime extends AbstractSyscall {
      * and $a1 (high order 32 bits).
      */
     public void simulate(ProgramStatement statement) throws ProcessingException {
-        long value = new java.util.Date().getTime();
+        long value = SyscallLog.logLong(this.getNumber(), VirtualClock.currentTimeMillis());
         RegisterFile.updateRegister(4, Binary.lowOrderLongToInt(value)); // $a0
         RegisterFile.updateRegister(5, Binary.highOrderLongToInt(value)); // $a1
     }
@@ -1,10 +1,11 @@
 package mars.mips.instructions.syscalls;
 
-import mars.Globals;
 import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
+import mars.util.SyscallLog;
 import mars.util.SystemIO;
 
 /*
@@ -58,29 +59,28 @@ public class SyscallWrite extends AbstractSyscall {
      */
     public void simulate(ProgramStatement statement) throws ProcessingException {
         int byteAddress = RegisterFile.getValue(5); // source of characters to write to file
-        byte b = 0;
         int reqLength = RegisterFile.getValue(6); // user-requested length
-        int index = 0;
-        byte[] myBuffer = new byte[RegisterFile.getValue(6) + 1]; // specified length plus null termination
+        byte[] myBuffer = new byte[reqLength + 1]; // specified length plus null termination
         try {
-            b = (byte) Globals.memory.getByte(byteAddress);
-            while (index < reqLength) // Stop at requested length. Null bytes are included.
-            // while (index < reqLength && b != 0) // Stop at requested length OR null byte
-            {
-                myBuffer[index++] = b;
-                byteAddress++;
-                b = (byte) Globals.memory.getByte(byteAddress);
-            }
-
-            myBuffer[index] = 0; // Add string termination
+            // Stop at requested length. Null bytes are included.
+            Memory.getInstance().readBytes(byteAddress, myBuffer, 0, reqLength);
+            myBuffer[reqLength] = 0; // Add string termination
         } // end try
         catch (AddressErrorException e) {
             throw new ProcessingException(statement, e);
         }
-        int retValue = SystemIO.writeToFile(
-                RegisterFile.getValue(4), // fd
-                myBuffer, // buffer
-                RegisterFile.getValue(6)); // length
+        int fd = RegisterFile.getValue(4);
+        int retValue;
+        if (fd == 1 || fd == 2) {
+            // Standard output and error are written even when a syscall log is replayed.
+            retValue = SystemIO.writeToFile(fd, myBuffer, RegisterFile.getValue(6));
+        } else {
+            retValue = SyscallLog.isReplaying() ? 0 : SystemIO.writeToFile(
+                    fd, // fd
+                    myBuffer, // buffer
+                    RegisterFile.getValue(6)); // length
+            retValue = SyscallLog.logInt(this.getNumber(), retValue);
+        }
         RegisterFile.updateRegister(2, retValue); // set returned value in register
 
         // Getting rid of processing exception.  It is the responsibility of the
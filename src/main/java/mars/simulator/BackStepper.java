@@ -1,12 +1,19 @@
 package mars.simulator;
 
 import mars.Globals;
-import mars.ProgramStatement;
 import mars.mips.hardware.Coprocessor0;
 import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
 import mars.mips.instructions.Instruction;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
 
 /**
  * Used to "step backward" through execution, undoing each instruction.
@@ -17,7 +24,6 @@ import mars.mips.instructions.Instruction;
 
 public class BackStepper {
     // The types of "undo" actions.  Under 1.5, these would be enumerated type.
-    // These fit better in the BackStep class below but inner classes cannot have static members.
     private static final int MEMORY_RESTORE_RAW_WORD = 0;
     private static final int MEMORY_RESTORE_WORD = 1;
     private static final int MEMORY_RESTORE_HALF = 2;
@@ -30,19 +36,8 @@ public class BackStepper {
     private static final int COPROC1_CONDITION_SET = 9;
     private static final int DO_NOTHING = 10;  // instruction does not write anything.
 
-    // Flag to mark BackStep object as prepresenting specific situation: user manipulates
-    // memory/register value via GUI after assembling program but before running it.
-    private static final int NOT_PC_VALUE = -1;
-
     private boolean engaged;
-    private final BackstepStack backSteps;
-
-    // One can argue using java.util.Stack, given its clumsy implementation.
-    // A homegrown linked implementation will be more streamlined, but
-    // I anticipate that backstepping will only be used during timed
-    // (currently max 30 instructions/second) or stepped execution, where
-    // performance is not an issue.  Its Vector implementation may result
-    // in quicker garbage collection than a pure linked list implementation.
+    private final BackstepJournal backSteps;
 
     /**
      * Create a fresh BackStepper.  It is enabled, which means all
@@ -51,7 +46,7 @@ public class BackStepper {
      */
     public BackStepper() {
         engaged = true;
-        backSteps = new BackstepStack(Globals.maximumBacksteps);
+        backSteps = new BackstepJournal(Globals.maximumBacksteps);
     }
 
     /**
@@ -81,6 +76,15 @@ public class BackStepper {
         return backSteps.empty();
     }
 
+    /**
+     * Discard all steps recorded so far.  Used when the machine state is replaced by
+     * a snapshot, which the steps would no longer match.  This method has package
+     * visibility.
+     */
+    void clear() {
+        backSteps.clear();
+    }
+
     /**
      * Determine whether the next back-step action occurred as the result of
      * an instruction that executed in the "delay slot" of a delayed branch.
@@ -90,7 +94,7 @@ public class BackStepper {
      */
     // Added 25 June 2007
     public boolean inDelaySlot() {
-        return !empty() && backSteps.peek().inDelaySlot;
+        return !empty() && backSteps.peekInDelaySlot();
     }
 
     /**
@@ -103,52 +107,52 @@ public class BackStepper {
     // all store their result in register pairs which results in two store operations.
     // Both must be undone transparently, so we need to detect that multiple steps happen
     // together and carry out all of them here.
-    // Use a do-while loop based on the backstep's program statement reference.
+    // Use a do-while loop based on the program counter of the backstep, which identifies
+    // the statement whose action is being undone.
     public void backStep() {
         if (engaged && !backSteps.empty()) {
-            ProgramStatement statement = backSteps.peek().ps;
+            int statementPC = backSteps.peekPC();
             engaged = false; // GOTTA DO THIS SO METHOD CALL IN SWITCH WILL NOT RESULT IN NEW ACTION ON STACK!
             do {
-                BackStep step = backSteps.pop();
-            /*
-            	System.out.println("backstep POP: action "+step.action+" pc "+mars.util.Binary.intToHexString(step.pc)+
-            	                   " source "+((step.ps==null)? "none":step.ps.getSource())+
-            							 " parm1 "+step.param1+" parm2 "+step.param2);
-            */
-                if (step.pc != NOT_PC_VALUE) {
-                    RegisterFile.setProgramCounter(step.pc);
+                backSteps.pop();
+                int action = backSteps.action;
+                int pc = backSteps.pc;
+                int param1 = backSteps.param1;
+                int param2 = backSteps.param2;
+                if (hasStatement(pc)) {
+                    RegisterFile.setProgramCounter(pc);
                 }
                 try {
-                    switch (step.action) {
+                    switch (action) {
                         case MEMORY_RESTORE_RAW_WORD:
-                            Globals.memory.setRawWord(step.param1, step.param2);
+                            Memory.getInstance().setRawWord(param1, param2);
                             break;
                         case MEMORY_RESTORE_WORD:
-                            Globals.memory.setWord(step.param1, step.param2);
+                            Memory.getInstance().setWord(param1, param2);
                             break;
                         case MEMORY_RESTORE_HALF:
-                            Globals.memory.setHalf(step.param1, step.param2);
+                            Memory.getInstance().setHalf(param1, param2);
                             break;
                         case MEMORY_RESTORE_BYTE:
-                            Globals.memory.setByte(step.param1, step.param2);
+                            Memory.getInstance().setByte(param1, param2);
                             break;
                         case REGISTER_RESTORE:
-                            RegisterFile.updateRegister(step.param1, step.param2);
+                            RegisterFile.updateRegister(param1, param2);
                             break;
                         case PC_RESTORE:
-                            RegisterFile.setProgramCounter(step.param1);
+                            RegisterFile.setProgramCounter(param1);
                             break;
                         case COPROC0_REGISTER_RESTORE:
-                            Coprocessor0.updateRegister(step.param1, step.param2);
+                            Coprocessor0.updateRegister(param1, param2);
                             break;
                         case COPROC1_REGISTER_RESTORE:
-                            Coprocessor1.updateRegister(step.param1, step.param2);
+                            Coprocessor1.updateRegister(param1, param2);
                             break;
                         case COPROC1_CONDITION_CLEAR:
-                            Coprocessor1.clearConditionFlag(step.param1);
+                            Coprocessor1.clearConditionFlag(param1);
                             break;
                         case COPROC1_CONDITION_SET:
-                            Coprocessor1.setConditionFlag(step.param1);
+                            Coprocessor1.setConditionFlag(param1);
                             break;
                         case DO_NOTHING:
                             break;
@@ -158,11 +162,27 @@ public class BackStepper {
                     System.out.println("Internal MARS error: address exception while back-stepping.");
                     System.exit(0);
                 }
-            } while (!backSteps.empty() && statement == backSteps.peek().ps);
+            } while (!backSteps.empty() && statementPC == backSteps.peekPC());
             engaged = true;  // RESET IT (was disabled at top of loop -- see comment)
         }
     }
 
+    // The statement executed at the given address is looked up only when its action is
+    // undone, rather than every time an action is recorded.  The only situation in which
+    // there is none so far: user modifies memory or register contents through direct
+    // manipulation on the GUI, after assembling the program but before starting to run it
+    // (or after backstepping all the way to the start).  The action is not associated with
+    // any instruction and the program counter is left alone, but the action is carried out.
+    private static boolean hasStatement(int pc) {
+        try {
+            // Want the program statement but do not want observers notified.
+            Memory.getInstance().getStatementNoNotify(pc);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
 
     /* Convenience method called below to get program counter value.  If it needs to be
      * be modified (e.g. to subtract 4) that can be done here in one place.
@@ -313,133 +333,220 @@ public class BackStepper {
      * @return 0
      */
     public int addDoNothing(int pc) {
-        if (backSteps.empty() || backSteps.peek().pc != pc) {
+        if (backSteps.empty() || backSteps.peekPC() != pc) {
             backSteps.push(DO_NOTHING, pc);
         }
         return 0;
     }
 
 
-    // Represents a "back step" (undo action) on the stack.
-    private class BackStep {
-        private int action;  // what do do MEMORY_RESTORE_WORD, etc
-        private int pc;      // program counter value when original step occurred
-        private ProgramStatement ps;   // statement whose action is being "undone" here
-        private int param1;  // first parameter required by that action
-        private int param2;  // optional second parameter required by that action
-        private boolean inDelaySlot; // true if instruction executed in "delay slot" (delayed branching enabled)
-
-        // it is critical that BackStep object get its values by calling this method
-        // rather than assigning to individual members, because of the technique used
-        // to set its ps member (and possibly pc).
-        private void assign(int act, int programCounter, int parm1, int parm2) {
-            action = act;
-            pc = programCounter;
-            try {
-                // Client does not have direct access to program statement, and rather than making all
-                // of them go through the methods below to obtain it, we will do it here.
-                // Want the program statement but do not want observers notified.
-                ps = Globals.memory.getStatementNoNotify(programCounter);
-            } catch (Exception e) {
-                // The only situation causing this so far: user modifies memory or register
-                // contents through direct manipulation on the GUI, after assembling the program but
-                // before starting to run it (or after backstepping all the way to the start).
-                // The action will not be associated with any instruction, but will be carried out
-                // when popped.
-                ps = null;
-                pc = NOT_PC_VALUE; // Backstep method above will see this as flag to not set PC
-            }
-            param1 = parm1;
-            param2 = parm2;
-            inDelaySlot = Simulator.inDelaySlot(); // ADDED 25 June 2007
-         /*				
-            System.out.println("backstep PUSH: action "+action+" pc "+mars.util.Binary.intToHexString(pc)+
-         		                   " source "+((ps==null)? "none":ps.getSource())+
-         								 " parm1 "+param1+" parm2 "+param2);
-         */
+    // *****************************************************************************
+    // Journal of "back steps" (undo actions), used as a stack.  Its entries are stored
+    // in columns: parallel int arrays holding the action, program counter and two
+    // parameters of each step, and a bit set marking steps made in a delay slot.  The
+    // columns are divided into chunks of CHUNK_SIZE entries.  The newest RESIDENT_CHUNKS
+    // chunks are kept in memory, in arrays allocated once and then reused, so recording
+    // a step never creates an object.  Older chunks are spilled to a temporary file and
+    // read back when back-stepping reaches them, which lets the history hold millions of
+    // steps.  When the journal holds capacity steps, the oldest step is discarded.
+    //
+    // There is no locking: steps are recorded by the simulator thread while the program
+    // runs, and undone by the GUI thread (back-step button) only while it is paused or
+    // stopped.  The hand-off between the threads orders the accesses.
+
+    private static class BackstepJournal {
+        private static final int CHUNK_SIZE = 1 << 16;
+        private static final int RESIDENT_CHUNKS = 4;
+        private static final int CHUNK_BYTES = CHUNK_SIZE * 4 * Integer.BYTES + CHUNK_SIZE / Byte.SIZE;
+        private static final Cleaner cleaner = Cleaner.create();
+
+        private final long capacity;
+        // Entry indexes count every step ever recorded.  Those from bottom (inclusive) to
+        // top (exclusive) are in the journal.  Chunk k holds entries k * CHUNK_SIZE up to
+        // (k + 1) * CHUNK_SIZE; those from firstResident up are in memory, the rest spilled.
+        private long bottom = 0;
+        private long top = 0;
+        private long firstResident = 0;
+        // Columns of the resident chunks.  Chunk k uses row k % RESIDENT_CHUNKS.
+        private final int[][] actions = new int[RESIDENT_CHUNKS][];
+        private final int[][] pcs = new int[RESIDENT_CHUNKS][];
+        private final int[][] params1 = new int[RESIDENT_CHUNKS][];
+        private final int[][] params2 = new int[RESIDENT_CHUNKS][];
+        private final long[][] delaySlots = new long[RESIDENT_CHUNKS][];
+        // Spill file, created when first needed.  Chunk k is at slot k % spillSlots.
+        private FileChannel spill;
+        private ByteBuffer spillBuffer;
+        private final long spillSlots;
+
+        // The step most recently popped.
+        private int action;
+        private int pc;
+        private int param1;
+        private int param2;
+
+        private BackstepJournal(int capacity) {
+            this.capacity = Math.max(1, capacity);
+            this.spillSlots = this.capacity / CHUNK_SIZE + 2;
         }
-    }
 
-    // *****************************************************************************
-    // special purpose stack class for backstepping.  You've heard of circular queues
-    // implemented with an array, right?  This is a circular stack!  When full, the
-    // newly-pushed item overwrites the oldest item, with circular top!  All operations
-    // are constant time.  It's synchronized too, to be safe (is used by both the
-    // simulation thread and the GUI thread for the back-step button).
-    // Upon construction, it is filled with newly-created empty BackStep objects which
-    // will exist for the life of the stack.  Push does not create a BackStep object
-    // but instead overwrites the contents of the existing one.  Thus during MIPS
-    // program (simulated) execution, BackStep objects are never created or junked
-    // regardless of how many steps are executed.  This will speed things up a bit
-    // and make life easier for the garbage collector.
-
-    private class BackstepStack {
-        private final int capacity;
-        private int size;
-        private int top;
-        private final BackStep[] stack;
-
-        // Stack is created upon successful assembly or reset.  The one-time overhead of
-        // creating all the BackStep objects will not be noticed by the user, and enhances
-        // runtime performance by not having to create or recycle them during MIPS
-        // program execution.
-        private BackstepStack(int capacity) {
-            this.capacity = capacity;
-            this.size = 0;
-            this.top = -1;
-            this.stack = new BackStep[capacity];
-            for (int i = 0; i < capacity; i++) {
-                this.stack[i] = new BackStep();
+        // Also reads the chunk holding the top entry back from the spill file if needed,
+        // so peek and pop can be called whenever this returns false.  Only the top entry
+        // is ever read, so any resident chunks above it are empty and the chunk can simply
+        // become the first resident one.
+        private boolean empty() {
+            if (top != bottom) {
+                long chunk = (top - 1) / CHUNK_SIZE;
+                if (chunk < firstResident) {
+                    firstResident = chunk;
+                    if (!readChunk(chunk, (int) (chunk % RESIDENT_CHUNKS))) {
+                        bottom = top; // spilled history is lost
+                    }
+                }
             }
+            return top == bottom;
         }
 
-        private synchronized boolean empty() {
-            return size == 0;
+        private void clear() {
+            bottom = top;
         }
 
-        private synchronized void push(int act, int programCounter, int parm1, int parm2) {
-            if (size == 0) {
-                top = 0;
-                size++;
-            } else if (size < capacity) {
-                top = (top + 1) % capacity;
-                size++;
-            } else { // size == capacity.  The top moves up one, replacing oldest entry (goodbye!)
-                top = (top + 1) % capacity;
+        private void push(int act, int programCounter, int parm1, int parm2) {
+            if (top / CHUNK_SIZE >= firstResident + RESIDENT_CHUNKS) {
+                spillOldestResident();
+            }
+            int row = row(top);
+            if (actions[row] == null) {
+                actions[row] = new int[CHUNK_SIZE];
+                pcs[row] = new int[CHUNK_SIZE];
+                params1[row] = new int[CHUNK_SIZE];
+                params2[row] = new int[CHUNK_SIZE];
+                delaySlots[row] = new long[CHUNK_SIZE / Long.SIZE];
+            }
+            int i = offset(top);
+            actions[row][i] = act;
+            pcs[row][i] = programCounter;
+            params1[row][i] = parm1;
+            params2[row][i] = parm2;
+            if (Simulator.inDelaySlot()) {
+                delaySlots[row][i >> 6] |= 1L << i;
+            } else {
+                delaySlots[row][i >> 6] &= ~(1L << i);
+            }
+            top++;
+            if (top - bottom > capacity) {
+                bottom++; // the oldest entry is discarded (goodbye!)
             }
-            // We'll re-use existing objects rather than create/discard each time.
-            // Must use assign() method rather than series of assignment statements!
-            stack[top].assign(act, programCounter, parm1, parm2);
         }
 
-        private synchronized void push(int act, int programCounter, int parm1) {
+        private void push(int act, int programCounter, int parm1) {
             push(act, programCounter, parm1, 0);
         }
 
-        private synchronized void push(int act, int programCounter) {
+        private void push(int act, int programCounter) {
             push(act, programCounter, 0, 0);
         }
 
         // NO PROTECTION.  This class is used only within this file so there is no excuse
-        // for trying to pop from empty stack.
-        private synchronized BackStep pop() {
-            BackStep bs;
-            bs = stack[top];
-            if (size == 1) {
-                top = -1;
-            } else {
-                top = (top + capacity - 1) % capacity;
+        // for trying to pop from empty stack.  The step is left in action, pc, param1
+        // and param2.
+        private void pop() {
+            int row = row(top - 1);
+            int i = offset(top - 1);
+            action = actions[row][i];
+            pc = pcs[row][i];
+            param1 = params1[row][i];
+            param2 = params2[row][i];
+            top--;
+        }
+
+        // NO PROTECTION, as for pop().
+        private int peekPC() {
+            return pcs[row(top - 1)][offset(top - 1)];
+        }
+
+        // NO PROTECTION, as for pop().
+        private boolean peekInDelaySlot() {
+            int i = offset(top - 1);
+            return (delaySlots[row(top - 1)][i >> 6] & (1L << i)) != 0;
+        }
+
+        private static int row(long index) {
+            return (int) ((index / CHUNK_SIZE) % RESIDENT_CHUNKS);
+        }
+
+        private static int offset(long index) {
+            return (int) (index % CHUNK_SIZE);
+        }
+
+        private void spillOldestResident() {
+            long chunk = firstResident;
+            firstResident++;
+            if (bottom >= firstResident * CHUNK_SIZE) {
+                return; // all of its entries have been discarded
+            }
+            if (!writeChunk(chunk, (int) (chunk % RESIDENT_CHUNKS))) {
+                // The spill file cannot be used; the history is shortened instead.
+                bottom = Math.max(bottom, firstResident * CHUNK_SIZE);
             }
-            size--;
-            return bs;
         }
 
-        // NO PROTECTION.  This class is used only within this file so there is no excuse
-        // for trying to peek from empty stack.
-        private synchronized BackStep peek() {
-            return stack[top];
+        private boolean writeChunk(long chunk, int row) {
+            try {
+                if (spill == null) {
+                    File file = File.createTempFile("mars-backsteps", ".tmp");
+                    file.deleteOnExit();
+                    spill = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                            StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+                    spillBuffer = ByteBuffer.allocateDirect(CHUNK_BYTES);
+                    FileChannel channel = spill;
+                    cleaner.register(this, () -> {
+                        try {
+                            channel.close();
+                        } catch (IOException e) {
+                            // not concerned with this exception
+                        }
+                    });
+                }
+                ByteBuffer buffer = spillBuffer;
+                buffer.clear();
+                buffer.asIntBuffer().put(actions[row]).put(pcs[row]).put(params1[row]).put(params2[row]);
+                buffer.position(4 * CHUNK_SIZE * Integer.BYTES);
+                buffer.asLongBuffer().put(delaySlots[row]);
+                buffer.clear();
+                long position = (chunk % spillSlots) * CHUNK_BYTES;
+                while (buffer.hasRemaining()) {
+                    position += spill.write(buffer, position);
+                }
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
         }
 
+        private boolean readChunk(long chunk, int row) {
+            if (spill == null) {
+                return false;
+            }
+            try {
+                ByteBuffer buffer = spillBuffer;
+                buffer.clear();
+                long position = (chunk % spillSlots) * CHUNK_BYTES;
+                while (buffer.hasRemaining()) {
+                    int count = spill.read(buffer, position);
+                    if (count < 0) {
+                        return false;
+                    }
+                    position += count;
+                }
+                buffer.clear();
+                buffer.asIntBuffer().get(actions[row]).get(pcs[row]).get(params1[row]).get(params2[row]);
+                buffer.position(4 * CHUNK_SIZE * Integer.BYTES);
+                buffer.asLongBuffer().get(delaySlots[row]);
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
     }
 
-}
\ No newline at end of file
+}
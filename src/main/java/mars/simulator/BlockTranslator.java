@@ -0,0 +1,208 @@
+package mars.simulator;
+
+import mars.Globals;
+import mars.ProgramStatement;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
+import mars.mips.instructions.BasicInstruction;
+import mars.mips.instructions.BasicInstructionFormat;
+import mars.mips.instructions.Instruction;
+import mars.mips.instructions.SimulationCode;
+
+import java.util.Arrays;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Dynamic translator used by the Simulator's turbo loop.  It profiles the targets of
+ * taken branches and jumps, and once a target has been entered HOT_THRESHOLD times it
+ * translates the basic block starting there into a Block: the block's statements, their
+ * SimulationCode objects and their decoded form (see InstructionDecoder) linked into
+ * parallel arrays.  The turbo loop then runs a
+ * whole block without fetching each instruction through InstructionCache and Memory.
+ * <p>
+ * A block ends after the first branch, jump, syscall, break or eret, at MAX_BLOCK_LENGTH
+ * statements, or before the first word that holds no valid basic instruction.  Since an
+ * instruction in the middle of a block may still transfer control (a trap, or a jr/jalr
+ * not recognized above), the program counter is compared with its fall-through value
+ * after each statement and the block is left as soon as they differ.  Likewise, a store
+ * in the middle of a block may rewrite a later statement of the same block (self-modifying
+ * code), so the modification count of InstructionCache is compared after each store and
+ * the block is left as soon as it changes.
+ * <p>
+ * The translator must not be used when delayed branching is enabled or when memory
+ * observers are attached, since blocks bypass both the delay slot bookkeeping and the
+ * instruction fetch notices.  Blocks are discarded whenever InstructionCache reports
+ * that the text segment has been modified.
+ **/
+
+class BlockTranslator {
+    /**
+     * Number of times a branch target must be entered before its block is translated.
+     */
+    static final int HOT_THRESHOLD = 16;
+    /**
+     * Maximum number of statements in a translated block.
+     */
+    static final int MAX_BLOCK_LENGTH = 64;
+
+    /**
+     * A translated basic block.
+     */
+    static final class Block {
+        final int address;
+        final ProgramStatement[] statements;
+        final SimulationCode[] codes;
+        // InstructionDecoder.STRIDE ints for each statement
+        final int[] decoded;
+        // true for each statement that may write to memory
+        final boolean[] stores;
+
+        private Block(int address, ProgramStatement[] statements, SimulationCode[] codes, int[] decoded,
+                      boolean[] stores) {
+            this.address = address;
+            this.statements = statements;
+            this.codes = codes;
+            this.decoded = decoded;
+            this.stores = stores;
+        }
+
+        int length() {
+            return statements.length;
+        }
+    }
+
+    // Flat arrays indexed like InstructionCache: (address - textBaseAddress) >> 2.
+    private Block[] blocks = new Block[0];
+    private int[] entryCounts = new int[0];
+    private int baseAddress;
+    private int modificationCount;
+
+    BlockTranslator() {
+        flush();
+    }
+
+    /**
+     * Determine whether block translation may be used for the current run.
+     *
+     * @return true if delayed branching is disabled and no memory observers are attached
+     */
+    static boolean applies() {
+        return !Globals.getSettings().getDelayedBranchingEnabled()
+                && Memory.getInstance().countObservers() == 0;
+    }
+
+    /**
+     * Record an entry to the given branch target and return its translated block if
+     * there is one.  The block is translated when the entry count reaches HOT_THRESHOLD.
+     *
+     * @param address the branch target just reached
+     * @return the translated block starting at that address, or null if none
+     */
+    Block enter(int address) {
+        if (modificationCount != InstructionCache.getModificationCount() || baseAddress != Memory.textBaseAddress) {
+            flush();
+        }
+        int index = (address - baseAddress) >> 2;
+        if (index < 0 || (address & 3) != 0 || !Memory.inTextSegment(address)) {
+            return null;
+        }
+        if (index >= blocks.length) {
+            int length = Math.max(1024, blocks.length);
+            while (length <= index) {
+                length <<= 1;
+            }
+            blocks = Arrays.copyOf(blocks, length);
+            entryCounts = Arrays.copyOf(entryCounts, length);
+        }
+        Block block = blocks[index];
+        if (block == null && ++entryCounts[index] == HOT_THRESHOLD) {
+            block = translate(address);
+            blocks[index] = block;
+        }
+        return block;
+    }
+
+    private void flush() {
+        blocks = new Block[0];
+        entryCounts = new int[0];
+        baseAddress = Memory.textBaseAddress;
+        modificationCount = InstructionCache.getModificationCount();
+    }
+
+    // Collect consecutive statements starting at the given address.  Returns null if
+    // the first word does not hold a valid basic instruction.
+    private Block translate(int startAddress) {
+        int address = startAddress;
+        ProgramStatement[] statements = new ProgramStatement[MAX_BLOCK_LENGTH];
+        SimulationCode[] codes = new SimulationCode[MAX_BLOCK_LENGTH];
+        int[] decoded = new int[MAX_BLOCK_LENGTH * InstructionDecoder.STRIDE];
+        boolean[] stores = new boolean[MAX_BLOCK_LENGTH];
+        int length = 0;
+        while (length < MAX_BLOCK_LENGTH && Memory.inTextSegment(address)) {
+            ProgramStatement statement;
+            try {
+                statement = Memory.getInstance().getStatementNoNotify(address);
+            } catch (AddressErrorException aee) {
+                break;
+            }
+            if (statement == null || !(statement.getInstruction() instanceof BasicInstruction)) {
+                break;
+            }
+            BasicInstruction instruction = (BasicInstruction) statement.getInstruction();
+            statements[length] = statement;
+            codes[length] = instruction.getSimulationCode();
+            InstructionDecoder.decode(statement, decoded, length * InstructionDecoder.STRIDE);
+            stores[length] = writesMemory(instruction);
+            length++;
+            if (endsBlock(instruction)) {
+                break;
+            }
+            address += Instruction.INSTRUCTION_LENGTH;
+        }
+        if (length == 0) {
+            return null;
+        }
+        return new Block(startAddress, Arrays.copyOf(statements, length), Arrays.copyOf(codes, length),
+                Arrays.copyOf(decoded, length * InstructionDecoder.STRIDE), Arrays.copyOf(stores, length));
+    }
+
+    private static boolean writesMemory(BasicInstruction instruction) {
+        String name = instruction.getName();
+        return name.equals("sw") || name.equals("sh") || name.equals("sb") || name.equals("swl")
+                || name.equals("swr") || name.equals("sc") || name.equals("swc1") || name.equals("sdc1");
+    }
+
+    private static boolean endsBlock(BasicInstruction instruction) {
+        if (instruction.getInstructionFormat() == BasicInstructionFormat.I_BRANCH_FORMAT
+                || instruction.getInstructionFormat() == BasicInstructionFormat.J_FORMAT) {
+            return true;
+        }
+        String name = instruction.getName();
+        return name.equals("jr") || name.equals("jalr") || name.equals("syscall")
+                || name.equals("break") || name.equals("eret");
+    }
+}
@@ -0,0 +1,320 @@
+package mars.simulator;
+
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.Register;
+import mars.mips.hardware.RegisterFile;
+import mars.util.Binary;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+
+/**
+ * Condition attached to a breakpoint or watchpoint, such as <tt>$t0 == 5</tt>.  The
+ * text is parsed once, when the breakpoint is set, into a tree of evaluators that
+ * read the registers and memory directly each time the breakpoint is reached.
+ * <p>
+ * A condition is one or more comparisons joined by <tt>&amp;&amp;</tt> and
+ * <tt>||</tt>, optionally grouped with parentheses.  A comparison is two operands
+ * joined by one of <tt>== != &lt; &lt;= &gt; &gt;=</tt>, compared as signed integers.
+ * An operand is a register (<tt>$t0</tt>, <tt>$8</tt>, <tt>$f2</tt>, <tt>pc</tt>,
+ * <tt>hi</tt>, <tt>lo</tt>), a decimal or hex integer, or <tt>[operand]</tt> for the
+ * memory word at the address given by the operand.
+ **/
+
+abstract class BreakpointCondition {
+
+    /**
+     * Evaluate the condition against the current machine state.
+     *
+     * @return true if the condition holds
+     */
+    abstract boolean holds();
+
+    /**
+     * Parse the text of a condition.
+     *
+     * @param text the condition, e.g. <tt>$t0 == 5 &amp;&amp; [0x10010000] != 0</tt>
+     * @return the condition's evaluator
+     * @throws IllegalArgumentException if the text is not a valid condition
+     */
+    static BreakpointCondition parse(String text) throws IllegalArgumentException {
+        Parser parser = new Parser(text);
+        BreakpointCondition condition = parser.parseOr();
+        if (parser.position < text.length()) {
+            throw parser.error("unexpected \"" + text.substring(parser.position) + "\"");
+        }
+        return condition;
+    }
+
+    /////////////////////////////////////////////////////////////////////
+    // Evaluators.
+
+    private static final int EQ = 0, NE = 1, LT = 2, LE = 3, GT = 4, GE = 5;
+    private static final String[] OPERATORS = {"==", "!=", "<=", ">=", "<", ">"};
+    private static final int[] OPERATOR_CODES = {EQ, NE, LE, GE, LT, GT};
+
+    private static final class Comparison extends BreakpointCondition {
+        private final Operand left, right;
+        private final int operator;
+
+        Comparison(Operand left, int operator, Operand right) {
+            this.left = left;
+            this.operator = operator;
+            this.right = right;
+        }
+
+        boolean holds() {
+            int a, b;
+            try {
+                a = left.value();
+                b = right.value();
+            } catch (AddressErrorException e) {
+                return false;  // operand reads outside memory; treat as not met
+            }
+            switch (operator) {
+                case EQ:
+                    return a == b;
+                case NE:
+                    return a != b;
+                case LT:
+                    return a < b;
+                case LE:
+                    return a <= b;
+                case GT:
+                    return a > b;
+                default:
+                    return a >= b;
+            }
+        }
+    }
+
+    private static final class And extends BreakpointCondition {
+        private final BreakpointCondition left, right;
+
+        And(BreakpointCondition left, BreakpointCondition right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        boolean holds() {
+            return left.holds() && right.holds();
+        }
+    }
+
+    private static final class Or extends BreakpointCondition {
+        private final BreakpointCondition left, right;
+
+        Or(BreakpointCondition left, BreakpointCondition right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        boolean holds() {
+            return left.holds() || right.holds();
+        }
+    }
+
+    private static abstract class Operand {
+        abstract int value() throws AddressErrorException;
+    }
+
+    private static final class Constant extends Operand {
+        private final int value;
+
+        Constant(int value) {
+            this.value = value;
+        }
+
+        int value() {
+            return value;
+        }
+    }
+
+    // General purpose register 0-31, or hi (33) and lo (34) as numbered by RegisterFile.
+    private static final class GeneralRegister extends Operand {
+        private final int number;
+
+        GeneralRegister(int number) {
+            this.number = number;
+        }
+
+        int value() {
+            return RegisterFile.getValue(number);
+        }
+    }
+
+    private static final class FloatingPointRegister extends Operand {
+        private final int number;
+
+        FloatingPointRegister(int number) {
+            this.number = number;
+        }
+
+        int value() {
+            return Coprocessor1.getValue(number);
+        }
+    }
+
+    private static final class ProgramCounter extends Operand {
+        int value() {
+            return RegisterFile.getProgramCounter();
+        }
+    }
+
+    private static final class MemoryWord extends Operand {
+        private final Operand address;
+
+        MemoryWord(Operand address) {
+            this.address = address;
+        }
+
+        int value() throws AddressErrorException {
+            return Memory.getInstance().getWordNoNotify(address.value());
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////
+    // Recursive descent parser:
+    //   or         := and { "||" and }
+    //   and        := primary { "&&" primary }
+    //   primary    := "(" or ")" | comparison
+    //   comparison := operand operator operand
+    //   operand    := register | integer | "[" operand "]"
+
+    private static final class Parser {
+        private final String text;
+        private int position;
+
+        Parser(String text) {
+            this.text = text;
+            this.position = 0;
+        }
+
+        BreakpointCondition parseOr() {
+            BreakpointCondition condition = parseAnd();
+            while (accept("||")) {
+                condition = new Or(condition, parseAnd());
+            }
+            return condition;
+        }
+
+        private BreakpointCondition parseAnd() {
+            BreakpointCondition condition = parsePrimary();
+            while (accept("&&")) {
+                condition = new And(condition, parsePrimary());
+            }
+            return condition;
+        }
+
+        private BreakpointCondition parsePrimary() {
+            if (accept("(")) {
+                BreakpointCondition condition = parseOr();
+                expect(")");
+                return condition;
+            }
+            Operand left = parseOperand();
+            for (int i = 0; i < OPERATORS.length; i++) {
+                if (accept(OPERATORS[i])) {
+                    return new Comparison(left, OPERATOR_CODES[i], parseOperand());
+                }
+            }
+            throw error("comparison operator expected");
+        }
+
+        private Operand parseOperand() {
+            if (accept("[")) {
+                Operand address = parseOperand();
+                expect("]");
+                return new MemoryWord(address);
+            }
+            skipSpaces();
+            int start = position;
+            while (position < text.length()
+                    && (Character.isLetterOrDigit(text.charAt(position))
+                    || text.charAt(position) == '$' || text.charAt(position) == '-')) {
+                position++;
+            }
+            String token = text.substring(start, position);
+            if (token.length() == 0) {
+                throw error("register or integer expected");
+            }
+            String name = token.toLowerCase();
+            if (name.equals("pc") || name.equals("$pc")) {
+                return new ProgramCounter();
+            }
+            if (name.equals("hi") || name.equals("$hi")) {
+                return new GeneralRegister(33);
+            }
+            if (name.equals("lo") || name.equals("$lo")) {
+                return new GeneralRegister(34);
+            }
+            if (token.charAt(0) == '$') {
+                Register register = RegisterFile.getUserRegister(token);
+                if (register != null) {
+                    return new GeneralRegister(register.getNumber());
+                }
+                register = Coprocessor1.getRegister(token);
+                if (register != null) {
+                    return new FloatingPointRegister(register.getNumber());
+                }
+                throw error("unknown register " + token);
+            }
+            try {
+                return new Constant(Binary.stringToInt(token));
+            } catch (NumberFormatException e) {
+                throw error("invalid integer " + token);
+            }
+        }
+
+        private void skipSpaces() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private boolean accept(String symbol) {
+            skipSpaces();
+            if (text.startsWith(symbol, position)) {
+                position += symbol.length();
+                skipSpaces();
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String symbol) {
+            if (!accept(symbol)) {
+                throw error("\"" + symbol + "\" expected");
+            }
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Invalid condition \"" + text.trim() + "\": " + message);
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package mars.simulator;
+
+import mars.MIPSprogram;
+import mars.assembler.SymbolTable;
+import mars.mips.hardware.Memory;
+import mars.util.Binary;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+
+/**
+ * The breakpoints and watchpoints given to one run of the Simulator.
+ * <p>
+ * Breakpoint addresses are held in a bit array per 4K page of the address space,
+ * reached through a two-level directory like the one Memory uses for its segments.
+ * The Simulator looks up the program counter after every instruction, so a page
+ * without breakpoints costs two array loads and a null test, and a breakpoint that
+ * has no condition or hit count is recognized without any further work.  Conditions
+ * (see BreakpointCondition) are parsed once when the breakpoint is added.
+ * <p>
+ * A watchpoint stops execution after an instruction that stores into its address
+ * range.  Memory reports each store through stored() while a watchpoint is set, and
+ * the Simulator acts on it with the next breakpoint check, so conditions on a
+ * watchpoint see the registers as the storing instruction left them.
+ * <p>
+ * Both kinds take an options string: an optional condition, which may begin with
+ * <tt>if</tt>, followed by an optional <tt>hits &lt;n&gt;</tt> to stop only from the
+ * n-th time the breakpoint is reached with its condition met, e.g.
+ * <tt>$t0 == 5 hits 3</tt>.
+ **/
+
+public class Breakpoints {
+    private static final int DIRECTORY_LENGTH = 1024;  // indexed by address bits 31-22
+    private static final int TABLE_LENGTH = 1024;      // indexed by address bits 21-12
+    private static final int PAGE_LENGTH_LONGS = 16;   // one bit per word of a 4K page
+
+    /**
+     * A conditional or counted breakpoint, or a watchpoint.
+     */
+    private static final class Point {
+        private final int low, high;
+        private final BreakpointCondition condition;
+        private final int hitCount;
+        private int hits;
+
+        private Point(int low, int high, BreakpointCondition condition, int hitCount) {
+            this.low = low;
+            this.high = high;
+            this.condition = condition;
+            this.hitCount = hitCount;
+            this.hits = 0;
+        }
+
+        // Called each time the point is reached; counts the hit if the condition holds.
+        private boolean triggered() {
+            if (condition != null && !condition.holds()) {
+                return false;
+            }
+            hits++;
+            return hits >= hitCount;
+        }
+    }
+
+    private final long[][][] directory = new long[DIRECTORY_LENGTH][][];
+    private final HashMap conditions = new HashMap(); // key is Integer address, value is Point
+    private final ArrayList watchpoints = new ArrayList();
+    private Point[] watchpointArray = new Point[0];
+    private Point[] stores = new Point[0];   // watchpoints stored into by the current instruction
+    private int storeCount = 0;
+    private int storeAddress;
+    private String lastHit;
+
+    /**
+     * Create an empty set of breakpoints.
+     */
+    public Breakpoints() {
+    }
+
+    /**
+     * Create a set of unconditional breakpoints.
+     *
+     * @param addresses instruction addresses to stop at
+     */
+    public Breakpoints(int[] addresses) {
+        for (int i = 0; i < addresses.length; i++) {
+            addBreakpoint(addresses[i]);
+        }
+    }
+
+    /**
+     * Add an unconditional breakpoint.
+     *
+     * @param address instruction address to stop at
+     */
+    public void addBreakpoint(int address) {
+        long[][] table = directory[address >>> 22];
+        if (table == null) {
+            table = new long[TABLE_LENGTH][];
+            directory[address >>> 22] = table;
+        }
+        long[] page = table[(address >>> 12) & (TABLE_LENGTH - 1)];
+        if (page == null) {
+            page = new long[PAGE_LENGTH_LONGS];
+            table[(address >>> 12) & (TABLE_LENGTH - 1)] = page;
+        }
+        int word = (address >>> 2) & 1023;
+        page[word >>> 6] |= 1L << word;
+    }
+
+    /**
+     * Add a breakpoint with the given condition and hit count.
+     *
+     * @param address instruction address to stop at
+     * @param options condition and hit count as described above, or empty for none
+     * @throws IllegalArgumentException if the options cannot be parsed
+     */
+    public void addBreakpoint(int address, String options) throws IllegalArgumentException {
+        Point point = parseOptions(address, address, options);
+        addBreakpoint(address);
+        if (point.condition != null || point.hitCount > 1) {
+            conditions.put(Integer.valueOf(address), point);
+        }
+    }
+
+    /**
+     * Add a watchpoint on the given range of addresses.
+     *
+     * @param low     lowest byte address of the range
+     * @param high    highest byte address of the range
+     * @param options condition and hit count as described above, or empty for none
+     * @throws IllegalArgumentException if the options cannot be parsed or the range is empty
+     */
+    public void addWatchpoint(int low, int high, String options) throws IllegalArgumentException {
+        if (Integer.compareUnsigned(low, high) > 0) {
+            throw new IllegalArgumentException("Invalid watchpoint range " + Binary.intToHexString(low)
+                    + "-" + Binary.intToHexString(high));
+        }
+        watchpoints.add(parseOptions(low, high, options));
+        watchpointArray = (Point[]) watchpoints.toArray(new Point[watchpoints.size()]);
+        stores = new Point[watchpointArray.length];
+    }
+
+    /**
+     * Add a breakpoint given as text: an address or label, optionally followed by
+     * a condition and hit count, e.g. <tt>loop if $t0 == 5 hits 2</tt>.
+     *
+     * @param spec     the breakpoint
+     * @param programs the assembled MIPSprograms, whose symbol tables hold the labels
+     * @throws IllegalArgumentException if the address or options cannot be parsed
+     */
+    public void addBreakpoint(String spec, ArrayList programs) throws IllegalArgumentException {
+        String[] parts = spec.trim().split("\\s+", 2);
+        addBreakpoint(parseAddress(parts[0], programs), (parts.length > 1) ? parts[1] : "");
+    }
+
+    /**
+     * Add a watchpoint given as text: an address range <tt>&lt;m&gt;-&lt;n&gt;</tt>, or
+     * a single address or label for the word there, optionally followed by a condition
+     * and hit count, e.g. <tt>0x10010000-0x1001000f if $s0 != 0</tt>.
+     *
+     * @param spec     the watchpoint
+     * @param programs the assembled MIPSprograms, whose symbol tables hold the labels
+     * @throws IllegalArgumentException if the range or options cannot be parsed
+     */
+    public void addWatchpoint(String spec, ArrayList programs) throws IllegalArgumentException {
+        String[] parts = spec.trim().split("\\s+", 2);
+        int separator = parts[0].indexOf('-', 1);
+        int low = parseAddress((separator < 0) ? parts[0] : parts[0].substring(0, separator), programs);
+        int high = (separator < 0)
+                ? low + Memory.WORD_LENGTH_BYTES - 1
+                : parseAddress(parts[0].substring(separator + 1), programs);
+        addWatchpoint(low, high, (parts.length > 1) ? parts[1] : "");
+    }
+
+    /**
+     * Check the syntax of a condition and hit count without adding a breakpoint.
+     *
+     * @param options condition and hit count as described above
+     * @throws IllegalArgumentException if the options cannot be parsed
+     */
+    public static void validate(String options) throws IllegalArgumentException {
+        parseOptions(0, 0, options);
+    }
+
+    /**
+     * @return true if there are no breakpoints or watchpoints
+     */
+    public boolean isEmpty() {
+        if (watchpointArray.length > 0) {
+            return false;
+        }
+        for (int i = 0; i < DIRECTORY_LENGTH; i++) {
+            if (directory[i] != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if there is at least one watchpoint
+     */
+    public boolean hasWatchpoints() {
+        return watchpointArray.length > 0;
+    }
+
+    /**
+     * Describe what stopped execution the last time it was stopped by a breakpoint
+     * or watchpoint, if it has been in the current run.
+     *
+     * @return description such as <tt>breakpoint 0x00400018</tt>, or null if execution
+     * has not been stopped by a breakpoint or watchpoint since the run began
+     */
+    public String getLastHit() {
+        return lastHit;
+    }
+
+    /**
+     * Forget the last hit and any stores left over from a run that was paused.
+     * Called by the Simulator at the start of each run.  Hit counts are kept, so a
+     * breakpoint that waits for its third hit still does so across runs.
+     */
+    void clearLastHit() {
+        lastHit = null;
+        while (storeCount > 0) {
+            stores[--storeCount] = null;
+        }
+    }
+
+    /**
+     * Called by Memory for every store made while this object is its watchpoint set.
+     *
+     * @param address lowest address stored into
+     * @param length  number of bytes stored
+     */
+    public void stored(int address, int length) {
+        Point[] points = watchpointArray;
+        int last = address + length - 1;
+        for (int i = 0; i < points.length; i++) {
+            Point point = points[i];
+            if (Integer.compareUnsigned(address, point.high) <= 0 && Integer.compareUnsigned(last, point.low) >= 0
+                    && !isStored(point)) {
+                if (storeCount == 0) {
+                    storeAddress = address;
+                }
+                stores[storeCount++] = point;
+            }
+        }
+    }
+
+    /**
+     * Determine whether execution should stop before the instruction at the given
+     * address, either because it holds a breakpoint or because the instruction just
+     * executed stored into a watchpoint.  Hit counts are advanced as a side effect.
+     *
+     * @param address the program counter
+     * @return true if execution should stop
+     */
+    boolean shouldStop(int address) {
+        if (storeCount > 0 && watchpointTriggered()) {
+            return true;
+        }
+        long[][] table = directory[address >>> 22];
+        if (table == null) {
+            return false;
+        }
+        long[] page = table[(address >>> 12) & (TABLE_LENGTH - 1)];
+        if (page == null) {
+            return false;
+        }
+        int word = (address >>> 2) & 1023;
+        if ((page[word >>> 6] & (1L << word)) == 0) {
+            return false;
+        }
+        Point point = (conditions.isEmpty()) ? null : (Point) conditions.get(Integer.valueOf(address));
+        if (point != null && !point.triggered()) {
+            return false;
+        }
+        lastHit = "breakpoint " + Binary.intToHexString(address);
+        return true;
+    }
+
+    // An instruction that stores into a watchpoint several times (a syscall reading
+    // a string, say) is recorded only once, and so counts as one hit.
+    private boolean isStored(Point point) {
+        for (int i = 0; i < storeCount; i++) {
+            if (stores[i] == point) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean watchpointTriggered() {
+        String hit = null;
+        for (int i = 0; i < storeCount; i++) {
+            Point point = stores[i];
+            stores[i] = null;
+            if (point.triggered() && hit == null) {
+                hit = "watchpoint " + Binary.intToHexString(point.low)
+                        + ((point.high == point.low) ? "" : "-" + Binary.intToHexString(point.high))
+                        + " (store to " + Binary.intToHexString(storeAddress) + ")";
+            }
+        }
+        storeCount = 0;
+        if (hit == null) {
+            return false;
+        }
+        lastHit = hit;
+        return true;
+    }
+
+    // An address is an integer or a label, local to any of the programs or global.
+    private static int parseAddress(String text, ArrayList programs) throws IllegalArgumentException {
+        try {
+            return Binary.stringToInt(text);
+        } catch (NumberFormatException e) {
+            // not a number, so look for a label
+        }
+        for (int i = 0; programs != null && i < programs.size(); i++) {
+            int address = ((MIPSprogram) programs.get(i)).getLocalSymbolTable().getAddressLocalOrGlobal(text);
+            if (address != SymbolTable.NOT_FOUND) {
+                return address;
+            }
+        }
+        throw new IllegalArgumentException("Invalid address or label \"" + text + "\"");
+    }
+
+    private static Point parseOptions(int low, int high, String options) throws IllegalArgumentException {
+        String text = (options == null) ? "" : options.trim();
+        int hitCount = 1;
+        int hitsAt = text.lastIndexOf("hits");
+        if (hitsAt >= 0 && (hitsAt == 0 || Character.isWhitespace(text.charAt(hitsAt - 1)))) {
+            String count = text.substring(hitsAt + 4).trim();
+            try {
+                hitCount = Binary.stringToInt(count);
+            } catch (NumberFormatException e) {
+                hitCount = 0;
+            }
+            if (hitCount <= 0) {
+                throw new IllegalArgumentException("Invalid hit count \"" + count + "\"");
+            }
+            text = text.substring(0, hitsAt).trim();
+        }
+        if (text.startsWith("if") && (text.length() == 2 || Character.isWhitespace(text.charAt(2)))) {
+            text = text.substring(2).trim();
+        }
+        BreakpointCondition condition = (text.length() == 0) ? null : BreakpointCondition.parse(text);
+        return new Point(low, high, condition, hitCount);
+    }
+}
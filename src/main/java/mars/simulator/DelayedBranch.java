@@ -53,7 +53,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  * of successful branches will constitute the delay slot and will be executed!
  * <p>
  * Since only one pending delayed branch can be taken at a time, everything
- * here is done with statics.  The class itself represents the potential branch.
+ * here is done with statics.  The class itself represents the potential branch,
+ * whose state is held by the current SimulatorContext.
  *
  * @author Pete Sanderson
  * @version June 2007
@@ -65,10 +66,13 @@ public class DelayedBranch {
     private static final int REGISTERED = 1;
     private static final int TRIGGERED = 2;
 
-    // Initially nothing is happening.
-
-    private static int state = CLEARED;
-    private static int branchTargetAddress = 0;
+    /**
+     * The pending branch of one SimulatorContext.  Initially nothing is happening.
+     */
+    static final class State {
+        private int state = CLEARED;
+        private int branchTargetAddress = 0;
+    }
 
     /**
      * Register the fact that a successful branch is to occur.  This is called in
@@ -82,13 +86,14 @@ public class DelayedBranch {
      * @param targetAddress The address to branch to after executing the next instruction
      */
     public static void register(int targetAddress) {
+        State branch = SimulatorContext.current().delayedBranch;
         // About as clean as a switch statement can be!
-        switch (state) {
+        switch (branch.state) {
             case CLEARED:
-                branchTargetAddress = targetAddress;
+                branch.branchTargetAddress = targetAddress;
             case REGISTERED:
             case TRIGGERED:
-                state = REGISTERED;
+                branch.state = REGISTERED;
         }
     }
 
@@ -104,11 +109,12 @@ public class DelayedBranch {
      * Postcondition: DelayedBranch.isTriggered() && !DelayedBranch.isRegistered()
      */
     static void trigger() {
+        State branch = SimulatorContext.current().delayedBranch;
         // About as clean as a switch statement can be!
-        switch (state) {
+        switch (branch.state) {
             case REGISTERED:
             case TRIGGERED:
-                state = TRIGGERED;
+                branch.state = TRIGGERED;
             case CLEARED:
         }
     }
@@ -118,8 +124,9 @@ public class DelayedBranch {
      * program counter to the target address.  This method has package visibility.
      */
     static void clear() {
-        state = CLEARED;
-        branchTargetAddress = 0;
+        State branch = SimulatorContext.current().delayedBranch;
+        branch.state = CLEARED;
+        branch.branchTargetAddress = 0;
     }
 
     /**
@@ -131,7 +138,7 @@ public class DelayedBranch {
      */
 
     static boolean isRegistered() {
-        return state == REGISTERED;
+        return SimulatorContext.current().delayedBranch.state == REGISTERED;
     }
 
     /**
@@ -142,7 +149,7 @@ public class DelayedBranch {
      */
 
     static boolean isTriggered() {
-        return state == TRIGGERED;
+        return SimulatorContext.current().delayedBranch.state == TRIGGERED;
     }
 
 
@@ -155,7 +162,30 @@ public class DelayedBranch {
      * @return Target address of the delayed branch.
      */
     static int getBranchTargetAddress() {
-        return branchTargetAddress;
+        return SimulatorContext.current().delayedBranch.branchTargetAddress;
+    }
+
+    /**
+     * Return the state of the pending branch and its target address.  Used for
+     * machine snapshots.  This method has package visibility.
+     *
+     * @return state followed by target address
+     */
+    static int[] saveState() {
+        State branch = SimulatorContext.current().delayedBranch;
+        return new int[]{branch.state, branch.branchTargetAddress};
+    }
+
+    /**
+     * Set the state of the pending branch and its target address to values obtained
+     * from saveState().  This method has package visibility.
+     *
+     * @param values state followed by target address
+     */
+    static void restoreState(int[] values) {
+        State branch = SimulatorContext.current().delayedBranch;
+        branch.state = values[0];
+        branch.branchTargetAddress = values[1];
     }
 
 }  // DelayedBranch
\ No newline at end of file
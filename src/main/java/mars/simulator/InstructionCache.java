@@ -0,0 +1,238 @@
+package mars.simulator;
+
+import mars.ProcessingException;
+import mars.ProgramStatement;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.Register;
+import mars.mips.instructions.BasicInstruction;
+import mars.mips.instructions.Instruction;
+import mars.mips.instructions.SimulationCode;
+
+import java.util.Arrays;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Pre-decoded copy of the user text segment, used by the Simulator to fetch and
+ * dispatch instructions without going through Memory.getStatement(), the
+ * ProgramStatement's Instruction and the cast to BasicInstruction on every cycle.
+ * <p>
+ * The cache is a set of flat arrays indexed by <tt>(pc - Memory.textBaseAddress) >> 2</tt>.
+ * They hold the ProgramStatement, the SimulationCode of its BasicInstruction, and its
+ * decoded form (see InstructionDecoder): a compact opcode id and the unpacked operands,
+ * which execute() dispatches on directly.  Entries are filled in the first time an address is fetched
+ * and are invalidated by Memory whenever a statement is stored into the text segment,
+ * which includes writes made by self-modifying code.  Addresses outside the user text
+ * segment (kernel text, or the data segment when self-modifying code is enabled) are
+ * always fetched from Memory.
+ * <p>
+ * There is one cache per SimulatorContext, and the static methods here apply to the
+ * cache of the current context.
+ **/
+
+public class InstructionCache {
+    // Arrays grow on demand, up to the size of the text segment.
+    private static final int INITIAL_LENGTH = 1024;
+
+    /**
+     * The cached text segment of one SimulatorContext.
+     */
+    static final class State {
+        private ProgramStatement[] statements = new ProgramStatement[0];
+        private SimulationCode[] handlers = new SimulationCode[0];
+        private int[] decoded = new int[0]; // InstructionDecoder.STRIDE ints per entry
+        private int baseAddress = Memory.textBaseAddress;
+        // Incremented on every invalidation, so derived structures (see BlockTranslator)
+        // can tell when the text segment has changed underneath them.
+        private volatile int modificationCount = 0;
+    }
+
+    /**
+     * Discard every cached entry.  Called when memory is cleared or its
+     * configuration changes.
+     */
+    public static void invalidateAll() {
+        State cache = SimulatorContext.current().instructionCache;
+        synchronized (cache) {
+            invalidateAll(cache);
+        }
+    }
+
+    /**
+     * Discard the cached entry, if any, for the given text segment address.  Called
+     * by Memory whenever a ProgramStatement is stored.
+     *
+     * @param address text segment address whose statement has changed
+     */
+    public static void invalidate(int address) {
+        State cache = SimulatorContext.current().instructionCache;
+        synchronized (cache) {
+            int index = (address - cache.baseAddress) >> 2;
+            if (index >= 0 && index < cache.statements.length) {
+                cache.statements[index] = null;
+                cache.handlers[index] = null;
+            }
+            cache.modificationCount++;
+        }
+    }
+
+    /**
+     * Number of invalidations performed so far.  A change in this value means some
+     * statement in the text segment may have changed.
+     *
+     * @return count of invalidations
+     */
+    static int getModificationCount() {
+        return SimulatorContext.current().instructionCache.modificationCount;
+    }
+
+    /**
+     * Fetch the statement at the given address, exactly as Memory.getStatement() would,
+     * including notification of any memory observers.
+     *
+     * @param address address of the instruction to fetch
+     * @return the ProgramStatement at that address, or null if none
+     * @throws AddressErrorException If address is not on word boundary or is outside Text Segment.
+     */
+    static ProgramStatement fetch(int address) throws AddressErrorException {
+        return fetch(address, true);
+    }
+
+    /**
+     * Fetch the statement at the given address, as Memory.getStatement() would if notify
+     * is true, or as Memory.getStatementNoNotify() would if not.  The turbo loop passes
+     * false when there are no memory observers to notify.
+     *
+     * @param address address of the instruction to fetch
+     * @param notify  true to notify memory observers of the fetch
+     * @return the ProgramStatement at that address, or null if none
+     * @throws AddressErrorException If address is not on word boundary or is outside Text Segment.
+     */
+    static ProgramStatement fetch(int address, boolean notify) throws AddressErrorException {
+        SimulatorContext context = SimulatorContext.current();
+        State cache = context.instructionCache;
+        ProgramStatement[] cached = cache.statements;
+        int index = (address - cache.baseAddress) >> 2;
+        if (index >= 0 && index < cached.length && (address & 3) == 0) {
+            ProgramStatement statement = cached[index];
+            if (statement != null) {
+                if (notify) {
+                    context.getMemory().notifyInstructionFetch(address, statement.getBinaryStatement());
+                }
+                return statement;
+            }
+        }
+        ProgramStatement statement = notify
+                ? context.getMemory().getStatement(address)
+                : context.getMemory().getStatementNoNotify(address);
+        if (statement != null && Memory.inTextSegment(address)) {
+            store(cache, address, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * Return the simulation code for the given statement, which was obtained by
+     * fetch() from the given address.
+     *
+     * @param address   address of the statement
+     * @param statement the statement returned by fetch(address)
+     * @return the statement's SimulationCode, or null if it is not a valid basic instruction
+     */
+    static SimulationCode simulationCode(int address, ProgramStatement statement) {
+        State cache = SimulatorContext.current().instructionCache;
+        ProgramStatement[] cached = cache.statements;
+        SimulationCode[] codes = cache.handlers;
+        int index = (address - cache.baseAddress) >> 2;
+        if (index >= 0 && index < cached.length && index < codes.length && cached[index] == statement) {
+            return codes[index];
+        }
+        return decode(statement);
+    }
+
+    /**
+     * Execute the given statement, which was obtained by fetch() from the given address,
+     * from its decoded form.
+     *
+     * @param address   address of the statement
+     * @param statement the statement returned by fetch(address)
+     * @param code      the SimulationCode returned by simulationCode(address, statement)
+     * @param registers the general purpose registers, from RegisterFile.getRegisters()
+     * @throws ProcessingException as thrown by the instruction
+     */
+    static void execute(int address, ProgramStatement statement, SimulationCode code, Register[] registers)
+            throws ProcessingException {
+        State cache = SimulatorContext.current().instructionCache;
+        ProgramStatement[] cached = cache.statements;
+        int[] decoded = cache.decoded;
+        int index = (address - cache.baseAddress) >> 2;
+        if (index >= 0 && index < cached.length && index < decoded.length / InstructionDecoder.STRIDE
+                && cached[index] == statement) {
+            InstructionDecoder.execute(decoded, index * InstructionDecoder.STRIDE, statement, code, registers);
+        } else {
+            code.simulate(statement);
+        }
+    }
+
+    private static void invalidateAll(State cache) {
+        cache.statements = new ProgramStatement[0];
+        cache.handlers = new SimulationCode[0];
+        cache.decoded = new int[0];
+        cache.baseAddress = Memory.textBaseAddress;
+        cache.modificationCount++;
+    }
+
+    private static void store(State cache, int address, ProgramStatement statement) {
+        synchronized (cache) {
+            if (cache.baseAddress != Memory.textBaseAddress) {
+                invalidateAll(cache);
+            }
+            int index = (address - cache.baseAddress) >> 2;
+            if (index >= cache.statements.length) {
+                int length = Math.max(INITIAL_LENGTH, cache.statements.length);
+                while (length <= index) {
+                    length <<= 1;
+                }
+                cache.statements = Arrays.copyOf(cache.statements, length);
+                cache.handlers = Arrays.copyOf(cache.handlers, length);
+                cache.decoded = Arrays.copyOf(cache.decoded, length * InstructionDecoder.STRIDE);
+            }
+            cache.handlers[index] = decode(statement);
+            if (cache.handlers[index] != null) {
+                InstructionDecoder.decode(statement, cache.decoded, index * InstructionDecoder.STRIDE);
+            }
+            cache.statements[index] = statement;
+        }
+    }
+
+    private static SimulationCode decode(ProgramStatement statement) {
+        Instruction instruction = statement.getInstruction();
+        return (instruction instanceof BasicInstruction)
+                ? ((BasicInstruction) instruction).getSimulationCode()
+                : null;
+    }
+}
@@ -0,0 +1,469 @@
+package mars.simulator;
+
+import mars.Globals;
+import mars.ProcessingException;
+import mars.ProgramStatement;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.Register;
+import mars.mips.hardware.RegisterFile;
+import mars.mips.instructions.BasicInstruction;
+import mars.mips.instructions.Instruction;
+import mars.mips.instructions.SimulationCode;
+
+import java.util.HashMap;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+
+/**
+ * Compact decoded form of a basic instruction, used by InstructionCache and
+ * BlockTranslator so that the Simulator's turbo loop can run the most frequently
+ * executed instructions (integer arithmetic and logic, shifts, branches, jumps, and
+ * loads and stores) without going through the statement's operand array and its
+ * SimulationCode.  A decoded statement is STRIDE ints: an opcode id, then up to three
+ * operands in the order of ProgramStatement.getOperands(), with immediates already
+ * sign-extended, zero-extended or shifted as the instruction requires.  Any other
+ * instruction decodes to GENERIC and is run through its SimulationCode.
+ * <p>
+ * execute() has exactly the effect of the instruction's SimulationCode while
+ * back-stepping is disabled, as it is in the turbo loop: it reads and writes the
+ * general purpose registers directly through their Register objects, but otherwise
+ * uses the same RegisterFile and Memory methods, so observers are notified and
+ * delayed branching is honored in the same way.
+ **/
+
+final class InstructionDecoder {
+    /**
+     * Number of ints in a decoded statement.
+     */
+    static final int STRIDE = 4;
+
+    static final int GENERIC = 0;
+    private static final int ADD = 1;
+    private static final int ADDU = 2;
+    private static final int ADDI = 3;
+    private static final int ADDIU = 4;
+    private static final int SUB = 5;
+    private static final int SUBU = 6;
+    private static final int AND = 7;
+    private static final int ANDI = 8;
+    private static final int OR = 9;
+    private static final int ORI = 10;
+    private static final int XOR = 11;
+    private static final int XORI = 12;
+    private static final int NOR = 13;
+    private static final int SLT = 14;
+    private static final int SLTU = 15;
+    private static final int SLTI = 16;
+    private static final int SLTIU = 17;
+    private static final int SLL = 18;
+    private static final int SRL = 19;
+    private static final int SRA = 20;
+    private static final int SLLV = 21;
+    private static final int SRLV = 22;
+    private static final int SRAV = 23;
+    private static final int LUI = 24;
+    private static final int MUL = 25;
+    private static final int MFHI = 26;
+    private static final int MFLO = 27;
+    private static final int BEQ = 28;
+    private static final int BNE = 29;
+    private static final int BLEZ = 30;
+    private static final int BGTZ = 31;
+    private static final int BLTZ = 32;
+    private static final int BGEZ = 33;
+    private static final int J = 34;
+    private static final int JAL = 35;
+    private static final int JR = 36;
+    private static final int LW = 37;
+    private static final int LB = 38;
+    private static final int LBU = 39;
+    private static final int LH = 40;
+    private static final int LHU = 41;
+    private static final int SW = 42;
+    private static final int SB = 43;
+    private static final int SH = 44;
+
+    // Opcode id of each decoded instruction, keyed by its example format, which is
+    // unique among basic instructions.
+    private static final HashMap opcodes = new HashMap();
+
+    static {
+        opcode("add $t1,$t2,$t3", ADD);
+        opcode("addu $t1,$t2,$t3", ADDU);
+        opcode("addi $t1,$t2,-100", ADDI);
+        opcode("addiu $t1,$t2,-100", ADDIU);
+        opcode("sub $t1,$t2,$t3", SUB);
+        opcode("subu $t1,$t2,$t3", SUBU);
+        opcode("and $t1,$t2,$t3", AND);
+        opcode("andi $t1,$t2,100", ANDI);
+        opcode("or $t1,$t2,$t3", OR);
+        opcode("ori $t1,$t2,100", ORI);
+        opcode("xor $t1,$t2,$t3", XOR);
+        opcode("xori $t1,$t2,100", XORI);
+        opcode("nor $t1,$t2,$t3", NOR);
+        opcode("slt $t1,$t2,$t3", SLT);
+        opcode("sltu $t1,$t2,$t3", SLTU);
+        opcode("slti $t1,$t2,-100", SLTI);
+        opcode("sltiu $t1,$t2,-100", SLTIU);
+        opcode("sll $t1,$t2,10", SLL);
+        opcode("srl $t1,$t2,10", SRL);
+        opcode("sra $t1,$t2,10", SRA);
+        opcode("sllv $t1,$t2,$t3", SLLV);
+        opcode("srlv $t1,$t2,$t3", SRLV);
+        opcode("srav $t1,$t2,$t3", SRAV);
+        opcode("lui $t1,100", LUI);
+        opcode("mul $t1,$t2,$t3", MUL);
+        opcode("mfhi $t1", MFHI);
+        opcode("mflo $t1", MFLO);
+        opcode("beq $t1,$t2,label", BEQ);
+        opcode("bne $t1,$t2,label", BNE);
+        opcode("blez $t1,label", BLEZ);
+        opcode("bgtz $t1,label", BGTZ);
+        opcode("bltz $t1,label", BLTZ);
+        opcode("bgez $t1,label", BGEZ);
+        opcode("j target", J);
+        opcode("jal target", JAL);
+        opcode("jr $t1", JR);
+        opcode("lw $t1,-100($t2)", LW);
+        opcode("lb $t1,-100($t2)", LB);
+        opcode("lbu $t1,-100($t2)", LBU);
+        opcode("lh $t1,-100($t2)", LH);
+        opcode("lhu $t1,-100($t2)", LHU);
+        opcode("sw $t1,-100($t2)", SW);
+        opcode("sb $t1,-100($t2)", SB);
+        opcode("sh $t1,-100($t2)", SH);
+    }
+
+    private InstructionDecoder() {
+    }
+
+    private static void opcode(String exampleFormat, int opcode) {
+        opcodes.put(exampleFormat, Integer.valueOf(opcode));
+    }
+
+    /**
+     * Decode a statement into STRIDE ints of the given array.
+     *
+     * @param statement statement holding a basic instruction
+     * @param decoded   array to receive the decoded statement
+     * @param offset    index in the array of its first int
+     */
+    static void decode(ProgramStatement statement, int[] decoded, int offset) {
+        Instruction instruction = statement.getInstruction();
+        Integer found = (instruction instanceof BasicInstruction)
+                ? (Integer) opcodes.get(instruction.getExampleFormat())
+                : null;
+        int opcode = (found == null) ? GENERIC : found.intValue();
+        int[] operands = statement.getOperands();
+        decoded[offset] = opcode;
+        for (int i = 0; i < STRIDE - 1; i++) {
+            decoded[offset + 1 + i] = (opcode != GENERIC && i < operands.length) ? operands[i] : 0;
+        }
+        switch (opcode) {
+            case ADDI:
+            case ADDIU:
+            case SLTI:
+            case SLTIU:
+                decoded[offset + 3] = decoded[offset + 3] << 16 >> 16;
+                break;
+            case ANDI:
+            case ORI:
+            case XORI:
+                decoded[offset + 3] = decoded[offset + 3] & 0x0000FFFF;
+                break;
+            case LUI:
+                decoded[offset + 2] = decoded[offset + 2] << 16;
+                break;
+            case BEQ:
+            case BNE:
+                decoded[offset + 3] = decoded[offset + 3] << 2;
+                break;
+            case BLEZ:
+            case BGTZ:
+            case BLTZ:
+            case BGEZ:
+                decoded[offset + 2] = decoded[offset + 2] << 2;
+                break;
+            case J:
+            case JAL:
+                decoded[offset + 1] = decoded[offset + 1] << 2;
+                break;
+            case LB:
+            case LBU:
+            case LH:
+            case LHU:
+            case SB:
+            case SH:
+                decoded[offset + 2] = decoded[offset + 2] << 16 >> 16;
+                break;
+        }
+    }
+
+    /**
+     * Execute a decoded statement.
+     *
+     * @param decoded   array holding the decoded statement
+     * @param offset    index in the array of its first int
+     * @param statement the statement that was decoded
+     * @param code      the statement's SimulationCode, used if it decoded to GENERIC
+     * @param registers the general purpose registers, from RegisterFile.getRegisters()
+     * @throws ProcessingException as thrown by the instruction
+     */
+    static void execute(int[] decoded, int offset, ProgramStatement statement, SimulationCode code,
+                        Register[] registers) throws ProcessingException {
+        int first = decoded[offset + 1];
+        int second = decoded[offset + 2];
+        int third = decoded[offset + 3];
+        switch (decoded[offset]) {
+            case ADD: {
+                int add1 = registers[second].getValue();
+                int add2 = registers[third].getValue();
+                int sum = add1 + add2;
+                if ((add1 >= 0 && add2 >= 0 && sum < 0) || (add1 < 0 && add2 < 0 && sum >= 0)) {
+                    throw new ProcessingException(statement,
+                            "arithmetic overflow", Exceptions.ARITHMETIC_OVERFLOW_EXCEPTION);
+                }
+                set(registers, first, sum);
+                break;
+            }
+            case ADDU:
+                set(registers, first, registers[second].getValue() + registers[third].getValue());
+                break;
+            case ADDI: {
+                int add1 = registers[second].getValue();
+                int sum = add1 + third;
+                if ((add1 >= 0 && third >= 0 && sum < 0) || (add1 < 0 && third < 0 && sum >= 0)) {
+                    throw new ProcessingException(statement,
+                            "arithmetic overflow", Exceptions.ARITHMETIC_OVERFLOW_EXCEPTION);
+                }
+                set(registers, first, sum);
+                break;
+            }
+            case ADDIU:
+                set(registers, first, registers[second].getValue() + third);
+                break;
+            case SUB: {
+                int sub1 = registers[second].getValue();
+                int sub2 = registers[third].getValue();
+                int dif = sub1 - sub2;
+                if ((sub1 >= 0 && sub2 < 0 && dif < 0) || (sub1 < 0 && sub2 >= 0 && dif >= 0)) {
+                    throw new ProcessingException(statement,
+                            "arithmetic overflow", Exceptions.ARITHMETIC_OVERFLOW_EXCEPTION);
+                }
+                set(registers, first, dif);
+                break;
+            }
+            case SUBU:
+                set(registers, first, registers[second].getValue() - registers[third].getValue());
+                break;
+            case AND:
+                set(registers, first, registers[second].getValue() & registers[third].getValue());
+                break;
+            case OR:
+                set(registers, first, registers[second].getValue() | registers[third].getValue());
+                break;
+            case XOR:
+                set(registers, first, registers[second].getValue() ^ registers[third].getValue());
+                break;
+            case ANDI:
+                set(registers, first, registers[second].getValue() & third);
+                break;
+            case ORI:
+                set(registers, first, registers[second].getValue() | third);
+                break;
+            case XORI:
+                set(registers, first, registers[second].getValue() ^ third);
+                break;
+            case NOR:
+                set(registers, first, ~(registers[second].getValue() | registers[third].getValue()));
+                break;
+            case SLT:
+                set(registers, first, (registers[second].getValue() < registers[third].getValue()) ? 1 : 0);
+                break;
+            case SLTI:
+                set(registers, first, (registers[second].getValue() < third) ? 1 : 0);
+                break;
+            case SLTU:
+                set(registers, first,
+                        (registers[second].getValue() + Integer.MIN_VALUE < registers[third].getValue() + Integer.MIN_VALUE) ? 1 : 0);
+                break;
+            case SLTIU:
+                set(registers, first,
+                        (registers[second].getValue() + Integer.MIN_VALUE < third + Integer.MIN_VALUE) ? 1 : 0);
+                break;
+            case SLL:
+                set(registers, first, registers[second].getValue() << third);
+                break;
+            case SRL:
+                set(registers, first, registers[second].getValue() >>> third);
+                break;
+            case SRA:
+                set(registers, first, registers[second].getValue() >> third);
+                break;
+            case SLLV:
+                set(registers, first, registers[second].getValue() << (registers[third].getValue() & 0x1F));
+                break;
+            case SRLV:
+                set(registers, first, registers[second].getValue() >>> (registers[third].getValue() & 0x1F));
+                break;
+            case SRAV:
+                set(registers, first, registers[second].getValue() >> (registers[third].getValue() & 0x1F));
+                break;
+            case LUI:
+                set(registers, first, second);
+                break;
+            case MUL: {
+                long product = (long) registers[second].getValue() * (long) registers[third].getValue();
+                set(registers, first, (int) product);
+                RegisterFile.updateRegister(33, (int) (product >> 32));
+                RegisterFile.updateRegister(34, (int) product);
+                break;
+            }
+            case MFHI:
+                set(registers, first, RegisterFile.getValue(33));
+                break;
+            case MFLO:
+                set(registers, first, RegisterFile.getValue(34));
+                break;
+            case BEQ:
+                if (registers[first].getValue() == registers[second].getValue()) {
+                    branch(third);
+                }
+                break;
+            case BNE:
+                if (registers[first].getValue() != registers[second].getValue()) {
+                    branch(third);
+                }
+                break;
+            case BLEZ:
+                if (registers[first].getValue() <= 0) {
+                    branch(second);
+                }
+                break;
+            case BGTZ:
+                if (registers[first].getValue() > 0) {
+                    branch(second);
+                }
+                break;
+            case BLTZ:
+                if (registers[first].getValue() < 0) {
+                    branch(second);
+                }
+                break;
+            case BGEZ:
+                if (registers[first].getValue() >= 0) {
+                    branch(second);
+                }
+                break;
+            case J:
+                jump((RegisterFile.getProgramCounter() & 0xF0000000) | first);
+                break;
+            case JAL: {
+                boolean delayedBranching = Globals.getSettings().getDelayedBranchingEnabled();
+                int returnAddress = RegisterFile.getProgramCounter() + (delayedBranching ? Instruction.INSTRUCTION_LENGTH : 0);
+                set(registers, 31, returnAddress);
+                Profiler.call(returnAddress, delayedBranching);
+                jump((RegisterFile.getProgramCounter() & 0xF0000000) | first);
+                break;
+            }
+            case JR:
+                jump(registers[first].getValue());
+                break;
+            case LW:
+            case LB:
+            case LBU:
+            case LH:
+            case LHU:
+            case SW:
+            case SB:
+            case SH:
+                try {
+                    transfer(decoded[offset], first, registers[third].getValue() + second, registers);
+                } catch (AddressErrorException e) {
+                    throw new ProcessingException(statement, e);
+                }
+                break;
+            default:
+                code.simulate(statement);
+        }
+    }
+
+    // Load into, or store from, the given register at the given address.
+    private static void transfer(int opcode, int register, int address, Register[] registers)
+            throws AddressErrorException {
+        Memory memory = Memory.getInstance();
+        switch (opcode) {
+            case LW:
+                set(registers, register, memory.getWord(address));
+                break;
+            case LB:
+                set(registers, register, memory.getByte(address) << 24 >> 24);
+                break;
+            case LBU:
+                set(registers, register, memory.getByte(address) & 0x000000FF);
+                break;
+            case LH:
+                set(registers, register, memory.getHalf(address) << 16 >> 16);
+                break;
+            case LHU:
+                set(registers, register, memory.getHalf(address) & 0x0000FFFF);
+                break;
+            case SW:
+                memory.setWord(address, registers[register].getValue());
+                break;
+            case SB:
+                memory.setByte(address, registers[register].getValue() & 0x000000FF);
+                break;
+            default:
+                memory.setHalf(address, registers[register].getValue() & 0x0000FFFF);
+        }
+    }
+
+    private static void set(Register[] registers, int register, int value) {
+        if (register != 0) {
+            registers[register].setValue(value);
+        }
+    }
+
+    // Branch by the given number of bytes from the (already incremented) program counter.
+    private static void branch(int displacement) {
+        if (Globals.getSettings().getDelayedBranchingEnabled()) {
+            DelayedBranch.register(RegisterFile.getProgramCounter() + displacement);
+        } else {
+            RegisterFile.setProgramCounter(RegisterFile.getProgramCounter() + displacement);
+        }
+    }
+
+    private static void jump(int targetAddress) {
+        if (Globals.getSettings().getDelayedBranchingEnabled()) {
+            DelayedBranch.register(targetAddress);
+        } else {
+            RegisterFile.setProgramCounter(targetAddress);
+        }
+    }
+}
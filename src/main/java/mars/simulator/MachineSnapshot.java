@@ -0,0 +1,171 @@
+package mars.simulator;
+
+import mars.MIPSprogram;
+import mars.mips.hardware.Coprocessor0;
+import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.RegisterFile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+
+/**
+ * Checkpoint of the simulated machine: the general purpose registers, program counter,
+ * HI and LO, the coprocessor 0 and 1 registers and condition flags, any pending delayed
+ * branch, and memory including the heap pointer.  Memory is shared with the snapshot
+ * copy-on-write at the granularity of its 4K byte pages, so taking and restoring a
+ * snapshot both cost time in proportion to the number of pages in use rather than to
+ * their contents (see Memory.saveState()).
+ * <p>
+ * A snapshot may be restored any number of times, for instance to re-run a program from
+ * a point in mid-execution, or to run it on many inputs starting from the state reached
+ * after its initialization code, without assembling it again.  SnapshotFile saves the
+ * machine by writing a snapshot to a file, and resumes by restoring one read back from
+ * it.  Snapshots apply to the current SimulatorContext and must not be taken or
+ * restored while the simulator is running.  They do not capture open files and
+ * standard streams, random number generators or memory observers.  Restoring a
+ * snapshot discards the program's back-step history, which would no longer match the
+ * machine state.
+ **/
+
+public class MachineSnapshot {
+    private final int[] registers;
+    private final int[] coprocessor0;
+    private final int[] coprocessor1;
+    private final int[] delayedBranch;
+    private final Memory.Snapshot memory;
+
+    private MachineSnapshot() {
+        this(RegisterFile.saveState(), Coprocessor0.saveState(), Coprocessor1.saveState(),
+                DelayedBranch.saveState(), Memory.getInstance().saveState());
+    }
+
+    private MachineSnapshot(int[] registers, int[] coprocessor0, int[] coprocessor1, int[] delayedBranch,
+                            Memory.Snapshot memory) {
+        this.registers = registers;
+        this.coprocessor0 = coprocessor0;
+        this.coprocessor1 = coprocessor1;
+        this.delayedBranch = delayedBranch;
+        this.memory = memory;
+    }
+
+    /**
+     * Capture the current state of the machine.
+     *
+     * @return the snapshot
+     */
+    public static MachineSnapshot take() {
+        synchronized (SimulatorContext.current().getLock()) {
+            return new MachineSnapshot();
+        }
+    }
+
+    /**
+     * Return the machine to the state captured by this snapshot.  Register observers
+     * are notified of the restored values; memory observers are not.
+     *
+     * @throws IllegalArgumentException if the memory configuration has changed since the snapshot was taken
+     */
+    public void restore() {
+        SimulatorContext context = SimulatorContext.current();
+        synchronized (context.getLock()) {
+            Memory.getInstance().restoreState(memory);
+            RegisterFile.restoreState(registers);
+            Coprocessor0.restoreState(coprocessor0);
+            Coprocessor1.restoreState(coprocessor1);
+            DelayedBranch.restoreState(delayedBranch);
+            MIPSprogram program = context.getProgram();
+            if (program != null && program.getBackStepper() != null) {
+                program.getBackStepper().clear();
+            }
+        }
+    }
+
+    /**
+     * Number of bytes writeState() will write.  For use by SnapshotFile.
+     *
+     * @return length in bytes
+     */
+    long getStateLength() {
+        return 4 * (4 + registers.length + coprocessor0.length + coprocessor1.length + delayedBranch.length)
+                + memory.getStateLength();
+    }
+
+    /**
+     * Write this snapshot in the form used by machine state files: the register
+     * sections, each an int count followed by the values, then the contents of memory
+     * (see Memory.Snapshot.writeState()).  For use by SnapshotFile.
+     *
+     * @param buffer buffer to write, positioned where the snapshot should go
+     */
+    void writeState(ByteBuffer buffer) {
+        putInts(buffer, registers);
+        putInts(buffer, coprocessor0);
+        putInts(buffer, coprocessor1);
+        putInts(buffer, delayedBranch);
+        memory.writeState(buffer);
+    }
+
+    /**
+     * Read a snapshot written by writeState().  Its memory contents are read into the
+     * memory of the current SimulatorContext, as described for Memory.readState(), and
+     * the snapshot returned holds that memory; restore it to load the registers as well.
+     * For use by SnapshotFile.
+     *
+     * @param buffer buffer to read, positioned at the snapshot
+     * @return the snapshot read
+     * @throws IOException if the snapshot is malformed or does not fit this memory configuration
+     */
+    static MachineSnapshot readState(ByteBuffer buffer) throws IOException {
+        int[] registers = getInts(buffer);
+        int[] coprocessor0 = getInts(buffer);
+        int[] coprocessor1 = getInts(buffer);
+        int[] delayedBranch = getInts(buffer);
+        Memory memory = Memory.getInstance();
+        memory.readState(buffer);
+        return new MachineSnapshot(registers, coprocessor0, coprocessor1, delayedBranch, memory.saveState());
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] values) {
+        buffer.putInt(values.length);
+        buffer.asIntBuffer().put(values);
+        buffer.position(buffer.position() + 4 * values.length);
+    }
+
+    private static int[] getInts(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining() / 4) {
+            throw new IOException("invalid register count " + length);
+        }
+        int[] values = new int[length];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + 4 * length);
+        return values;
+    }
+}
@@ -0,0 +1,508 @@
+package mars.simulator;
+
+import mars.MIPSprogram;
+import mars.ProgramStatement;
+import mars.assembler.Symbol;
+import mars.mips.hardware.Memory;
+import mars.util.Binary;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+
+/**
+ * Summary of the Profiler's execution counts for an assembled program, by source line,
+ * by label and by source file.  Each instruction is attributed to the source line it
+ * was assembled from, so the instructions a pseudo-instruction expands to count
+ * toward its line, and to the nearest text label at or before it in the same segment.
+ * Only lines and labels that were executed appear in the report, busiest first.
+ * <p>
+ * If the Profiler's call graph mode was enabled, the report also lists each function
+ * called, named by its label, with the number of calls, the instructions executed in
+ * the function itself (exclusive) and those executed in it and everything it called
+ * (inclusive).  The inclusive count of a recursive function counts its outermost calls
+ * only, so that it never exceeds the total.  The call graph can also be written in the
+ * folded stack format read by flame graph tools: one line per chain of calls, the
+ * function names separated by semicolons, followed by a space and the number of
+ * instructions executed in the last function when called through that chain.
+ * <p>
+ * The report can be written as plain text or as a JSON object of the form
+ * <pre>
+ *   {"instructions":n,
+ *    "files":[{"file":"...","count":n}, ...],
+ *    "functions":[{"function":"...","address":"0x...","calls":n,"inclusive":n,"exclusive":n}, ...],
+ *    "labels":[{"label":"...","file":"...","address":"0x...","count":n}, ...],
+ *    "lines":[{"file":"...","line":n,"count":n,"source":"..."}, ...]}
+ * </pre>
+ **/
+
+public class ProfileReport {
+    private static final String NO_LABEL = "(no label)";
+
+    private final long instructions;
+    private final Symbol[] symbols;
+    private final HashMap functionNames = new HashMap();  // key is function address, value is name
+    private final ArrayList files;
+    private final ArrayList labels;
+    private final ArrayList lines;
+    private final ArrayList functions;
+
+    // One row of the report.  Fields not applicable to the row's kind are left unset.
+    // The count of a function is its inclusive count.
+    private static final class Entry {
+        String file;
+        String label;
+        int address;
+        int line;
+        String source;
+        long count;
+        long exclusive;
+        long calls;
+    }
+
+    // A node of the calling context tree being visited by functions().
+    private static final class Visit {
+        final Profiler.CallNode node;
+        final Visit parent;
+        boolean entered = false;
+        boolean nested;  // an outer call of the same function is in progress
+        long total;      // instructions executed in the node's subtree
+
+        Visit(Profiler.CallNode node, Visit parent) {
+            this.node = node;
+            this.parent = parent;
+        }
+    }
+
+    /**
+     * Summarize the current execution counts for the given program.
+     *
+     * @param program the assembled program, whose machine list holds the statements of
+     *                every file assembled with it
+     */
+    public ProfileReport(MIPSprogram program) {
+        ArrayList statements = program.getMachineList();
+        symbols = textSymbols(statements);
+        LinkedHashMap fileEntries = new LinkedHashMap();
+        LinkedHashMap labelEntries = new LinkedHashMap();
+        LinkedHashMap lineEntries = new LinkedHashMap();
+        long total = 0;
+        for (int i = 0; i < statements.size(); i++) {
+            ProgramStatement statement = (ProgramStatement) statements.get(i);
+            String file = statement.getSourceFile();
+            long count = Profiler.getCount(statement.getAddress());
+            Entry fileEntry = entry(fileEntries, file);
+            fileEntry.file = file;
+            fileEntry.count += count;
+            total += count;
+            if (count == 0) {
+                continue;
+            }
+            Symbol symbol = labelAt(symbols, statement.getAddress());
+            String label = (symbol == null) ? NO_LABEL : symbol.getName();
+            Entry labelEntry = entry(labelEntries, file + "\n" + label);
+            if (labelEntry.label == null) {
+                labelEntry.file = file;
+                labelEntry.label = label;
+                labelEntry.address = (symbol == null) ? statement.getAddress() : symbol.getAddress();
+            }
+            labelEntry.count += count;
+            Entry lineEntry = entry(lineEntries, file + "\n" + statement.getSourceLine());
+            if (lineEntry.source == null || lineEntry.source.length() == 0) {
+                lineEntry.file = file;
+                lineEntry.line = statement.getSourceLine();
+                lineEntry.source = statement.getSource().trim();
+            }
+            lineEntry.count += count;
+        }
+        instructions = total;
+        files = sorted(fileEntries);
+        labels = sorted(labelEntries);
+        lines = sorted(lineEntries);
+        functions = functions();
+    }
+
+    /**
+     * Returns the total number of instructions counted.
+     *
+     * @return number of instructions executed while profiling was enabled
+     */
+    public long getInstructionCount() {
+        return instructions;
+    }
+
+    /**
+     * Returns the number of functions in the call graph.
+     *
+     * @return number of functions called, 0 if call graph mode was not enabled
+     */
+    public int getFunctionCount() {
+        return functions.size();
+    }
+
+    /**
+     * Returns the name of a function in the call graph.  Functions are numbered from
+     * 0, busiest (highest inclusive count) first.
+     *
+     * @param function function number
+     * @return its label, or its address if it has none
+     */
+    public String getFunctionName(int function) {
+        return ((Entry) functions.get(function)).label;
+    }
+
+    /**
+     * Returns the address of a function in the call graph.
+     *
+     * @param function function number
+     * @return address of the function's first instruction
+     */
+    public int getFunctionAddress(int function) {
+        return ((Entry) functions.get(function)).address;
+    }
+
+    /**
+     * Returns the number of times a function in the call graph was called.
+     *
+     * @param function function number
+     * @return number of calls
+     */
+    public long getCallCount(int function) {
+        return ((Entry) functions.get(function)).calls;
+    }
+
+    /**
+     * Returns the number of instructions executed in a function and in everything
+     * it called.
+     *
+     * @param function function number
+     * @return inclusive instruction count
+     */
+    public long getInclusiveCount(int function) {
+        return ((Entry) functions.get(function)).count;
+    }
+
+    /**
+     * Returns the number of instructions executed in a function itself.
+     *
+     * @param function function number
+     * @return exclusive instruction count
+     */
+    public long getExclusiveCount(int function) {
+        return ((Entry) functions.get(function)).exclusive;
+    }
+
+    /**
+     * Write the report as text, one section each for files, functions (if call graph
+     * mode was enabled), labels and lines.
+     *
+     * @param out the stream to write to
+     */
+    public void writeText(PrintStream out) {
+        out.println("Profile: " + instructions + " instructions executed");
+        out.println();
+        out.println("       Count       %  File");
+        for (int i = 0; i < files.size(); i++) {
+            Entry entry = (Entry) files.get(i);
+            out.println(countColumns(entry.count) + entry.file);
+        }
+        if (functions.size() > 0) {
+            out.println();
+            out.println(String.format("%12s  %6s  %12s  %6s  %10s  %s",
+                    "Inclusive", "%", "Exclusive", "%", "Calls", "Function"));
+            for (int i = 0; i < functions.size(); i++) {
+                Entry entry = (Entry) functions.get(i);
+                out.println(countColumns(entry.count) + countColumns(entry.exclusive)
+                        + String.format("%10d  ", entry.calls) + entry.label);
+            }
+        }
+        out.println();
+        out.println("       Count       %  Label");
+        for (int i = 0; i < labels.size(); i++) {
+            Entry entry = (Entry) labels.get(i);
+            out.println(countColumns(entry.count) + entry.label + " (" + Binary.intToHexString(entry.address)
+                    + ", " + entry.file + ")");
+        }
+        out.println();
+        out.println("       Count       %  Line");
+        for (int i = 0; i < lines.size(); i++) {
+            Entry entry = (Entry) lines.get(i);
+            out.println(countColumns(entry.count) + entry.file + ":" + entry.line + "  " + entry.source);
+        }
+    }
+
+    /**
+     * Write the report as a single JSON object.
+     *
+     * @param out the stream to write to
+     */
+    public void writeJson(PrintStream out) {
+        StringBuffer json = new StringBuffer("{\"instructions\":").append(instructions);
+        json.append(",\n\"files\":[");
+        for (int i = 0; i < files.size(); i++) {
+            Entry entry = (Entry) files.get(i);
+            json.append((i == 0) ? "\n" : ",\n")
+                    .append("{\"file\":").append(toJson(entry.file))
+                    .append(",\"count\":").append(entry.count).append("}");
+        }
+        json.append("],\n\"functions\":[");
+        for (int i = 0; i < functions.size(); i++) {
+            Entry entry = (Entry) functions.get(i);
+            json.append((i == 0) ? "\n" : ",\n")
+                    .append("{\"function\":").append(toJson(entry.label))
+                    .append(",\"address\":").append(toJson(Binary.intToHexString(entry.address)))
+                    .append(",\"calls\":").append(entry.calls)
+                    .append(",\"inclusive\":").append(entry.count)
+                    .append(",\"exclusive\":").append(entry.exclusive).append("}");
+        }
+        json.append("],\n\"labels\":[");
+        for (int i = 0; i < labels.size(); i++) {
+            Entry entry = (Entry) labels.get(i);
+            json.append((i == 0) ? "\n" : ",\n")
+                    .append("{\"label\":").append(toJson(entry.label))
+                    .append(",\"file\":").append(toJson(entry.file))
+                    .append(",\"address\":").append(toJson(Binary.intToHexString(entry.address)))
+                    .append(",\"count\":").append(entry.count).append("}");
+        }
+        json.append("],\n\"lines\":[");
+        for (int i = 0; i < lines.size(); i++) {
+            Entry entry = (Entry) lines.get(i);
+            json.append((i == 0) ? "\n" : ",\n")
+                    .append("{\"file\":").append(toJson(entry.file))
+                    .append(",\"line\":").append(entry.line)
+                    .append(",\"count\":").append(entry.count)
+                    .append(",\"source\":").append(toJson(entry.source)).append("}");
+        }
+        json.append("]}");
+        out.println(json);
+    }
+
+    /**
+     * Write the call graph in folded stack format, one chain of calls per line.  Writes
+     * nothing if call graph mode was not enabled.
+     *
+     * @param out the stream to write to
+     */
+    public void writeFoldedStacks(PrintStream out) {
+        Profiler.CallNode root = Profiler.getCallTree();
+        if (root == null) {
+            return;
+        }
+        ArrayList stack = new ArrayList();
+        stack.add(root);
+        StringBuffer line = new StringBuffer();
+        while (!stack.isEmpty()) {
+            Profiler.CallNode node = (Profiler.CallNode) stack.remove(stack.size() - 1);
+            if (node.instructions > 0) {
+                line.setLength(0);
+                for (Profiler.CallNode caller = node; caller != null; caller = caller.parent) {
+                    line.insert(0, functionName(caller.address)).insert(0, ';');
+                }
+                out.println(line.substring(1) + " " + node.instructions);
+            }
+            Profiler.CallNode[] children = sortedChildren(node);
+            for (int i = children.length - 1; i >= 0; i--) {
+                stack.add(children[i]);
+            }
+        }
+    }
+
+    // Walk the calling context tree, without recursion since it is as deep as the MIPS
+    // program's deepest chain of calls, and total the counts of each function.
+    private ArrayList functions() {
+        LinkedHashMap entries = new LinkedHashMap();
+        Profiler.CallNode root = Profiler.getCallTree();
+        if (root == null) {
+            return new ArrayList();
+        }
+        HashMap active = new HashMap();  // key is function address, value is number of calls in progress
+        ArrayList stack = new ArrayList();
+        stack.add(new Visit(root, null));
+        while (!stack.isEmpty()) {
+            Visit visit = (Visit) stack.get(stack.size() - 1);
+            Integer key = Integer.valueOf(visit.node.address);
+            Integer calls = (Integer) active.get(key);
+            if (!visit.entered) {
+                visit.entered = true;
+                visit.nested = calls != null && calls.intValue() > 0;
+                visit.total = visit.node.instructions;
+                active.put(key, Integer.valueOf((calls == null) ? 1 : calls.intValue() + 1));
+                Profiler.CallNode[] children = sortedChildren(visit.node);
+                for (int i = children.length - 1; i >= 0; i--) {
+                    stack.add(new Visit(children[i], visit));
+                }
+                continue;
+            }
+            stack.remove(stack.size() - 1);
+            active.put(key, Integer.valueOf(calls.intValue() - 1));
+            if (visit.parent != null) {
+                visit.parent.total += visit.total;
+            }
+            Entry entry = entry(entries, key.toString());
+            if (entry.label == null) {
+                entry.label = functionName(visit.node.address);
+                entry.address = visit.node.address;
+            }
+            entry.calls += visit.node.calls;
+            entry.exclusive += visit.node.instructions;
+            if (!visit.nested) {
+                entry.count += visit.total;
+            }
+        }
+        return sorted(entries);
+    }
+
+    private static Profiler.CallNode[] sortedChildren(Profiler.CallNode node) {
+        Profiler.CallNode[] children = node.getChildren();
+        Arrays.sort(children, new Comparator() {
+            public int compare(Object a, Object b) {
+                return compareUnsigned(((Profiler.CallNode) a).address, ((Profiler.CallNode) b).address);
+            }
+        });
+        return children;
+    }
+
+    // Name a function by the label at its address.  If there is none, use the nearest
+    // label before it plus the offset, or failing that the address.
+    private String functionName(int address) {
+        Integer key = Integer.valueOf(address);
+        String name = (String) functionNames.get(key);
+        if (name == null) {
+            Symbol symbol = labelAt(symbols, address);
+            if (symbol == null) {
+                name = Binary.intToHexString(address);
+            } else if (symbol.getAddress() == address) {
+                name = symbol.getName();
+            } else {
+                name = symbol.getName() + "+" + (address - symbol.getAddress());
+            }
+            functionNames.put(key, name);
+        }
+        return name;
+    }
+
+    // Collect the text labels of every file in the program and the global labels,
+    // ordered by unsigned address.
+    private static Symbol[] textSymbols(ArrayList statements) {
+        ArrayList symbols = new ArrayList(SimulatorContext.current().getSymbolTable().getTextSymbols());
+        HashSet programs = new HashSet();
+        for (int i = 0; i < statements.size(); i++) {
+            MIPSprogram program = ((ProgramStatement) statements.get(i)).getSourceMIPSprogram();
+            if (program != null && programs.add(program)) {
+                symbols.addAll(program.getLocalSymbolTable().getTextSymbols());
+            }
+        }
+        Symbol[] result = (Symbol[]) symbols.toArray(new Symbol[symbols.size()]);
+        Arrays.sort(result, new Comparator() {
+            public int compare(Object a, Object b) {
+                return compareUnsigned(((Symbol) a).getAddress(), ((Symbol) b).getAddress());
+            }
+        });
+        return result;
+    }
+
+    // Returns the last label at or before the given address and in the same text
+    // segment, or null if there is none.
+    private static Symbol labelAt(Symbol[] symbols, int address) {
+        int low = 0;
+        int high = symbols.length - 1;
+        Symbol found = null;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (compareUnsigned(symbols[middle].getAddress(), address) <= 0) {
+                found = symbols[middle];
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (found != null && Memory.inKernelTextSegment(found.getAddress()) != Memory.inKernelTextSegment(address)) {
+            return null;
+        }
+        return found;
+    }
+
+    private static int compareUnsigned(int a, int b) {
+        a ^= Integer.MIN_VALUE;
+        b ^= Integer.MIN_VALUE;
+        return (a < b) ? -1 : ((a == b) ? 0 : 1);
+    }
+
+    private static Entry entry(LinkedHashMap entries, String key) {
+        Entry entry = (Entry) entries.get(key);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(key, entry);
+        }
+        return entry;
+    }
+
+    // Entries with a nonzero count, busiest first.  Ties keep their program order.
+    private static ArrayList sorted(LinkedHashMap entries) {
+        ArrayList list = new ArrayList();
+        Object[] values = entries.values().toArray();
+        for (int i = 0; i < values.length; i++) {
+            if (((Entry) values[i]).count > 0) {
+                list.add(values[i]);
+            }
+        }
+        Collections.sort(list, new Comparator() {
+            public int compare(Object a, Object b) {
+                long difference = ((Entry) b).count - ((Entry) a).count;
+                return (difference < 0) ? -1 : ((difference == 0) ? 0 : 1);
+            }
+        });
+        return list;
+    }
+
+    private String countColumns(long count) {
+        double percent = (instructions == 0) ? 0 : 100.0 * count / instructions;
+        return String.format("%12d  %6.2f  ", count, percent);
+    }
+
+    private static String toJson(String string) {
+        StringBuffer json = new StringBuffer("\"");
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append("\"").toString();
+    }
+}
@@ -0,0 +1,300 @@
+package mars.simulator;
+
+import mars.mips.hardware.Memory;
+import mars.mips.instructions.Instruction;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+
+/**
+ * Counts the executions of each instruction in the text and kernel text segments.
+ * The Simulator counts every instruction it executes while profiling is enabled, at
+ * the cost of one array increment, instead of each fetch being delivered to a memory
+ * observer as a MemoryAccessNotice.  ProfileReport summarizes the counts by source
+ * line, label and file, and the Text Segment window shows them in its Count column.
+ * <p>
+ * Counts are kept in the same layout Memory uses for the text segment: a table of
+ * blocks of 1024 words each, a block being allocated the first time one of its
+ * instructions is executed.  Counts are not undone by backstepping.
+ * <p>
+ * In call graph mode the profiler also keeps a shadow call stack, and attributes each
+ * instruction to the chain of calls that led to it.  A call is made by the "and link"
+ * instructions (jal, jalr, bgezal and bltzal), which report it through call(); the
+ * callee is whatever instruction is executed next, after the delay slot if delayed
+ * branching is enabled.  The call returns when execution reaches its return address,
+ * which is what <tt>jr $ra</tt> does.  The calls are recorded in a calling context
+ * tree of CallNodes, from which ProfileReport derives inclusive and exclusive counts
+ * per function and folded stacks for flame graphs.
+ * <p>
+ * There is one set of counts per SimulatorContext, and the static methods here apply
+ * to the counts of the current context.
+ **/
+
+public class Profiler {
+    private static final int BLOCK_LENGTH_WORDS = 1024;
+    private static final int BLOCK_TABLE_LENGTH = 1024;
+    private static final int BLOCK_SHIFT = 12;  // byte offset to block number
+    private static final int SEGMENT_LENGTH_BYTES = BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * Memory.WORD_LENGTH_BYTES;
+
+    /**
+     * A function called through a particular chain of calls: a node of the calling
+     * context tree.
+     */
+    static final class CallNode {
+        final int address;      // address of the function's first instruction
+        final CallNode parent;  // caller, null for the function execution started in
+        private HashMap children = null;  // key is callee address, value is CallNode
+        long calls = 0;         // number of times called through this chain
+        long instructions = 0;  // instructions executed in the function itself
+
+        private CallNode(int address, CallNode parent) {
+            this.address = address;
+            this.parent = parent;
+        }
+
+        private CallNode child(int address) {
+            if (children == null) {
+                children = new HashMap();
+            }
+            Integer key = Integer.valueOf(address);
+            CallNode child = (CallNode) children.get(key);
+            if (child == null) {
+                child = new CallNode(address, this);
+                children.put(key, child);
+            }
+            return child;
+        }
+
+        /**
+         * Returns the functions called from this one, in no particular order.
+         *
+         * @return array of CallNode, possibly empty
+         */
+        CallNode[] getChildren() {
+            if (children == null) {
+                return new CallNode[0];
+            }
+            return (CallNode[]) children.values().toArray(new CallNode[children.size()]);
+        }
+    }
+
+    /**
+     * The execution counts of one SimulatorContext.
+     */
+    static final class State {
+        // Tested by the Simulator before each instruction.
+        boolean enabled = false;
+        private boolean counting = false;
+        private boolean callGraph = false;
+        // Shadow call stack.  frames[0] is the root of the calling context tree, and
+        // returns[i] is the return address of the call that made frames[i].
+        private CallNode root;
+        private CallNode[] frames = new CallNode[64];
+        private int[] returns = new int[64];
+        private int depth = -1;
+        private boolean callPending = false;
+        private int pendingReturn;
+        private int pendingDelaySlot;
+        private long[][] text = new long[BLOCK_TABLE_LENGTH][];
+        private long[][] kernelText = new long[BLOCK_TABLE_LENGTH][];
+        private int textBase = Memory.textBaseAddress;
+        private int kernelTextBase = Memory.kernelTextBaseAddress;
+
+        /**
+         * Count one execution of the instruction at the given address.  Addresses
+         * outside both text segments are ignored.
+         *
+         * @param address address of the instruction executed
+         */
+        void count(int address) {
+            if (callGraph) {
+                step(address);
+            }
+            long[][] table = text;
+            int offset = address - textBase;
+            if (offset < 0 || offset >= SEGMENT_LENGTH_BYTES) {
+                table = kernelText;
+                offset = address - kernelTextBase;
+                if (offset < 0 || offset >= SEGMENT_LENGTH_BYTES) {
+                    return;
+                }
+            }
+            long[] block = table[offset >>> BLOCK_SHIFT];
+            if (block == null) {
+                block = new long[BLOCK_LENGTH_WORDS];
+                table[offset >>> BLOCK_SHIFT] = block;
+            }
+            block[(offset >>> 2) & (BLOCK_LENGTH_WORDS - 1)]++;
+        }
+
+        // Attribute the instruction at the given address to the current call, after
+        // entering or leaving a call if it does so.
+        private void step(int address) {
+            if (depth < 0) {
+                root = new CallNode(address, null);
+                root.calls = 1;
+                frames[0] = root;
+                depth = 0;
+            } else if (callPending) {
+                if (address != pendingDelaySlot) {
+                    callPending = false;
+                    CallNode callee = frames[depth].child(address);
+                    callee.calls++;
+                    if (++depth == frames.length) {
+                        frames = Arrays.copyOf(frames, depth * 2);
+                        returns = Arrays.copyOf(returns, depth * 2);
+                    }
+                    frames[depth] = callee;
+                    returns[depth] = pendingReturn;
+                }
+            } else if (depth > 0 && address == returns[depth]) {
+                frames[depth--] = null;
+            }
+            frames[depth].instructions++;
+        }
+
+        private long getCount(int address) {
+            long[][] table = text;
+            int offset = address - textBase;
+            if (offset < 0 || offset >= SEGMENT_LENGTH_BYTES) {
+                table = kernelText;
+                offset = address - kernelTextBase;
+                if (offset < 0 || offset >= SEGMENT_LENGTH_BYTES) {
+                    return 0;
+                }
+            }
+            long[] block = table[offset >>> BLOCK_SHIFT];
+            return (block == null) ? 0 : block[(offset >>> 2) & (BLOCK_LENGTH_WORDS - 1)];
+        }
+
+        private void reset() {
+            text = new long[BLOCK_TABLE_LENGTH][];
+            kernelText = new long[BLOCK_TABLE_LENGTH][];
+            textBase = Memory.textBaseAddress;
+            kernelTextBase = Memory.kernelTextBaseAddress;
+            root = null;
+            Arrays.fill(frames, null);
+            depth = -1;
+            callPending = false;
+        }
+    }
+
+    private static State state() {
+        return SimulatorContext.current().profiler;
+    }
+
+    /**
+     * Enable or disable profiling.  Counts gathered so far are kept.  Instructions are
+     * still counted while call graph mode is enabled.
+     *
+     * @param enabled true to count the instructions executed from now on
+     */
+    public static void setEnabled(boolean enabled) {
+        State profile = state();
+        profile.counting = enabled;
+        profile.enabled = profile.counting || profile.callGraph;
+    }
+
+    /**
+     * Determine whether profiling is enabled, on its own or by call graph mode.
+     *
+     * @return true if the Simulator counts the instructions it executes
+     */
+    public static boolean isEnabled() {
+        return state().enabled;
+    }
+
+    /**
+     * Enable or disable call graph mode, which also counts instructions as if profiling
+     * were enabled.  The calling context tree gathered so far is kept, but calls and
+     * returns made while the mode is disabled are not seen.
+     *
+     * @param enabled true to track calls and returns from now on
+     */
+    public static void setCallGraphEnabled(boolean enabled) {
+        State profile = state();
+        profile.callGraph = enabled;
+        profile.enabled = profile.counting || profile.callGraph;
+    }
+
+    /**
+     * Determine whether call graph mode is enabled.
+     *
+     * @return true if the Simulator tracks calls and returns
+     */
+    public static boolean isCallGraphEnabled() {
+        return state().callGraph;
+    }
+
+    /**
+     * Note that the instruction being executed is a call, for call graph mode.  Called
+     * by the "and link" instructions once they have decided to branch or jump.
+     *
+     * @param returnAddress    the return address stored by the instruction
+     * @param delayedBranching true if the instruction following the call is executed in
+     *                         its delay slot before the callee
+     */
+    public static void call(int returnAddress, boolean delayedBranching) {
+        State profile = state();
+        if (profile.callGraph) {
+            profile.callPending = true;
+            profile.pendingReturn = returnAddress;
+            // An address no instruction can have if there is no delay slot.
+            profile.pendingDelaySlot = delayedBranching ? returnAddress - Instruction.INSTRUCTION_LENGTH : 1;
+        }
+    }
+
+    /**
+     * Returns the root of the calling context tree gathered in call graph mode.
+     *
+     * @return the function execution started in, or null if none has been seen
+     */
+    static CallNode getCallTree() {
+        return state().root;
+    }
+
+    /**
+     * Discard all counts.  Should be called whenever a program is assembled or reset,
+     * and picks up any change to the text segment addresses.
+     */
+    public static void reset() {
+        state().reset();
+    }
+
+    /**
+     * Returns the number of times the instruction at the given address has been
+     * executed since profiling was last reset.
+     *
+     * @param address text or kernel text segment address
+     * @return number of executions, 0 if none or if the address is in neither segment
+     */
+    public static long getCount(int address) {
+        return state().getCount(address);
+    }
+}
@@ -4,8 +4,10 @@ import mars.*;
 import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Coprocessor0;
 import mars.mips.hardware.Memory;
+import mars.mips.hardware.Register;
 import mars.mips.hardware.RegisterFile;
-import mars.mips.instructions.BasicInstruction;
+import mars.mips.instructions.Instruction;
+import mars.mips.instructions.SimulationCode;
 import mars.util.Binary;
 import mars.util.SystemIO;
 import mars.venus.RunGoAction;
@@ -14,7 +16,6 @@ import mars.venus.RunStepAction;
 
 import javax.swing.*;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Observable;
 	
 	/*
@@ -54,8 +55,6 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 public class Simulator extends Observable {
     private SimThread simulatorThread;
-    private static Simulator simulator = null;  // Singleton object
-    private static Runnable interactiveGUIUpdater = null;
     // Others can set this true to indicate external interrupt.  Initially used
     // to simulate keyboard and display interrupts.  The device is identified
     // by the address of its MMIO control register.  keyboard 0xFFFF0000 and
@@ -71,28 +70,29 @@ public class Simulator extends Observable {
     public static final int NORMAL_TERMINATION = 4;
     public static final int CLIFF_TERMINATION = 5; // run off bottom of program
     public static final int PAUSE_OR_STOP = 6;
+    /**
+     * Number of MIPS instructions executed per acquisition of the memory and registers
+     * lock when running in turbo mode.  The stop flag is tested only between batches.
+     */
+    public static final int TURBO_BATCH_SIZE = 4096;
 
     /**
-     * Returns the Simulator object
+     * Returns the Simulator object of the current SimulatorContext
      *
      * @return the Simulator object in use
      */
     public static Simulator getInstance() {
-        // Do NOT change this to create the Simulator at load time (in declaration above)!
-        // Its constructor looks for the GUI, which at load time is not created yet,
-        // and incorrectly leaves interactiveGUIUpdater null!  This causes runtime
-        // exceptions while running in timed mode.
-        if (simulator == null) {
-            simulator = new Simulator();
+        SimulatorContext context = SimulatorContext.current();
+        synchronized (context) {
+            if (context.simulator == null) {
+                context.simulator = new Simulator();
+            }
+            return context.simulator;
         }
-        return simulator;
     }
 
     private Simulator() {
         simulatorThread = null;
-        if (Globals.getGui() != null) {
-            interactiveGUIUpdater = new UpdateGUI();
-        }
     }
 
 
@@ -124,7 +124,25 @@ public class Simulator extends Observable {
      **/
 
     public boolean simulate(MIPSprogram p, int pc, int maxSteps, int[] breakPoints, AbstractAction actor) throws ProcessingException {
-        simulatorThread = new SimThread(p, pc, maxSteps, breakPoints, actor);
+        return simulate(p, pc, maxSteps,
+                (breakPoints == null || breakPoints.length == 0) ? null : new Breakpoints(breakPoints), actor);
+    }
+
+    /**
+     * Simulate execution of given MIPS program, stopping at the given breakpoints and
+     * watchpoints.  It must have already been assembled.
+     *
+     * @param p           The MIPSprogram to be simulated.
+     * @param pc          address of first instruction to simulate; this goes into program counter
+     * @param maxSteps    maximum number of steps to perform before returning false (0 or less means no max)
+     * @param breakpoints breakpoints and watchpoints, use null if none
+     * @param actor       the GUI component responsible for this call, usually GO or STEP.  null if none.
+     * @return true if execution completed, false otherwise
+     * @throws ProcessingException Throws exception if run-time exception occurs.
+     **/
+
+    public boolean simulate(MIPSprogram p, int pc, int maxSteps, Breakpoints breakpoints, AbstractAction actor) throws ProcessingException {
+        simulatorThread = new SimThread(p, pc, maxSteps, breakpoints, actor);
         simulatorThread.start();
 
         // Condition should only be true if run from command-line instead of GUI.
@@ -190,13 +208,25 @@ public class Simulator extends Observable {
     private void notifyObserversOfExecutionStart(int maxSteps, int programCounter) {
         this.setChanged();
         this.notifyObservers(new SimulatorNotice(SimulatorNotice.SIMULATOR_START,
-                maxSteps, RunSpeedPanel.getInstance().getRunSpeed(), programCounter));
+                maxSteps, currentRunSpeed(), programCounter));
     }
 
     private void notifyObserversOfExecutionStop(int maxSteps, int programCounter) {
+        // Files still open (execution paused or stopped short of the end) must show
+        // everything written so far.
+        SystemIO.flushFiles();
         this.setChanged();
         this.notifyObservers(new SimulatorNotice(SimulatorNotice.SIMULATOR_STOP,
-                maxSteps, RunSpeedPanel.getInstance().getRunSpeed(), programCounter));
+                maxSteps, currentRunSpeed(), programCounter));
+    }
+
+    // Run speed reported in simulator notices.  RunSpeedPanel.getInstance() would create
+    // the panel, and its existence turns off turbo mode, so when there is no panel (e.g.
+    // running from the command line) the speed is simply unlimited.
+    private static double currentRunSpeed() {
+        return Globals.runSpeedPanelExists
+                ? RunSpeedPanel.getInstance().getRunSpeed()
+                : RunSpeedPanel.UNLIMITED_SPEED;
     }
 
 
@@ -214,13 +244,18 @@ public class Simulator extends Observable {
         private final MIPSprogram p;
         private final int pc;
         private final int maxSteps;
-        private int[] breakPoints;
+        private Breakpoints breakpoints;
         private boolean done;
         private ProcessingException pe;
         private volatile boolean stop = false;
         private volatile AbstractAction stopper;
         private final AbstractAction starter;
         private int constructReturnReason;
+        // Context of the thread that created this one; the MIPS thread runs in it.
+        private final SimulatorContext context = SimulatorContext.current();
+        // Counts the instructions executed, for virtual time.
+        private final VirtualClock.State clock = context.virtualClock;
+        private final Profiler.State profile = context.profiler;
 
 
         /**
@@ -229,15 +264,15 @@ public class Simulator extends Observable {
          * @param p           the MIPSprogram to be simulated
          * @param pc          address in text segment of first instruction to simulate
          * @param maxSteps    maximum number of instruction steps to simulate.  Default of -1 means no maximum
-         * @param breakPoints array of breakpoints (instruction addresses) specified by user
+         * @param breakpoints breakpoints and watchpoints specified by user, null if none
          * @param starter     the GUI component responsible for this call, usually GO or STEP.  null if none.
          */
-        SimThread(MIPSprogram p, int pc, int maxSteps, int[] breakPoints, AbstractAction starter) {
+        SimThread(MIPSprogram p, int pc, int maxSteps, Breakpoints breakpoints, AbstractAction starter) {
             super(Globals.getGui() != null);
             this.p = p;
             this.pc = pc;
             this.maxSteps = maxSteps;
-            this.breakPoints = breakPoints;
+            this.breakpoints = breakpoints;
             this.done = false;
             this.pe = null;
             this.starter = starter;
@@ -260,12 +295,39 @@ public class Simulator extends Observable {
         /**
          * This is comparable to the Runnable "run" method (it is called by
          * SwingWorker's "run" method).  It simulates the program
-         * execution in the backgorund.
+         * execution in the backgorund, within the SimulatorContext of the
+         * thread that started the simulation.
          *
          * @return boolean value true if execution done, false otherwise
          */
 
         public Object construct() {
+            if (context == SimulatorContext.getDefault()) {
+                return simulateWatching();
+            }
+            SimulatorContext.bind(context);
+            try {
+                return simulateWatching();
+            } finally {
+                SimulatorContext.unbind();
+            }
+        }
+
+        // Watchpoints are told of stores by Memory only while this thread runs.
+        private Object simulateWatching() {
+            if (breakpoints == null || !breakpoints.hasWatchpoints()) {
+                return simulate();
+            }
+            Memory memory = context.getMemory();
+            memory.setWatchpoints(breakpoints);
+            try {
+                return simulate();
+            } finally {
+                memory.setWatchpoints(null);
+            }
+        }
+
+        private Object simulate() {
             // The next two statements are necessary for GUI to be consistently updated
             // before the simulation gets underway.  Without them, this happens only intermittently,
             // with a consequence that some simulations are interruptable using PAUSE/STOP and others
@@ -273,10 +335,10 @@ public class Simulator extends Observable {
             Thread.currentThread().setPriority(Thread.NORM_PRIORITY - 1);
             Thread.yield();  // let the main thread run a bit to finish updating the GUI
 
-            if (breakPoints == null || breakPoints.length == 0) {
-                breakPoints = null;
-            } else {
-                Arrays.sort(breakPoints);  // must be pre-sorted for binary search
+            if (breakpoints != null && breakpoints.isEmpty()) {
+                breakpoints = null;
+            } else if (breakpoints != null) {
+                breakpoints.clearLastHit();
             }
 
             Simulator.getInstance().notifyObserversOfExecutionStart(maxSteps, pc);
@@ -284,7 +346,7 @@ public class Simulator extends Observable {
             RegisterFile.initializeProgramCounter(pc);
             ProgramStatement statement = null;
             try {
-                statement = Globals.memory.getStatement(RegisterFile.getProgramCounter());
+                statement = InstructionCache.fetch(RegisterFile.getProgramCounter());
             } catch (AddressErrorException e) {
                 ErrorList el = new ErrorList();
                 el.add(new ErrorMessage((MIPSprogram) null, 0, 0, "invalid program counter value: " + Binary.intToHexString(RegisterFile.getProgramCounter())));
@@ -332,6 +394,13 @@ public class Simulator extends Observable {
             // This is noticeable in stepped mode.
             // *********************************************************************
 
+            // Turbo mode: nothing can observe or interrupt the run one instruction at a
+            // time (no GUI, no speed control, no breakpoints, no backstepping), so the
+            // per-instruction bookkeeping is hoisted out of the loop.
+            if (turboModeApplies()) {
+                return runTurbo(statement);
+            }
+
             int pc = 0;  // added: 7/26/06 (explanation above)
 
             while (statement != null) {
@@ -341,25 +410,29 @@ public class Simulator extends Observable {
                 // to access MIPS memory and registers only through synchronized blocks on same
                 // lock variable, then full (albeit heavy-handed) protection of MIPS memory and
                 // registers is assured.  Not as critical for reading from those resources.
-                synchronized (Globals.memoryAndRegistersLock) {
+                synchronized (context.getLock()) {
                     try {
                         if (Simulator.externalInterruptingDevice != NO_DEVICE) {
                             int deviceInterruptCode = externalInterruptingDevice;
                             Simulator.externalInterruptingDevice = NO_DEVICE;
                             throw new ProcessingException(statement, "External Interrupt", deviceInterruptCode);
                         }
-                        BasicInstruction instruction = (BasicInstruction) statement.getInstruction();
-                        if (instruction == null) {
+                        SimulationCode code = InstructionCache.simulationCode(pc, statement);
+                        if (code == null) {
                             throw new ProcessingException(statement,
                                     "undefined instruction (" + Binary.intToHexString(statement.getBinaryStatement()) + ")",
                                     Exceptions.RESERVED_INSTRUCTION_EXCEPTION);
                         }
                         // THIS IS WHERE THE INSTRUCTION EXECUTION IS ACTUALLY SIMULATED!
-                        instruction.getSimulationCode().simulate(statement);
+                        clock.instructions++;
+                        if (profile.enabled) {
+                            profile.count(pc);
+                        }
+                        code.simulate(statement);
 
                         // IF statement added 7/26/06 (explanation above)
                         if (Globals.getSettings().getBackSteppingEnabled()) {
-                            Globals.program.getBackStepper().addDoNothing(pc);
+                            context.getProgram().getBackStepper().addDoNothing(pc);
                         }
                     } catch (ProcessingException pe) {
                         if (pe.errors() == null) {
@@ -376,7 +449,7 @@ public class Simulator extends Observable {
                             // MIPS program with appropriate error message.
                             ProgramStatement exceptionHandler = null;
                             try {
-                                exceptionHandler = Globals.memory.getStatement(Memory.exceptionHandlerAddress);
+                                exceptionHandler = Memory.getInstance().getStatement(Memory.exceptionHandlerAddress);
                             } catch (AddressErrorException aee) {
                             } // will not occur with this well-known addres
                             if (exceptionHandler != null) {
@@ -410,8 +483,8 @@ public class Simulator extends Observable {
                     return new Boolean(done);
                 }
                 //	Return if we've reached a breakpoint.
-                if ((breakPoints != null) &&
-                        (Arrays.binarySearch(breakPoints, RegisterFile.getProgramCounter()) >= 0)) {
+                if ((breakpoints != null) &&
+                        breakpoints.shouldStop(RegisterFile.getProgramCounter())) {
                     this.constructReturnReason = BREAKPOINT;
                     this.done = false;
                     Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
@@ -428,14 +501,8 @@ public class Simulator extends Observable {
                     }
                 }
 
-                // schedule GUI update only if: there is in fact a GUI! AND
-                //                              using Run,  not Step (maxSteps > 1) AND
-                //                              running slowly enough for GUI to keep up
-                //if (Globals.getGui() != null && maxSteps != 1 &&
-                if (interactiveGUIUpdater != null && maxSteps != 1 &&
-                        RunSpeedPanel.getInstance().getRunSpeed() < RunSpeedPanel.UNLIMITED_SPEED) {
-                    SwingUtilities.invokeLater(interactiveGUIUpdater);
-                }
+                // When running slowly enough for the GUI to keep up, it is updated by
+                // mars.venus.RefreshCoordinator at a limited frame rate, not from here.
                 if (Globals.getGui() != null || Globals.runSpeedPanelExists) { // OR added by DPS 24 July 2008 to enable speed control by stand-alone tool
                     if (maxSteps != 1 &&
                             RunSpeedPanel.getInstance().getRunSpeed() < RunSpeedPanel.UNLIMITED_SPEED) {
@@ -450,7 +517,7 @@ public class Simulator extends Observable {
                 // Get next instruction in preparation for next iteration.
 
                 try {
-                    statement = Globals.memory.getStatement(RegisterFile.getProgramCounter());
+                    statement = InstructionCache.fetch(RegisterFile.getProgramCounter());
                 } catch (AddressErrorException e) {
                     ErrorList el = new ErrorList();
                     el.add(new ErrorMessage((MIPSprogram) null, 0, 0, "invalid program counter value: " + Binary.intToHexString(RegisterFile.getProgramCounter())));
@@ -485,6 +552,174 @@ public class Simulator extends Observable {
         }
 
 
+        // Turbo mode is possible only when running from the command line (or any other
+        // caller without GUI or run speed control) with backstepping disabled, no
+        // breakpoints, and not stepping.
+        private boolean turboModeApplies() {
+            return Globals.getGui() == null && !Globals.runSpeedPanelExists
+                    && breakpoints == null && maxSteps != 1
+                    && !Globals.getSettings().getBackSteppingEnabled();
+        }
+
+        /**
+         * Execution loop used in turbo mode.  Semantically identical to the loop in
+         * construct(), but the memory and registers lock is acquired once per batch of
+         * TURBO_BATCH_SIZE instructions and the volatile stop flag is tested only at batch
+         * boundaries.  The GUI update, run speed and breakpoint checks are omitted since
+         * turboModeApplies() guarantees they cannot fire.  Statements are executed from
+         * their decoded form in InstructionCache, and hot basic blocks through a
+         * BlockTranslator when BlockTranslator.applies().  Instruction fetches are not
+         * sent to memory observers when there are none.
+         *
+         * @param statement the first statement to execute
+         * @return boolean value true if execution done, false otherwise
+         */
+        private Object runTurbo(ProgramStatement statement) {
+            int steps = 0;
+            int pc = 0;
+            // Hot basic blocks are run from the block translator when possible.  A block
+            // can only start at the target of a taken branch or jump.
+            BlockTranslator translator = BlockTranslator.applies() ? new BlockTranslator() : null;
+            VirtualClock.State clock = this.clock;
+            Profiler.State profile = this.profile.enabled ? this.profile : null;
+            boolean observed = context.getMemory().countObservers() != 0;
+            Register[] registers = RegisterFile.getRegisters();
+            boolean branched = true;
+            while (statement != null) {
+                synchronized (context.getLock()) {
+                    for (int batch = 0; batch < TURBO_BATCH_SIZE && statement != null; batch++) {
+                        pc = RegisterFile.getProgramCounter();
+                        BlockTranslator.Block block = (branched && translator != null) ? translator.enter(pc) : null;
+                        if (block != null && (maxSteps <= 0 || maxSteps - steps > block.length())
+                                && Simulator.externalInterruptingDevice == NO_DEVICE) {
+                            int executed = 0;
+                            int modifications = InstructionCache.getModificationCount();
+                            try {
+                                while (executed < block.length()) {
+                                    pc = block.address + executed * Instruction.INSTRUCTION_LENGTH;
+                                    RegisterFile.incrementPC();
+                                    clock.instructions++;
+                                    if (profile != null) {
+                                        profile.count(pc);
+                                    }
+                                    InstructionDecoder.execute(block.decoded, executed * InstructionDecoder.STRIDE,
+                                            block.statements[executed], block.codes[executed], registers);
+                                    executed++;
+                                    if (RegisterFile.getProgramCounter() != pc + Instruction.INSTRUCTION_LENGTH) {
+                                        break;
+                                    }
+                                    // A store may have rewritten a later statement of this block.
+                                    if (block.stores[executed - 1]
+                                            && InstructionCache.getModificationCount() != modifications) {
+                                        break;
+                                    }
+                                }
+                            } catch (ProcessingException pe) {
+                                executed++;
+                                Boolean result = handleProcessingException(pe, pc);
+                                if (result != null) {
+                                    return result;
+                                }
+                            }
+                            steps += executed;
+                            batch += executed - 1;
+                        } else {
+                            RegisterFile.incrementPC();
+                            try {
+                                if (Simulator.externalInterruptingDevice != NO_DEVICE) {
+                                    int deviceInterruptCode = externalInterruptingDevice;
+                                    Simulator.externalInterruptingDevice = NO_DEVICE;
+                                    throw new ProcessingException(statement, "External Interrupt", deviceInterruptCode);
+                                }
+                                SimulationCode code = InstructionCache.simulationCode(pc, statement);
+                                if (code == null) {
+                                    throw new ProcessingException(statement,
+                                            "undefined instruction (" + Binary.intToHexString(statement.getBinaryStatement()) + ")",
+                                            Exceptions.RESERVED_INSTRUCTION_EXCEPTION);
+                                }
+                                clock.instructions++;
+                                if (profile != null) {
+                                    profile.count(pc);
+                                }
+                                InstructionCache.execute(pc, statement, code, registers);
+                            } catch (ProcessingException pe) {
+                                Boolean result = handleProcessingException(pe, pc);
+                                if (result != null) {
+                                    return result;
+                                }
+                            }
+                            if (DelayedBranch.isTriggered()) {
+                                RegisterFile.setProgramCounter(DelayedBranch.getBranchTargetAddress());
+                                DelayedBranch.clear();
+                            } else if (DelayedBranch.isRegistered()) {
+                                DelayedBranch.trigger();
+                            }
+                            if (maxSteps > 0) {
+                                steps++;
+                                if (steps >= maxSteps) {
+                                    return stopWith(MAX_STEPS, false, pc);
+                                }
+                            }
+                        }
+                        branched = RegisterFile.getProgramCounter() != pc + Instruction.INSTRUCTION_LENGTH;
+                        try {
+                            statement = InstructionCache.fetch(RegisterFile.getProgramCounter(), observed);
+                        } catch (AddressErrorException e) {
+                            return invalidProgramCounter(e, pc);
+                        }
+                    }
+                }
+                if (stop) {
+                    return stopWith(PAUSE_OR_STOP, false, pc);
+                }
+            }
+            if (DelayedBranch.isTriggered() || DelayedBranch.isRegistered()) {
+                DelayedBranch.clear();
+            }
+            return stopWith(CLIFF_TERMINATION, true, pc);
+        }
+
+        // Records why construct() is returning, closes MIPS program files if execution
+        // is done, and notifies observers that execution has stopped.
+        private Boolean stopWith(int reason, boolean done, int pc) {
+            this.constructReturnReason = reason;
+            this.done = done;
+            if (done) {
+                SystemIO.resetFiles(); // close any files opened in MIPS program
+            }
+            Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
+            return Boolean.valueOf(done);
+        }
+
+        // Handles a ProcessingException thrown while simulating an instruction.  Returns
+        // the value construct() should return, or null if execution continues in the
+        // exception handler.
+        private Boolean handleProcessingException(ProcessingException pe, int pc) {
+            if (pe.errors() == null) {
+                return stopWith(NORMAL_TERMINATION, true, pc); // execution completed without error.
+            }
+            ProgramStatement exceptionHandler = null;
+            try {
+                exceptionHandler = Memory.getInstance().getStatement(Memory.exceptionHandlerAddress);
+            } catch (AddressErrorException aee) {
+            } // will not occur with this well-known addres
+            if (exceptionHandler != null) {
+                RegisterFile.setProgramCounter(Memory.exceptionHandlerAddress);
+                return null;
+            }
+            this.pe = pe;
+            return stopWith(EXCEPTION, true, pc);
+        }
+
+        // Handles failure to fetch the next instruction.  See the identical logic in construct().
+        private Boolean invalidProgramCounter(AddressErrorException e, int pc) {
+            ErrorList el = new ErrorList();
+            el.add(new ErrorMessage((MIPSprogram) null, 0, 0, "invalid program counter value: " + Binary.intToHexString(RegisterFile.getProgramCounter())));
+            this.pe = new ProcessingException(el, e);
+            Coprocessor0.updateRegister(Coprocessor0.EPC, RegisterFile.getProgramCounter());
+            return stopWith(EXCEPTION, true, pc);
+        }
+
         /**
          * This method is invoked by the SwingWorker when the "construct" method returns.
          * It will update the GUI appropriately.  According to Sun's documentation, it
@@ -523,18 +758,4 @@ public class Simulator extends Observable {
 
     }
 
-    private class UpdateGUI implements Runnable {
-        public void run() {
-            if (Globals.getGui().getRegistersPane().getSelectedComponent() ==
-                    Globals.getGui().getMainPane().getExecutePane().getRegistersWindow()) {
-                Globals.getGui().getMainPane().getExecutePane().getRegistersWindow().updateRegisters();
-            } else {
-                Globals.getGui().getMainPane().getExecutePane().getCoprocessor1Window().updateRegisters();
-            }
-            Globals.getGui().getMainPane().getExecutePane().getDataSegmentWindow().updateValues();
-            Globals.getGui().getMainPane().getExecutePane().getTextSegmentWindow().setCodeHighlighting(true);
-            Globals.getGui().getMainPane().getExecutePane().getTextSegmentWindow().highlightStepAtPC();
-        }
-    }
-
 }
@@ -0,0 +1,300 @@
+package mars.simulator;
+
+import mars.Globals;
+import mars.MIPSprogram;
+import mars.assembler.SymbolTable;
+import mars.mips.hardware.Coprocessor0;
+import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.RegisterFile;
+import mars.util.SyscallLog;
+import mars.util.SystemIO;
+
+import java.util.HashMap;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * The state of one simulated MIPS machine: its registers, Coprocessor 0 and 1, memory,
+ * delayed branch state, instruction cache, symbol table, program, syscall file
+ * descriptors and random number streams, and its Simulator.
+ * <p>
+ * MARS has always kept this state in statics, and the static API of RegisterFile,
+ * Coprocessor0, Coprocessor1, Memory.getInstance(), SystemIO, Simulator.getInstance()
+ * and the rest is unchanged.  Each of those classes now keeps its state in a context
+ * and applies its static methods to the <i>current</i> context, which is the default
+ * context unless the calling thread has been bound to another one by bind().  The
+ * simulator binds its execution thread to the context that started it, so
+ * instruction simulation code and syscalls run against that context without having
+ * to be passed it.
+ * <p>
+ * The default context is the one used by the IDE and the command line.  Its program,
+ * symbol table, exit code and lock are the Globals fields of the same names, so code
+ * that uses those fields directly continues to work.  Other contexts are intended for
+ * headless use: they share the instruction set, settings and memory configuration
+ * with the default context, and should not be given a program with backstepping
+ * enabled or be observed by the IDE.
+ * <p>
+ * A typical use, on a thread of its own:
+ * <pre>
+ *   SimulatorContext context = new SimulatorContext();
+ *   SimulatorContext.bind(context);
+ *   try {
+ *       MIPSprogram program = new MIPSprogram();
+ *       ... assemble and simulate as MarsLaunch does ...
+ *   } finally {
+ *       SimulatorContext.unbind();
+ *   }
+ * </pre>
+ **/
+
+public class SimulatorContext {
+    private static final SimulatorContext defaultContext = new SimulatorContext();
+    private static final ThreadLocal boundContext = new ThreadLocal();
+    // Number of threads currently bound to a context.  While it is zero, current()
+    // need not consult the ThreadLocal, which keeps the default case as cheap as
+    // the statics it replaced.
+    private static volatile int boundThreads = 0;
+
+    private final Memory memory;
+    private final RegisterFile.State registerFile;
+    private final Coprocessor0.State coprocessor0;
+    private final Coprocessor1.State coprocessor1;
+    private final SystemIO.State systemIO;
+    private final SyscallLog.State syscallLog;
+    private final HashMap randomStreams;
+    private final Object lock;
+    final DelayedBranch.State delayedBranch;
+    final InstructionCache.State instructionCache;
+    final VirtualClock.State virtualClock;
+    final Profiler.State profiler;
+    Simulator simulator;
+    private MIPSprogram program;
+    private SymbolTable symbolTable;
+    private int exitCode;
+
+    /**
+     * Create a context holding a newly reset machine: registers at their initial
+     * values, empty memory laid out according to the current memory configuration,
+     * an empty symbol table and no program.
+     */
+    public SimulatorContext() {
+        registerFile = new RegisterFile.State();
+        coprocessor0 = new Coprocessor0.State();
+        coprocessor1 = new Coprocessor1.State();
+        delayedBranch = new DelayedBranch.State();
+        instructionCache = new InstructionCache.State();
+        virtualClock = new VirtualClock.State();
+        profiler = new Profiler.State();
+        systemIO = new SystemIO.State();
+        syscallLog = new SyscallLog.State();
+        randomStreams = new HashMap();
+        lock = (defaultContext == null) ? Globals.memoryAndRegistersLock : new Object();
+        memory = new Memory();
+        symbolTable = new SymbolTable("global");
+        program = null;
+        exitCode = 0;
+    }
+
+    /**
+     * Returns the context used by the static API on threads that are not bound to any
+     * other context.
+     *
+     * @return the default context
+     */
+    public static SimulatorContext getDefault() {
+        return defaultContext;
+    }
+
+    /**
+     * Returns the context that the static API applies to on the calling thread.
+     *
+     * @return the context bound to the calling thread, or the default context if none
+     */
+    public static SimulatorContext current() {
+        if (boundThreads == 0) {
+            return defaultContext;
+        }
+        SimulatorContext context = (SimulatorContext) boundContext.get();
+        return (context == null) ? defaultContext : context;
+    }
+
+    /**
+     * Bind the calling thread to the given context, so that the static API applies
+     * to it until unbind() is called.
+     *
+     * @param context the context to use on this thread
+     */
+    public static synchronized void bind(SimulatorContext context) {
+        if (boundContext.get() == null) {
+            boundThreads++;
+        }
+        boundContext.set(context);
+    }
+
+    /**
+     * Return the calling thread to the default context.
+     */
+    public static synchronized void unbind() {
+        if (boundContext.get() != null) {
+            boundThreads--;
+            boundContext.remove();
+        }
+    }
+
+    /**
+     * Returns this context's memory.  Memory.getInstance() returns the current
+     * context's memory.
+     *
+     * @return the Memory of this context
+     */
+    public Memory getMemory() {
+        return memory;
+    }
+
+    /**
+     * Returns the program being simulated in this context, which may be null.  For
+     * the default context this is Globals.program.
+     *
+     * @return the MIPSprogram of this context
+     */
+    public MIPSprogram getProgram() {
+        return (this == defaultContext) ? Globals.program : program;
+    }
+
+    /**
+     * Set the program to be simulated in this context.  Its backstepper, if any, will
+     * record the changes made to this context's registers and memory.
+     *
+     * @param program the MIPSprogram of this context
+     */
+    public void setProgram(MIPSprogram program) {
+        if (this == defaultContext) {
+            Globals.program = program;
+        } else {
+            this.program = program;
+        }
+    }
+
+    /**
+     * Returns this context's global symbol table.  For the default context this is
+     * Globals.symbolTable.
+     *
+     * @return the global SymbolTable of this context
+     */
+    public SymbolTable getSymbolTable() {
+        return (this == defaultContext && Globals.symbolTable != null) ? Globals.symbolTable : symbolTable;
+    }
+
+    /**
+     * Returns the exit code set by the program through syscall 17.  For the default
+     * context this is Globals.exitCode.
+     *
+     * @return the exit code of this context
+     */
+    public int getExitCode() {
+        return (this == defaultContext) ? Globals.exitCode : exitCode;
+    }
+
+    /**
+     * Set the exit code of this context.
+     *
+     * @param exitCode the new exit code
+     */
+    public void setExitCode(int exitCode) {
+        if (this == defaultContext) {
+            Globals.exitCode = exitCode;
+        } else {
+            this.exitCode = exitCode;
+        }
+    }
+
+    /**
+     * Returns the object to synchronize on while examining or changing this context's
+     * registers and memory during simulation.  For the default context this is
+     * Globals.memoryAndRegistersLock.
+     *
+     * @return the lock of this context
+     */
+    public Object getLock() {
+        return lock;
+    }
+
+    /**
+     * Returns this context's RegisterFile state.  For use by RegisterFile.
+     *
+     * @return the RegisterFile state
+     */
+    public RegisterFile.State getRegisterFileState() {
+        return registerFile;
+    }
+
+    /**
+     * Returns this context's Coprocessor0 state.  For use by Coprocessor0.
+     *
+     * @return the Coprocessor0 state
+     */
+    public Coprocessor0.State getCoprocessor0State() {
+        return coprocessor0;
+    }
+
+    /**
+     * Returns this context's Coprocessor1 state.  For use by Coprocessor1.
+     *
+     * @return the Coprocessor1 state
+     */
+    public Coprocessor1.State getCoprocessor1State() {
+        return coprocessor1;
+    }
+
+    /**
+     * Returns this context's SystemIO state.  For use by SystemIO.
+     *
+     * @return the SystemIO state
+     */
+    public SystemIO.State getSystemIOState() {
+        return systemIO;
+    }
+
+    /**
+     * Returns this context's syscall record/replay state.  For use by SyscallLog.
+     *
+     * @return the SyscallLog state
+     */
+    public SyscallLog.State getSyscallLogState() {
+        return syscallLog;
+    }
+
+    /**
+     * Returns this context's random number streams, keyed by stream number.  For use
+     * by the random number syscalls.
+     *
+     * @return map from stream number to java.util.Random
+     */
+    public HashMap getRandomStreams() {
+        return randomStreams;
+    }
+}
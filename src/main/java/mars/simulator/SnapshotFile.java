@@ -0,0 +1,178 @@
+package mars.simulator;
+
+import mars.mips.hardware.MemoryConfigurations;
+import mars.util.SystemIO;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+
+/**
+ * Reads and writes machine state files, which hold the state of a running simulation
+ * so that it may be suspended and resumed later, or resumed several times over from
+ * a common point, possibly on other machines.  A state file holds the general
+ * purpose registers, program counter, HI and LO, the coprocessor 0 and 1 registers
+ * and condition flags, any pending delayed branch, the heap pointer, each 4K byte
+ * block of data, stack and memory-mapped memory that has been written, the binary
+ * form of the statements in the text segments, the files mapped by the Mmap syscall
+ * together with their addresses, and the files the program has open together with
+ * their offsets.  Files are written and read through a memory-mapped channel.
+ * <p>
+ * The format is big-endian: the magic number and version, the memory configuration
+ * identifier, a MachineSnapshot (see MachineSnapshot.writeState()) and finally the
+ * open files.  Arrays and strings are preceded by their length.
+ * <p>
+ * To resume, assemble the same source files under the same memory configuration and
+ * then read the state file.  Source-level information about each statement comes
+ * from the assembly, so statements the program had rewritten by the time the state
+ * was saved are restored from their binary form only.  The contents of open and
+ * mapped files are not saved, only the offsets and mapped addresses: the files must
+ * still be there when resuming, files open for writing are cut back to their length
+ * at the time of the save, and mapped files are mapped again where they were.
+ * Standard streams, random number generators and the back-step history are not
+ * saved.
+ **/
+
+public class SnapshotFile {
+    private static final int MAGIC = 0x4D415253; // "MARS"
+    private static final int VERSION = 2;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Write the state of the machine in the current SimulatorContext to a file,
+     * replacing any existing file.  Must not be called while the simulator is running.
+     *
+     * @param file file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(File file) throws IOException {
+        synchronized (SimulatorContext.current().getLock()) {
+            byte[] configuration = utf8(MemoryConfigurations.getCurrentConfiguration().getConfigurationIdentifier());
+            MachineSnapshot snapshot = MachineSnapshot.take();
+            int[] fds = SystemIO.getOpenFileDescriptors();
+            byte[][] fileNames = new byte[fds.length][];
+            long length = 3 * 4 + configuration.length + snapshot.getStateLength() + 4;
+            for (int i = 0; i < fds.length; i++) {
+                fileNames[i] = utf8(SystemIO.getFileName(fds[i]));
+                length += 3 * 4 + 8 + fileNames[i].length;
+            }
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("machine state of " + length + " bytes is too large for a state file");
+            }
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+                buffer.putInt(MAGIC);
+                buffer.putInt(VERSION);
+                putBytes(buffer, configuration);
+                snapshot.writeState(buffer);
+                buffer.putInt(fds.length);
+                for (int i = 0; i < fds.length; i++) {
+                    buffer.putInt(fds[i]);
+                    buffer.putInt(SystemIO.getFileFlags(fds[i]));
+                    buffer.putLong(SystemIO.getFilePosition(fds[i]));
+                    putBytes(buffer, fileNames[i]);
+                }
+                buffer.force();
+            }
+        }
+    }
+
+    /**
+     * Return the machine in the current SimulatorContext to the state held in a file
+     * written by write().  The program that was running must have just been assembled,
+     * as described above.  Register observers are notified of the restored values;
+     * memory observers are not.  If the file turns out to be unusable, registers and
+     * memory are returned to their state before the call, though files already reopened
+     * stay open.
+     *
+     * @param file file to read
+     * @throws IOException if the file cannot be read, is not a state file, or was
+     *                     written under a different memory configuration
+     */
+    public static void read(File file) throws IOException {
+        synchronized (SimulatorContext.current().getLock()) {
+            MachineSnapshot original = MachineSnapshot.take();
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+                    throw new IOException(file + " is not a MARS machine state file");
+                }
+                int version = buffer.getInt();
+                if (version != VERSION) {
+                    throw new IOException(file + " has unsupported state file version " + version);
+                }
+                String configuration = new String(getBytes(buffer), StandardCharsets.UTF_8);
+                if (!configuration.equals(MemoryConfigurations.getCurrentConfiguration().getConfigurationIdentifier())) {
+                    throw new IOException(file + " was written under memory configuration " + configuration);
+                }
+                MachineSnapshot snapshot = MachineSnapshot.readState(buffer);
+                for (int files = buffer.getInt(); files > 0; files--) {
+                    int fd = buffer.getInt();
+                    int flags = buffer.getInt();
+                    long position = buffer.getLong();
+                    SystemIO.reopenFile(fd, new String(getBytes(buffer), StandardCharsets.UTF_8), flags, position);
+                }
+                snapshot.restore();
+            } catch (IOException e) {
+                original.restore();
+                throw e;
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                original.restore();
+                throw new IOException(file + " is truncated or corrupt");
+            }
+        }
+    }
+
+    private static byte[] utf8(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
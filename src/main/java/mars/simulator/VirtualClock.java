@@ -0,0 +1,119 @@
+package mars.simulator;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+
+/**
+ * Clock read by the Time syscall and advanced by the Sleep syscall.  Normally this is
+ * the host's wall clock, and Sleep blocks the simulator thread.  In virtual time mode
+ * the clock instead advances by one millisecond for every so many MIPS instructions
+ * executed, and Sleep advances it by the requested time without blocking, so programs
+ * that animate or pace themselves with Sleep run at full simulation speed while still
+ * observing consistent time.  Virtual time starts from the wall clock time at which the
+ * mode was enabled.
+ * <p>
+ * There is one clock per SimulatorContext, and the static methods here apply to the
+ * clock of the current context.  The Simulator counts the instructions executed.
+ **/
+
+public class VirtualClock {
+    /**
+     * Instructions per virtual millisecond used when no other rate is given: a simulated
+     * machine running at one million instructions per second.
+     */
+    public static final int DEFAULT_INSTRUCTIONS_PER_MILLISECOND = 1000;
+
+    /**
+     * The clock of one SimulatorContext.
+     */
+    static final class State {
+        // Instructions executed in this context, counted by the Simulator.
+        long instructions = 0;
+        // Zero unless virtual time mode is enabled.
+        private int instructionsPerMillisecond = 0;
+        private long startMillis;
+        private long startInstructions;
+        private long sleptMillis;
+    }
+
+    private static State state() {
+        return SimulatorContext.current().virtualClock;
+    }
+
+    /**
+     * Enable or disable virtual time mode.  Enabling it restarts virtual time at the
+     * current wall clock time.
+     *
+     * @param instructionsPerMillisecond MIPS instructions per virtual millisecond, or 0
+     *                                   to return to the wall clock
+     */
+    public static void setInstructionsPerMillisecond(int instructionsPerMillisecond) {
+        State clock = state();
+        clock.instructionsPerMillisecond = Math.max(instructionsPerMillisecond, 0);
+        clock.startMillis = System.currentTimeMillis();
+        clock.startInstructions = clock.instructions;
+        clock.sleptMillis = 0;
+    }
+
+    /**
+     * Determine whether virtual time mode is enabled.
+     *
+     * @return true if the clock runs on executed instructions rather than the wall clock
+     */
+    public static boolean isVirtual() {
+        return state().instructionsPerMillisecond > 0;
+    }
+
+    /**
+     * Returns the current time, as System.currentTimeMillis() does.
+     *
+     * @return milliseconds since January 1, 1970 UTC, virtual or real
+     */
+    public static long currentTimeMillis() {
+        State clock = state();
+        if (clock.instructionsPerMillisecond <= 0) {
+            return System.currentTimeMillis();
+        }
+        return clock.startMillis + clock.sleptMillis
+                + (clock.instructions - clock.startInstructions) / clock.instructionsPerMillisecond;
+    }
+
+    /**
+     * Let the given time pass: advance virtual time, or block for that long if virtual
+     * time mode is not enabled.
+     *
+     * @param millis time to sleep in milliseconds
+     * @throws InterruptedException if the thread is interrupted while blocked
+     */
+    public static void sleep(int millis) throws InterruptedException {
+        State clock = state();
+        if (clock.instructionsPerMillisecond <= 0) {
+            Thread.sleep(millis);
+        } else if (millis > 0) {
+            clock.sleptMillis += millis;
+        }
+    }
+}
@@ -3,6 +3,8 @@ package mars.tools;
 import mars.Globals;
 import mars.MIPSprogram;
 import mars.mips.hardware.*;
+import mars.simulator.Simulator;
+import mars.simulator.SimulatorNotice;
 import mars.util.FilenameFinder;
 
 import javax.swing.*;
@@ -91,6 +93,11 @@ public abstract class AbstractMarsToolAndApplication extends JFrame implements M
     // Structure required for MarsTool use only (not stand-alone use). Want subclasses to have access.
     protected ConnectButton connectButton;
 
+    // Batched delivery of access notices.  Null unless subclass calls enableBatchedUpdates().
+    private AccessNoticeBatch batch = null;
+    private long batchIntervalNanos;
+    private long lastBatchDelivery;
+
 
     /**
      * Simple constructor
@@ -472,9 +479,28 @@ public abstract class AbstractMarsToolAndApplication extends JFrame implements M
      * @param accessNotice AccessNotice information provided by the resource
      */
     public void update(Observable resource, Object accessNotice) {
+        if (accessNotice instanceof SimulatorNotice) { // only registered for when batching
+            if (((SimulatorNotice) accessNotice).getAction() == SimulatorNotice.SIMULATOR_STOP) {
+                flushBatchedUpdates();
+            }
+            return;
+        }
         if (((AccessNotice) accessNotice).accessIsFromMIPS()) {
-            processMIPSUpdate(resource, (AccessNotice) accessNotice);
-            updateDisplay();
+            // A syscall's bulk transfer arrives as one notice for the whole range; tools
+            // expect word, half or byte accesses, so they get one per word instead.
+            AccessNotice[] notices = (accessNotice instanceof MemoryAccessNotice && ((MemoryAccessNotice) accessNotice).spansWords())
+                    ? ((MemoryAccessNotice) accessNotice).getWordNotices()
+                    : new AccessNotice[]{(AccessNotice) accessNotice};
+            if (batch != null) {
+                for (int i = 0; i < notices.length; i++) {
+                    addToBatch(resource, notices[i]);
+                }
+            } else {
+                for (int i = 0; i < notices.length; i++) {
+                    processMIPSUpdate(resource, notices[i]);
+                }
+                updateDisplay();
+            }
         }
     }
 
@@ -487,6 +513,70 @@ public abstract class AbstractMarsToolAndApplication extends JFrame implements M
     protected void processMIPSUpdate(Observable resource, AccessNotice notice) {
     }
 
+    /**
+     * Override this method to process a batch of accesses from MIPS Observables (memory and
+     * registers).  It is called instead of processMIPSUpdate() once enableBatchedUpdates()
+     * has been called, and like it only receives accesses resulting from MIPS instruction
+     * execution.  By default it does nothing.  After this method is complete, the
+     * updateDisplay() method will be invoked automatically, once per batch.
+     *
+     * @param batch the accesses since the previous batch, in the order they occurred
+     */
+    protected void processMIPSUpdates(AccessNoticeBatch batch) {
+    }
+
+    /**
+     * Switch this tool/app from receiving each access through processMIPSUpdate() to
+     * receiving them in batches through processMIPSUpdates().  This avoids the per-access
+     * cost of processing and updating the display, which dominates simulation time for
+     * tools that observe busy memory ranges.  A batch is delivered, on the thread running
+     * the MIPS program, when it holds the given number of accesses, when the given time
+     * has passed since the previous batch and another access arrives, when the program
+     * stops, and when the tool disconnects.  Typically called from initializePreGUI().
+     *
+     * @param capacity       maximum number of accesses in a batch
+     * @param intervalMillis maximum time in milliseconds to hold accesses before delivery
+     */
+    protected void enableBatchedUpdates(int capacity, int intervalMillis) {
+        batchIntervalNanos = intervalMillis * 1000000L;
+        lastBatchDelivery = System.nanoTime();
+        batch = new AccessNoticeBatch(capacity);
+        Simulator.getInstance().addObserver(thisMarsApp); // to flush when the program stops
+    }
+
+    /**
+     * Deliver any accesses being held for the next batch now, without waiting for the
+     * batch to fill or its interval to pass.  Does nothing unless batching is enabled.
+     */
+    protected void flushBatchedUpdates() {
+        if (batch != null) {
+            synchronized (batch) {
+                if (batch.size() > 0) {
+                    deliverBatch();
+                }
+            }
+        }
+    }
+
+    private void addToBatch(Observable resource, AccessNotice notice) {
+        synchronized (batch) {
+            if (batch.add(resource, notice) || System.nanoTime() - lastBatchDelivery >= batchIntervalNanos) {
+                deliverBatch();
+            }
+        }
+    }
+
+    // Caller holds the batch lock.
+    private void deliverBatch() {
+        try {
+            processMIPSUpdates(batch);
+        } finally {
+            batch.clear();
+            lastBatchDelivery = System.nanoTime();
+        }
+        updateDisplay();
+    }
+
     /**
      * This method is called when tool/app is exited either through the close/exit button or the window's X box.
      * Override it to perform any special housecleaning needed.  By default it does nothing.
@@ -617,6 +707,9 @@ public abstract class AbstractMarsToolAndApplication extends JFrame implements M
         if (connectButton.isConnected()) {
             connectButton.disconnect();
         }
+        if (batch != null) {
+            Simulator.getInstance().deleteObserver(thisMarsApp);
+        }
         dialog.setVisible(false);
         dialog.dispose();
     }
@@ -659,6 +752,7 @@ public abstract class AbstractMarsToolAndApplication extends JFrame implements M
             synchronized (Globals.memoryAndRegistersLock) {// DPS 23 July 2008
                 deleteAsObserver();
             }
+            flushBatchedUpdates();
             observing = false;
             setText(connectText);
         }
@@ -756,6 +850,7 @@ public abstract class AbstractMarsToolAndApplication extends JFrame implements M
                 terminatingMessage = "Runtime error: ";
             } finally {
                 deleteAsObserver();
+                flushBatchedUpdates();
                 observing = false;
                 operationStatusMessages.displayTerminatingMessage(terminatingMessage + fileToAssemble);
             }
@@ -0,0 +1,158 @@
+package mars.tools;
+
+import mars.mips.hardware.AccessNotice;
+import mars.mips.hardware.MemoryAccessNotice;
+import mars.mips.hardware.Register;
+
+import java.util.Arrays;
+import java.util.Observable;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * A batch of MIPS memory and register accesses, delivered to a tool that has opted in
+ * to batched updates through AbstractMarsToolAndApplication.enableBatchedUpdates().
+ * Each access is recorded as four ints (access type, address, length and value) in
+ * parallel arrays that are allocated once and reused for every batch, along with the
+ * Observable (Memory or Register) that reported it.  Accesses are in the order they
+ * occurred.
+ * <p>
+ * For a register access, the address is the register number, the length is 4 and the
+ * value is the register's value when the access was recorded.
+ * <p>
+ * A batch is only valid during the call to processMIPSUpdates() that receives it; its
+ * contents are discarded afterward.
+ */
+
+public class AccessNoticeBatch {
+    private final Observable[] resources;
+    private final int[] types;
+    private final int[] addresses;
+    private final int[] lengths;
+    private final int[] values;
+    private int size = 0;
+
+    AccessNoticeBatch(int capacity) {
+        resources = new Observable[capacity];
+        types = new int[capacity];
+        addresses = new int[capacity];
+        lengths = new int[capacity];
+        values = new int[capacity];
+    }
+
+    /**
+     * Number of accesses in this batch.
+     *
+     * @return number of accesses
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The resource that reported the given access.
+     *
+     * @param index position of the access in the batch, from 0 to size()-1
+     * @return Memory or Register that was accessed
+     */
+    public Observable getResource(int index) {
+        return resources[index];
+    }
+
+    /**
+     * Whether the given access was to memory rather than a register.
+     *
+     * @param index position of the access in the batch, from 0 to size()-1
+     * @return true if a memory access
+     */
+    public boolean isMemoryAccess(int index) {
+        return !(resources[index] instanceof Register);
+    }
+
+    /**
+     * Type of the given access.
+     *
+     * @param index position of the access in the batch, from 0 to size()-1
+     * @return AccessNotice.READ or AccessNotice.WRITE
+     */
+    public int getAccessType(int index) {
+        return types[index];
+    }
+
+    /**
+     * Memory address, or register number, of the given access.
+     *
+     * @param index position of the access in the batch, from 0 to size()-1
+     * @return address or register number
+     */
+    public int getAddress(int index) {
+        return addresses[index];
+    }
+
+    /**
+     * Length in bytes of the given access (4, 2 or 1).
+     *
+     * @param index position of the access in the batch, from 0 to size()-1
+     * @return length in bytes
+     */
+    public int getLength(int index) {
+        return lengths[index];
+    }
+
+    /**
+     * Value read or written by the given access.
+     *
+     * @param index position of the access in the batch, from 0 to size()-1
+     * @return value
+     */
+    public int getValue(int index) {
+        return values[index];
+    }
+
+    // Record an access.  Returns true if the batch is now full.
+    boolean add(Observable resource, AccessNotice notice) {
+        resources[size] = resource;
+        types[size] = notice.getAccessType();
+        if (notice instanceof MemoryAccessNotice) {
+            MemoryAccessNotice memoryNotice = (MemoryAccessNotice) notice;
+            addresses[size] = memoryNotice.getAddress();
+            lengths[size] = memoryNotice.getLength();
+            values[size] = memoryNotice.getValue();
+        } else {
+            Register register = (Register) resource;
+            addresses[size] = register.getNumber();
+            lengths[size] = 4;
+            values[size] = register.getValueNoNotify();
+        }
+        size++;
+        return size == types.length;
+    }
+
+    void clear() {
+        Arrays.fill(resources, 0, size, null);
+        size = 0;
+    }
+}
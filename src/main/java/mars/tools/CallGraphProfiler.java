@@ -0,0 +1,218 @@
+package mars.tools;
+
+import mars.Globals;
+import mars.mips.hardware.AccessNotice;
+import mars.simulator.ProfileReport;
+import mars.simulator.Profiler;
+import mars.simulator.Simulator;
+import mars.simulator.SimulatorNotice;
+import mars.util.Binary;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.Observable;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+
+/**
+ * Shows how many instructions each function of the running MIPS program executes,
+ * following calls made by jal, jalr, bgezal and bltzal and returns made by jr $ra.
+ * While connected, the Profiler runs in call graph mode and the table is refreshed
+ * whenever execution stops.  Each row gives a function's number of calls, the
+ * instructions executed in it and everything it called (inclusive) and those executed
+ * in the function itself (exclusive).  Click a column header to sort by it.  The call
+ * graph can be saved in the folded stack format read by flame graph tools.
+ */
+public class CallGraphProfiler extends AbstractMarsToolAndApplication {
+    private static final String name = "Call Graph Profiler";
+    private static final String version = "Version 1.0";
+    private static final String heading = "Instructions executed per function";
+    private static final String[] columnNames = {"Function", "Address", "Calls", "Inclusive", "%", "Exclusive", "%"};
+    private static final Class[] columnClasses = {String.class, String.class, Long.class, Long.class, Double.class,
+            Long.class, Double.class};
+
+    private DefaultTableModel tableModel;
+    private JLabel totalLabel;
+
+    /**
+     * Simple constructor, likely used to run a stand-alone call graph profiler.
+     *
+     * @param title   String containing title for title bar
+     * @param heading String containing text for heading shown in upper part of window.
+     */
+    public CallGraphProfiler(String title, String heading) {
+        super(title, heading);
+    }
+
+    /**
+     * Simple constructor, likely used by the MARS Tools menu mechanism.
+     */
+    public CallGraphProfiler() {
+        super(name + ", " + version, heading);
+    }
+
+    /**
+     * Main provided for pure stand-alone use.
+     */
+    public static void main(String[] args) {
+        new CallGraphProfiler(name + ", " + version, heading).go();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    protected JComponent buildMainDisplayArea() {
+        tableModel = new DefaultTableModel(columnNames, 0) {
+            public Class getColumnClass(int column) {
+                return columnClasses[column];
+            }
+
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable table = new JTable(tableModel);
+        table.setAutoCreateRowSorter(true);
+        DefaultTableCellRenderer percentRenderer = new DefaultTableCellRenderer() {
+            protected void setValue(Object value) {
+                setText((value == null) ? "" : String.format("%.2f", value));
+            }
+        };
+        percentRenderer.setHorizontalAlignment(SwingConstants.RIGHT);
+        table.getColumnModel().getColumn(4).setCellRenderer(percentRenderer);
+        table.getColumnModel().getColumn(6).setCellRenderer(percentRenderer);
+        table.getColumnModel().getColumn(0).setPreferredWidth(160);
+        JScrollPane scroller = new JScrollPane(table);
+        scroller.setPreferredSize(new Dimension(560, 240));
+
+        totalLabel = new JLabel();
+        JButton saveButton = new JButton("Save Folded Stacks...");
+        saveButton.setToolTipText("Save the call graph in the folded stack format read by flame graph tools");
+        saveButton.addActionListener(
+                new ActionListener() {
+                    public void actionPerformed(ActionEvent e) {
+                        saveFoldedStacks();
+                    }
+                });
+        Box controls = Box.createHorizontalBox();
+        controls.add(totalLabel);
+        controls.add(Box.createHorizontalGlue());
+        controls.add(saveButton);
+
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(scroller, BorderLayout.CENTER);
+        panel.add(controls, BorderLayout.SOUTH);
+        return panel;
+    }
+
+    protected void initializePostGUI() {
+        updateDisplay();
+    }
+
+    /**
+     * Rather than observing memory, put the Profiler in call graph mode and observe the
+     * Simulator, to refresh the table when execution stops.
+     */
+    protected void addAsObserver() {
+        Profiler.setCallGraphEnabled(true);
+        Simulator.getInstance().addObserver(this);
+    }
+
+    protected void deleteAsObserver() {
+        Simulator.getInstance().deleteObserver(this);
+        Profiler.setCallGraphEnabled(false);
+    }
+
+    public void update(Observable resource, Object notice) {
+        if (notice instanceof SimulatorNotice) {
+            if (((SimulatorNotice) notice).getAction() == SimulatorNotice.SIMULATOR_STOP) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        updateDisplay();
+                    }
+                });
+            }
+        } else if (notice instanceof AccessNotice) {
+            super.update(resource, notice);
+        }
+    }
+
+    protected void reset() {
+        Profiler.reset();
+        updateDisplay();
+    }
+
+    protected void updateDisplay() {
+        tableModel.setRowCount(0);
+        if (Globals.program == null) {
+            totalLabel.setText("No program assembled");
+            return;
+        }
+        ProfileReport report = new ProfileReport(Globals.program);
+        long total = report.getInstructionCount();
+        for (int i = 0; i < report.getFunctionCount(); i++) {
+            long inclusive = report.getInclusiveCount(i);
+            long exclusive = report.getExclusiveCount(i);
+            tableModel.addRow(new Object[]{
+                    report.getFunctionName(i),
+                    Binary.intToHexString(report.getFunctionAddress(i)),
+                    Long.valueOf(report.getCallCount(i)),
+                    Long.valueOf(inclusive),
+                    Double.valueOf((total == 0) ? 0 : 100.0 * inclusive / total),
+                    Long.valueOf(exclusive),
+                    Double.valueOf((total == 0) ? 0 : 100.0 * exclusive / total)});
+        }
+        totalLabel.setText("Instructions executed: " + total);
+    }
+
+    private void saveFoldedStacks() {
+        if (Globals.program == null) {
+            return;
+        }
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Save Folded Stacks");
+        if (chooser.showSaveDialog(theWindow) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        try {
+            PrintStream out = new PrintStream(new FileOutputStream(chooser.getSelectedFile()));
+            new ProfileReport(Globals.program).writeFoldedStacks(out);
+            out.close();
+        } catch (FileNotFoundException e) {
+            JOptionPane.showMessageDialog(theWindow, "Unable to write " + chooser.getSelectedFile() + ": " + e.getMessage(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
@@ -25,6 +25,9 @@ public class MemoryReferenceVisualization extends AbstractMarsToolAndApplication
 
     private static final String version = "Version 1.0";
     private static final String heading = "Visualizing memory reference patterns";
+    // Memory accesses are delivered in batches of up to this many, or at least this often.
+    private static final int UPDATE_BATCH_CAPACITY = 1024;
+    private static final int UPDATE_BATCH_INTERVAL_MILLIS = 40;
 
     // Major GUI components
     private JComboBox wordsPerUnitSelector, visualizationUnitPixelWidthSelector, visualizationUnitPixelHeightSelector,
@@ -187,12 +190,25 @@ public class MemoryReferenceVisualization extends AbstractMarsToolAndApplication
         updateDisplay();
     }
 
+    /**
+     * Update reference counts for a batch of (data) memory accesses.  The display is
+     * repainted once per batch rather than once per access.
+     *
+     * @param batch accesses made by the connected MIPS program
+     */
+    protected void processMIPSUpdates(AccessNoticeBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            incrementReferenceCountForAddress(batch.getAddress(i));
+        }
+    }
+
 
     /**
      * Initialize all JComboBox choice structures not already initialized at declaration.
      * Overrides inherited method that does nothing.
      */
     protected void initializePreGUI() {
+        enableBatchedUpdates(UPDATE_BATCH_CAPACITY, UPDATE_BATCH_INTERVAL_MILLIS);
         initializeDisplayBaseChoices();
         counterColorScale = new CounterColorScale(defaultCounterColors);
         // NOTE: Can't call "createNewGrid()" here because it uses settings from
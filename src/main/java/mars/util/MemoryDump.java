@@ -1,6 +1,5 @@
 package mars.util;
 
-import mars.Globals;
 import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Memory;
 
@@ -128,7 +127,7 @@ public class MemoryDump {
     public static int getAddressOfFirstNull(int baseAddress, int limitAddress) throws AddressErrorException {
         int address = baseAddress;
         for (; address < limitAddress; address += Memory.WORD_LENGTH_BYTES) {
-            if (Globals.memory.getRawWordOrNull(address) == null) {
+            if (Memory.getInstance().getRawWordOrNull(address) == null) {
                 break;
             }
         }
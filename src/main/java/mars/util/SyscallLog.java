@@ -0,0 +1,313 @@
+package mars.util;
+
+import mars.simulator.SimulatorContext;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+
+/**
+ * Record and replay of the results of nondeterministic syscalls, so that a run which
+ * read the console, files, the clock or random number streams can be reproduced exactly.
+ * <p>
+ * While recording, each such result is appended to a binary log as it is produced.
+ * While replaying, the results are taken from the log instead, without reading the
+ * console, opening or reading files, reading the clock or waiting in Sleep, so a
+ * replay runs at full speed and never blocks.  Output to standard output and standard
+ * error is still written; writes to files are not, and return the recorded result.
+ * <p>
+ * The log starts with a magic number and version.  Each entry is the low byte of the
+ * syscall's service number, which is checked on replay to detect a program that has
+ * taken a different path, followed by the result: an int, long, float or double, a
+ * string as its UTF-8 length (-1 for none) and bytes, or a byte count followed by the
+ * bytes read.  The log is buffered; call stop() at the end of the run.
+ * <p>
+ * Each SimulatorContext records or replays independently, and the static methods
+ * here apply to the current context.  The log methods return their argument unchanged
+ * when the context is neither recording nor replaying.
+ **/
+
+public class SyscallLog {
+    private static final int MAGIC = 0x4D52534C; // "MRSL"
+    private static final int VERSION = 1;
+
+    private static final int OFF = 0;
+    private static final int RECORDING = 1;
+    private static final int REPLAYING = 2;
+
+    /**
+     * The log being recorded or replayed by one SimulatorContext, if any.
+     */
+    public static final class State {
+        private int mode = OFF;
+        private DataOutputStream output;
+        private DataInputStream input;
+        private File file;
+    }
+
+    /**
+     * Thrown by the log methods when the log cannot be written, or when the log being
+     * replayed is exhausted or does not match the syscall being performed.  The syscall
+     * instruction reports it as a runtime exception in the MIPS program.
+     */
+    public static class LogException extends RuntimeException {
+        LogException(String message) {
+            super(message);
+        }
+    }
+
+    private static State state() {
+        return SimulatorContext.current().getSyscallLogState();
+    }
+
+    /**
+     * Start recording syscall results to the given file, replacing any existing file.
+     *
+     * @param file the log to write
+     * @throws IOException if the file cannot be created
+     */
+    public static void record(File file) throws IOException {
+        stop();
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        State state = state();
+        state.output = output;
+        state.file = file;
+        state.mode = RECORDING;
+    }
+
+    /**
+     * Start replaying syscall results from a file written by record().
+     *
+     * @param file the log to read
+     * @throws IOException if the file cannot be read or is not a syscall log
+     */
+    public static void replay(File file) throws IOException {
+        stop();
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        try {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException(file + " is not a MARS syscall log");
+            }
+        } catch (IOException e) {
+            input.close();
+            throw (e instanceof EOFException) ? new IOException(file + " is not a MARS syscall log") : e;
+        }
+        State state = state();
+        state.input = input;
+        state.file = file;
+        state.mode = REPLAYING;
+    }
+
+    /**
+     * Stop recording or replaying, flushing and closing the log.
+     *
+     * @throws IOException if the log cannot be flushed
+     */
+    public static void stop() throws IOException {
+        State state = state();
+        int mode = state.mode;
+        state.mode = OFF;
+        if (mode == RECORDING) {
+            state.output.close();
+        } else if (mode == REPLAYING) {
+            state.input.close();
+        }
+        state.output = null;
+        state.input = null;
+        state.file = null;
+    }
+
+    /**
+     * Determine whether syscall results are being replayed, in which case the syscall
+     * should obtain its result from the log rather than from the host.
+     *
+     * @return true if replaying
+     */
+    public static boolean isReplaying() {
+        return state().mode == REPLAYING;
+    }
+
+    /**
+     * Record or replay an int result.
+     *
+     * @param service the syscall's service number
+     * @param value   the result obtained from the host, ignored when replaying
+     * @return the result to use
+     */
+    public static int logInt(int service, int value) {
+        State state = state();
+        try {
+            if (state.mode == RECORDING) {
+                state.output.writeByte(service);
+                state.output.writeInt(value);
+            } else if (state.mode == REPLAYING) {
+                expect(state, service);
+                value = state.input.readInt();
+            }
+        } catch (IOException e) {
+            throw failure(state, e);
+        }
+        return value;
+    }
+
+    /**
+     * Record or replay a long result.
+     *
+     * @param service the syscall's service number
+     * @param value   the result obtained from the host, ignored when replaying
+     * @return the result to use
+     */
+    public static long logLong(int service, long value) {
+        State state = state();
+        try {
+            if (state.mode == RECORDING) {
+                state.output.writeByte(service);
+                state.output.writeLong(value);
+            } else if (state.mode == REPLAYING) {
+                expect(state, service);
+                value = state.input.readLong();
+            }
+        } catch (IOException e) {
+            throw failure(state, e);
+        }
+        return value;
+    }
+
+    /**
+     * Record or replay a float result.
+     *
+     * @param service the syscall's service number
+     * @param value   the result obtained from the host, ignored when replaying
+     * @return the result to use
+     */
+    public static float logFloat(int service, float value) {
+        return Float.intBitsToFloat(logInt(service, Float.floatToRawIntBits(value)));
+    }
+
+    /**
+     * Record or replay a double result.
+     *
+     * @param service the syscall's service number
+     * @param value   the result obtained from the host, ignored when replaying
+     * @return the result to use
+     */
+    public static double logDouble(int service, double value) {
+        return Double.longBitsToDouble(logLong(service, Double.doubleToRawLongBits(value)));
+    }
+
+    /**
+     * Record or replay a string result, such as a line of console input.
+     *
+     * @param service the syscall's service number
+     * @param value   the result obtained from the host, possibly null; ignored when replaying
+     * @return the result to use
+     */
+    public static String logString(int service, String value) {
+        State state = state();
+        try {
+            if (state.mode == RECORDING) {
+                state.output.writeByte(service);
+                if (value == null) {
+                    state.output.writeInt(-1);
+                } else {
+                    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                    state.output.writeInt(bytes.length);
+                    state.output.write(bytes);
+                }
+            } else if (state.mode == REPLAYING) {
+                expect(state, service);
+                int length = state.input.readInt();
+                if (length < 0) {
+                    value = null;
+                } else {
+                    byte[] bytes = new byte[length];
+                    state.input.readFully(bytes);
+                    value = new String(bytes, StandardCharsets.UTF_8);
+                }
+            }
+        } catch (IOException e) {
+            throw failure(state, e);
+        }
+        return value;
+    }
+
+    /**
+     * Record or replay the result of a read into a buffer: the count returned and, if
+     * it is positive, that many bytes of the buffer.
+     *
+     * @param service the syscall's service number
+     * @param buffer  the buffer read into, filled from the log when replaying
+     * @param count   the count obtained from the host, ignored when replaying
+     * @return the count to use
+     */
+    public static int logBytes(int service, byte[] buffer, int count) {
+        State state = state();
+        try {
+            if (state.mode == RECORDING) {
+                state.output.writeByte(service);
+                state.output.writeInt(count);
+                if (count > 0) {
+                    state.output.write(buffer, 0, count);
+                }
+            } else if (state.mode == REPLAYING) {
+                expect(state, service);
+                count = state.input.readInt();
+                if (count > buffer.length) {
+                    throw new LogException("syscall log " + state.file + " does not match the program");
+                }
+                if (count > 0) {
+                    state.input.readFully(buffer, 0, count);
+                }
+            }
+        } catch (IOException e) {
+            throw failure(state, e);
+        }
+        return count;
+    }
+
+    // Read the service number of the next entry and check that it is the one expected.
+    private static void expect(State state, int service) throws IOException {
+        int logged = state.input.read();
+        if (logged < 0) {
+            throw new LogException("syscall log " + state.file + " is exhausted");
+        }
+        if (logged != (service & 0xFF)) {
+            throw new LogException("syscall log " + state.file + " does not match the program: next result logged is for service "
+                    + logged);
+        }
+    }
+
+    private static LogException failure(State state, IOException e) {
+        if (e instanceof EOFException) {
+            return new LogException("syscall log " + state.file + " is exhausted");
+        }
+        return new LogException("syscall log " + state.file + " failed: " + e.getMessage());
+    }
+}
@@ -2,8 +2,15 @@ package mars.util;
 
 import mars.Globals;
 import mars.Settings;
+import mars.simulator.SimulatorContext;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 
 /**
@@ -22,13 +29,16 @@ public class SystemIO {
      */
     public static final int SYSCALL_BUFSIZE = 128;
     /**
-     * Maximum number of files that can be open
+     * Default size of the file descriptor table, which limits the number of files
+     * that can be open at once, counting standard input, output and error.
      */
     public static final int SYSCALL_MAXFILES = 32;
     /**
-     * String used for description of file error
+     * Size in bytes of the buffer through which each open file is read and written.
      */
-    public static String fileErrorString = "File operation OK";
+    public static final int FILE_BUFFER_SIZE = 16 * 1024;
+    // Size of the file descriptor table of a context, from its next resetFiles().
+    private static int maxFiles = SYSCALL_MAXFILES;
 
     private static final int O_RDONLY = 0x00000000;
     private static final int O_WRONLY = 0x00000001;
@@ -43,9 +53,156 @@ public class SystemIO {
     private static final int STDOUT = 1;
     private static final int STDERR = 2;
 
-    // Will use one buffered reader for all keyboard/redirected/piped input.
-    // Added by DPS 28 Feb 2008.  See getInputReader() below.
-    private static BufferedReader inputReader = null;
+    // whence argument of seekFile()
+    private static final int SEEK_SET = 0;
+    private static final int SEEK_CUR = 1;
+    private static final int SEEK_END = 2;
+
+    /**
+     * The input reader, standard streams and file descriptor table of one
+     * SimulatorContext.  SystemIO's static methods apply to the State of the
+     * current context.
+     */
+    public static final class State {
+        // String used for description of file error
+        private String fileErrorString = "File operation OK";
+
+        // Will use one buffered reader for all keyboard/redirected/piped input.
+        // Added by DPS 28 Feb 2008.  See getInputReader() below.
+        private BufferedReader inputReader = null;
+
+        // Streams standing in for System.in, System.out and System.err when running
+        // from the command line.  Replaced by setStandardStreams() for batch runs.
+        private InputStream standardInput = System.in;
+        private PrintStream standardOutput = System.out;
+        private PrintStream standardError = System.err;
+
+        // Maintained by FileIOData below.  The index to the arrays is the "file descriptor."
+        // Reallocated by resetFiles() when the table size has been changed.
+        private String[] fileNames = new String[maxFiles]; // The filenames in use. Null if file descriptor i is not in use.
+        private int[] fileFlags = new int[maxFiles]; // The flags of this file, 0=READ, 1=WRITE. Invalid if this file descriptor is not in use.
+        private Object[] streams = new Object[maxFiles]; // The streams in use (FileHandles above STDERR), associated with the filenames
+    }
+
+    /**
+     * An open file: its FileChannel and a direct buffer holding either bytes written
+     * but not yet passed to the channel, or bytes read from the channel ahead of the
+     * MIPS program.  Written bytes reach the file when the buffer fills, when the file
+     * is closed (which also happens when the program terminates) and before any seek,
+     * positional transfer or read.
+     */
+    private static final class FileHandle {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(FILE_BUFFER_SIZE);
+        // True if the buffer holds bytes to be written, from 0 to its position.
+        // Otherwise it holds bytes read ahead, from its position to its limit.
+        private boolean writing = false;
+
+        private FileHandle(FileChannel channel) {
+            this.channel = channel;
+            buffer.limit(0);
+        }
+
+        // Read up to length bytes, fewer only at end of file.  Returns -1 at end of file.
+        private int read(byte[] bytes, int offset, int length) throws IOException {
+            if (writing) {
+                flush();
+            }
+            int count = 0;
+            while (count < length) {
+                if (!buffer.hasRemaining()) {
+                    if (length - count >= buffer.capacity()) {
+                        // large request, so read straight into the caller's array
+                        int read = channel.read(ByteBuffer.wrap(bytes, offset + count, length - count));
+                        if (read > 0) {
+                            count += read;
+                        }
+                        break;
+                    }
+                    buffer.clear();
+                    int read = channel.read(buffer);
+                    buffer.flip();
+                    if (read <= 0) {
+                        break;
+                    }
+                }
+                int chunk = Math.min(length - count, buffer.remaining());
+                buffer.get(bytes, offset + count, chunk);
+                count += chunk;
+            }
+            return (count == 0 && length > 0) ? -1 : count;
+        }
+
+        private void write(byte[] bytes, int offset, int length) throws IOException {
+            if (!writing) {
+                discardReadAhead();
+                buffer.clear();
+                writing = true;
+            }
+            if (length > buffer.remaining()) {
+                flush();
+                if (length >= buffer.capacity()) {
+                    writeFully(ByteBuffer.wrap(bytes, offset, length));
+                    return;
+                }
+                buffer.clear();
+                writing = true;
+            }
+            buffer.put(bytes, offset, length);
+        }
+
+        // Pass any buffered writes to the channel, or give back bytes read ahead, so
+        // that the channel's position is the program's position in the file.
+        private void flush() throws IOException {
+            if (writing) {
+                buffer.flip();
+                writeFully(buffer);
+                buffer.limit(0);
+                writing = false;
+            } else {
+                discardReadAhead();
+            }
+        }
+
+        // Write out any buffered bytes, keeping the read-ahead (if any) and the position.
+        private void flushWrites() throws IOException {
+            if (writing) {
+                flush();
+            }
+        }
+
+        private void discardReadAhead() throws IOException {
+            if (buffer.hasRemaining()) {
+                channel.position(channel.position() - buffer.remaining());
+            }
+            buffer.limit(0);
+        }
+
+        private void writeFully(ByteBuffer source) throws IOException {
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+        }
+
+        // The program's position in the file, allowing for buffered bytes.
+        private long position() throws IOException {
+            return writing
+                    ? channel.position() + buffer.position()
+                    : channel.position() - buffer.remaining();
+        }
+
+        private void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    private static State state() {
+        return SimulatorContext.current().getSystemIOState();
+    }
 
     /**
      * Implements syscall to read an integer value.
@@ -57,7 +214,9 @@ public class SystemIO {
 
     public static int readInteger(int serviceNumber) {
         String input = "0";
-        if (Globals.getGui() == null) {
+        if (SyscallLog.isReplaying()) {
+            // taken from the log below, without reading the console
+        } else if (Globals.getGui() == null) {
             try {
                 input = getInputReader().readLine();
             } catch (IOException e) {
@@ -70,6 +229,7 @@ public class SystemIO {
                 input = Globals.getGui().getMessagesPane().getInputString(-1);
             }
         }
+        input = SyscallLog.logString(serviceNumber, input);
 
         // Client is responsible for catching NumberFormatException
         return new Integer(input.trim()).intValue();
@@ -86,7 +246,9 @@ public class SystemIO {
      */
     public static float readFloat(int serviceNumber) {
         String input = "0";
-        if (Globals.getGui() == null) {
+        if (SyscallLog.isReplaying()) {
+            // taken from the log below, without reading the console
+        } else if (Globals.getGui() == null) {
             try {
                 input = getInputReader().readLine();
             } catch (IOException e) {
@@ -99,6 +261,7 @@ public class SystemIO {
                 input = Globals.getGui().getMessagesPane().getInputString(-1);
             }
         }
+        input = SyscallLog.logString(serviceNumber, input);
         return new Float(input.trim()).floatValue();
 
     }
@@ -114,7 +277,9 @@ public class SystemIO {
      */
     public static double readDouble(int serviceNumber) {
         String input = "0";
-        if (Globals.getGui() == null) {
+        if (SyscallLog.isReplaying()) {
+            // taken from the log below, without reading the console
+        } else if (Globals.getGui() == null) {
             try {
                 input = getInputReader().readLine();
             } catch (IOException e) {
@@ -127,6 +292,7 @@ public class SystemIO {
                 input = Globals.getGui().getMessagesPane().getInputString(-1);
             }
         }
+        input = SyscallLog.logString(serviceNumber, input);
         return new Double(input.trim()).doubleValue();
 
     }
@@ -136,8 +302,9 @@ public class SystemIO {
      * Implements syscall having 4 in $v0, to print a string.
      */
     public static void printString(String string) {
+        State state = state();
         if (Globals.getGui() == null) {
-            System.out.print(string);
+            state.standardOutput.print(string);
         } else {
             Globals.getGui().getMessagesPane().postRunMessage(string);
         }
@@ -154,7 +321,9 @@ public class SystemIO {
      */
     public static String readString(int serviceNumber, int maxLength) {
         String input = "";
-        if (Globals.getGui() == null) {
+        if (SyscallLog.isReplaying()) {
+            // taken from the log below, without reading the console
+        } else if (Globals.getGui() == null) {
             try {
                 input = getInputReader().readLine();
             } catch (IOException e) {
@@ -171,6 +340,7 @@ public class SystemIO {
                 }
             }
         }
+        input = SyscallLog.logString(serviceNumber, input);
 
         if (input.length() > maxLength) {
             // Modified DPS 13-July-2011.  Originally: return input.substring(0, maxLength);
@@ -190,7 +360,9 @@ public class SystemIO {
     public static int readChar(int serviceNumber) {
         String input = "0";
         int returnValue = 0;
-        if (Globals.getGui() == null) {
+        if (SyscallLog.isReplaying()) {
+            // taken from the log below, without reading the console
+        } else if (Globals.getGui() == null) {
             try {
                 input = getInputReader().readLine();
             } catch (IOException e) {
@@ -203,6 +375,7 @@ public class SystemIO {
                 input = Globals.getGui().getMessagesPane().getInputString(1);
             }
         }
+        input = SyscallLog.logString(serviceNumber, input);
         // The whole try-catch is not really necessary in this case since I'm
         // just propagating the runtime exception (the default behavior), but
         // I want to make it explicit.  The client needs to catch it.
@@ -228,6 +401,7 @@ public class SystemIO {
      */
 
     public static int writeToFile(int fd, byte[] myBuffer, int lengthRequested) {
+        State state = state();
         /////////////// DPS 8-Jan-2013  ////////////////////////////////////////////////////
         /// Write to STDOUT or STDERR file descriptor while using IDE - write to Messages pane.
         if ((fd == STDOUT || fd == STDERR) && Globals.getGui() != null) {
@@ -240,33 +414,26 @@ public class SystemIO {
 
         if (!FileIOData.fdInUse(fd, 1)) // Check the existence of the "write" fd
         {
-            fileErrorString = "File descriptor " + fd + " is not open for writing";
+            state.fileErrorString = "File descriptor " + fd + " is not open for writing";
             return -1;
         }
-        // retrieve FileOutputStream from storage
-        OutputStream outputStream = (OutputStream) FileIOData.getStreamInUse(fd);
+        Object stream = FileIOData.getStreamInUse(fd);
         try {
-            // Oct. 9 2005 Ken Vollmar
-            // Observation: made a call to outputStream.write(myBuffer, 0, lengthRequested)
-            //     with myBuffer containing 6(ten) 32-bit-words <---> 24(ten) bytes, where the
-            //     words are MIPS integers with values such that many of the bytes are ZEROES.
-            //     The effect is apparently that the write stops after encountering a zero-valued
-            //     byte. (The method write does not return a value and so this can't be verified
-            //     by the return value.)
-            // Writes up to lengthRequested bytes of data to this output stream from an array of bytes.
-            // outputStream.write(myBuffer, 0, lengthRequested); // write is a void method -- no verification value returned
-
-            // Oct. 9 2005 Ken Vollmar  Force the write statement to write exactly
-            // the number of bytes requested, even though those bytes include many ZERO values.
-            for (int ii = 0; ii < lengthRequested; ii++) {
-                outputStream.write(myBuffer[ii]);
-            }
-            outputStream.flush();// DPS 7-Jan-2013
+            // OutputStream.write(byte[], int, int) writes every byte requested, zeroes
+            // included, so no need to write one byte at a time.
+            if (stream instanceof FileHandle) {
+                ((FileHandle) stream).write(myBuffer, 0, lengthRequested); // flushed at close
+            } else {
+                // standard output or error, flushed so the output shows up right away
+                OutputStream outputStream = (OutputStream) stream;
+                outputStream.write(myBuffer, 0, lengthRequested);
+                outputStream.flush();// DPS 7-Jan-2013
+            }
         } catch (IOException e) {
-            fileErrorString = "IO Exception on write of file with fd " + fd;
+            state.fileErrorString = "IO Exception on write of file with fd " + fd;
             return -1;
         } catch (IndexOutOfBoundsException e) {
-            fileErrorString = "IndexOutOfBoundsException on write of file with fd" + fd;
+            state.fileErrorString = "IndexOutOfBoundsException on write of file with fd" + fd;
             return -1;
         }
 
@@ -284,6 +451,7 @@ public class SystemIO {
      * @return number of bytes read, 0 on EOF, or -1 on error
      */
     public static int readFromFile(int fd, byte[] myBuffer, int lengthRequested) {
+        State state = state();
         int retValue = -1;
         /////////////// DPS 8-Jan-2013  //////////////////////////////////////////////////
         /// Read from STDIN file descriptor while using IDE - get input from Messages pane.
@@ -300,24 +468,25 @@ public class SystemIO {
 
         if (!FileIOData.fdInUse(fd, 0)) // Check the existence of the "read" fd
         {
-            fileErrorString = "File descriptor " + fd + " is not open for reading";
+            state.fileErrorString = "File descriptor " + fd + " is not open for reading";
             return -1;
         }
-        // retrieve FileInputStream from storage
-        InputStream InputStream = (InputStream) FileIOData.getStreamInUse(fd);
+        Object stream = FileIOData.getStreamInUse(fd);
         try {
-            // Reads up to lengthRequested bytes of data from this Input stream into an array of bytes.
-            retValue = InputStream.read(myBuffer, 0, lengthRequested);
+            // Reads up to lengthRequested bytes of data from the file or stream into an array of bytes.
+            retValue = (stream instanceof FileHandle)
+                    ? ((FileHandle) stream).read(myBuffer, 0, lengthRequested)
+                    : ((InputStream) stream).read(myBuffer, 0, lengthRequested);
             // This method will return -1 upon EOF, but our spec says that negative
             // value represents an error, so we return 0 for EOF.  DPS 10-July-2008.
             if (retValue == -1) {
                 retValue = 0;
             }
         } catch (IOException e) {
-            fileErrorString = "IO Exception on read of file with fd " + fd;
+            state.fileErrorString = "IO Exception on read of file with fd " + fd;
             return -1;
         } catch (IndexOutOfBoundsException e) {
-            fileErrorString = "IndexOutOfBoundsException on read of file with fd" + fd;
+            state.fileErrorString = "IndexOutOfBoundsException on read of file with fd" + fd;
             return -1;
         }
         return retValue;
@@ -331,18 +500,16 @@ public class SystemIO {
      *
      * @param filename string containing filename
      * @param flags     0 for read, 1 for write
-     * @return file descriptor in the range 0 to SYSCALL_MAXFILES-1, or -1 if error
+     * @return file descriptor in the range 0 to getMaxFiles()-1, or -1 if error
      * @author Ken Vollmar
      */
     public static int openFile(String filename, int flags) {
+        State state = state();
         // Internally, a "file descriptor" is an index into a table
         // of the filename, flag, and the File???putStream associated with
         // that file descriptor.
 
         int retValue = -1;
-        char[] ch = {' '}; // Need an array to convert to String
-        FileInputStream inputStream;
-        FileOutputStream outputStream;
         int fdToUse;
 
         // Check internal plausibility of opening this file
@@ -356,28 +523,185 @@ public class SystemIO {
         if (flags == O_RDONLY) // Open for reading only
         {
             try {
-                // Set up input stream from disk file
-                inputStream = new FileInputStream(filename);
-                FileIOData.setStreamInUse(fdToUse, inputStream); // Save stream for later use
-            } catch (FileNotFoundException e) {
-                fileErrorString = "File " + filename + " not found, open for input.";
+                // Set up channel from disk file
+                FileIOData.setStreamInUse(fdToUse, new FileHandle(openChannel(filename, flags))); // Save for later use
+            } catch (IOException e) {
+                state.fileErrorString = "File " + filename + " not found, open for input.";
                 retValue = -1;
             }
         } else if ((flags & O_WRONLY) != 0) // Open for writing only
         {
-            // Set up output stream to disk file
+            // Set up channel to disk file
             try {
-                outputStream = new FileOutputStream(filename, ((flags & O_APPEND) != 0));
-                FileIOData.setStreamInUse(fdToUse, outputStream); // Save stream for later use
-            } catch (FileNotFoundException e) {
-                fileErrorString = "File " + filename + " not found, open for output.";
+                FileIOData.setStreamInUse(fdToUse, new FileHandle(openChannel(filename, flags))); // Save for later use
+            } catch (IOException e) {
+                state.fileErrorString = "File " + filename + " not found, open for output.";
                 retValue = -1;
             }
         }
+        if (retValue < 0) {
+            FileIOData.close(fdToUse); // free the descriptor and file name again
+        }
         return retValue; // return the "file descriptor"
 
     }
 
+    /**
+     * Move the position at which the next read or write of a file occurs.
+     *
+     * @param fd     file descriptor of an open file, other than standard input, output or error
+     * @param offset new position, relative to the point given by whence
+     * @param whence 0 for the start of the file, 1 for the current position, 2 for the end of the file
+     * @return the new position, or -1 on error
+     */
+    public static int seekFile(int fd, int offset, int whence) {
+        State state = state();
+        FileHandle handle = FileIOData.getFileInUse(fd);
+        if (handle == null) {
+            state.fileErrorString = "File descriptor " + fd + " is not open for seeking";
+            return -1;
+        }
+        try {
+            long base;
+            if (whence == SEEK_SET) {
+                base = 0;
+            } else if (whence == SEEK_CUR) {
+                base = handle.position();
+            } else if (whence == SEEK_END) {
+                handle.flush();
+                base = handle.channel.size();
+            } else {
+                state.fileErrorString = "Invalid seek origin " + whence + " for file with fd " + fd;
+                return -1;
+            }
+            long position = base + offset;
+            if (position < 0 || position > Integer.MAX_VALUE) {
+                state.fileErrorString = "Seek to invalid position " + position + " in file with fd " + fd;
+                return -1;
+            }
+            handle.flush();
+            handle.channel.position(position);
+            return (int) position;
+        } catch (IOException e) {
+            state.fileErrorString = "IO Exception on seek of file with fd " + fd;
+            return -1;
+        }
+    }
+
+    /**
+     * Read bytes from the given position of a file, without moving the position at
+     * which the next read or write occurs.
+     *
+     * @param fd              file descriptor of a file open for reading, other than standard input
+     * @param myBuffer        byte array to contain bytes read
+     * @param lengthRequested number of bytes to read
+     * @param position        position in the file of the first byte to read
+     * @return number of bytes read, 0 at or beyond end of file, or -1 on error
+     */
+    public static int readFromFileAt(int fd, byte[] myBuffer, int lengthRequested, int position) {
+        State state = state();
+        FileHandle handle = FileIOData.getFileInUse(fd);
+        if (handle == null || !FileIOData.fdInUse(fd, 0) || position < 0) {
+            state.fileErrorString = "File descriptor " + fd + " is not open for reading at position " + position;
+            return -1;
+        }
+        try {
+            handle.flush();
+            ByteBuffer destination = ByteBuffer.wrap(myBuffer, 0, lengthRequested);
+            while (destination.hasRemaining()) {
+                if (handle.channel.read(destination, position + destination.position()) <= 0) {
+                    break;
+                }
+            }
+            return destination.position();
+        } catch (IOException e) {
+            state.fileErrorString = "IO Exception on read of file with fd " + fd;
+            return -1;
+        } catch (IndexOutOfBoundsException e) {
+            state.fileErrorString = "IndexOutOfBoundsException on read of file with fd" + fd;
+            return -1;
+        }
+    }
+
+    /**
+     * Write bytes at the given position of a file, without moving the position at
+     * which the next read or write occurs.
+     *
+     * @param fd              file descriptor of a file open for writing, other than standard output or error
+     * @param myBuffer        byte array containing bytes to write
+     * @param lengthRequested number of bytes to write
+     * @param position        position in the file of the first byte to write
+     * @return number of bytes written, or -1 on error
+     */
+    public static int writeToFileAt(int fd, byte[] myBuffer, int lengthRequested, int position) {
+        State state = state();
+        FileHandle handle = FileIOData.getFileInUse(fd);
+        if (handle == null || !FileIOData.fdInUse(fd, 1) || position < 0) {
+            state.fileErrorString = "File descriptor " + fd + " is not open for writing at position " + position;
+            return -1;
+        }
+        try {
+            handle.flush();
+            ByteBuffer source = ByteBuffer.wrap(myBuffer, 0, lengthRequested);
+            while (source.hasRemaining()) {
+                handle.channel.write(source, position + source.position());
+            }
+            return lengthRequested;
+        } catch (IOException e) {
+            state.fileErrorString = "IO Exception on write of file with fd " + fd;
+            return -1;
+        } catch (IndexOutOfBoundsException e) {
+            state.fileErrorString = "IndexOutOfBoundsException on write of file with fd" + fd;
+            return -1;
+        }
+    }
+
+    /**
+     * Map a file into memory, for the Mmap syscall.  The channel used to map it is
+     * closed again; the mapping stays valid until the buffer is garbage collected.
+     *
+     * @param filename name of the file
+     * @param flags    0 to map the file read-only, 1 to map it for reading and writing
+     * @param length   number of bytes to map from the start of the file, or 0 for the whole
+     *                 file.  A read-only mapping stops at the end of the file; a read-write
+     *                 mapping longer than the file extends it, creating it if necessary.
+     * @return the file contents, or null on error
+     */
+    public static MappedByteBuffer mapFile(String filename, int flags, int length) {
+        State state = state();
+        if (flags != O_RDONLY && flags != O_WRONLY) {
+            state.fileErrorString = "File name " + filename + " has unknown requested mapping flag";
+            return null;
+        }
+        if (length < 0) {
+            state.fileErrorString = "Invalid length " + length + " for mapping of file " + filename;
+            return null;
+        }
+        try {
+            FileChannel channel = (flags == O_RDONLY)
+                    ? FileChannel.open(Paths.get(filename), StandardOpenOption.READ)
+                    : FileChannel.open(Paths.get(filename), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE);
+            try {
+                long size = (length == 0 || (flags == O_RDONLY && length > channel.size()))
+                        ? channel.size()
+                        : length;
+                if (size > Integer.MAX_VALUE) {
+                    state.fileErrorString = "File " + filename + " is too large to map";
+                    return null;
+                }
+                state.fileErrorString = "File operation OK";
+                return channel.map((flags == O_RDONLY) ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE,
+                        0, size);
+            } finally {
+                channel.close();
+            }
+        } catch (IOException | InvalidPathException e) {
+            state.fileErrorString = "File " + filename + " could not be mapped: " + e.getMessage();
+            return null;
+        }
+    }
+
     /**
      * Close the file with specified file descriptor
      *
@@ -394,13 +718,167 @@ public class SystemIO {
         FileIOData.resetFiles();
     }
 
+    /**
+     * Write out the buffered output of every open file without closing it, so the
+     * files are up to date whenever execution stops (pause, breakpoint, step limit)
+     * and not only when the program closes them or terminates.
+     */
+    public static void flushFiles() {
+        FileIOData.flushFiles();
+    }
+
+    /**
+     * Set the size of the file descriptor table, which limits the number of files a
+     * MIPS program can have open at once, counting standard input, output and error.
+     * Takes effect at the next reset of the files, which happens whenever a program
+     * is assembled.
+     *
+     * @param size number of file descriptors, at least 4
+     */
+    public static void setMaxFiles(int size) {
+        maxFiles = Math.max(size, STDERR + 2);
+    }
+
+    /**
+     * Returns the size of the file descriptor table.
+     *
+     * @return number of file descriptors, counting standard input, output and error
+     */
+    public static int getMaxFiles() {
+        return maxFiles;
+    }
+
+    /**
+     * Replace the standard input, output and error streams used by syscalls when
+     * running from the command line.  Used by the batch runner to give each program
+     * its own input and to capture its output.  Also resets the file descriptor table.
+     *
+     * @param in  stream to be read by the input syscalls and file descriptor 0
+     * @param out stream to be written by the print syscalls and file descriptor 1
+     * @param err stream to be written through file descriptor 2
+     */
+    public static void setStandardStreams(InputStream in, PrintStream out, PrintStream err) {
+        State state = state();
+        state.standardInput = in;
+        state.standardOutput = out;
+        state.standardError = err;
+        state.inputReader = null;
+        FileIOData.resetFiles();
+    }
+
     /**
      * Retrieve file operation or error message
      *
      * @return string containing message
      */
     public static String getFileErrorMessage() {
-        return fileErrorString;
+        return state().fileErrorString;
+    }
+
+    /**
+     * Returns the file descriptors of the files the MIPS program has open, not
+     * counting standard input, output and error.  Used to write machine state files.
+     *
+     * @return open file descriptors in increasing order
+     */
+    public static int[] getOpenFileDescriptors() {
+        State state = state();
+        int[] fds = new int[state.fileNames.length];
+        int count = 0;
+        for (int fd = STDERR + 1; fd < state.fileNames.length; fd++) {
+            if (state.fileNames[fd] != null && state.streams[fd] != null) {
+                fds[count++] = fd;
+            }
+        }
+        int[] result = new int[count];
+        System.arraycopy(fds, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * Returns the name under which a file was opened.
+     *
+     * @param fd descriptor of an open file
+     * @return file name, or null if the descriptor is not in use
+     */
+    public static String getFileName(int fd) {
+        return state().fileNames[fd];
+    }
+
+    /**
+     * Returns the flags with which a file was opened.
+     *
+     * @param fd descriptor of an open file
+     * @return flags, 0 for read and 1 for write, possibly with the append flag
+     */
+    public static int getFileFlags(int fd) {
+        return state().fileFlags[fd];
+    }
+
+    /**
+     * Returns the offset in an open file at which the next read or write will occur.
+     *
+     * @param fd descriptor of an open file, other than standard input, output or error
+     * @return offset in bytes
+     * @throws IOException if the offset cannot be determined
+     */
+    public static long getFilePosition(int fd) throws IOException {
+        FileHandle handle = FileIOData.getFileInUse(fd);
+        if (handle == null) {
+            throw new IOException("file descriptor " + fd + " is not open");
+        }
+        handle.flush(); // so the file holds everything written up to the position
+        return handle.position();
+    }
+
+    /**
+     * Open a file under the given descriptor, as it was when a machine state file was
+     * written.  A file open for reading is positioned at the given offset.  A file open
+     * for writing is cut back to that length, discarding anything written after the
+     * state was saved, and written from there on.  A file already open under the
+     * descriptor is closed first.
+     *
+     * @param fd       descriptor to use, other than standard input, output or error
+     * @param filename name of the file
+     * @param flags    flags with which the file was opened
+     * @param position offset of the next read or write
+     * @throws IOException if the file cannot be opened
+     */
+    public static void reopenFile(int fd, String filename, int flags, long position) throws IOException {
+        State state = state();
+        if (fd <= STDERR || fd >= state.fileNames.length) {
+            throw new IOException("invalid file descriptor " + fd);
+        }
+        FileIOData.close(fd);
+        FileChannel channel;
+        if (flags == O_RDONLY) {
+            channel = openChannel(filename, flags);
+            channel.position(position);
+        } else {
+            // Opened without truncating, then cut back so that writes continue from the
+            // truncated end.
+            channel = openChannel(filename, O_WRONLY | O_APPEND);
+            channel.truncate(position);
+        }
+        state.fileNames[fd] = filename;
+        state.fileFlags[fd] = flags;
+        FileIOData.setStreamInUse(fd, new FileHandle(channel));
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+    // Open a channel to the named file: for reading if flags is O_RDONLY, otherwise
+    // for writing, created if necessary, and either truncated or appended to.
+
+    private static FileChannel openChannel(String filename, int flags) throws IOException {
+        try {
+            if (flags == O_RDONLY) {
+                return FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+            }
+            return FileChannel.open(Paths.get(filename), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    ((flags & O_APPEND) != 0) ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (InvalidPathException e) {
+            throw new FileNotFoundException(filename);
+        }
     }
 
     ///////////////////////////////////////////////////////////////////////
@@ -410,10 +888,11 @@ public class SystemIO {
     // transparent to it.  Lazy instantiation.  DPS.  28 Feb 2008
 
     private static BufferedReader getInputReader() {
-        if (inputReader == null) {
-            inputReader = new BufferedReader(new InputStreamReader(System.in));
+        State state = state();
+        if (state.inputReader == null) {
+            state.inputReader = new BufferedReader(new InputStreamReader(state.standardInput));
         }
-        return inputReader;
+        return state.inputReader;
     }
 
 
@@ -422,50 +901,79 @@ public class SystemIO {
     // Ken Vollmar, August 2005
 
     private static class FileIOData {
-        private static final String[] fileNames = new String[SYSCALL_MAXFILES]; // The filenames in use. Null if file descriptor i is not in use.
-        private static final int[] fileFlags = new int[SYSCALL_MAXFILES]; // The flags of this file, 0=READ, 1=WRITE. Invalid if this file descriptor is not in use.
-        private static final Object[] streams = new Object[SYSCALL_MAXFILES]; // The streams in use, associated with the filenames
-
         // Reset all file information. Closes any open files and resets the arrays
         private static void resetFiles() {
-            for (int i = 0; i < SYSCALL_MAXFILES; i++) {
+            State state = state();
+            for (int i = 0; i < state.fileNames.length; i++) {
                 close(i);
             }
+            if (state.fileNames.length != maxFiles) {
+                state.fileNames = new String[maxFiles];
+                state.fileFlags = new int[maxFiles];
+                state.streams = new Object[maxFiles];
+            }
             setupStdio();
         }
 
+        // Write out the buffered output of all open files.
+        private static void flushFiles() {
+            State state = state();
+            for (int i = 0; i < state.streams.length; i++) {
+                FileHandle handle = getFileInUse(i);
+                if (handle != null) {
+                    try {
+                        handle.flushWrites();
+                    } catch (IOException e) {
+                        state.fileErrorString = "File " + state.fileNames[i] + " could not be written: " + e.getMessage();
+                    }
+                }
+            }
+        }
+
         // DPS 8-Jan-2013
         private static void setupStdio() {
-            fileNames[STDIN] = "STDIN";
-            fileNames[STDOUT] = "STDOUT";
-            fileNames[STDERR] = "STDERR";
-            fileFlags[STDIN] = SystemIO.O_RDONLY;
-            fileFlags[STDOUT] = SystemIO.O_WRONLY;
-            fileFlags[STDERR] = SystemIO.O_WRONLY;
-            streams[STDIN] = System.in;
-            streams[STDOUT] = System.out;
-            streams[STDERR] = System.err;
-            System.out.flush();
-            System.err.flush();
+            State state = state();
+            state.fileNames[STDIN] = "STDIN";
+            state.fileNames[STDOUT] = "STDOUT";
+            state.fileNames[STDERR] = "STDERR";
+            state.fileFlags[STDIN] = SystemIO.O_RDONLY;
+            state.fileFlags[STDOUT] = SystemIO.O_WRONLY;
+            state.fileFlags[STDERR] = SystemIO.O_WRONLY;
+            state.streams[STDIN] = state.standardInput;
+            state.streams[STDOUT] = state.standardOutput;
+            state.streams[STDERR] = state.standardError;
+            state.standardOutput.flush();
+            state.standardError.flush();
         }
 
         // Preserve a stream that is in use
         private static void setStreamInUse(int fd, Object s) {
-            streams[fd] = s;
+            state().streams[fd] = s;
 
         }
 
         // Retrieve a stream for use
         private static Object getStreamInUse(int fd) {
-            return streams[fd];
+            return state().streams[fd];
 
         }
 
+        // Retrieve the handle of an open file, or null if the descriptor is not that
+        // of a file opened by the MIPS program.
+        private static FileHandle getFileInUse(int fd) {
+            State state = state();
+            if (fd <= STDERR || fd >= state.streams.length || !(state.streams[fd] instanceof FileHandle)) {
+                return null;
+            }
+            return (FileHandle) state.streams[fd];
+        }
+
         // Determine whether a given filename is already in use.
         private static boolean filenameInUse(String requestedFilename) {
-            for (int i = 0; i < SYSCALL_MAXFILES; i++) {
-                if (fileNames[i] != null
-                        && fileNames[i].equals(requestedFilename)) {
+            State state = state();
+            for (int i = 0; i < state.fileNames.length; i++) {
+                if (state.fileNames[i] != null
+                        && state.fileNames[i].equals(requestedFilename)) {
                     // System.out.println("Mars.SystemIO.FileIOData.filenameInUse: rtng TRUE for " + requestedFilename);
                     return true;
                 }
@@ -478,75 +986,74 @@ public class SystemIO {
 
         // Determine whether a given fd is already in use with the given flag.
         private static boolean fdInUse(int fd, int flag) {
-            if (fd < 0 || fd >= SYSCALL_MAXFILES) {
+            State state = state();
+            if (fd < 0 || fd >= state.fileNames.length) {
                 return false;
             } else // O_WRONLY write-only
-                if (fileNames[fd] != null && fileFlags[fd] == 0 && flag == 0) {  // O_RDONLY read-only
+                if (state.fileNames[fd] != null && state.fileFlags[fd] == 0 && flag == 0) {  // O_RDONLY read-only
                     return true;
-                } else return fileNames[fd] != null && ((fileFlags[fd] & flag & O_WRONLY) == O_WRONLY);
+                } else return state.fileNames[fd] != null && ((state.fileFlags[fd] & flag & O_WRONLY) == O_WRONLY);
 
         }
 
         // Close the file with file descriptor fd. No errors are recoverable -- if the user's
         // made an error in the call, it will come back to him.
         private static void close(int fd) {
+            State state = state();
             // Can't close STDIN, STDOUT, STDERR, or invalid fd
-            if (fd <= STDERR || fd >= SYSCALL_MAXFILES)
+            if (fd <= STDERR || fd >= state.fileNames.length)
                 return;
 
-            fileNames[fd] = null;
+            state.fileNames[fd] = null;
             // All this code will be executed only if the descriptor is open.
-            if (streams[fd] != null) {
-                int keepFlag = fileFlags[fd];
-                Object keepStream = streams[fd];
-                fileFlags[fd] = -1;
-                streams[fd] = null;
+            if (state.streams[fd] != null) {
+                Object keepStream = state.streams[fd];
+                state.fileFlags[fd] = -1;
+                state.streams[fd] = null;
                 try {
-                    if (keepFlag == O_RDONLY)
-                        ((FileInputStream) keepStream).close();
-                    else
-                        ((FileOutputStream) keepStream).close();
+                    ((FileHandle) keepStream).close(); // writes any buffered bytes
                 } catch (IOException ioe) {
                     // not concerned with this exception
                 }
             } else {
-                fileFlags[fd] = -1; // just to be sure... streams[fd] known to be null
+                state.fileFlags[fd] = -1; // just to be sure... streams[fd] known to be null
             }
         }
 
         // Attempt to open a new file with the given flag, using the lowest available file descriptor.
         // Check that filename is not in use, flag is reasonable, and there is an available file descriptor.
-        // Return: file descriptor in 0...(SYSCALL_MAXFILES-1), or -1 if error
+        // Return: file descriptor in 0...(size of table - 1), or -1 if error
         private static int nowOpening(String filename, int flag) {
+            State state = state();
             int i = 0;
             if (filenameInUse(filename)) {
-                fileErrorString = "File name " + filename + " is already open.";
+                state.fileErrorString = "File name " + filename + " is already open.";
                 return -1;
             }
 
             if (flag != O_RDONLY && flag != O_WRONLY && flag != (O_WRONLY | O_APPEND)) // Only read and write are implemented
             {
-                fileErrorString = "File name " + filename
+                state.fileErrorString = "File name " + filename
                         + " has unknown requested opening flag";
                 return -1;
             }
 
-            while (fileNames[i] != null && i < SYSCALL_MAXFILES) {
+            while (i < state.fileNames.length && state.fileNames[i] != null) {
                 i++;
             } // Attempt to find available file descriptor
 
-            if (i >= SYSCALL_MAXFILES) // no available file descriptors
+            if (i >= state.fileNames.length) // no available file descriptors
             {
-                fileErrorString = "File name " + filename
+                state.fileErrorString = "File name " + filename
                         + " exceeds maximum open file limit of "
-                        + SYSCALL_MAXFILES;
+                        + state.fileNames.length;
                 return -1;
             }
 
             // Must be OK -- put filename in table
-            fileNames[i] = filename; // our table has its own copy of filename
-            fileFlags[i] = flag;
-            fileErrorString = "File operation OK";
+            state.fileNames[i] = filename; // our table has its own copy of filename
+            state.fileFlags[i] = flag;
+            state.fileErrorString = "File operation OK";
             return i;
 
         }
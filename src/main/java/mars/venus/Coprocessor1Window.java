@@ -16,6 +16,7 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
+import java.util.BitSet;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -251,9 +252,8 @@ public class Coprocessor1Window extends JPanel implements ActionListener, Observ
      * Required by Observer interface.  Called when notified by an Observable that we are registered with.
      * Observables include:
      * The Simulator object, which lets us know when it starts and stops running
-     * A register object, which lets us know of register operations
-     * The Simulator keeps us informed of when simulated MIPS execution is active.
-     * This is the only time we care about register operations.
+     * Register writes during execution are collected by RefreshCoordinator, which
+     * redisplays and highlights them at a limited frame rate.
      *
      * @param observable The Observable object who is notifying us
      * @param obj        Auxiliary object with additional information.
@@ -262,32 +262,31 @@ public class Coprocessor1Window extends JPanel implements ActionListener, Observ
         if (observable == mars.simulator.Simulator.getInstance()) {
             SimulatorNotice notice = (SimulatorNotice) obj;
             if (notice.getAction() == SimulatorNotice.SIMULATOR_START) {
-                // Simulated MIPS execution starts.  Respond to memory changes if running in timed
-                // or stepped mode.
+                // Simulated MIPS execution starts.  Highlight registers written if running in
+                // timed or stepped mode.  RefreshCoordinator tells us which ones.
                 if (notice.getRunSpeed() != RunSpeedPanel.UNLIMITED_SPEED || notice.getMaxSteps() == 1) {
-                    Coprocessor1.addRegistersObserver(this);
                     this.highlighting = true;
                 }
-            } else {
-                // Simulated MIPS execution stops.  Stop responding.
-                Coprocessor1.deleteRegistersObserver(this);
-            }
-        } else if (obj instanceof RegisterAccessNotice) {
-            // NOTE: each register is a separate Observable
-            RegisterAccessNotice access = (RegisterAccessNotice) obj;
-            if (access.getAccessType() == AccessNotice.WRITE) {
-                // For now, use highlighting technique used by Label Window feature to highlight
-                // memory cell corresponding to a selected label.  The highlighting is not
-                // as visually distinct as changing the background color, but will do for now.
-                // Ideally, use the same highlighting technique as for Text Segment -- see
-                // AddressCellRenderer class in DataSegmentWindow.java.
-                this.highlighting = true;
-                this.highlightCellForRegister((Register) observable);
-                Globals.getGui().getRegistersPane().setSelectedComponent(this);
             }
         }
     }
 
+    /**
+     * Redisplay the given registers, the double precision pairs they belong to and the
+     * condition flags, for RefreshCoordinator.
+     *
+     * @param numbers numbers of the registers written since the last refresh
+     * @param base    number base for display (10 or 16)
+     */
+    void updateRegisterValues(BitSet numbers, int base) {
+        registers = Coprocessor1.getRegisters();
+        for (int i = numbers.nextSetBit(0); i >= 0; i = numbers.nextSetBit(i + 1)) {
+            updateFloatRegisterValue(i, Coprocessor1.getValue(i), base);
+            updateDoubleRegisterValue(i & ~1, base);
+        }
+        updateConditionFlagDisplay();
+    }
+
     /**
      * Highlight the row corresponding to the given register.
      *
@@ -16,6 +16,7 @@ import javax.swing.table.TableModel;
 import java.awt.*;
 import java.awt.event.*;
 import java.util.Date;
+import java.util.BitSet;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -216,6 +217,52 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
         dataTable.tableChanged(new TableModelEvent(dataTable.getModel(), 0, dataData.length - 1));
     }
 
+    /**
+     * Highlight the cell for the given address, as highlightCellForAddress() does.  If
+     * the cell is already displayed, the table is neither reloaded nor recentered; it
+     * is only scrolled as needed to show the cell.  Used by RefreshCoordinator.
+     *
+     * @param address address of the memory word written
+     */
+    void highlightWrittenCell(int address) {
+        int offset = address - this.firstAddress;
+        if (offset < 0 || offset >= MEMORY_CHUNK_SIZE) {
+            highlightCellForAddress(address);
+            return;
+        }
+        this.addressRow = offset / BYTES_PER_ROW;
+        this.addressColumn = dataTable.convertColumnIndexToView(offset % BYTES_PER_ROW / BYTES_PER_VALUE + 1);
+        this.addressRowFirstAddress = this.firstAddress + this.addressRow * BYTES_PER_ROW;
+        dataTable.scrollRectToVisible(dataTable.getCellRect(this.addressRow, this.addressColumn, true));
+        dataTable.repaint();
+    }
+
+    /**
+     * Redisplay the given words of the memory range currently displayed.  Used by
+     * RefreshCoordinator.
+     *
+     * @param words bit i is set if the word at firstAddress + 4*i is to be redisplayed
+     */
+    void updateWrittenCells(BitSet words) {
+        if (tablePanel.getComponentCount() == 0)
+            return; // ignore if no content to change
+        int valueBase = getValueDisplayFormat();
+        DataTableModel dataModel = (DataTableModel) dataTable.getModel();
+        for (int i = words.nextSetBit(0); i >= 0; i = words.nextSetBit(i + 1)) {
+            int address = this.firstAddress + i * BYTES_PER_VALUE;
+            int value;
+            try {
+                value = Globals.memory.getWordNoNotify(address);
+            } catch (AddressErrorException aee) {
+                // Text segment or outside the address space; leave it to the full update.
+                updateValues();
+                return;
+            }
+            dataModel.setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatNumber(value, valueBase),
+                    i / VALUES_PER_ROW, i % VALUES_PER_ROW + 1);
+        }
+    }
+
     // Given address, will compute table cell location, adjusting table if necessary to
     // contain this cell, make sure that cell is visible, then return a Point containing
     // row and column position of cell in the table.  This private helper method is called
@@ -792,9 +839,9 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
      * Required by Observer interface.  Called when notified by an Observable that we are registered with.
      * Observables include:
      * The Simulator object, which lets us know when it starts and stops running
-     * A delegate of the Memory object, which lets us know of memory operations
-     * The Simulator keeps us informed of when simulated MIPS execution is active.
-     * This is the only time we care about memory operations.
+     * The Settings object
+     * Memory writes during execution are collected by RefreshCoordinator, which
+     * redisplays and highlights them at a limited frame rate.
      *
      * @param observable The Observable object who is notifying us
      * @param obj        Auxiliary object with additional information.
@@ -805,28 +852,16 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
             SimulatorNotice notice = (SimulatorNotice) obj;
             if (notice.getAction() == SimulatorNotice.SIMULATOR_START) {
 
-                // Simulated MIPS execution starts.  Respond to memory changes if running in timed
-                // or stepped mode.
+                // Simulated MIPS execution starts.  Highlight memory written if running in timed
+                // or stepped mode.  RefreshCoordinator tells us where.
                 if (notice.getRunSpeed() != RunSpeedPanel.UNLIMITED_SPEED || notice.getMaxSteps() == 1) {
-                    Memory.getInstance().addObserver(this);
                     addressHighlighting = true;
                 }
-            } else {
-                // Simulated MIPS execution stops.  Stop responding.
-                Memory.getInstance().deleteObserver(this);
             }
         } else if (observable == settings) {
             // Suspended work in progress. Intended to disable combobox item for text segment. DPS 9-July-2013.
             //baseAddressSelector.getModel().getElementAt(TEXT_BASE_ADDRESS_INDEX)
             //*.setEnabled(settings.getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED));
-        } else if (obj instanceof MemoryAccessNotice) {            // NOTE: observable != Memory.getInstance() because Memory class delegates notification duty.
-            MemoryAccessNotice access = (MemoryAccessNotice) obj;
-            if (access.getAccessType() == AccessNotice.WRITE) {
-                int address = access.getAddress();
-                // Use the same highlighting technique as for Text Segment -- see
-                // AddressCellRenderer class below.
-                this.highlightCellForAddress(address);
-            }
         }
     }
 
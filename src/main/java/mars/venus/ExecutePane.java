@@ -19,6 +19,7 @@ public class ExecutePane extends JDesktopPane {
     private final DataSegmentWindow dataSegment;
     private final TextSegmentWindow textSegment;
     private final LabelsWindow labelValues;
+    private final RefreshCoordinator refreshCoordinator;
     private final VenusUI mainUI;
     private final NumberDisplayBaseChooser valueDisplayBase;
     private final NumberDisplayBaseChooser addressDisplayBase;
@@ -60,7 +61,8 @@ public class ExecutePane extends JDesktopPane {
         textSegment.setVisible(true);
         dataSegment.setVisible(true);
         labelValues.setVisible(labelWindowVisible);
-
+        // Redraws the windows above at a limited frame rate during timed runs.
+        refreshCoordinator = new RefreshCoordinator(this);
     }
 
     /**
@@ -0,0 +1,263 @@
+package mars.venus;
+
+import mars.Globals;
+import mars.mips.hardware.*;
+import mars.simulator.Simulator;
+import mars.simulator.SimulatorNotice;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.BitSet;
+import java.util.Observable;
+import java.util.Observer;
+
+/*
+Copyright (c) 2026.
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+
+/**
+ * Refreshes the Execute pane windows while a program runs at a limited speed or is
+ * stepped.  The windows used to observe registers and memory themselves and repaint on
+ * every write, and the Simulator posted a full update of them to the event queue after
+ * every instruction.  At more than a few instructions per second this floods the queue
+ * and the display falls behind.
+ * <p>
+ * Instead the coordinator is the only observer of registers and memory during such a
+ * run.  Its callbacks, which run on the simulation thread, just record the registers
+ * and words written in bit sets.  A Swing timer then redraws at most once every
+ * FRAME_INTERVAL_MS milliseconds: only the values that changed since the last frame are
+ * reformatted, the last register and memory word written are highlighted, and the text
+ * segment highlights the next instruction.  A final frame is drawn when the run stops.
+ **/
+
+public class RefreshCoordinator implements Observer {
+    /**
+     * Minimum time between two frames, in milliseconds.
+     */
+    public static final int FRAME_INTERVAL_MS = 25;
+
+    private static final int REGISTERS = 0;
+    private static final int COPROCESSOR1 = 1;
+    private static final int COPROCESSOR0 = 2;
+    private static final int NO_WINDOW = -1;
+
+    private final ExecutePane executePane;
+    private final Timer timer;
+    private final Observer[] registerObservers = new Observer[3];
+    private final Observer memoryObserver;
+    private boolean timed;  // running rather than stepping, so the text segment follows the program counter
+
+    // Writes recorded since the last frame, guarded by this object.  Memory words are kept
+    // as offsets from the first address shown by the Data Segment window when they were
+    // written; writes outside it are noted only by lastWriteAddress.
+    private BitSet[] dirtyRegisters = {new BitSet(), new BitSet(), new BitSet()};
+    private final Register[] lastRegisters = new Register[3];
+    private int lastRegisterWindow = NO_WINDOW;
+    private BitSet dirtyWords = new BitSet();
+    private int dirtyWordsBase;
+    private boolean dirtyWordsReset = false;  // base moved since the words were recorded
+    private boolean memoryWritten = false;
+    private int lastWriteAddress;
+
+    /**
+     * Create the coordinator for the windows of the given Execute pane.
+     *
+     * @param executePane the Execute pane
+     */
+    public RefreshCoordinator(ExecutePane executePane) {
+        this.executePane = executePane;
+        timer = new Timer(FRAME_INTERVAL_MS, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                refresh();
+            }
+        });
+        timer.setCoalesce(true);
+        for (int i = 0; i < registerObservers.length; i++) {
+            registerObservers[i] = new RegisterWriteObserver(i);
+        }
+        memoryObserver = new Observer() {
+            public void update(Observable observable, Object obj) {
+                if (obj instanceof MemoryAccessNotice && ((MemoryAccessNotice) obj).getAccessType() == AccessNotice.WRITE) {
+                    memoryWritten(((MemoryAccessNotice) obj).getAddress(), ((MemoryAccessNotice) obj).getLength());
+                }
+            }
+        };
+        Simulator.getInstance().addObserver(this);
+    }
+
+    /**
+     * Required by Observer interface.  Starts observing registers and memory when a
+     * run at limited speed or a step begins, and stops when it ends.  Called on the
+     * simulation thread.
+     *
+     * @param observable the Simulator
+     * @param obj        the SimulatorNotice
+     */
+    public void update(Observable observable, Object obj) {
+        if (!(obj instanceof SimulatorNotice)) {
+            return;
+        }
+        SimulatorNotice notice = (SimulatorNotice) obj;
+        if (notice.getAction() == SimulatorNotice.SIMULATOR_START) {
+            boolean stepping = notice.getMaxSteps() == 1;
+            if (notice.getRunSpeed() == RunSpeedPanel.UNLIMITED_SPEED && !stepping) {
+                return;
+            }
+            synchronized (this) {
+                timed = !stepping;
+                dirtyWordsBase = executePane.getDataSegmentWindow().firstAddress;
+                dirtyWordsReset = false;
+            }
+            RegisterFile.addRegistersObserver(registerObservers[REGISTERS]);
+            Coprocessor1.addRegistersObserver(registerObservers[COPROCESSOR1]);
+            Coprocessor0.addRegistersObserver(registerObservers[COPROCESSOR0]);
+            Memory.getInstance().addObserver(memoryObserver);
+            if (!stepping) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        timer.start();
+                    }
+                });
+            }
+        } else {
+            RegisterFile.deleteRegistersObserver(registerObservers[REGISTERS]);
+            Coprocessor1.deleteRegistersObserver(registerObservers[COPROCESSOR1]);
+            Coprocessor0.deleteRegistersObserver(registerObservers[COPROCESSOR0]);
+            Memory.getInstance().deleteObserver(memoryObserver);
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    timer.stop();
+                    refresh();
+                }
+            });
+        }
+    }
+
+    private synchronized void registerWritten(int window, Register register) {
+        dirtyRegisters[window].set(register.getNumber());
+        lastRegisters[window] = register;
+        lastRegisterWindow = window;
+    }
+
+    // A bulk transfer by a syscall reports the whole range it wrote in one notice, so mark
+    // every word from address to address + length - 1 that the window shows.
+    private synchronized void memoryWritten(int address, int length) {
+        long first = Math.max((long) address - dirtyWordsBase, 0);
+        long end = Math.min((long) address - dirtyWordsBase + length, DataSegmentWindow.MEMORY_CHUNK_SIZE);
+        if (first < end) {
+            dirtyWords.set((int) first / DataSegmentWindow.BYTES_PER_VALUE,
+                    (int) (end - 1) / DataSegmentWindow.BYTES_PER_VALUE + 1);
+        }
+        memoryWritten = true;
+        lastWriteAddress = address;
+    }
+
+    // Draw one frame.  Runs on the event dispatch thread.
+    private void refresh() {
+        BitSet[] registers;
+        Register[] highlight = new Register[3];
+        int registerWindow;
+        BitSet words;
+        int wordsBase;
+        boolean wordsReset;
+        boolean wroteMemory;
+        int writeAddress;
+        boolean followProgramCounter;
+        synchronized (this) {
+            registers = dirtyRegisters;
+            dirtyRegisters = new BitSet[]{new BitSet(), new BitSet(), new BitSet()};
+            System.arraycopy(lastRegisters, 0, highlight, 0, 3);
+            registerWindow = lastRegisterWindow;
+            lastRegisterWindow = NO_WINDOW;
+            words = dirtyWords;
+            dirtyWords = new BitSet();
+            wordsBase = dirtyWordsBase;
+            wordsReset = dirtyWordsReset;
+            dirtyWordsReset = false;
+            wroteMemory = memoryWritten;
+            memoryWritten = false;
+            writeAddress = lastWriteAddress;
+            followProgramCounter = timed;
+        }
+        int base = executePane.getValueDisplayBase();
+        RegistersWindow registersWindow = executePane.getRegistersWindow();
+        Coprocessor1Window coprocessor1Window = executePane.getCoprocessor1Window();
+        Coprocessor0Window coprocessor0Window = executePane.getCoprocessor0Window();
+        registersWindow.updateRegisterValues(registers[REGISTERS], base);
+        coprocessor1Window.updateRegisterValues(registers[COPROCESSOR1], base);
+        coprocessor0Window.updateRegisterValues(registers[COPROCESSOR0], base);
+        if (registerWindow != NO_WINDOW) {
+            JPanel selected = registersWindow;
+            if (registerWindow == REGISTERS) {
+                registersWindow.highlightCellForRegister(highlight[REGISTERS]);
+            } else if (registerWindow == COPROCESSOR1) {
+                coprocessor1Window.highlightCellForRegister(highlight[COPROCESSOR1]);
+                selected = coprocessor1Window;
+            } else {
+                coprocessor0Window.highlightCellForRegister(highlight[COPROCESSOR0]);
+                selected = coprocessor0Window;
+            }
+            Globals.getGui().getRegistersPane().setSelectedComponent(selected);
+        }
+        DataSegmentWindow dataSegment = executePane.getDataSegmentWindow();
+        if (wroteMemory) {
+            if (wordsBase == dataSegment.firstAddress && !wordsReset) {
+                dataSegment.updateWrittenCells(words);
+            } else {
+                dataSegment.updateValues();
+            }
+            dataSegment.highlightWrittenCell(writeAddress);
+        }
+        // Writes recorded from here on are relative to what the window now shows.
+        synchronized (this) {
+            if (dirtyWordsBase != dataSegment.firstAddress) {
+                dirtyWordsBase = dataSegment.firstAddress;
+                dirtyWords.clear();
+                dirtyWordsReset = true;
+            }
+        }
+        if (followProgramCounter) {
+            TextSegmentWindow textSegment = executePane.getTextSegmentWindow();
+            textSegment.setCodeHighlighting(true);
+            textSegment.highlightStepAtPC();
+        }
+    }
+
+    // Observer for the registers of one of the three register windows.
+    private class RegisterWriteObserver implements Observer {
+        private final int window;
+
+        RegisterWriteObserver(int window) {
+            this.window = window;
+        }
+
+        public void update(Observable observable, Object obj) {
+            if (obj instanceof RegisterAccessNotice && ((RegisterAccessNotice) obj).getAccessType() == AccessNotice.WRITE) {
+                registerWritten(window, (Register) observable);
+            }
+        }
+    }
+}
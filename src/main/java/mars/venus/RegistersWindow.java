@@ -2,9 +2,7 @@ package mars.venus;
 
 import mars.Globals;
 import mars.Settings;
-import mars.mips.hardware.AccessNotice;
 import mars.mips.hardware.Register;
-import mars.mips.hardware.RegisterAccessNotice;
 import mars.mips.hardware.RegisterFile;
 import mars.simulator.Simulator;
 import mars.simulator.SimulatorNotice;
@@ -17,6 +15,7 @@ import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.JTableHeader;
 import java.awt.*;
 import java.awt.event.MouseEvent;
+import java.util.BitSet;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -188,9 +187,8 @@ public class RegistersWindow extends JPanel implements Observer {
      * Required by Observer interface.  Called when notified by an Observable that we are registered with.
      * Observables include:
      * The Simulator object, which lets us know when it starts and stops running
-     * A register object, which lets us know of register operations
-     * The Simulator keeps us informed of when simulated MIPS execution is active.
-     * This is the only time we care about register operations.
+     * Register writes during execution are collected by RefreshCoordinator, which
+     * redisplays and highlights them at a limited frame rate.
      *
      * @param observable The Observable object who is notifying us
      * @param obj        Auxiliary object with additional information.
@@ -199,29 +197,28 @@ public class RegistersWindow extends JPanel implements Observer {
         if (observable == mars.simulator.Simulator.getInstance()) {
             SimulatorNotice notice = (SimulatorNotice) obj;
             if (notice.getAction() == SimulatorNotice.SIMULATOR_START) {
-                // Simulated MIPS execution starts.  Respond to memory changes if running in timed
-                // or stepped mode.
+                // Simulated MIPS execution starts.  Highlight registers written if running in
+                // timed or stepped mode.  RefreshCoordinator tells us which ones.
                 if (notice.getRunSpeed() != RunSpeedPanel.UNLIMITED_SPEED || notice.getMaxSteps() == 1) {
-                    RegisterFile.addRegistersObserver(this);
                     this.highlighting = true;
                 }
-            } else {
-                // Simulated MIPS execution stops.  Stop responding.
-                RegisterFile.deleteRegistersObserver(this);
-            }
-        } else if (obj instanceof RegisterAccessNotice) {
-            // NOTE: each register is a separate Observable
-            RegisterAccessNotice access = (RegisterAccessNotice) obj;
-            if (access.getAccessType() == AccessNotice.WRITE) {
-                // Uses the same highlighting technique as for Text Segment -- see
-                // AddressCellRenderer class in DataSegmentWindow.java.
-                this.highlighting = true;
-                this.highlightCellForRegister((Register) observable);
-                Globals.getGui().getRegistersPane().setSelectedComponent(this);
             }
         }
     }
 
+    /**
+     * Redisplay the given registers and the program counter, for RefreshCoordinator.
+     *
+     * @param numbers numbers of the registers written since the last refresh
+     * @param base    number base for display (10 or 16)
+     */
+    void updateRegisterValues(BitSet numbers, int base) {
+        for (int i = numbers.nextSetBit(0); i >= 0; i = numbers.nextSetBit(i + 1)) {
+            updateRegisterValue(i, RegisterFile.getValue(i), base);
+        }
+        updateRegisterUnsignedValue(32, RegisterFile.getProgramCounter(), base);
+    }
+
     /**
      * Highlight the row corresponding to the given register.
      *
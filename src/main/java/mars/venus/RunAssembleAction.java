@@ -6,6 +6,7 @@ import mars.mips.hardware.Coprocessor1;
 import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
 import mars.util.FilenameFinder;
+import mars.simulator.Profiler;
 import mars.util.SystemIO;
 
 import javax.swing.*;
@@ -113,6 +114,7 @@ public class RunAssembleAction extends GuiAction {
                 RegisterFile.resetRegisters();
                 Coprocessor1.resetRegisters();
                 Coprocessor0.resetRegisters();
+                Profiler.reset();
                 executePane.getTextSegmentWindow().setupTable();
                 executePane.getDataSegmentWindow().setupTable();
                 executePane.getDataSegmentWindow().highlightCellForAddress(Memory.dataBaseAddress);
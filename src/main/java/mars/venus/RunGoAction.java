@@ -3,6 +3,7 @@ package mars.venus;
 import mars.Globals;
 import mars.ProcessingException;
 import mars.mips.hardware.RegisterFile;
+import mars.simulator.Breakpoints;
 import mars.simulator.ProgramArgumentList;
 import mars.simulator.Simulator;
 import mars.util.SystemIO;
@@ -47,6 +48,7 @@ public class RunGoAction extends GuiAction {
     public static int maxSteps = defaultMaxSteps;
     private String name;
     private ExecutePane executePane;
+    private Breakpoints breakpoints;
 
     public RunGoAction(String name, Icon icon, String descrip,
                        Integer mnemonic, KeyStroke accel, VenusUI gui) {
@@ -60,6 +62,12 @@ public class RunGoAction extends GuiAction {
         name = this.getValue(Action.NAME).toString();
         executePane = mainUI.getMainPane().getExecutePane();
         if (FileStatus.isAssembled()) {
+            try {
+                breakpoints = executePane.getTextSegmentWindow().getBreakpoints();
+            } catch (IllegalArgumentException iae) {
+                JOptionPane.showMessageDialog(mainUI, iae.getMessage(), "Watchpoints", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
             if (!VenusUI.getStarted()) {
                 processProgramArgumentsIfAny();  // DPS 17-July-2008
             }
@@ -75,8 +83,7 @@ public class RunGoAction extends GuiAction {
                 //FileStatus.set(FileStatus.RUNNING);
                 mainUI.setMenuState(FileStatus.RUNNING);
                 try {
-                    int[] breakPoints = executePane.getTextSegmentWindow().getSortedBreakPointsArray();
-                    boolean done = Globals.program.simulateFromPC(breakPoints, maxSteps, this);
+                    boolean done = Globals.program.simulateFromPC(breakpoints, maxSteps, this);
                 } catch (ProcessingException pe) {
                 }
             } else {
@@ -103,8 +110,9 @@ public class RunGoAction extends GuiAction {
             return;
         }
         if (pauseReason == Simulator.BREAKPOINT) {
+            String hit = (breakpoints == null || breakpoints.getLastHit() == null) ? "breakpoint" : breakpoints.getLastHit();
             mainUI.messagesPane.postMarsMessage(
-                    name + ": execution paused at breakpoint: " + FileStatus.getFile().getName() + "\n\n");
+                    name + ": execution paused at " + hit + ": " + FileStatus.getFile().getName() + "\n\n");
         } else {
             mainUI.messagesPane.postMarsMessage(
                     name + ": execution paused by user: " + FileStatus.getFile().getName() + "\n\n");
@@ -6,6 +6,7 @@ import mars.mips.hardware.Coprocessor0;
 import mars.mips.hardware.Coprocessor1;
 import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
+import mars.simulator.Profiler;
 import mars.util.SystemIO;
 
 import javax.swing.*;
@@ -87,6 +88,9 @@ public class RunResetAction extends GuiAction {
         executePane.getDataSegmentWindow().highlightCellForAddress(Memory.dataBaseAddress);
         executePane.getDataSegmentWindow().clearHighlighting();
         executePane.getTextSegmentWindow().resetModifiedSourceCode();
+        executePane.getTextSegmentWindow().resetBreakpointHits();
+        Profiler.reset();
+        executePane.getTextSegmentWindow().updateExecutionCounts();
         executePane.getTextSegmentWindow().setCodeHighlighting(true);
         executePane.getTextSegmentWindow().highlightStepAtPC();
         mainUI.getRegistersPane().setSelectedComponent(executePane.getRegistersWindow());
@@ -0,0 +1,50 @@
+package mars.venus;
+
+import mars.Globals;
+import mars.simulator.Breakpoints;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+
+
+/**
+ * Action class for the Run menu item to set watchpoints, which stop execution after an
+ * instruction stores into a given range of memory.  The watchpoints are edited as text,
+ * one per line, and held by the text segment window along with the breakpoints.  They
+ * take effect the next time Go is selected.
+ */
+public class RunWatchpointsAction extends GuiAction {
+
+    public RunWatchpointsAction(String name, Icon icon, String descrip,
+                                Integer mnemonic, KeyStroke accel, VenusUI gui) {
+        super(name, icon, descrip, mnemonic, accel, gui);
+    }
+
+    /**
+     * Display the watchpoints for editing.  If the program has been assembled, they are
+     * checked, labels included, before being accepted.
+     */
+    public void actionPerformed(ActionEvent e) {
+        TextSegmentWindow textSegment = Globals.getGui().getMainPane().getExecutePane().getTextSegmentWindow();
+        JTextArea text = new JTextArea(textSegment.getWatchpoints(), 8, 40);
+        text.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        JPanel panel = new JPanel(new BorderLayout(0, 6));
+        panel.add(new JLabel("<html>One watchpoint per line: an address range such as 0x10010000-0x1001000f,<br>"
+                + "or an address or label for one word, optionally followed by a condition<br>"
+                + "and hit count, e.g. <tt>counter if $t0 == 5 hits 2</tt></html>"), BorderLayout.NORTH);
+        panel.add(new JScrollPane(text), BorderLayout.CENTER);
+        while (JOptionPane.showConfirmDialog(mainUI, panel, "Watchpoints", JOptionPane.OK_CANCEL_OPTION,
+                JOptionPane.PLAIN_MESSAGE) == JOptionPane.OK_OPTION) {
+            try {
+                if (FileStatus.isAssembled()) {
+                    TextSegmentWindow.addWatchpoints(new Breakpoints(), text.getText());
+                }
+                textSegment.setWatchpoints(text.getText());
+                return;
+            } catch (IllegalArgumentException iae) {
+                JOptionPane.showMessageDialog(mainUI, iae.getMessage(), "Watchpoints", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package mars.venus;
+
+import mars.Globals;
+import mars.Settings;
+import mars.simulator.Profiler;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+
+
+/**
+ * Action class for the Settings menu item to control whether the
+ * simulator counts the executions of each instruction.  The counts
+ * are shown in the Count column of the Text Segment window.
+ */
+public class SettingsProfilingAction extends GuiAction {
+
+
+    public SettingsProfilingAction(String name, Icon icon, String descrip,
+                                   Integer mnemonic, KeyStroke accel, VenusUI gui) {
+        super(name, icon, descrip, mnemonic, accel, gui);
+    }
+
+    public void actionPerformed(ActionEvent e) {
+        boolean enabled = ((JCheckBoxMenuItem) e.getSource()).isSelected();
+        Globals.getSettings().setBooleanSetting(Settings.PROFILING_ENABLED, enabled);
+        Profiler.setEnabled(enabled);
+    }
+
+}
@@ -4,6 +4,8 @@ import mars.Globals;
 import mars.ProgramStatement;
 import mars.Settings;
 import mars.mips.hardware.*;
+import mars.simulator.Breakpoints;
+import mars.simulator.Profiler;
 import mars.simulator.Simulator;
 import mars.simulator.SimulatorNotice;
 
@@ -11,6 +13,7 @@ import javax.swing.*;
 import javax.swing.event.*;
 import javax.swing.table.*;
 import java.awt.*;
+import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.util.*;
@@ -71,16 +74,22 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
     private final Font tableCellFont = new Font("Monospaced", Font.PLAIN, 12);
     private boolean codeHighlighting;
     private boolean breakpointsEnabled;  // Added 31 Dec 2009
+    private Hashtable breakpointOptions;  // key is table model row, value is breakpoint condition and hit count
+    private String watchpoints = "";      // one watchpoint per line, see RunWatchpointsAction
+    // Built from the above when Go is selected, and kept until they change so that hit
+    // counts carry over from one Go to the next.
+    private Breakpoints breakpoints;
     private int highlightAddress;
     private TableModelListener tableModelListener;
     private boolean inDelaySlot; // Added 25 June 2007
 
-    private static final String[] columnNames = {"Bkpt", "Address", "Code", "Basic", "Source"};
+    private static final String[] columnNames = {"Bkpt", "Address", "Code", "Basic", "Source", "Count"};
     private static final int BREAK_COLUMN = 0;
     private static final int ADDRESS_COLUMN = 1;
     private static final int CODE_COLUMN = 2;
     private static final int BASIC_COLUMN = 3;
     private static final int SOURCE_COLUMN = 4;
+    private static final int COUNT_COLUMN = 5;
 
     private static final Font monospacedPlain12Point = new Font("Monospaced", Font.PLAIN, 12);
     // The following is displayed in the Basic and Source columns if existing code is overwritten using self-modifying code feature
@@ -118,6 +127,8 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
         intAddresses = new int[data.length];
         addressRows = new Hashtable(data.length);
         executeMods = new Hashtable<Integer, ModifiedCode>(data.length);
+        breakpointOptions = new Hashtable();
+        breakpoints = null;
         // Get highest source line number to determine #leading spaces so line numbers will vertically align
         // In multi-file situation, this will not necessarily be the last line b/c sourceStatementList contains
         // source lines from all files.  DPS 3-Oct-10
@@ -150,6 +161,7 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
                         + mars.util.EditorFont.substituteSpacesForTabs(statement.getSource());
             }
             data[i][SOURCE_COLUMN] = sourceString;
+            data[i][COUNT_COLUMN] = "";
             lastLine = statement.getSourceLine();
         }
         contentPane.removeAll();
@@ -159,6 +171,7 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
             tableModel.fireTableDataChanged();// initialize listener
         }
         table = new MyTippedJTable(tableModel);
+        table.addMouseListener(new BreakpointOptionsMouseListener());
 
         // prevents cells in row from being highlighted when user clicks on breakpoint checkbox
         table.setRowSelectionAllowed(false);
@@ -166,23 +179,27 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
         table.getColumnModel().getColumn(BREAK_COLUMN).setMinWidth(40);
         table.getColumnModel().getColumn(ADDRESS_COLUMN).setMinWidth(80);
         table.getColumnModel().getColumn(CODE_COLUMN).setMinWidth(80);
+        table.getColumnModel().getColumn(COUNT_COLUMN).setMinWidth(40);
 
         table.getColumnModel().getColumn(BREAK_COLUMN).setMaxWidth(50);
         table.getColumnModel().getColumn(ADDRESS_COLUMN).setMaxWidth(90);
         table.getColumnModel().getColumn(CODE_COLUMN).setMaxWidth(90);
         table.getColumnModel().getColumn(BASIC_COLUMN).setMaxWidth(200);
+        table.getColumnModel().getColumn(COUNT_COLUMN).setMaxWidth(100);
 
         table.getColumnModel().getColumn(BREAK_COLUMN).setPreferredWidth(40);
         table.getColumnModel().getColumn(ADDRESS_COLUMN).setPreferredWidth(80);
         table.getColumnModel().getColumn(CODE_COLUMN).setPreferredWidth(80);
         table.getColumnModel().getColumn(BASIC_COLUMN).setPreferredWidth(160);
         table.getColumnModel().getColumn(SOURCE_COLUMN).setPreferredWidth(280);
+        table.getColumnModel().getColumn(COUNT_COLUMN).setPreferredWidth(70);
 
         CodeCellRenderer codeStepHighlighter = new CodeCellRenderer();
         table.getColumnModel().getColumn(BASIC_COLUMN).setCellRenderer(codeStepHighlighter);
         table.getColumnModel().getColumn(SOURCE_COLUMN).setCellRenderer(codeStepHighlighter);
         // to render String right-justified in mono font
         table.getColumnModel().getColumn(ADDRESS_COLUMN).setCellRenderer(new MonoRightCellRenderer());
+        table.getColumnModel().getColumn(COUNT_COLUMN).setCellRenderer(new MonoRightCellRenderer());
         table.getColumnModel().getColumn(CODE_COLUMN).setCellRenderer(new MachineCodeCellRenderer());
         table.getColumnModel().getColumn(BREAK_COLUMN).setCellRenderer(new CheckBoxTableCellRenderer());
         reorderColumns(); // Re-order columns according to current preference...
@@ -264,6 +281,22 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
         }
     }
 
+    /**
+     * Redisplay the execution counts gathered by the Profiler.  Counts of zero are
+     * left blank.
+     */
+    public void updateExecutionCounts() {
+        if (contentPane.getComponentCount() == 0)
+            return; // ignore if no content to change
+        for (int i = 0; i < intAddresses.length; i++) {
+            long count = Profiler.getCount(intAddresses[i]);
+            String value = (count == 0) ? "" : Long.toString(count);
+            if (!value.equals(data[i][COUNT_COLUMN])) {
+                table.getModel().setValueAt(value, i, COUNT_COLUMN);
+            }
+        }
+    }
+
     /**
      * Redisplay the basic statements.  This should only be done when address or value display base is
      * modified (e.g. between base 16 hex and base 10 dec).
@@ -317,6 +350,13 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
                 if (Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED)) { // && (notice.getRunSpeed() != RunSpeedPanel.UNLIMITED_SPEED || notice.getMaxSteps()==1)) {
                     addAsTextSegmentObserver();
                 }
+            } else if (Profiler.isEnabled()) {
+                // Simulated MIPS execution stops.  Show the counts gathered while it ran.
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        updateExecutionCounts();
+                    }
+                });
             }
         } else if (observable == Globals.getSettings()) {
             deleteAsTextSegmentObserver();
@@ -457,11 +497,75 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
         return breakpoints;
     }
 
+    /**
+     * Returns the current breakpoints, with their conditions and hit counts, and the
+     * watchpoints.  The same object is returned until any of them change or the program
+     * is reset, so that hit counts accumulate across runs.
+     *
+     * @return breakpoints and watchpoints, or null if there are none.
+     * @throws IllegalArgumentException if a watchpoint cannot be parsed
+     */
+    public Breakpoints getBreakpoints() throws IllegalArgumentException {
+        if (breakpoints == null) {
+            Breakpoints result = new Breakpoints();
+            for (int i = 0; breakpointsEnabled && i < data.length; i++) {
+                if (((Boolean) data[i][BREAK_COLUMN]).booleanValue()) {
+                    String options = (String) breakpointOptions.get(Integer.valueOf(i));
+                    result.addBreakpoint(intAddresses[i], (options == null) ? "" : options);
+                }
+            }
+            addWatchpoints(result, watchpoints);
+            breakpoints = result;
+        }
+        return (breakpoints.isEmpty()) ? null : breakpoints;
+    }
+
+    /**
+     * Start the hit counts of all breakpoints and watchpoints over.  Called on reset.
+     */
+    public void resetBreakpointHits() {
+        breakpoints = null;
+    }
+
+    /**
+     * @return the watchpoints, one per line
+     */
+    public String getWatchpoints() {
+        return watchpoints;
+    }
+
+    /**
+     * Set the watchpoints, which take effect the next time Go is selected.
+     *
+     * @param watchpoints the watchpoints, one per line
+     */
+    public void setWatchpoints(String watchpoints) {
+        this.watchpoints = watchpoints;
+        breakpoints = null;
+    }
+
+    /**
+     * Add watchpoints given one per line, resolving labels in the programs last assembled.
+     *
+     * @param breakpoints the breakpoints to add to
+     * @param watchpoints the watchpoints, one per line
+     * @throws IllegalArgumentException if a watchpoint cannot be parsed
+     */
+    static void addWatchpoints(Breakpoints breakpoints, String watchpoints) throws IllegalArgumentException {
+        String[] lines = watchpoints.split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i].trim().length() > 0) {
+                breakpoints.addWatchpoint(lines[i], RunAssembleAction.getMIPSprogramsToAssemble());
+            }
+        }
+    }
+
     /**
      * Clears all breakpoints that have been set since last assemble, and
      * updates the display of the breakpoint column.
      */
     public void clearAllBreakpoints() {
+        breakpointOptions.clear();
         for (int i = 0; i < tableModel.getRowCount(); i++) {
             if (((Boolean) data[i][BREAK_COLUMN]).booleanValue()) {
                 // must use this method to assure display updated and listener notified
@@ -654,10 +758,15 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
         TableColumnModel oldtcm = table.getColumnModel();
         TableColumnModel newtcm = new DefaultTableColumnModel();
         int[] savedColumnOrder = Globals.getSettings().getTextColumnOrder();
-        // Apply ordering only if correct number of columns.
-        if (savedColumnOrder.length == table.getColumnCount()) {
+        // Apply ordering only if correct number of columns.  An ordering saved before the
+        // Count column was added is applied with the Count column last.
+        if (savedColumnOrder.length == table.getColumnCount()
+                || savedColumnOrder.length == COUNT_COLUMN && table.getColumnCount() == COUNT_COLUMN + 1) {
             for (int i = 0; i < savedColumnOrder.length; i++)
                 newtcm.addColumn(oldtcm.getColumn(savedColumnOrder[i]));
+            if (savedColumnOrder.length == COUNT_COLUMN) {
+                newtcm.addColumn(oldtcm.getColumn(COUNT_COLUMN));
+            }
             table.setColumnModel(newtcm);
         }
     }
@@ -735,6 +844,9 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
         public void setValueAt(Object value, int row, int col) {
             if (col != CODE_COLUMN) {
                 data[row][col] = value;
+                if (col == BREAK_COLUMN) {
+                    breakpoints = null;
+                }
                 fireTableCellUpdated(row, col);
                 return;
             }
@@ -879,6 +991,61 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
     }
 
 
+    /*
+     * Right-click on a breakpoint check box to give the breakpoint a condition and
+     * hit count.  Setting them also sets the breakpoint.
+     */
+    private class BreakpointOptionsMouseListener extends MouseAdapter {
+        public void mousePressed(MouseEvent e) {
+            maybeEditOptions(e);
+        }
+
+        public void mouseReleased(MouseEvent e) {
+            maybeEditOptions(e);
+        }
+
+        private void maybeEditOptions(MouseEvent e) {
+            if (!e.isPopupTrigger()) {
+                return;
+            }
+            int row = table.rowAtPoint(e.getPoint());
+            int column = table.columnAtPoint(e.getPoint());
+            if (row >= 0 && column >= 0 && table.convertColumnIndexToModel(column) == BREAK_COLUMN) {
+                editBreakpointOptions(row);
+            }
+        }
+    }
+
+    private void editBreakpointOptions(int row) {
+        Integer key = Integer.valueOf(row);
+        String options = (String) breakpointOptions.get(key);
+        while (true) {
+            options = (String) JOptionPane.showInputDialog(this,
+                    "Stop at " + data[row][ADDRESS_COLUMN] + " only when a condition holds, e.g. $t0 == 5 && [0x10010000] != 0,\n"
+                            + "and from the n-th time it does, e.g. hits 3.  Leave blank to stop every time.",
+                    "Breakpoint Condition", JOptionPane.PLAIN_MESSAGE, null, null, (options == null) ? "" : options);
+            if (options == null) {
+                return;
+            }
+            options = options.trim();
+            try {
+                Breakpoints.validate(options);
+                break;
+            } catch (IllegalArgumentException iae) {
+                JOptionPane.showMessageDialog(this, iae.getMessage(), "Breakpoint Condition", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+        if (options.length() == 0) {
+            breakpointOptions.remove(key);
+        } else {
+            breakpointOptions.put(key, options);
+        }
+        breakpoints = null;
+        // must use this method to assure display updated and listener notified
+        tableModel.setValueAt(Boolean.TRUE, row, BREAK_COLUMN);
+    }
+
+
     /*
      * Cell renderer for Breakpoint column.  We can use this to enable/disable breakpoint checkboxes with
      * a single action.  This class blatantly copied/pasted from
@@ -964,6 +1131,7 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
                     setBorder(noFocusBorder);
                 }
                 setSelected(Boolean.TRUE.equals(value));
+                setToolTipText((String) breakpointOptions.get(Integer.valueOf(row)));
             }
             return this;
         }
@@ -984,11 +1152,12 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
         }
 
         private final String[] columnToolTips = {
-                /* break */   "If checked, will set an execution breakpoint. Click header to disable/enable breakpoints",
+                /* break */   "If checked, will set an execution breakpoint. Right-click to give it a condition. Click header to disable/enable breakpoints",
                 /* address */ "Text segment address of binary instruction code",
                 /* code */    "32-bit binary MIPS instruction",
                 /* basic */   "Basic assembler instruction",
-                /* source */  "Source code line"
+                /* source */  "Source code line",
+                /* count */   "Number of times executed, if profiling is enabled in the Settings menu"
         };
 
         //Implement table header tool tips.
@@ -1054,6 +1223,7 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
                     if (realIndex == BREAK_COLUMN) {
                         JCheckBox check = ((JCheckBox) ((DefaultCellEditor) table.getCellEditor(0, index)).getComponent());
                         breakpointsEnabled = !breakpointsEnabled;
+                        breakpoints = null;
                         check.setEnabled(breakpointsEnabled);
                         table.tableChanged(new TableModelEvent(tableModel, 0, data.length - 1, BREAK_COLUMN));
                     }
@@ -1102,7 +1272,7 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
             // same as previous, do not save changes to persistent store.
             int[] oldOrder = Globals.getSettings().getTextColumnOrder();
             for (int i = 0; i < columnOrder.length; i++) {
-                if (oldOrder[i] != columnOrder[i]) {
+                if (i >= oldOrder.length || oldOrder[i] != columnOrder[i]) {
                     Globals.getSettings().setTextColumnOrder(columnOrder);
                     break;
                 }
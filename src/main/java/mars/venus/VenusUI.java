@@ -2,6 +2,7 @@ package mars.venus;
 
 import mars.Globals;
 import mars.Settings;
+import mars.simulator.Profiler;
 
 import javax.swing.*;
 import java.awt.*;
@@ -48,10 +49,10 @@ public class VenusUI extends JFrame {
     private JMenu file, run, window, help, edit, settings;
     private JMenuItem fileNew, fileOpen, fileClose, fileCloseAll, fileSave, fileSaveAs, fileSaveAll, fileDumpMemory, filePrint, fileExit;
     private JMenuItem editUndo, editRedo, editCut, editCopy, editPaste, editFindReplace, editSelectAll;
-    private JMenuItem runGo, runStep, runBackstep, runReset, runAssemble, runStop, runPause, runClearBreakpoints, runToggleBreakpoints;
+    private JMenuItem runGo, runStep, runBackstep, runReset, runAssemble, runStop, runPause, runClearBreakpoints, runToggleBreakpoints, runWatchpoints;
     private JCheckBoxMenuItem settingsLabel, settingsPopupInput, settingsValueDisplayBase, settingsAddressDisplayBase,
             settingsExtended, settingsAssembleOnOpen, settingsAssembleAll, settingsWarningsAreErrors, settingsStartAtMain,
-            settingsDelayedBranching, settingsProgramArguments, settingsSelfModifyingCode;
+            settingsDelayedBranching, settingsProgramArguments, settingsSelfModifyingCode, settingsProfiling;
     private JMenuItem settingsExceptionHandler, settingsEditor, settingsHighlighting, settingsMemoryConfiguration;
     private JMenuItem helpHelp, helpAbout;
 
@@ -71,12 +72,13 @@ public class VenusUI extends JFrame {
     EditRedoAction editRedoAction;
     private Action editCutAction, editCopyAction, editPasteAction, editFindReplaceAction, editSelectAllAction;
     private Action runAssembleAction, runGoAction, runStepAction, runBackstepAction, runResetAction,
-            runStopAction, runPauseAction, runClearBreakpointsAction, runToggleBreakpointsAction;
+            runStopAction, runPauseAction, runClearBreakpointsAction, runToggleBreakpointsAction, runWatchpointsAction;
     private Action settingsLabelAction, settingsPopupInputAction, settingsValueDisplayBaseAction, settingsAddressDisplayBaseAction,
             settingsExtendedAction, settingsAssembleOnOpenAction, settingsAssembleAllAction,
             settingsWarningsAreErrorsAction, settingsStartAtMainAction, settingsProgramArgumentsAction,
             settingsDelayedBranchingAction, settingsExceptionHandlerAction, settingsEditorAction,
-            settingsHighlightingAction, settingsMemoryConfigurationAction, settingsSelfModifyingCodeAction;
+            settingsHighlightingAction, settingsMemoryConfigurationAction, settingsSelfModifyingCodeAction,
+            settingsProfilingAction;
     private Action helpHelpAction, helpAboutAction;
 
 
@@ -338,6 +340,12 @@ public class VenusUI extends JFrame {
                     new Integer(KeyEvent.VK_T),
                     KeyStroke.getKeyStroke(KeyEvent.VK_T, Toolkit.getDefaultToolkit().getMenuShortcutKeyMask()),
                     mainUI);
+            runWatchpointsAction = new RunWatchpointsAction("Watchpoints...",
+                    null,
+                    "Stop execution after a store into given memory ranges (takes effect at the next Go)",
+                    Integer.valueOf(KeyEvent.VK_W),
+                    null,
+                    mainUI);
             settingsLabelAction = new SettingsLabelAction("Show Labels Window (symbol table)",
                     null,
                     "Toggle visibility of Labels window (symbol table) in the Execute tab",
@@ -399,6 +407,11 @@ public class VenusUI extends JFrame {
                     "If set, the MIPS program can write and branch to both text and data segments.",
                     null, null,
                     mainUI);
+            settingsProfilingAction = new SettingsProfilingAction("Profile execution counts",
+                    null,
+                    "If set, the number of times each instruction is executed is shown in the Text Segment window.",
+                    null, null,
+                    mainUI);
             settingsEditorAction = new SettingsEditorAction("Editor...",
                     null,
                     "View and modify text editor settings.",
@@ -535,6 +548,8 @@ public class VenusUI extends JFrame {
         runClearBreakpoints.setIcon(new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "MyBlank16.gif"))));
         runToggleBreakpoints = new JMenuItem(runToggleBreakpointsAction);
         runToggleBreakpoints.setIcon(new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "MyBlank16.gif"))));
+        runWatchpoints = new JMenuItem(runWatchpointsAction);
+        runWatchpoints.setIcon(new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "MyBlank16.gif"))));
 
         run.add(runAssemble);
         run.add(runGo);
@@ -546,6 +561,7 @@ public class VenusUI extends JFrame {
         run.addSeparator();
         run.add(runClearBreakpoints);
         run.add(runToggleBreakpoints);
+        run.add(runWatchpoints);
 
         settingsLabel = new JCheckBoxMenuItem(settingsLabelAction);
         settingsLabel.setSelected(Globals.getSettings().getLabelWindowVisibility());
@@ -565,6 +581,9 @@ public class VenusUI extends JFrame {
         settingsDelayedBranching.setSelected(Globals.getSettings().getDelayedBranchingEnabled());
         settingsSelfModifyingCode = new JCheckBoxMenuItem(settingsSelfModifyingCodeAction);
         settingsSelfModifyingCode.setSelected(Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED));
+        settingsProfiling = new JCheckBoxMenuItem(settingsProfilingAction);
+        settingsProfiling.setSelected(Globals.getSettings().getBooleanSetting(Settings.PROFILING_ENABLED));
+        Profiler.setEnabled(settingsProfiling.isSelected());
         settingsAssembleOnOpen = new JCheckBoxMenuItem(settingsAssembleOnOpenAction);
         settingsAssembleOnOpen.setSelected(Globals.getSettings().getAssembleOnOpenEnabled());
         settingsAssembleAll = new JCheckBoxMenuItem(settingsAssembleAllAction);
@@ -594,6 +613,7 @@ public class VenusUI extends JFrame {
         settings.add(settingsExtended);
         settings.add(settingsDelayedBranching);
         settings.add(settingsSelfModifyingCode);
+        settings.add(settingsProfiling);
         settings.addSeparator();
         settings.add(settingsEditor);
         settings.add(settingsHighlighting);
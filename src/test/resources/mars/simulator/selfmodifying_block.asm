@@ -0,0 +1,38 @@
+# Regression program for self-modifying code inside a translated basic block.
+#
+# Run by "gradle regressionTest", with self-modifying code enabled:
+#     java mars.Mars nc smc selfmodifying_block.asm
+# Expected output, in selfmodifying_block.out: 3825 (the sum of 50 through 100)
+#
+# The loop body is a hot branch target, so the turbo loop translates it into a
+# block long before the 50th iteration.  Every iteration stores a word, without
+# branching: into a scratch data word normally, but into the later statement at
+# "patch" when i reaches 50, turning it from "addi $t0,$t0,0" into
+# "add $t0,$t0,$t1".  The block must not go on to run the statement it captured
+# before the store; if it does, 50 is left out of the sum (3775).
+
+        .data
+add_word:   .word 0x01094020        # add  $t0,$t0,$t1
+scratch:    .word 0
+
+        .text
+main:   li      $t0, 0              # sum
+        li      $t1, 1              # i
+        la      $t7, scratch
+        la      $t6, patch
+        subu    $t6, $t6, $t7       # distance from scratch to patch
+        lw      $s0, add_word
+loop:   xori    $t4, $t1, 50
+        sltiu   $t4, $t4, 1         # 1 when i == 50, else 0
+        mul     $t5, $t4, $t6
+        addu    $t3, $t7, $t5       # patch when i == 50, else scratch
+        sw      $s0, 0($t3)
+patch:  addi    $t0, $t0, 0
+        addi    $t1, $t1, 1
+        ble     $t1, 100, loop
+
+        move    $a0, $t0
+        li      $v0, 1
+        syscall
+        li      $v0, 10
+        syscall